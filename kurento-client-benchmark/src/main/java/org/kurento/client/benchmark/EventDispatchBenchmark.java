@@ -0,0 +1,86 @@
+package org.kurento.client.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.EventListener;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.StubRomClient;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.events.SampleSourceEvent;
+import org.kurento.jsonrpc.Props;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Delivery of an event notification to the listeners of a remote object
+ * proxy. Notifications are injected by a {@link StubRomClient}, so the
+ * transport is not measured.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+	public static class CountingListener implements
+			EventListener<SampleSourceEvent> {
+
+		int count;
+
+		@Override
+		public void onEvent(SampleSourceEvent event) {
+			count++;
+		}
+	}
+
+	@Param({ "1", "10", "100" })
+	public int listeners;
+
+	private StubRomClient client;
+
+	private CountingListener lastListener;
+
+	private Props data;
+
+	@Setup
+	public void setup() {
+
+		client = new StubRomClient();
+		RomManager manager = new RomManager(client);
+		SampleClass sample = RemoteObjectInvocationHandler.newProxy(
+				new RemoteObject("obj1", "SampleClass", manager), manager,
+				SampleClass.class);
+
+		for (int i = 0; i < listeners; i++) {
+			lastListener = new CountingListener();
+			sample.addSampleSourceListener(lastListener);
+		}
+
+		data = new Props("source", "obj1").add("prop1", "value").add("prop2",
+				"CONSTANT_2");
+	}
+
+	/**
+	 * Event received and delivered to all the listeners.
+	 */
+	@Benchmark
+	public int fireEvent() {
+		client.fireEvent("obj1", "SampleSource", data);
+		return lastListener.count;
+	}
+}
@@ -0,0 +1,90 @@
+package org.kurento.client.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.client.internal.test.model.client.SampleLatencyStat;
+import org.kurento.client.internal.test.model.client.SampleStats;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener.GenericListType;
+import org.kurento.jsonrpc.Props;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Flattening and unflattening of a list of stats with nested registers and
+ * enums, similar to the result of getStats.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParamsFlattenerBenchmark {
+
+	private static final int NUM_STATS = 20;
+
+	private final ParamsFlattener flattener = ParamsFlattener.getInstance();
+
+	private final GenericListType statsType = new GenericListType(
+			SampleStats.class);
+
+	private List<SampleStats> stats;
+
+	private Props params;
+
+	private Object flattened;
+
+	@Setup
+	public void setup() {
+
+		stats = new ArrayList<>();
+		for (int i = 0; i < NUM_STATS; i++) {
+			stats.add(new SampleStats("stats" + i, SampleEnum.CONSTANT_1, i,
+					true, new SampleLatencyStat("audio", SampleEnum.CONSTANT_2,
+							i * 0.5f), new SampleLatencyStat("video",
+							SampleEnum.CONSTANT_1, i * 1.5f)));
+		}
+
+		params = new Props("stats", stats);
+		flattened = flattener.flattenResult(stats, null);
+	}
+
+	/**
+	 * Params of a request sent by the client.
+	 */
+	@Benchmark
+	public Props flattenParams() {
+		return flattener.flattenParams(params);
+	}
+
+	/**
+	 * Result of a request responded by the server.
+	 */
+	@Benchmark
+	public Object flattenResult() {
+		return flattener.flattenResult(stats, null);
+	}
+
+	/**
+	 * Result received by the client, converted to the return type of the
+	 * method.
+	 */
+	@Benchmark
+	public Object unflattenValue() {
+		return flattener.unflattenValue("stats", statsType, flattened, null);
+	}
+}
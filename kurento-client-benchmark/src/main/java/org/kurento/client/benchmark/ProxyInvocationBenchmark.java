@@ -0,0 +1,88 @@
+package org.kurento.client.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.StubRomClient;
+import org.kurento.client.internal.test.model.client.ComplexParam;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.jsonrpc.Props;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Invocation of methods of a remote object proxy, answered by a
+ * {@link StubRomClient} so the transport is not measured.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyInvocationBenchmark {
+
+	private final ComplexParam param = new ComplexParam("value", 5);
+
+	private SampleClass sample;
+
+	@Setup
+	public void setup() {
+
+		StubRomClient client = new StubRomClient();
+		client.withResult("getAtt1", "XXX");
+		client.withResult("echoEnum", "CONSTANT_2");
+		client.withResult("echoRegister",
+				new Props("__type__", "ComplexParam").add("__module__",
+						"complexParam").add("prop1", "value").add("prop2", 5));
+
+		RomManager manager = new RomManager(client);
+		sample = RemoteObjectInvocationHandler.newProxy(new RemoteObject(
+				"obj1", "SampleClass", manager), manager, SampleClass.class);
+	}
+
+	/**
+	 * Remote getter without params.
+	 */
+	@Benchmark
+	public String getAtt1() {
+		return sample.getAtt1();
+	}
+
+	/**
+	 * Remote method with an enum param and result.
+	 */
+	@Benchmark
+	public SampleEnum echoEnum() {
+		return sample.echoEnum(SampleEnum.CONSTANT_1);
+	}
+
+	/**
+	 * Remote method with a register param and result.
+	 */
+	@Benchmark
+	public ComplexParam echoRegister() {
+		return sample.echoRegister(param);
+	}
+
+	/**
+	 * Local method of the proxy, not sent to the server.
+	 */
+	@Benchmark
+	public boolean isCommited() {
+		return sample.isCommited();
+	}
+}
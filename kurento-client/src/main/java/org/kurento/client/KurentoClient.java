@@ -19,6 +19,7 @@ import java.io.IOException;
 import javax.annotation.PreDestroy;
 
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.EventDispatcher;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.commons.exception.KurentoException;
@@ -53,8 +54,34 @@ public class KurentoClient {
 
 	}
 
+	/**
+	 * Creates a client whose event listeners are executed by the given
+	 * dispatcher, instead of the thread receiving the events.
+	 *
+	 * @param websocketUrl
+	 *            Uri of the media server
+	 * @param listener
+	 *            Listener of the connection events, can be null
+	 * @param eventDispatcher
+	 *            Dispatcher of the events received from the media server
+	 * @return The client
+	 */
+	public static KurentoClient create(String websocketUrl,
+			KurentoConnectionListener listener, EventDispatcher eventDispatcher) {
+		log.info("Connecting to KMS in " + websocketUrl);
+		JsonRpcClientWebSocket client = listener != null ? new JsonRpcClientWebSocket(
+				websocketUrl, JsonRpcConnectionListenerKurento.create(listener))
+				: new JsonRpcClientWebSocket(websocketUrl);
+		return new KurentoClient(client, eventDispatcher);
+	}
+
 	KurentoClient(JsonRpcClient client) {
-		this.manager = new RomManager(new RomClientJsonRpcClient(client));
+		this(client, EventDispatcher.synchronous());
+	}
+
+	KurentoClient(JsonRpcClient client, EventDispatcher eventDispatcher) {
+		this.manager = new RomManager(new RomClientJsonRpcClient(client),
+				eventDispatcher);
 		try {
 			client.connect();
 		} catch (IOException e){
@@ -104,6 +131,11 @@ public class KurentoClient {
 		return new KurentoClient(jsonRpcClient);
 	}
 
+	public static KurentoClient createFromJsonRpcClient(
+			JsonRpcClient jsonRpcClient, EventDispatcher eventDispatcher) {
+		return new KurentoClient(jsonRpcClient, eventDispatcher);
+	}
+
 	public Transaction beginTransaction() {
 		return new TransactionImpl(manager);
 	}
@@ -0,0 +1,375 @@
+package org.kurento.client.internal.client;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.client.Event;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the events received from the media server to the listeners of
+ * the remote objects.
+ * <p>
+ * A synchronous dispatcher executes the listeners in the thread that
+ * receives the notification. Otherwise, notifications are processed in the
+ * executor:
+ * <ul>
+ * <li>The notifications of each remote object are processed in order by a
+ * serial queue keyed by its object ref, where the event is built.</li>
+ * <li>The event is added to a bounded queue of each listener, so a slow
+ * listener does not delay the others. When the queue of a listener is full,
+ * the {@link OverflowPolicy} is applied.</li>
+ * </ul>
+ * Queues only use threads of the executor while they have events to
+ * process. With {@link OverflowPolicy#BLOCK} a full listener queue blocks the
+ * queue of its object, so the executor must be able to run listeners while
+ * other threads are blocked (e.g. a cached thread pool).
+ */
+public class EventDispatcher {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(EventDispatcher.class);
+
+	/** Max events processed by a queue before leaving the thread to others */
+	private static final int MAX_BATCH = 64;
+
+	public enum OverflowPolicy {
+		/** Waits until the listener takes an event from its queue */
+		BLOCK,
+		/** Discards the oldest event in the queue to make room */
+		DROP_OLDEST,
+		/** Discards the new event */
+		DROP_NEWEST
+	}
+
+	private static final EventDispatcher SYNCHRONOUS = new EventDispatcher(
+			null, 0, OverflowPolicy.BLOCK);
+
+	private final Executor executor;
+	private final int listenerQueueCapacity;
+	private final OverflowPolicy overflowPolicy;
+
+	private final ConcurrentMap<String, ObjectQueue> objectQueues = new ConcurrentHashMap<>();
+
+	private final AtomicLong pendingNotifications = new AtomicLong();
+	private final AtomicLong queuedEvents = new AtomicLong();
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * @return a dispatcher that executes the listeners in the thread that
+	 *         receives the notification
+	 */
+	public static EventDispatcher synchronous() {
+		return SYNCHRONOUS;
+	}
+
+	/**
+	 * @param executor
+	 *            Executor where notifications are processed and listeners are
+	 *            executed
+	 * @param listenerQueueCapacity
+	 *            Max events waiting to be delivered to a listener
+	 * @param overflowPolicy
+	 *            What to do with a new event when the queue of a listener is
+	 *            full
+	 */
+	public EventDispatcher(Executor executor, int listenerQueueCapacity,
+			OverflowPolicy overflowPolicy) {
+
+		if (executor != null && listenerQueueCapacity <= 0) {
+			throw new IllegalArgumentException(
+					"Listener queue capacity must be positive");
+		}
+
+		this.executor = executor;
+		this.listenerQueueCapacity = listenerQueueCapacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public boolean isSynchronous() {
+		return executor == null;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public int getListenerQueueCapacity() {
+		return listenerQueueCapacity;
+	}
+
+	/**
+	 * @return the number of notifications received and not processed yet
+	 */
+	public long getPendingNotifications() {
+		return pendingNotifications.get();
+	}
+
+	/**
+	 * @return the number of events waiting in the queues of all the listeners
+	 */
+	public long getQueuedEvents() {
+		return queuedEvents.get();
+	}
+
+	/**
+	 * @return the number of events discarded by the overflow policy in all
+	 *         the listener queues
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * Fires an event received for a remote object in its serial queue.
+	 */
+	public void dispatch(final RemoteObject object, final String type,
+			final Props data) {
+
+		if (isSynchronous()) {
+			object.fireEvent(type, data);
+			return;
+		}
+
+		pendingNotifications.incrementAndGet();
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				pendingNotifications.decrementAndGet();
+				object.fireEvent(type, data);
+			}
+		};
+
+		String objectRef = object.getObjectRef();
+
+		while (true) {
+
+			ObjectQueue queue = objectQueues.get(objectRef);
+			if (queue == null) {
+				queue = new ObjectQueue(objectRef);
+				ObjectQueue previous = objectQueues.putIfAbsent(objectRef,
+						queue);
+				if (previous != null) {
+					queue = previous;
+				}
+			}
+
+			if (queue.add(task)) {
+				return;
+			}
+			// The queue has been removed when it became empty, try again
+		}
+	}
+
+	/**
+	 * Creates the queue of a listener.
+	 *
+	 * @return the queue, or null if this dispatcher is synchronous
+	 */
+	public ListenerQueue newListenerQueue(EventListenerAdapter listener) {
+		if (isSynchronous()) {
+			return null;
+		}
+		return new ListenerQueue(listener);
+	}
+
+	private boolean schedule(Runnable queue) {
+		try {
+			executor.execute(queue);
+			return true;
+		} catch (RejectedExecutionException e) {
+			log.error("Event executor is saturated. Consider increasing its"
+					+ " pool size or queue capacity", e);
+			return false;
+		}
+	}
+
+	private class ObjectQueue implements Runnable {
+
+		private final String objectRef;
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		private boolean scheduled;
+		private boolean removed;
+
+		public ObjectQueue(String objectRef) {
+			this.objectRef = objectRef;
+		}
+
+		public synchronized boolean add(Runnable task) {
+
+			if (removed) {
+				return false;
+			}
+
+			tasks.add(task);
+
+			if (!scheduled) {
+				scheduled = schedule(this);
+				if (!scheduled) {
+					tasks.remove(task);
+					pendingNotifications.decrementAndGet();
+					if (tasks.isEmpty()) {
+						removed = true;
+						objectQueues.remove(objectRef, this);
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+
+			for (int i = 0; i < MAX_BATCH; i++) {
+
+				Runnable task;
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						scheduled = false;
+						removed = true;
+						objectQueues.remove(objectRef, this);
+						return;
+					}
+				}
+
+				try {
+					task.run();
+				} catch (Exception e) {
+					log.error("Exception processing event of object {}",
+							objectRef, e);
+				}
+			}
+
+			synchronized (this) {
+				scheduled = schedule(this);
+				if (!scheduled) {
+					pendingNotifications.addAndGet(-tasks.size());
+					tasks.clear();
+					removed = true;
+					objectQueues.remove(objectRef, this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bounded queue of the events to be delivered to a listener.
+	 */
+	public class ListenerQueue implements Runnable {
+
+		private final EventListenerAdapter listener;
+		private final Queue<Event> events = new ArrayDeque<>();
+		private final AtomicLong dropped = new AtomicLong();
+		private boolean scheduled;
+
+		private ListenerQueue(EventListenerAdapter listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * @return the number of events waiting to be delivered
+		 */
+		public synchronized int getSize() {
+			return events.size();
+		}
+
+		/**
+		 * @return the number of events discarded by the overflow policy
+		 */
+		public long getDroppedCount() {
+			return dropped.get();
+		}
+
+		public synchronized void add(Event event) {
+
+			while (events.size() >= listenerQueueCapacity) {
+				switch (overflowPolicy) {
+				case DROP_NEWEST:
+					drop();
+					return;
+				case DROP_OLDEST:
+					events.poll();
+					queuedEvents.decrementAndGet();
+					drop();
+					break;
+				default:
+					if (!scheduled) {
+						scheduled = schedule(this);
+						if (!scheduled) {
+							drop();
+							return;
+						}
+					}
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						drop();
+						return;
+					}
+				}
+			}
+
+			events.add(event);
+			queuedEvents.incrementAndGet();
+
+			if (!scheduled) {
+				scheduled = schedule(this);
+			}
+		}
+
+		private void drop() {
+			dropped.incrementAndGet();
+			droppedEvents.incrementAndGet();
+		}
+
+		@Override
+		public void run() {
+
+			for (int i = 0; i < MAX_BATCH; i++) {
+
+				Event event;
+				synchronized (this) {
+					event = events.poll();
+					if (event == null) {
+						scheduled = false;
+						return;
+					}
+					queuedEvents.decrementAndGet();
+					notifyAll();
+				}
+
+				try {
+					listener.deliver(event);
+				} catch (Exception e) {
+					log.error("Exception executing event listener", e);
+				}
+			}
+
+			synchronized (this) {
+				scheduled = schedule(this);
+				if (!scheduled) {
+					// The remaining events are discarded and the producers
+					// blocked by a full queue are woken up, as nobody would
+					// take events from it
+					int remaining = events.size();
+					events.clear();
+					queuedEvents.addAndGet(-remaining);
+					dropped.addAndGet(remaining);
+					droppedEvents.addAndGet(remaining);
+					notifyAll();
+				}
+			}
+		}
+	}
+
+}
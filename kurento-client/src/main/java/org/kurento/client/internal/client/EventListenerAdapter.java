@@ -0,0 +1,92 @@
+package org.kurento.client.internal.client;
+
+import org.kurento.client.Event;
+import org.kurento.client.EventListener;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscription of an {@link EventListener} to the events of a proxy. When a
+ * notification is received, {@link RemoteObject#fireEvent(String, Props)}
+ * builds the event once with {@link #createEvent(Props)} and dispatches it to
+ * all the adapters with the same source and event class. Events are
+ * delivered through the queue of the listener, unless the
+ * {@link EventDispatcher} of the manager is synchronous.
+ */
+public class EventListenerAdapter implements RemoteObjectEventListener {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(EventListenerAdapter.class);
+
+	private final Object source;
+	private final EventPlan eventPlan;
+	private final EventListener<?> listener;
+	private final RomManager manager;
+	private final EventDispatcher.ListenerQueue queue;
+
+	public EventListenerAdapter(Object source, EventPlan eventPlan,
+			EventListener<?> listener, RomManager manager) {
+		this.source = source;
+		this.eventPlan = eventPlan;
+		this.listener = listener;
+		this.manager = manager;
+		this.queue = manager.getEventDispatcher().newListenerQueue(this);
+	}
+
+	public Object getSource() {
+		return source;
+	}
+
+	public EventPlan getEventPlan() {
+		return eventPlan;
+	}
+
+	/**
+	 * @return the queue of the events to be delivered to the listener, or null
+	 *         if they are delivered synchronously
+	 */
+	public EventDispatcher.ListenerQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * @return the event, or null if it can not be built from the data
+	 */
+	public Event createEvent(Props data) {
+		try {
+			return eventPlan.newEvent(source, data, manager);
+		} catch (Throwable e) {
+			LOG.error("Exception while processing event '"
+					+ eventPlan.getEventClass().getSimpleName()
+					+ "' with params '" + data + "'", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Delivers the event through the queue of the listener, or synchronously
+	 * if it has no queue.
+	 */
+	public void dispatch(Event event) {
+		if (queue != null) {
+			queue.add(event);
+		} else {
+			deliver(event);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void deliver(Event event) {
+		((EventListener) listener).onEvent(event);
+	}
+
+	@Override
+	public void onEvent(String eventType, Props data) {
+		Event event = createEvent(data);
+		if (event != null) {
+			dispatch(event);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.kurento.client.internal.client;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.Event;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * How to build the events of a class from the data of a notification: the
+ * constructor and the names and types of its params. The first param of the
+ * constructor is the source of the event. Plans are built the first time an
+ * event of the class is received and cached.
+ */
+public class EventPlan {
+
+	private static final ParamsFlattener FLATTENER = ParamsFlattener
+			.getInstance();
+
+	private static final ConcurrentMap<Class<? extends Event>, EventPlan> plans = new ConcurrentHashMap<>();
+
+	private final Class<? extends Event> eventClass;
+	private final MethodHandle constructor;
+	private final String[] paramNames;
+	private final Type[] paramTypes;
+
+	/**
+	 * Returns the plan of an event class, building it if this is the first
+	 * time an event of the class is received.
+	 *
+	 * @param eventClass
+	 *            The class of the event
+	 * @return The plan
+	 */
+	public static EventPlan get(Class<? extends Event> eventClass) {
+		EventPlan plan = plans.get(eventClass);
+		if (plan == null) {
+			plan = new EventPlan(eventClass);
+			EventPlan previous = plans.putIfAbsent(eventClass, plan);
+			if (previous != null) {
+				plan = previous;
+			}
+		}
+		return plan;
+	}
+
+	private EventPlan(Class<? extends Event> eventClass) {
+
+		this.eventClass = eventClass;
+
+		Constructor<?> eventConstructor = eventClass.getConstructors()[0];
+
+		this.paramTypes = eventConstructor.getGenericParameterTypes();
+
+		Annotation[][] paramAnnotations = eventConstructor
+				.getParameterAnnotations();
+		this.paramNames = new String[paramTypes.length];
+		for (int i = 0; i < paramTypes.length; i++) {
+			paramNames[i] = ParamAnnotationUtils.getParamAnnotation(
+					paramAnnotations[i]).value();
+		}
+
+		try {
+			this.constructor = MethodHandles
+					.publicLookup()
+					.unreflectConstructor(eventConstructor)
+					.asType(MethodType.genericMethodType(paramTypes.length))
+					.asSpreader(Object[].class, paramTypes.length);
+		} catch (IllegalAccessException e) {
+			throw new ProtocolException("Constructor of event "
+					+ eventClass.getName() + " is not accessible", e);
+		}
+	}
+
+	public Class<? extends Event> getEventClass() {
+		return eventClass;
+	}
+
+	/**
+	 * Builds an event from the data of a notification.
+	 *
+	 * @param source
+	 *            The proxy of the object that raised the event
+	 * @param data
+	 *            The params of the notification
+	 * @param manager
+	 *            Used to unflatten refs to remote objects
+	 * @return The event
+	 */
+	public Event newEvent(Object source, Props data, ObjectRefsManager manager)
+			throws Throwable {
+
+		Object[] params = new Object[paramNames.length];
+		params[0] = source;
+
+		for (int i = 1; i < paramNames.length; i++) {
+			Object value = data != null ? data.getProp(paramNames[i]) : null;
+			params[i] = FLATTENER.unflattenValue(paramNames[i], paramTypes[i],
+					value, manager);
+		}
+
+		Object event = constructor.invokeExact(params);
+		return (Event) event;
+	}
+
+}
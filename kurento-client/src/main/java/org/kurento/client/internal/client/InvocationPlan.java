@@ -0,0 +1,315 @@
+package org.kurento.client.internal.client;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.EventSubscription;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Everything needed to execute a method of a remote object proxy that only
+ * depends on the method: its kind, how the continuation or the transaction
+ * is passed, the names of the params and the types used to flatten and
+ * unflatten the return value. Plans are built the first time a method is
+ * invoked and cached, so proxy calls do not use reflection.
+ */
+public class InvocationPlan {
+
+	public enum Kind {
+		/** Implemented by the {@link RemoteObject} of the proxy */
+		REMOTE_OBJECT,
+		/** Releases the remote object */
+		RELEASE,
+		/** Adds an event listener */
+		SUBSCRIBE,
+		/** Removes an event listener */
+		UNSUBSCRIBE,
+		/** Invokes an operation in the remote object */
+		INVOKE
+	}
+
+	public enum Style {
+		/** The method blocks until the result is received */
+		SYNC,
+		/** The result is notified to the continuation in the last param */
+		CONTINUATION,
+		/** The method is executed in the transaction in the first param */
+		TRANSACTION
+	}
+
+	private static final Set<String> REMOTE_OBJECT_METHODS = ImmutableSet.of(
+			"isCommited", "waitCommited", "whenCommited", "beginTransaction");
+
+	private static final ParamsFlattener FLATTENER = ParamsFlattener
+			.getInstance();
+
+	private static final ConcurrentMap<Method, InvocationPlan> plans = new ConcurrentHashMap<>();
+
+	private final String methodName;
+	private final Kind kind;
+	private final Style style;
+	private final String[] paramNames;
+	private final int argsOffset;
+
+	private final MethodHandle remoteObjectMethod;
+
+	private final Type returnType;
+	private final Type flattenType;
+	private final boolean plainReturn;
+
+	private final Class<? extends Event> eventClass;
+	private final String eventName;
+
+	/**
+	 * Returns the plan of a method of a remote object proxy, building it if
+	 * this is the first time the method is invoked.
+	 *
+	 * @param method
+	 *            The method of the proxy interface
+	 * @return The plan
+	 */
+	public static InvocationPlan get(Method method) {
+		InvocationPlan plan = plans.get(method);
+		if (plan == null) {
+			plan = new InvocationPlan(method);
+			InvocationPlan previous = plans.putIfAbsent(method, plan);
+			if (previous != null) {
+				plan = previous;
+			}
+		}
+		return plan;
+	}
+
+	private InvocationPlan(Method method) {
+
+		this.methodName = method.getName();
+
+		Class<?>[] paramTypes = method.getParameterTypes();
+		int numParams = paramTypes.length;
+
+		if (numParams > 0
+				&& Continuation.class.isAssignableFrom(paramTypes[numParams - 1])) {
+			this.style = Style.CONTINUATION;
+			this.argsOffset = 0;
+			numParams--;
+		} else if (numParams > 0
+				&& Transaction.class.isAssignableFrom(paramTypes[0])) {
+			this.style = Style.TRANSACTION;
+			this.argsOffset = 1;
+			numParams--;
+		} else {
+			this.style = Style.SYNC;
+			this.argsOffset = 0;
+		}
+
+		List<String> names = ParamAnnotationUtils.getParamNames(method);
+		this.paramNames = names.subList(argsOffset, argsOffset + numParams)
+				.toArray(new String[numParams]);
+
+		EventSubscription subscription = method
+				.getAnnotation(EventSubscription.class);
+
+		if (REMOTE_OBJECT_METHODS.contains(methodName)) {
+			this.kind = Kind.REMOTE_OBJECT;
+		} else if (methodName.equals("release")) {
+			this.kind = Kind.RELEASE;
+		} else if (subscription != null) {
+			if (methodName.startsWith("add")) {
+				this.kind = Kind.SUBSCRIBE;
+			} else if (methodName.startsWith("remove")) {
+				this.kind = Kind.UNSUBSCRIBE;
+			} else {
+				throw new IllegalStateException("Method " + methodName
+						+ " undefined for events");
+			}
+		} else {
+			this.kind = Kind.INVOKE;
+		}
+
+		this.remoteObjectMethod = kind == Kind.REMOTE_OBJECT ? findRemoteObjectMethod(method)
+				: null;
+
+		if (subscription != null) {
+			this.eventClass = subscription.value();
+			String simpleName = eventClass.getSimpleName();
+			this.eventName = simpleName.substring(0, simpleName.length()
+					- "Event".length());
+		} else {
+			this.eventClass = null;
+			this.eventName = null;
+		}
+
+		if (kind == Kind.INVOKE) {
+			this.returnType = calculateReturnType(method);
+			this.flattenType = FLATTENER.calculateFlattenType(returnType);
+			this.plainReturn = FLATTENER.isPlainType(returnType);
+		} else {
+			this.returnType = null;
+			this.flattenType = null;
+			this.plainReturn = true;
+		}
+	}
+
+	private Type calculateReturnType(Method method) {
+
+		switch (style) {
+		case CONTINUATION:
+			Type[] paramTypes = method.getGenericParameterTypes();
+			ParameterizedType contType = (ParameterizedType) paramTypes[paramTypes.length - 1];
+			return contType.getActualTypeArguments()[0];
+		case TRANSACTION:
+			Type futureType = method.getGenericReturnType();
+			if (futureType instanceof ParameterizedType) {
+				return ((ParameterizedType) futureType)
+						.getActualTypeArguments()[0];
+			}
+			return Void.class;
+		default:
+			return method.getGenericReturnType();
+		}
+	}
+
+	/**
+	 * The method of {@link RemoteObject} with the same signature, adapted to
+	 * receive the remote object and the args array.
+	 */
+	private static MethodHandle findRemoteObjectMethod(Method method) {
+		try {
+
+			Method target = RemoteObject.class.getMethod(method.getName(),
+					method.getParameterTypes());
+
+			int numParams = target.getParameterTypes().length;
+			return MethodHandles
+					.publicLookup()
+					.unreflect(target)
+					.asType(MethodType.genericMethodType(numParams + 1))
+					.asSpreader(Object[].class, numParams);
+
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new ProtocolException("Method " + method
+					+ " not implemented by RemoteObject", e);
+		}
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Style getStyle() {
+		return style;
+	}
+
+	/**
+	 * @return the type of the result of an invocation, unwrapped from the
+	 *         continuation or the future of the transaction
+	 */
+	public Type getReturnType() {
+		return returnType;
+	}
+
+	/**
+	 * @return the type of the result of an invocation as it is received from
+	 *         the server
+	 */
+	public Type getFlattenType() {
+		return flattenType;
+	}
+
+	public Class<? extends Event> getEventClass() {
+		return eventClass;
+	}
+
+	public String getEventName() {
+		return eventName;
+	}
+
+	/**
+	 * Invokes the method in the remote object of the proxy. Only for
+	 * {@link Kind#REMOTE_OBJECT} plans.
+	 */
+	public Object invokeRemoteObject(RemoteObject remoteObject, Object[] args)
+			throws Throwable {
+		return remoteObjectMethod.invokeExact((Object) remoteObject, args);
+	}
+
+	/**
+	 * @return the continuation passed to the method, or null if it is not
+	 *         invoked with one
+	 */
+	public Continuation<?> getContinuation(Object[] args) {
+		if (style != Style.CONTINUATION) {
+			return null;
+		}
+		return (Continuation<?>) args[args.length - 1];
+	}
+
+	/**
+	 * @return the transaction passed to the method, or null if it is not
+	 *         executed in one
+	 */
+	public Transaction getTransaction(Object[] args) {
+		if (style != Style.TRANSACTION) {
+			return null;
+		}
+		return (Transaction) args[0];
+	}
+
+	/**
+	 * @return the first argument of the method that is not the transaction
+	 */
+	public Object getFirstArg(Object[] args) {
+		return args[argsOffset];
+	}
+
+	/**
+	 * Builds the params of the invocation from the arguments of the method,
+	 * skipping the continuation or the transaction.
+	 *
+	 * @return the params, or null if the method has no params
+	 */
+	public Props extractProps(Object[] args) {
+
+		if (paramNames.length == 0) {
+			return null;
+		}
+
+		Props props = new Props();
+		for (int i = 0; i < paramNames.length; i++) {
+			props.add(paramNames[i], args[i + argsOffset]);
+		}
+		return props;
+	}
+
+	/**
+	 * Converts the result of an invocation received from the server to the
+	 * return type of the method.
+	 */
+	public Object unflattenReturn(Object result, RomManager manager) {
+		if (plainReturn) {
+			return result;
+		}
+		return FLATTENER.unflattenValue("return", returnType, result, manager);
+	}
+
+}
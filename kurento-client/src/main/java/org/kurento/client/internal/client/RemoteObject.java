@@ -5,6 +5,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 
 import org.kurento.client.Continuation;
+import org.kurento.client.Event;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.TFuture;
 import org.kurento.client.Transaction;
@@ -35,6 +36,9 @@ public class RemoteObject {
 	
 	private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 	
+	private static final RemoteObjectEventListener[] NO_LISTENERS =
+			new RemoteObjectEventListener[0];
+	
 	private String objectRef;
 	private final String type;
 	private ObjectStatus objectStatus;
@@ -203,6 +207,52 @@ public class RemoteObject {
 				});
 	}
 	
+	/**
+	 * Invokes an operation described by the plan of a proxy method.
+	 */
+	public Object invoke(InvocationPlan plan, Props params) {
+		
+		checkCreated();
+		
+		Object obj = manager.invoke(objectRef, plan.getMethodName(), params,
+				plan.getFlattenType());
+		
+		return plan.unflattenReturn(obj, manager);
+	}
+	
+	public TFuture<Object> invoke(InvocationPlan plan, Props params,
+			Transaction tx) {
+		
+		TransactionImpl txImpl = (TransactionImpl) tx;
+		InvokeOperation op = new InvokeOperation(getKurentoObject(), plan,
+				params);
+		txImpl.addOperation(op);
+		return op.getFuture();
+	}
+	
+	@SuppressWarnings("rawtypes")
+	public void invoke(final InvocationPlan plan, Props params,
+			final Continuation cont) {
+		
+		checkCreated();
+		
+		manager.invoke(objectRef, plan.getMethodName(), params,
+				plan.getFlattenType(), new DefaultContinuation<Object>(cont) {
+					@SuppressWarnings("unchecked")
+					@Override
+					public void onSuccess(Object result) {
+						try {
+							cont.onSuccess(plan.unflattenReturn(result,
+									manager));
+						} catch (Exception e) {
+							log.warn(
+									"[Continuation] error invoking onSuccess implemented by client",
+									e);
+						}
+					}
+				});
+	}
+	
 	public void release() {
 		
 		checkCreated();
@@ -285,7 +335,8 @@ public class RemoteObject {
 		
 		manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
 		
-		listeners.remove(listenerSubscription.getType(), listenerSubscription);
+		listeners.remove(listenerSubscription.getType(),
+				listenerSubscription.getListener());
 	}
 	
 	public void removeEventListener(
@@ -309,7 +360,7 @@ public class RemoteObject {
 					@Override
 					public void onSuccess(Void result) {
 						listeners.remove(listenerSubscription.getType(),
-								listenerSubscription);
+								listenerSubscription.getListener());
 						try {
 							cont.onSuccess(result);
 						} catch (Exception e) {
@@ -323,9 +374,35 @@ public class RemoteObject {
 	}
 	
 	public void fireEvent(String type, Props data) {
-		for (RemoteObjectEventListener eventListener : this.listeners.get(type)) {
+		
+		RemoteObjectEventListener[] typeListeners;
+		synchronized (listeners) {
+			typeListeners = listeners.get(type).toArray(NO_LISTENERS);
+		}
+		
+		// The event is built once and shared by the listeners subscribed
+		// through the same proxy
+		Object source = null;
+		EventPlan eventPlan = null;
+		Event event = null;
+		
+		for (RemoteObjectEventListener eventListener : typeListeners) {
 			try {
-				eventListener.onEvent(type, data);
+				if (eventListener instanceof EventListenerAdapter) {
+					EventListenerAdapter adapter =
+							(EventListenerAdapter) eventListener;
+					if (adapter.getEventPlan() != eventPlan
+							|| adapter.getSource() != source) {
+						source = adapter.getSource();
+						eventPlan = adapter.getEventPlan();
+						event = adapter.createEvent(data);
+					}
+					if (event != null) {
+						adapter.dispatch(event);
+					}
+				} else {
+					eventListener.onEvent(type, data);
+				}
 			} catch (Exception e) {
 				LOG.error("Exception executing event listener", e);
 			}
@@ -0,0 +1,32 @@
+package org.kurento.client.internal.client;
+
+import org.kurento.client.internal.server.KurentoServerTransportException;
+
+/**
+ * A request to the media server has failed with a transport error and it has
+ * not been sent again because the {@link RetryPolicy} does not allow more
+ * attempts. The cause is the error of the last attempt.
+ */
+public class RetriesExhaustedException extends KurentoServerTransportException {
+
+	private static final long serialVersionUID = 4727062402153389627L;
+
+	private final int attempts;
+	private final long elapsedTime;
+
+	public RetriesExhaustedException(int attempts, long elapsedTime,
+			Throwable cause) {
+		super("Request failed after " + attempts + " attempts in "
+				+ elapsedTime + " ms: " + cause.getMessage(), cause);
+		this.attempts = attempts;
+		this.elapsedTime = elapsedTime;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+}
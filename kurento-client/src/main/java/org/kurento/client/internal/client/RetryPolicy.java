@@ -0,0 +1,255 @@
+package org.kurento.client.internal.client;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.server.KurentoServerTransportException;
+import org.kurento.jsonrpc.ConnectionLostException;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.TooManyInFlightRequestsException;
+import org.kurento.jsonrpc.TransportException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Decides if a request to the media server that has failed is sent again and
+ * when.
+ * <p>
+ * Only errors of the transport are retried (the request can not be sent
+ * because there is no connection or it is rejected because there are too
+ * many requests in flight). Errors returned by the media server are not
+ * retried, because the server would answer the same. Attempts are delayed
+ * with an exponential backoff with jitter, so clients that lose the connection at the same time
+ * do not retry at the same time. A request is not retried when the max number
+ * of attempts is reached or when the next attempt would start after the
+ * deadline; in that case it fails with a {@link RetriesExhaustedException}
+ * whose cause is the last error.
+ * <p>
+ * A request that times out, or that was sent before the connection was lost
+ * ({@link ConnectionLostException}), may have been executed by the server, so
+ * it could be executed twice if it was retried. These errors are only retried
+ * if the policy is created with retryTimeouts, for operations that can be
+ * executed again safely.
+ * <p>
+ * Subclasses may override {@link #isRetryable(Throwable)} to change the
+ * classification of errors.
+ */
+public class RetryPolicy {
+
+	/** Requests are sent only once */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0);
+
+	private static final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("kurento-retry-%d").build());
+
+	private final int maxAttempts;
+	private final long initialDelay;
+	private final long maxDelay;
+	private final long deadline;
+	private final boolean retryTimeouts;
+
+	/**
+	 * Creates a policy that does not retry requests that time out.
+	 *
+	 * @param maxAttempts
+	 *            Max times a request is sent, including the first one
+	 * @param initialDelay
+	 *            Delay in millis before the second attempt. It is doubled on
+	 *            each attempt
+	 * @param maxDelay
+	 *            Max delay in millis between attempts
+	 * @param deadline
+	 *            Max time in millis since the first attempt to start a new
+	 *            one. If not positive, attempts are only limited by their
+	 *            number
+	 */
+	public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay,
+			long deadline) {
+		this(maxAttempts, initialDelay, maxDelay, deadline, false);
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            Max times a request is sent, including the first one
+	 * @param initialDelay
+	 *            Delay in millis before the second attempt. It is doubled on
+	 *            each attempt
+	 * @param maxDelay
+	 *            Max delay in millis between attempts
+	 * @param deadline
+	 *            Max time in millis since the first attempt to start a new
+	 *            one. If not positive, attempts are only limited by their
+	 *            number
+	 * @param retryTimeouts
+	 *            If requests that time out or lose the connection after being
+	 *            sent are retried. Only for operations that can be executed
+	 *            twice safely
+	 */
+	public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay,
+			long deadline, boolean retryTimeouts) {
+
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException("Max attempts must be positive");
+		}
+
+		if (initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Invalid delays: initial "
+					+ initialDelay + " ms, max " + maxDelay + " ms");
+		}
+
+		this.maxAttempts = maxAttempts;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.deadline = deadline;
+		this.retryTimeouts = retryTimeouts;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public boolean isRetryTimeouts() {
+		return retryTimeouts;
+	}
+
+	/**
+	 * @return true if the request that has failed with this error can be sent
+	 *         again. The error and its causes are checked until one of them
+	 *         is a known error of the server or of the transport. A timeout
+	 *         or a lost connection anywhere in the chain is only retried if
+	 *         timeouts are retried
+	 */
+	public boolean isRetryable(Throwable error) {
+
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if (t instanceof RequestTimeoutException
+					|| t instanceof ConnectionLostException) {
+				return retryTimeouts;
+			}
+		}
+
+		for (Throwable t = error; t != null; t = t.getCause()) {
+
+			if (t instanceof KurentoServerException
+					|| t instanceof JsonRpcErrorException) {
+				return false;
+			}
+
+			if (t instanceof KurentoServerTransportException
+					|| t instanceof TransportException
+					|| t instanceof TooManyInFlightRequestsException
+					|| t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the delay in millis before the given attempt, between a half
+	 *         and the whole backoff delay
+	 */
+	public long getDelay(int attempt) {
+
+		long delay = initialDelay;
+		for (int i = 2; i < attempt && delay < maxDelay; i++) {
+			delay *= 2;
+		}
+		delay = Math.min(delay, maxDelay);
+
+		if (delay <= 1) {
+			return delay;
+		}
+
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	/**
+	 * Starts tracking the attempts of a request, before sending it for the
+	 * first time.
+	 */
+	public Attempts newAttempts() {
+		return new Attempts();
+	}
+
+	/**
+	 * The attempts of a request.
+	 */
+	public class Attempts {
+
+		private final long startTime = System.nanoTime();
+		private int attempt = 1;
+
+		public int getAttempt() {
+			return attempt;
+		}
+
+		public long getElapsedTime() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		}
+
+		/**
+		 * Registers that the current attempt has failed.
+		 *
+		 * @return the delay in millis before the next attempt, or -1 if the
+		 *         request must not be sent again
+		 */
+		public long nextDelay(Throwable error) {
+
+			if (attempt >= maxAttempts || !isRetryable(error)) {
+				return -1;
+			}
+
+			long delay = getDelay(attempt + 1);
+			if (deadline > 0 && getElapsedTime() + delay > deadline) {
+				return -1;
+			}
+
+			attempt++;
+			return delay;
+		}
+
+		/**
+		 * @return the error to report when the request has failed and will not
+		 *         be sent again: the error itself if it is not retryable or the
+		 *         policy does not retry requests, or a
+		 *         {@link RetriesExhaustedException} otherwise
+		 */
+		public Throwable failure(Throwable error) {
+
+			if (maxAttempts == 1 || !isRetryable(error)) {
+				return error;
+			}
+
+			return new RetriesExhaustedException(attempt, getElapsedTime(),
+					error);
+		}
+
+		/**
+		 * Executes the next attempt after the given delay.
+		 */
+		public void schedule(Runnable nextAttempt, long delay) {
+			scheduler.schedule(nextAttempt, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+}
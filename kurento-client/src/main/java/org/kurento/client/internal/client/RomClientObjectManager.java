@@ -19,9 +19,20 @@ public class RomClientObjectManager implements RomEventHandler,
 			.weakValues().makeMap();
 
 	private final RomClient client;
+	private final EventDispatcher eventDispatcher;
 
 	public RomClientObjectManager(RomClient client) {
+		this(client, EventDispatcher.synchronous());
+	}
+
+	public RomClientObjectManager(RomClient client,
+			EventDispatcher eventDispatcher) {
 		this.client = client;
+		this.eventDispatcher = eventDispatcher;
+	}
+
+	public EventDispatcher getEventDispatcher() {
+		return eventDispatcher;
 	}
 
 	public RomClient getClient() {
@@ -39,7 +50,7 @@ public class RomClientObjectManager implements RomEventHandler,
 			return;
 		}
 
-		object.fireEvent(type, data);
+		eventDispatcher.dispatch(object, type, data);
 	}
 
 	public void registerObject(String objectRef, RemoteObject remoteObject) {
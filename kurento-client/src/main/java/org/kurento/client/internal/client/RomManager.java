@@ -17,19 +17,90 @@ public class RomManager implements ObjectRefsManager {
 	
 	private static final Logger log = LoggerFactory.getLogger(RomManager.class);
 	
+	/**
+	 * Transactions committed asynchronously are sent up to 5 times, waiting
+	 * from 100 ms to 5 s between attempts, while less than 30 s have elapsed
+	 * since the first one. Transactions that time out are not retried
+	 */
+	public static final RetryPolicy DEFAULT_TRANSACTION_RETRY_POLICY =
+			new RetryPolicy(5, 100, 5000, 30000);
+	
 	private final RomClientObjectManager manager;
 	private final RomClient client;
 	
+	private volatile RetryPolicy transactionRetryPolicy =
+			DEFAULT_TRANSACTION_RETRY_POLICY;
+	private volatile RetryPolicy syncTransactionRetryPolicy = RetryPolicy.NONE;
+	private volatile RetryPolicy operationRetryPolicy = RetryPolicy.NONE;
+	
 	public RomManager(RomClient client) {
+		this(client, EventDispatcher.synchronous());
+	}
+	
+	/**
+	 * @param client
+	 *            Client used to send the requests to the media server
+	 * @param eventDispatcher
+	 *            Delivers the events received to the listeners
+	 */
+	public RomManager(RomClient client, EventDispatcher eventDispatcher) {
 		this.client = client;
-		this.manager = new RomClientObjectManager(client);
+		this.manager = new RomClientObjectManager(client, eventDispatcher);
 		if (client != null) {
 			this.client.addRomEventHandler(manager);
 		}
 	}
 	
-	public RemoteObject create(String remoteClassName, Props constructorParams) {
-		String objectRef = client.create(remoteClassName, constructorParams);
+	/**
+	 * Sets the policy used to send again the transactions committed
+	 * asynchronously that fail with a transport error. By default,
+	 * {@link #DEFAULT_TRANSACTION_RETRY_POLICY}.
+	 */
+	public void setTransactionRetryPolicy(RetryPolicy transactionRetryPolicy) {
+		this.transactionRetryPolicy = transactionRetryPolicy;
+	}
+	
+	public RetryPolicy getTransactionRetryPolicy() {
+		return transactionRetryPolicy;
+	}
+	
+	/**
+	 * Sets the policy used to send again the transactions committed
+	 * synchronously that fail with a transport error. By default, they are
+	 * not retried, so the thread committing is not blocked longer than the
+	 * request timeout.
+	 */
+	public void setSyncTransactionRetryPolicy(
+			RetryPolicy syncTransactionRetryPolicy) {
+		this.syncTransactionRetryPolicy = syncTransactionRetryPolicy;
+	}
+	
+	public RetryPolicy getSyncTransactionRetryPolicy() {
+		return syncTransactionRetryPolicy;
+	}
+	
+	/**
+	 * Sets the policy used to send again the operations executed out of a
+	 * transaction (creations, invocations, releases and subscriptions) that
+	 * fail with a transport error. By default, they are not retried.
+	 */
+	public void setOperationRetryPolicy(RetryPolicy operationRetryPolicy) {
+		this.operationRetryPolicy = operationRetryPolicy;
+	}
+	
+	public RetryPolicy getOperationRetryPolicy() {
+		return operationRetryPolicy;
+	}
+	
+	public RemoteObject create(final String remoteClassName,
+			final Props constructorParams) {
+		
+		String objectRef = new SyncRequest<String>() {
+			@Override
+			protected String send() {
+				return client.create(remoteClassName, constructorParams);
+			}
+		}.execute(operationRetryPolicy);
 		
 		return new RemoteObject(objectRef, remoteClassName, this);
 	}
@@ -60,31 +131,35 @@ public class RomManager implements ObjectRefsManager {
 	public void create(final String remoteClassName,
 			final Props constructorParams, final Continuation<RemoteObject> cont) {
 		
-		client.create(remoteClassName, constructorParams,
-				new Continuation<String>() {
-					@Override
-					public void onSuccess(String objectRef) {
-						try {
-							cont.onSuccess(new RemoteObject(objectRef,
-									remoteClassName, RomManager.this));
-						} catch (Exception e) {
-							log.warn(
-									"[Continuation] error invoking onSuccess implemented by client",
-									e);
-						}
-					}
-					
-					@Override
-					public void onError(Throwable cause) {
-						try {
-							cont.onError(cause);
-						} catch (Exception e) {
-							log.warn(
-									"[Continuation] error invoking onError implemented by client",
-									e);
-						}
-					}
-				});
+		new AsyncRequest<String>() {
+			@Override
+			protected void send(Continuation<String> requestCont) {
+				client.create(remoteClassName, constructorParams, requestCont);
+			}
+		}.execute(operationRetryPolicy, new Continuation<String>() {
+			@Override
+			public void onSuccess(String objectRef) {
+				try {
+					cont.onSuccess(new RemoteObject(objectRef, remoteClassName,
+							RomManager.this));
+				} catch (Exception e) {
+					log.warn(
+							"[Continuation] error invoking onSuccess implemented by client",
+							e);
+				}
+			}
+			
+			@Override
+			public void onError(Throwable cause) {
+				try {
+					cont.onError(cause);
+				} catch (Exception e) {
+					log.warn(
+							"[Continuation] error invoking onError implemented by client",
+							e);
+				}
+			}
+		});
 	}
 	
 	public void create(String remoteClassName, Continuation<RemoteObject> cont) {
@@ -95,37 +170,78 @@ public class RomManager implements ObjectRefsManager {
 		this.client.destroy();
 	}
 	
-	public <E> E invoke(String objectRef, String methodName, Props params,
-			Class<E> clazz) {
-		return client.invoke(objectRef, methodName, params, clazz);
+	public <E> E invoke(final String objectRef, final String methodName,
+			final Props params, final Class<E> clazz) {
+		return new SyncRequest<E>() {
+			@Override
+			protected E send() {
+				return client.invoke(objectRef, methodName, params, clazz);
+			}
+		}.execute(operationRetryPolicy);
 	}
 	
-	public Object invoke(String objectRef, String operationName,
-			Props operationParams, Type type) {
-		return client.invoke(objectRef, operationName, operationParams, type);
+	public Object invoke(final String objectRef, final String operationName,
+			final Props operationParams, final Type type) {
+		return new SyncRequest<Object>() {
+			@Override
+			protected Object send() {
+				return client.invoke(objectRef, operationName,
+						operationParams, type);
+			}
+		}.execute(operationRetryPolicy);
 	}
 	
-	public void release(String objectRef) {
-		client.release(objectRef);
+	public void release(final String objectRef) {
+		new SyncRequest<Void>() {
+			@Override
+			protected Void send() {
+				client.release(objectRef);
+				return null;
+			}
+		}.execute(operationRetryPolicy);
 		manager.releaseObject(objectRef);
 	}
 	
-	public String subscribe(String objectRef, String eventType) {
-		return client.subscribe(objectRef, eventType);
+	public String subscribe(final String objectRef, final String eventType) {
+		return new SyncRequest<String>() {
+			@Override
+			protected String send() {
+				return client.subscribe(objectRef, eventType);
+			}
+		}.execute(operationRetryPolicy);
 	}
 	
-	public void unsubscribe(String objectRef, String listenerSubscription) {
-		client.unsubscribe(objectRef, listenerSubscription);
+	public void unsubscribe(final String objectRef,
+			final String listenerSubscription) {
+		new SyncRequest<Void>() {
+			@Override
+			protected Void send() {
+				client.unsubscribe(objectRef, listenerSubscription);
+				return null;
+			}
+		}.execute(operationRetryPolicy);
 	}
 	
-	public Object invoke(String objectRef, String operationName,
-			Props operationParams, Type type, Continuation<?> cont) {
-		return client.invoke(objectRef, operationName, operationParams, type,
-				cont);
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Object invoke(final String objectRef, final String operationName,
+			final Props operationParams, final Type type, Continuation<?> cont) {
+		new AsyncRequest() {
+			@Override
+			protected void send(Continuation requestCont) {
+				client.invoke(objectRef, operationName, operationParams, type,
+						requestCont);
+			}
+		}.execute(operationRetryPolicy, cont);
+		return null;
 	}
 	
 	public void release(final String objectRef, final Continuation<Void> cont) {
-		client.release(objectRef, new DefaultContinuation<Void>(cont) {
+		new AsyncRequest<Void>() {
+			@Override
+			protected void send(Continuation<Void> requestCont) {
+				client.release(objectRef, requestCont);
+			}
+		}.execute(operationRetryPolicy, new DefaultContinuation<Void>(cont) {
 			@Override
 			public void onSuccess(Void result) {
 				manager.releaseObject(objectRef);
@@ -140,14 +256,25 @@ public class RomManager implements ObjectRefsManager {
 		});
 	}
 	
-	public String subscribe(String objectRef, String type,
+	public String subscribe(final String objectRef, final String type,
 			Continuation<String> cont) {
-		return client.subscribe(objectRef, type, cont);
+		new AsyncRequest<String>() {
+			@Override
+			protected void send(Continuation<String> requestCont) {
+				client.subscribe(objectRef, type, requestCont);
+			}
+		}.execute(operationRetryPolicy, cont);
+		return null;
 	}
 	
-	public void unsubscribe(String objectRef, String listenerRegistration,
-			Continuation<Void> cont) {
-		client.unsubscribe(objectRef, listenerRegistration, cont);
+	public void unsubscribe(final String objectRef,
+			final String listenerRegistration, Continuation<Void> cont) {
+		new AsyncRequest<Void>() {
+			@Override
+			protected void send(Continuation<Void> requestCont) {
+				client.unsubscribe(objectRef, listenerRegistration, requestCont);
+			}
+		}.execute(operationRetryPolicy, cont);
 	}
 	
 	public void addRomEventHandler(RomEventHandler eventHandler) {
@@ -167,11 +294,17 @@ public class RomManager implements ObjectRefsManager {
 		return manager;
 	}
 	
-	public void transaction(List<Operation> operations) {
+	public void transaction(final List<Operation> operations) {
 		for (Operation op : operations) {
 			op.setManager(this);
 		}
-		client.transaction(operations);
+		new SyncRequest<Void>() {
+			@Override
+			protected Void send() {
+				client.transaction(operations);
+				return null;
+			}
+		}.execute(syncTransactionRetryPolicy);
 	}
 	
 	public void transaction(final List<Operation> operations,
@@ -181,20 +314,120 @@ public class RomManager implements ObjectRefsManager {
 			op.setManager(this);
 		}
 		
-		client.transaction(operations, new Continuation<Void>() {
+		new AsyncRequest<Void>() {
 			@Override
-			public void onSuccess(Void result) throws Exception {
-				continuation.onSuccess(null);
+			protected void send(Continuation<Void> requestCont) {
+				client.transaction(operations, requestCont);
 			}
-			
-			@Override
-			public void onError(Throwable cause) throws Exception {
-				transaction(operations, continuation);
-			}
-		});
+		}.execute(transactionRetryPolicy, continuation);
 	}
 	
 	public RomClient getRomClient() {
 		return client;
 	}
+	
+	public EventDispatcher getEventDispatcher() {
+		return manager.getEventDispatcher();
+	}
+	
+	/**
+	 * A request that blocks until the response is received, sent again while
+	 * the retry policy allows it.
+	 */
+	private abstract static class SyncRequest<T> {
+		
+		protected abstract T send();
+		
+		public T execute(RetryPolicy policy) {
+			
+			RetryPolicy.Attempts attempts = policy.newAttempts();
+			
+			while (true) {
+				try {
+					return send();
+				} catch (RuntimeException e) {
+					
+					long delay = attempts.nextDelay(e);
+					if (delay < 0) {
+						// The error itself or a RetriesExhaustedException
+						throw (RuntimeException) attempts.failure(e);
+					}
+					
+					log.debug("Request failed, retrying in {} ms (attempt {})",
+							delay, attempts.getAttempt(), e);
+					
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw e;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A request whose response is notified to a continuation, sent again
+	 * while the retry policy allows it. Next attempts are scheduled after the
+	 * backoff delay, so no thread is blocked meanwhile.
+	 */
+	private abstract static class AsyncRequest<T> {
+		
+		protected abstract void send(Continuation<T> requestCont);
+		
+		public void execute(RetryPolicy policy, Continuation<T> cont) {
+			sendAttempt(policy.newAttempts(), cont);
+		}
+		
+		private void sendAttempt(final RetryPolicy.Attempts attempts,
+				final Continuation<T> cont) {
+			
+			Continuation<T> requestCont = new DefaultContinuation<T>(cont) {
+				@Override
+				public void onSuccess(T result) throws Exception {
+					cont.onSuccess(result);
+				}
+				
+				@Override
+				public void onError(Throwable cause) {
+					retry(attempts, cont, cause);
+				}
+			};
+			
+			try {
+				send(requestCont);
+			} catch (RuntimeException e) {
+				// E.g. the connection with the server could not be established
+				retry(attempts, cont, e);
+			}
+		}
+		
+		private void retry(final RetryPolicy.Attempts attempts,
+				final Continuation<T> cont, Throwable cause) {
+			
+			long delay = attempts.nextDelay(cause);
+			
+			if (delay < 0) {
+				try {
+					cont.onError(attempts.failure(cause));
+				} catch (Exception e) {
+					log.warn(
+							"[Continuation] error invoking onError implemented by client",
+							e);
+				}
+				return;
+			}
+			
+			log.debug("Request failed, retrying in {} ms (attempt {})", delay,
+					attempts.getAttempt(), cause);
+			
+			attempts.schedule(new Runnable() {
+				@Override
+				public void run() {
+					sendAttempt(attempts, cont);
+				}
+			}, delay);
+		}
+	}
 }
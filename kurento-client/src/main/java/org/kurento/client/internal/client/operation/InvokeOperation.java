@@ -3,6 +3,7 @@ package org.kurento.client.internal.client.operation;
 import java.lang.reflect.Type;
 
 import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.InvocationPlan;
 import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
@@ -17,6 +18,8 @@ public class InvokeOperation extends Operation {
 	private String method;
 	private Props params;
 	private Type returnType;
+	private Type flattenType;
+	private InvocationPlan plan;
 
 	public InvokeOperation(KurentoObject object, String method, Props params,
 			Type returnType) {
@@ -25,14 +28,24 @@ public class InvokeOperation extends Operation {
 		this.method = method;
 		this.params = params;
 		this.returnType = returnType;
+		this.flattenType = FLATTENER.calculateFlattenType(returnType);
+	}
+
+	public InvokeOperation(KurentoObject object, InvocationPlan plan,
+			Props params) {
+		super();
+		this.kurentoObject = object;
+		this.method = plan.getMethodName();
+		this.params = params;
+		this.returnType = plan.getReturnType();
+		this.flattenType = plan.getFlattenType();
+		this.plan = plan;
 	}
 
 	@Override
 	public RequestAndResponseType createRequest(
 			RomClientJsonRpcClient romClientJsonRpcClient) {
 
-		Type flattenType = FLATTENER.calculateFlattenType(returnType);
-
 		return romClientJsonRpcClient.createInvokeRequest(
 				RemoteObjectInvocationHandler.getFor(kurentoObject)
 						.getRemoteObject().getObjectRef(), method, params,
@@ -45,8 +58,9 @@ public class InvokeOperation extends Operation {
 		if (returnType != Void.class && returnType != void.class) {
 
 			future.getFuture().set(
-					FLATTENER.unflattenValue("return", returnType, result,
-							manager));
+					plan != null ? plan.unflattenReturn(result, manager)
+							: FLATTENER.unflattenValue("return", returnType,
+									result, manager));
 		}
 	}
 
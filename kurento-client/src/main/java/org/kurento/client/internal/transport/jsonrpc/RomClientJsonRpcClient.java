@@ -391,8 +391,13 @@ public class RomClientJsonRpcClient implements RomClient {
 						public void onSuccess(
 								List<Response<JsonElement>> responses)
 								throws Exception {
-							processTransactionResponse(operations, opReqres,
-									responses);
+							try {
+								processTransactionResponse(operations,
+										opReqres, responses);
+							} catch (TransactionExecutionException e) {
+								onError(e);
+								return;
+							}
 							continuation.onSuccess(null);
 						}
 					};
@@ -0,0 +1,230 @@
+package org.kurento.client.internal.transport.serialization;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.internal.ModuleName;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.server.ProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accessors used by {@link ParamsFlattener} to convert the values of a class
+ * to and from {@link org.kurento.jsonrpc.Props}: the getters of its props, and
+ * the constructor with the names and generic types of its params. Each class
+ * is introspected once and its codec cached, so values are converted without
+ * reflection.
+ */
+public class ComplexTypeCodec {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ComplexTypeCodec.class);
+
+	private static final ConcurrentMap<Class<?>, ComplexTypeCodec> codecs = new ConcurrentHashMap<>();
+
+	private final Class<?> clazz;
+	private final boolean remoteClass;
+	private final String typeName;
+	private final String moduleName;
+
+	private final String[] propNames;
+	private final MethodHandle[] getters;
+
+	private final String[] paramNames;
+	private final Type[] paramTypes;
+	private final MethodHandle constructor;
+
+	/**
+	 * Returns the codec of a class, introspecting it if this is the first time
+	 * a value of the class is converted.
+	 *
+	 * @param clazz
+	 *            The class
+	 * @return The codec
+	 */
+	public static ComplexTypeCodec get(Class<?> clazz) {
+		ComplexTypeCodec codec = codecs.get(clazz);
+		if (codec == null) {
+			codec = new ComplexTypeCodec(clazz);
+			ComplexTypeCodec previous = codecs.putIfAbsent(clazz, codec);
+			if (previous != null) {
+				codec = previous;
+			}
+		}
+		return codec;
+	}
+
+	private ComplexTypeCodec(Class<?> clazz) {
+
+		this.clazz = clazz;
+		this.remoteClass = clazz.getAnnotation(RemoteClass.class) != null;
+		this.typeName = clazz.getSimpleName();
+
+		ModuleName name = clazz.getAnnotation(ModuleName.class);
+		this.moduleName = name != null ? name.value() : null;
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType getterType = MethodType.methodType(Object.class,
+				Object.class);
+
+		List<String> names = new ArrayList<>();
+		List<MethodHandle> handles = new ArrayList<>();
+
+		for (Method method : clazz.getMethods()) {
+
+			String propName = getPropName(method);
+			if (propName == null) {
+				continue;
+			}
+
+			try {
+				handles.add(lookup.unreflect(method).asType(getterType));
+				names.add(propName);
+			} catch (IllegalAccessException e) {
+				log.warn("Prop '{}' of class {} is not accessible", propName,
+						clazz.getName(), e);
+			}
+		}
+
+		this.propNames = names.toArray(new String[names.size()]);
+		this.getters = handles.toArray(new MethodHandle[handles.size()]);
+
+		Constructor<?>[] constructors = clazz.getConstructors();
+		if (constructors.length > 0 && !remoteClass && !clazz.isInterface()) {
+
+			Constructor<?> typeConstructor = constructors[0];
+
+			this.paramTypes = typeConstructor.getGenericParameterTypes();
+			this.paramNames = ParamAnnotationUtils.getParamNames(
+					typeConstructor).toArray(new String[paramTypes.length]);
+
+			MethodHandle handle;
+			try {
+				handle = lookup
+						.unreflectConstructor(typeConstructor)
+						.asType(MethodType.genericMethodType(paramTypes.length))
+						.asSpreader(Object[].class, paramTypes.length);
+			} catch (IllegalAccessException e) {
+				log.warn("Constructor of class {} is not accessible",
+						clazz.getName(), e);
+				handle = null;
+			}
+			this.constructor = handle;
+
+		} else {
+			this.paramTypes = new Type[0];
+			this.paramNames = new String[0];
+			this.constructor = null;
+		}
+	}
+
+	private static String getPropName(Method method) {
+
+		if (method.getParameterTypes().length > 0
+				|| Modifier.isStatic(method.getModifiers())
+				|| method.getReturnType() == void.class) {
+			return null;
+		}
+
+		String methodName = method.getName();
+		String propName;
+		if (methodName.startsWith("is")) {
+			propName = methodName.substring(2);
+		} else if (methodName.startsWith("get")
+				&& !methodName.equals("getClass")) {
+			propName = methodName.substring(3);
+		} else {
+			return null;
+		}
+
+		if (propName.isEmpty()) {
+			return null;
+		}
+
+		return Character.toLowerCase(propName.charAt(0))
+				+ propName.substring(1);
+	}
+
+	/**
+	 * @return true if the class is annotated with {@link RemoteClass}, so its
+	 *         values are sent as object refs
+	 */
+	public boolean isRemoteClass() {
+		return remoteClass;
+	}
+
+	/**
+	 * @return the name sent in the <code>__type__</code> prop
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * @return the name sent in the <code>__module__</code> prop, or null if
+	 *         the class is not annotated with {@link ModuleName}
+	 */
+	public String getModuleName() {
+		return moduleName;
+	}
+
+	public int getNumProps() {
+		return propNames.length;
+	}
+
+	public String getPropName(int index) {
+		return propNames[index];
+	}
+
+	/**
+	 * Invokes the getter of a prop.
+	 *
+	 * @param index
+	 *            The index of the prop, lower than {@link #getNumProps()}
+	 * @param value
+	 *            A value of the class
+	 * @return The value of the prop, not flattened
+	 */
+	public Object getPropValue(int index, Object value) throws Throwable {
+		return getters[index].invokeExact(value);
+	}
+
+	public int getNumParams() {
+		return paramNames.length;
+	}
+
+	public String getParamName(int index) {
+		return paramNames[index];
+	}
+
+	public Type getParamType(int index) {
+		return paramTypes[index];
+	}
+
+	/**
+	 * Creates a value of the class.
+	 *
+	 * @param params
+	 *            The params of the constructor, already unflattened
+	 * @return The value
+	 */
+	public Object newInstance(Object[] params) throws Throwable {
+		if (constructor == null) {
+			throw new ProtocolException("Class '" + clazz.getName()
+					+ "' has no accessible constructor");
+		}
+		return constructor.invokeExact(params);
+	}
+
+}
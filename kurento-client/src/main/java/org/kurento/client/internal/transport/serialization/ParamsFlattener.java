@@ -1,7 +1,6 @@
 package org.kurento.client.internal.transport.serialization;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -12,11 +11,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.kurento.client.TransactionNotCommitedException;
-import org.kurento.client.internal.ModuleName;
 import org.kurento.client.internal.ParamAnnotationUtils;
 import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.client.RemoteObject;
@@ -36,8 +35,9 @@ public class ParamsFlattener {
 	private static final Logger log = LoggerFactory
 			.getLogger(ParamsFlattener.class);
 
-	private final ConcurrentHashMap<String, String> packageNames = new ConcurrentHashMap<String, String>();
-	private final ConcurrentHashMap<String, Class<?>> usedClasses = new ConcurrentHashMap<String, Class<?>>();
+	private final ConcurrentMap<String, String> packageNames = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, Class<?>> usedClasses = new ConcurrentHashMap<String, Class<?>>();
+	private final ConcurrentMap<Class<?>, Map<String, Object>> enumConstants = new ConcurrentHashMap<Class<?>, Map<String, Object>>();
 
 	public enum RomType {
 		VOID, INTEGER, BOOLEAN, FLOAT, STRING, CT_ENUM, CT_REGISTER, LIST, REMOTE_CLASS, MAP
@@ -215,10 +215,13 @@ public class ParamsFlattener {
 			return result;
 		} else if (result instanceof List<?>) {
 			return flattenResultList((List<?>) result, manager);
-		} else if (result.getClass().getAnnotation(RemoteClass.class) != null) {
+		}
+
+		ComplexTypeCodec codec = ComplexTypeCodec.get(result.getClass());
+		if (codec.isRemoteClass()) {
 			return extractObjectRefFromRemoteClass(result, manager);
 		} else {
-			return extractResultAsProps(result, manager);
+			return extractResultAsProps(result, codec, manager);
 		}
 
 	}
@@ -231,41 +234,27 @@ public class ParamsFlattener {
 
 	// TODO Refactor this method because there are other method very similar to
 	// this but with params instead result
-	private Object extractResultAsProps(Object result,
+	private Object extractResultAsProps(Object result, ComplexTypeCodec codec,
 			RemoteObjectManager manager) {
 
-		Map<String, Object> propsMap = new HashMap<>();
-		for (Method method : result.getClass().getMethods()) {
-
-			String propName = null;
-
-			String methodName = method.getName();
-			if (methodName.startsWith("is")) {
-				propName = methodName.substring(2, methodName.length());
-			} else if (methodName.startsWith("get")
-					&& !methodName.equals("getClass")) {
-				propName = methodName.substring(3, methodName.length());
-			}
-
-			if (propName != null) {
-				try {
-					propName = Character.toLowerCase(propName.charAt(0))
-							+ propName.substring(1);
-					Object value = flattenResult(method.invoke(result), manager);
-					propsMap.put(propName, value);
-
-				} catch (Exception e) {
-					log.warn(
-							"Exception while accessing prop '{}' in param object: {}",
-							propName, result, e);
-				}
+		Map<String, Object> propsMap = newPropsMap(codec);
+		for (int i = 0; i < codec.getNumProps(); i++) {
+			String propName = codec.getPropName(i);
+			try {
+				Object value = flattenResult(codec.getPropValue(i, result),
+						manager);
+				propsMap.put(propName, value);
+
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				log.warn(
+						"Exception while accessing prop '{}' in param object: {}",
+						propName, result, e);
 			}
 		}
 
-		propsMap.put("__type__", result.getClass().getSimpleName());
-		ModuleName name = result.getClass().getAnnotation(ModuleName.class);
-		propsMap.put("__module__", name.value());
-
+		addTypeProps(propsMap, codec);
 		return new Props(propsMap);
 	}
 
@@ -289,39 +278,41 @@ public class ParamsFlattener {
 	 */
 	private Object extractParamAsProps(Object param, boolean inTx) {
 
-		Map<String, Object> propsMap = new HashMap<>();
-		for (Method method : param.getClass().getMethods()) {
-
-			String propName = null;
-
-			String methodName = method.getName();
-			if (methodName.startsWith("is")) {
-				propName = methodName.substring(2, methodName.length());
-			} else if (methodName.startsWith("get")
-					&& !methodName.equals("getClass")) {
-				propName = methodName.substring(3, methodName.length());
-			}
+		ComplexTypeCodec codec = ComplexTypeCodec.get(param.getClass());
 
-			if (propName != null) {
-				try {
-					propName = Character.toLowerCase(propName.charAt(0))
-							+ propName.substring(1);
-					Object value = flattenParam(method.invoke(param), inTx);
-					propsMap.put(propName, value);
-
-				} catch (Exception e) {
-					log.warn(
-							"Exception while accessing prop '{}' in param object: {}",
-							propName, param, e);
-				}
+		Map<String, Object> propsMap = newPropsMap(codec);
+		for (int i = 0; i < codec.getNumProps(); i++) {
+			String propName = codec.getPropName(i);
+			try {
+				Object value = flattenParam(codec.getPropValue(i, param), inTx);
+				propsMap.put(propName, value);
+
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				log.warn(
+						"Exception while accessing prop '{}' in param object: {}",
+						propName, param, e);
 			}
 		}
-		propsMap.put("__type__", param.getClass().getSimpleName());
-		ModuleName name = param.getClass().getAnnotation(ModuleName.class);
-		propsMap.put("__module__", name.value());
+
+		addTypeProps(propsMap, codec);
 		return new Props(propsMap);
 	}
 
+	private Map<String, Object> newPropsMap(ComplexTypeCodec codec) {
+		// Room for the props and the type info without rehashing
+		return new HashMap<>((codec.getNumProps() + 2) * 4 / 3 + 1);
+	}
+
+	private void addTypeProps(Map<String, Object> propsMap,
+			ComplexTypeCodec codec) {
+		propsMap.put("__type__", codec.getTypeName());
+		if (codec.getModuleName() != null) {
+			propsMap.put("__module__", codec.getModuleName());
+		}
+	}
+
 	private boolean isPrimitive(Object param) {
 		return param instanceof String || param instanceof Boolean
 				|| param instanceof Integer || param instanceof Float;
@@ -349,55 +340,71 @@ public class ParamsFlattener {
 	}
 
 	private Class<?> getOrCreateClass(Props props) {
-		Class<?> clazz = null;
 
 		String complexTypeName = (String) props.getProp("__type__");
 		String moduleName = (String) props.getProp("__module__");
-		String moduleNameInit = moduleName.substring(0, 1).toUpperCase();
-		String moduleNameEnd = moduleName.substring(1, moduleName.length());
-
-		if (complexTypeName != null) {
-
-			try {
-				String classPackageName = (MODULE_INFO_PACKAGE + "."
-						+ moduleNameInit + moduleNameEnd + "ModuleInfo");
-
-				String packageName = packageNames.get(classPackageName);
-				if (packageName == null) {
-					Class<?> clazzPackage = Class.forName(classPackageName);
 
-					Method method = clazzPackage.getMethod("getPackageName");
-					packageName = (String) method.invoke(clazzPackage);
-					packageNames.put(classPackageName, packageName);
-				}
+		if (complexTypeName == null || moduleName == null) {
+			return null;
+		}
 
-				String className = (packageName + "." + complexTypeName);
-				clazz = usedClasses.get(className);
-
-				if (clazz == null) {
-					clazz = Class.forName(className);
-					usedClasses.put(className, clazz);
-				}
+		String packageName = getPackageName(moduleName);
+		String className = packageName + "." + complexTypeName;
 
+		Class<?> clazz = usedClasses.get(className);
+		if (clazz == null) {
+			try {
+				clazz = Class.forName(className);
 			} catch (ClassNotFoundException e) {
 				throw new ProtocolException("Class '" + complexTypeName
 						+ "' not found", e);
-			} catch (NoSuchMethodException e) {
-				throw new ProtocolException("Method not found", e);
-			} catch (SecurityException e) {
-				throw new ProtocolException("Security Exception", e);
-			} catch (IllegalAccessException e) {
-				throw new ProtocolException("Illegal Access", e);
-			} catch (IllegalArgumentException e) {
-				throw new ProtocolException("Illegal Argument", e);
-			} catch (InvocationTargetException e) {
-				throw new ProtocolException("Invocation Target", e);
+			}
+			Class<?> previous = usedClasses.putIfAbsent(className, clazz);
+			if (previous != null) {
+				clazz = previous;
 			}
 		}
 
 		return clazz;
 	}
 
+	private String getPackageName(String moduleName) {
+
+		String packageName = packageNames.get(moduleName);
+		if (packageName != null) {
+			return packageName;
+		}
+
+		String moduleNameInit = moduleName.substring(0, 1).toUpperCase();
+		String moduleNameEnd = moduleName.substring(1, moduleName.length());
+		String classPackageName = (MODULE_INFO_PACKAGE + "." + moduleNameInit
+				+ moduleNameEnd + "ModuleInfo");
+
+		try {
+			Class<?> clazzPackage = Class.forName(classPackageName);
+
+			Method method = clazzPackage.getMethod("getPackageName");
+			packageName = (String) method.invoke(clazzPackage);
+
+		} catch (ClassNotFoundException e) {
+			throw new ProtocolException("Class '" + classPackageName
+					+ "' not found", e);
+		} catch (NoSuchMethodException e) {
+			throw new ProtocolException("Method not found", e);
+		} catch (SecurityException e) {
+			throw new ProtocolException("Security Exception", e);
+		} catch (IllegalAccessException e) {
+			throw new ProtocolException("Illegal Access", e);
+		} catch (IllegalArgumentException e) {
+			throw new ProtocolException("Illegal Argument", e);
+		} catch (InvocationTargetException e) {
+			throw new ProtocolException("Invocation Target", e);
+		}
+
+		String previous = packageNames.putIfAbsent(moduleName, packageName);
+		return previous != null ? previous : packageName;
+	}
+
 	public Object unflattenValue(String paramName, Type type, Object value,
 			ObjectRefsManager manager) {
 
@@ -449,6 +456,14 @@ public class ParamsFlattener {
 		throw new ProtocolException("Type '" + type + "' is not supported");
 	}
 
+	/**
+	 * @return true if values of the type are sent and received as they are,
+	 *         so they do not need to be unflattened
+	 */
+	public boolean isPlainType(Type type) {
+		return type instanceof Class && isPrimitiveClass((Class<?>) type);
+	}
+
 	private boolean isPrimitiveClass(Class<?> clazz) {
 		return clazz == String.class || clazz == Boolean.class
 				|| clazz == Float.class || clazz == Integer.class
@@ -460,23 +475,21 @@ public class ParamsFlattener {
 	private Object unflattedComplexType(Class<?> clazz, Props props,
 			ObjectRefsManager manager) {
 
-		Constructor<?> constructor = clazz.getConstructors()[0];
-
-		Object[] constParams = new Object[constructor.getParameterTypes().length];
+		ComplexTypeCodec codec = ComplexTypeCodec.get(clazz);
 
-		List<String> paramNames = ParamAnnotationUtils
-				.getParamNames(constructor);
-		Class<?>[] constClasses = constructor.getParameterTypes();
+		Object[] constParams = new Object[codec.getNumParams()];
 
 		for (int i = 0; i < constParams.length; i++) {
-			String paramName = paramNames.get(i);
-			constParams[i] = unflattenValue(paramName, constClasses[i],
+			String paramName = codec.getParamName(i);
+			constParams[i] = unflattenValue(paramName, codec.getParamType(i),
 					props.getProp(paramName), manager);
 		}
 
 		try {
-			return constructor.newInstance(constParams);
-		} catch (Exception e) {
+			return codec.newInstance(constParams);
+		} catch (ProtocolException | Error e) {
+			throw e;
+		} catch (Throwable e) {
 			throw new ProtocolException(
 					"Exception while creating an object for the class '"
 							+ clazz.getSimpleName() + "'", e);
@@ -541,12 +554,21 @@ public class ParamsFlattener {
 	}
 
 	private Object unflattenEnumConstant(Type type, Object value, Class<?> clazz) {
-		Object[] enumConsts = clazz.getEnumConstants();
-		for (Object enumConst : enumConsts) {
-			if (enumConst.toString().equals(value)) {
-				return enumConst;
+
+		Map<String, Object> constants = enumConstants.get(clazz);
+		if (constants == null) {
+			constants = new HashMap<>();
+			for (Object enumConst : clazz.getEnumConstants()) {
+				constants.put(enumConst.toString(), enumConst);
 			}
+			enumConstants.putIfAbsent(clazz, constants);
 		}
+
+		Object enumConst = value != null ? constants.get(value) : null;
+		if (enumConst != null) {
+			return enumConst;
+		}
+
 		// TODO Improve exception reporting
 		throw new ProtocolException("Enum '" + value
 				+ "' not found in enumType '" + type.toString() + "'");
@@ -0,0 +1,126 @@
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.internal.client.EventPlan;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.client.internal.test.model.client.events.SampleSourceEvent;
+import org.kurento.jsonrpc.Props;
+
+public class EventDispatchTest {
+
+	private static class RecordingListener implements
+			EventListener<SampleSourceEvent> {
+
+		private final List<SampleSourceEvent> events = Collections
+				.synchronizedList(new ArrayList<SampleSourceEvent>());
+
+		@Override
+		public void onEvent(SampleSourceEvent event) {
+			events.add(event);
+		}
+	}
+
+	private StubRomClient client;
+	private SampleClass sample;
+
+	@Before
+	public void setup() {
+		client = new StubRomClient();
+		RomManager manager = new RomManager(client);
+		sample = RemoteObjectInvocationHandler.newProxy(new RemoteObject(
+				"obj1", "SampleClass", manager), manager, SampleClass.class);
+	}
+
+	private void fireEvent() {
+		client.fireEvent("obj1", "SampleSource",
+				new Props("source", "obj1").add("prop1", "value")
+						.add("prop2", "CONSTANT_2"));
+	}
+
+	@Test
+	public void sharedEventTest() {
+
+		List<RecordingListener> listeners = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			RecordingListener listener = new RecordingListener();
+			sample.addSampleSourceListener(listener);
+			listeners.add(listener);
+		}
+
+		fireEvent();
+
+		SampleSourceEvent event = listeners.get(0).events.get(0);
+		assertSame(sample, event.getSource());
+		assertEquals("value", event.getProp1());
+		assertEquals(SampleEnum.CONSTANT_2, event.getProp2());
+
+		for (RecordingListener listener : listeners) {
+			assertEquals(1, listener.events.size());
+			assertSame(event, listener.events.get(0));
+		}
+	}
+
+	@Test
+	public void removedListenerTest() {
+
+		RecordingListener listener1 = new RecordingListener();
+		RecordingListener listener2 = new RecordingListener();
+
+		ListenerSubscription subscription = sample
+				.addSampleSourceListener(listener1);
+		sample.addSampleSourceListener(listener2);
+
+		sample.removeSampleSourceListener(subscription);
+		fireEvent();
+
+		assertEquals(0, listener1.events.size());
+		assertEquals(1, listener2.events.size());
+	}
+
+	@Test
+	public void failingListenerTest() {
+
+		sample.addSampleSourceListener(new EventListener<SampleSourceEvent>() {
+			@Override
+			public void onEvent(SampleSourceEvent event) {
+				throw new IllegalStateException("Listener failure");
+			}
+		});
+
+		RecordingListener listener = new RecordingListener();
+		sample.addSampleSourceListener(listener);
+
+		fireEvent();
+
+		assertEquals(1, listener.events.size());
+	}
+
+	@Test
+	public void eventPlanTest() throws Throwable {
+
+		EventPlan plan = EventPlan.get(SampleSourceEvent.class);
+		assertSame(plan, EventPlan.get(SampleSourceEvent.class));
+
+		SampleSourceEvent event = (SampleSourceEvent) plan.newEvent(sample,
+				new Props("prop1", "value").add("prop2", "CONSTANT_1"),
+				null);
+
+		assertSame(sample, event.getSource());
+		assertEquals("value", event.getProp1());
+		assertEquals(SampleEnum.CONSTANT_1, event.getProp2());
+	}
+}
@@ -0,0 +1,341 @@
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.internal.client.EventDispatcher;
+import org.kurento.client.internal.client.EventDispatcher.ListenerQueue;
+import org.kurento.client.internal.client.EventDispatcher.OverflowPolicy;
+import org.kurento.client.internal.client.EventListenerAdapter;
+import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.events.SampleSourceEvent;
+import org.kurento.jsonrpc.Props;
+
+public class EventDispatcherTest {
+
+	/**
+	 * Records the events received. The first event is not processed until
+	 * the listener is released. Each event can also take some time to be
+	 * processed.
+	 */
+	private static class RecordingListener implements
+			EventListener<SampleSourceEvent> {
+
+		private final List<String> events = Collections
+				.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release;
+		private volatile CountDownLatch received = new CountDownLatch(0);
+		private volatile long delay;
+
+		public RecordingListener(boolean blocked) {
+			this.release = new CountDownLatch(blocked ? 1 : 0);
+		}
+
+		public void expect(int numEvents) {
+			received = new CountDownLatch(numEvents);
+		}
+
+		@Override
+		public void onEvent(SampleSourceEvent event) {
+			started.countDown();
+			try {
+				release.await();
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			events.add(event.getProp1());
+			received.countDown();
+		}
+
+		public void awaitEvents() throws InterruptedException {
+			assertTrue(received.await(10, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Executor that rejects the queues of the listeners when configured.
+	 */
+	private static class RejectingExecutor implements Executor {
+
+		private final Executor executor;
+		private volatile boolean rejectListeners;
+
+		public RejectingExecutor(Executor executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (rejectListeners && command instanceof ListenerQueue) {
+				throw new RejectedExecutionException("Listeners rejected");
+			}
+			executor.execute(command);
+		}
+	}
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private StubRomClient client;
+	private EventDispatcher dispatcher;
+	private RomManager manager;
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	private void setup(int capacity, OverflowPolicy policy) {
+		setup(executor, capacity, policy);
+	}
+
+	private void setup(Executor executor, int capacity, OverflowPolicy policy) {
+		client = new StubRomClient();
+		dispatcher = new EventDispatcher(executor, capacity, policy);
+		manager = new RomManager(client, dispatcher);
+	}
+
+	private SampleClass newProxy(String objectRef) {
+		return RemoteObjectInvocationHandler.newProxy(new RemoteObject(
+				objectRef, "SampleClass", manager), manager, SampleClass.class);
+	}
+
+	private void fireEvent(String objectRef, int num) {
+		client.fireEvent(objectRef, "SampleSource", new Props("source",
+				objectRef).add("prop1", Integer.toString(num)).add("prop2",
+				"CONSTANT_1"));
+	}
+
+	private ListenerQueue getQueue(ListenerSubscription subscription) {
+		return ((EventListenerAdapter) ((ListenerSubscriptionImpl) subscription)
+				.getListener()).getQueue();
+	}
+
+	private void awaitNotifications(long pending) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (dispatcher.getPendingNotifications() > pending) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// The notification in process may still be adding its event
+		Thread.sleep(100);
+	}
+
+	private static List<String> range(int from, int to) {
+		List<String> values = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			values.add(Integer.toString(i));
+		}
+		return values;
+	}
+
+	@Test
+	public void orderPerObjectTest() throws InterruptedException {
+
+		setup(1000, OverflowPolicy.BLOCK);
+
+		SampleClass sample1 = newProxy("obj1");
+		SampleClass sample2 = newProxy("obj2");
+
+		RecordingListener listener1 = new RecordingListener(false);
+		RecordingListener listener2 = new RecordingListener(false);
+		listener1.expect(200);
+		listener2.expect(200);
+		sample1.addSampleSourceListener(listener1);
+		sample2.addSampleSourceListener(listener2);
+
+		for (int i = 0; i < 200; i++) {
+			fireEvent("obj1", i);
+			fireEvent("obj2", i);
+		}
+
+		listener1.awaitEvents();
+		listener2.awaitEvents();
+
+		assertEquals(range(0, 200), listener1.events);
+		assertEquals(range(0, 200), listener2.events);
+	}
+
+	@Test
+	public void slowListenerTest() throws InterruptedException {
+
+		setup(100, OverflowPolicy.BLOCK);
+
+		SampleClass sample = newProxy("obj1");
+
+		RecordingListener slowListener = new RecordingListener(true);
+		RecordingListener listener = new RecordingListener(false);
+		listener.expect(10);
+		sample.addSampleSourceListener(slowListener);
+		sample.addSampleSourceListener(listener);
+
+		for (int i = 0; i < 10; i++) {
+			fireEvent("obj1", i);
+		}
+
+		listener.awaitEvents();
+		assertEquals(range(0, 10), listener.events);
+		assertEquals(0, slowListener.events.size());
+
+		slowListener.expect(10);
+		slowListener.release.countDown();
+		slowListener.awaitEvents();
+		assertEquals(range(0, 10), slowListener.events);
+	}
+
+	@Test
+	public void dropNewestTest() throws InterruptedException {
+
+		setup(2, OverflowPolicy.DROP_NEWEST);
+
+		SampleClass sample = newProxy("obj1");
+		RecordingListener listener = new RecordingListener(true);
+		ListenerSubscription subscription = sample
+				.addSampleSourceListener(listener);
+
+		fireEvent("obj1", 0);
+		assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+
+		for (int i = 1; i < 5; i++) {
+			fireEvent("obj1", i);
+		}
+		awaitNotifications(0);
+
+		assertEquals(2, getQueue(subscription).getSize());
+		assertEquals(2, getQueue(subscription).getDroppedCount());
+		assertEquals(2, dispatcher.getQueuedEvents());
+		assertEquals(2, dispatcher.getDroppedEvents());
+
+		listener.expect(3);
+		listener.release.countDown();
+		listener.awaitEvents();
+
+		assertEquals(Arrays.asList("0", "1", "2"), listener.events);
+		assertEquals(0, dispatcher.getQueuedEvents());
+	}
+
+	@Test
+	public void dropOldestTest() throws InterruptedException {
+
+		setup(2, OverflowPolicy.DROP_OLDEST);
+
+		SampleClass sample = newProxy("obj1");
+		RecordingListener listener = new RecordingListener(true);
+		ListenerSubscription subscription = sample
+				.addSampleSourceListener(listener);
+
+		fireEvent("obj1", 0);
+		assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+
+		for (int i = 1; i < 5; i++) {
+			fireEvent("obj1", i);
+		}
+		awaitNotifications(0);
+
+		assertEquals(2, getQueue(subscription).getSize());
+		assertEquals(2, getQueue(subscription).getDroppedCount());
+
+		listener.expect(3);
+		listener.release.countDown();
+		listener.awaitEvents();
+
+		assertEquals(Arrays.asList("0", "3", "4"), listener.events);
+	}
+
+	@Test
+	public void blockTest() throws InterruptedException {
+
+		setup(1, OverflowPolicy.BLOCK);
+
+		SampleClass sample = newProxy("obj1");
+		RecordingListener listener = new RecordingListener(true);
+		ListenerSubscription subscription = sample
+				.addSampleSourceListener(listener);
+
+		fireEvent("obj1", 0);
+		assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+
+		// Notifications are accepted while the queue of the object blocks
+		for (int i = 1; i < 5; i++) {
+			fireEvent("obj1", i);
+		}
+		awaitNotifications(2);
+
+		assertEquals(2, dispatcher.getPendingNotifications());
+		assertEquals(1, getQueue(subscription).getSize());
+		assertEquals(0, getQueue(subscription).getDroppedCount());
+
+		listener.expect(5);
+		listener.release.countDown();
+		listener.awaitEvents();
+
+		assertEquals(range(0, 5), listener.events);
+		assertEquals(0, dispatcher.getDroppedEvents());
+	}
+
+	@Test
+	public void blockWithRejectedListenerTest() throws InterruptedException {
+
+		RejectingExecutor rejectingExecutor = new RejectingExecutor(executor);
+		setup(rejectingExecutor, 100, OverflowPolicy.BLOCK);
+
+		SampleClass sample = newProxy("obj1");
+		RecordingListener listener = new RecordingListener(true);
+		listener.delay = 5;
+		ListenerSubscription subscription = sample
+				.addSampleSourceListener(listener);
+
+		fireEvent("obj1", 0);
+		assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+
+		// The queue of the object blocks when the queue of the listener is
+		// full, and the listener can not be scheduled again after its batch.
+		// The queue is larger than the batch, so it is not empty at its end,
+		// and the listener is slow, so the queue of the object is blocked
+		rejectingExecutor.rejectListeners = true;
+		for (int i = 1; i < 200; i++) {
+			fireEvent("obj1", i);
+		}
+
+		ListenerQueue queue = getQueue(subscription);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (queue.getSize() < 100) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		listener.expect(64);
+		listener.release.countDown();
+		listener.awaitEvents();
+
+		// The blocked queue is woken up when the listener queue is discarded
+		awaitNotifications(0);
+
+		assertEquals(range(0, 64), listener.events);
+		assertEquals(200, 64 + queue.getDroppedCount() + queue.getSize());
+		assertEquals(queue.getDroppedCount(), dispatcher.getDroppedEvents());
+		assertEquals(queue.getSize(), dispatcher.getQueuedEvents());
+	}
+}
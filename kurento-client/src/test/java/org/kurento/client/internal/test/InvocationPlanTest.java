@@ -0,0 +1,172 @@
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.InvocationPlan;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.Param;
+import org.kurento.client.internal.test.model.client.ComplexParam;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.jsonrpc.Props;
+
+public class InvocationPlanTest {
+
+	public interface TransactionalSample extends KurentoObject {
+
+		TFuture<Integer> getAtt4(Transaction tx);
+
+		TFuture<Void> startTestEvents(Transaction tx,
+				@Param("numEvents") int numEvents);
+	}
+
+	private StubRomClient client;
+	private RomManager manager;
+
+	@Before
+	public void setup() {
+		client = new StubRomClient();
+		manager = new RomManager(client);
+	}
+
+	private <E> E newProxy(Class<E> clazz) {
+		RemoteObject remoteObject = new RemoteObject("obj1", "SampleClass",
+				manager);
+		return RemoteObjectInvocationHandler.newProxy(remoteObject, manager,
+				clazz);
+	}
+
+	@Test
+	public void syncInvocationTest() {
+
+		client.withResult("echoEnum", "CONSTANT_2");
+		client.withResult("echoRegister",
+				new Props("__type__", "ComplexParam").add("__module__",
+						"complexParam").add("prop1", "value").add("prop2", 5));
+
+		SampleClass sample = newProxy(SampleClass.class);
+
+		assertEquals(SampleEnum.CONSTANT_2,
+				sample.echoEnum(SampleEnum.CONSTANT_1));
+		assertEquals(SampleEnum.CONSTANT_1,
+				client.getLastParams().getProp("param"));
+		assertEquals(String.class, client.getLastType());
+
+		ComplexParam result = sample.echoRegister(new ComplexParam("a", 1));
+		assertEquals("value", result.getProp1());
+		assertEquals(5, result.getProp2());
+		assertEquals(Props.class, client.getLastType());
+	}
+
+	@Test
+	public void continuationInvocationTest() throws InterruptedException {
+
+		client.withResult("getAtt1", "XXX");
+
+		SampleClass sample = newProxy(SampleClass.class);
+
+		final AtomicReference<String> result = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		sample.getAtt1(new Continuation<String>() {
+			@Override
+			public void onSuccess(String value) {
+				result.set(value);
+				latch.countDown();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+			}
+		});
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals("XXX", result.get());
+		assertNull(client.getLastParams());
+	}
+
+	@Test
+	public void transactionInvocationTest() {
+
+		client.withTransactionResult(22);
+
+		TransactionalSample sample = newProxy(TransactionalSample.class);
+
+		Transaction tx = new TransactionImpl(manager);
+		TFuture<Integer> att4 = sample.getAtt4(tx);
+		sample.startTestEvents(tx, 3);
+		tx.commit();
+
+		assertEquals(Integer.valueOf(22), att4.get());
+		assertEquals(2, client.getInvocations());
+	}
+
+	@Test
+	public void remoteObjectMethodsTest() throws InterruptedException {
+
+		SampleClass sample = newProxy(SampleClass.class);
+
+		assertTrue(sample.isCommited());
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		sample.whenCommited(new Continuation<Object>() {
+			@Override
+			public void onSuccess(Object result) {
+				latch.countDown();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+			}
+		});
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, client.getInvocations());
+	}
+
+	@Test
+	public void planTest() throws NoSuchMethodException {
+
+		Method method = SampleClass.class.getMethod("echoEnum",
+				SampleEnum.class, Continuation.class);
+
+		InvocationPlan plan = InvocationPlan.get(method);
+		assertSame(plan, InvocationPlan.get(method));
+
+		assertEquals(InvocationPlan.Kind.INVOKE, plan.getKind());
+		assertEquals(InvocationPlan.Style.CONTINUATION, plan.getStyle());
+		assertEquals(SampleEnum.class, plan.getReturnType());
+		assertEquals(String.class, plan.getFlattenType());
+
+		Props props = plan.extractProps(new Object[] { SampleEnum.CONSTANT_1,
+				null });
+		assertEquals(SampleEnum.CONSTANT_1, props.getProp("param"));
+		assertEquals(1, countProps(props));
+	}
+
+	private int countProps(Props props) {
+		int count = 0;
+		for (@SuppressWarnings("unused")
+		Object prop : props) {
+			count++;
+		}
+		return count;
+	}
+}
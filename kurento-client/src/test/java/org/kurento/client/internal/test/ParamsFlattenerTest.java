@@ -0,0 +1,147 @@
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.kurento.client.internal.transport.serialization.ComplexTypeCodec;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.client.internal.test.model.client.SampleLatencyStat;
+import org.kurento.client.internal.test.model.client.SampleStats;
+import org.kurento.client.internal.test.model.client.SampleStatsGroup;
+import org.kurento.jsonrpc.Props;
+
+public class ParamsFlattenerTest {
+
+	private static final ParamsFlattener FLATTENER = ParamsFlattener
+			.getInstance();
+
+	private static SampleStats newStats(String id) {
+		return new SampleStats(id, SampleEnum.CONSTANT_1, 0.5f, true,
+				new SampleLatencyStat("audio", SampleEnum.CONSTANT_2, 10.5f),
+				new SampleLatencyStat("video", SampleEnum.CONSTANT_1, 20.5f));
+	}
+
+	private static void assertStats(String id, SampleStats stats) {
+		assertEquals(id, stats.getId());
+		assertEquals(SampleEnum.CONSTANT_1, stats.getType());
+		assertEquals(0.5f, stats.getTimestamp(), 0.001);
+		assertTrue(stats.isActive());
+		assertEquals("audio", stats.getAudioLatency().getName());
+		assertEquals(SampleEnum.CONSTANT_2, stats.getAudioLatency().getType());
+		assertEquals(10.5f, stats.getAudioLatency().getAvg(), 0.001);
+		assertEquals("video", stats.getVideoLatency().getName());
+	}
+
+	@Test
+	public void flattenParamTest() {
+
+		Props params = FLATTENER.flattenParams(new Props("stats",
+				newStats("stats1")));
+
+		Props stats = (Props) params.getProp("stats");
+		assertEquals("SampleStats", stats.getProp("__type__"));
+		assertEquals("complexParam", stats.getProp("__module__"));
+		assertEquals("stats1", stats.getProp("id"));
+		assertEquals("CONSTANT_1", stats.getProp("type"));
+		assertEquals(true, stats.getProp("active"));
+
+		Props latency = (Props) stats.getProp("audioLatency");
+		assertEquals("SampleLatencyStat", latency.getProp("__type__"));
+		assertEquals("CONSTANT_2", latency.getProp("type"));
+	}
+
+	@Test
+	public void flattenResultTest() {
+
+		Props stats = (Props) FLATTENER.flattenResult(newStats("stats1"), null);
+
+		assertEquals("SampleStats", stats.getProp("__type__"));
+		assertEquals("stats1", stats.getProp("id"));
+		assertEquals("CONSTANT_2",
+				((Props) stats.getProp("audioLatency")).getProp("type"));
+	}
+
+	@Test
+	public void roundTripTest() {
+
+		Object flattened = FLATTENER.flattenResult(newStats("stats1"), null);
+
+		SampleStats stats = (SampleStats) FLATTENER.unflattenValue("stats",
+				SampleStats.class, flattened, null);
+
+		assertStats("stats1", stats);
+	}
+
+	@Test
+	public void nestedListsTest() {
+
+		SampleStatsGroup group = new SampleStatsGroup("group", Arrays.asList(
+				newStats("stats1"), newStats("stats2")), Arrays.asList(
+				Arrays.asList(SampleEnum.CONSTANT_1),
+				Arrays.asList(SampleEnum.CONSTANT_2, SampleEnum.CONSTANT_1)));
+
+		Object flattened = FLATTENER.flattenResult(group, null);
+
+		SampleStatsGroup result = (SampleStatsGroup) FLATTENER.unflattenValue(
+				"group", SampleStatsGroup.class, flattened, null);
+
+		assertEquals("group", result.getName());
+		assertEquals(2, result.getStats().size());
+		assertStats("stats1", result.getStats().get(0));
+		assertStats("stats2", result.getStats().get(1));
+		assertEquals(group.getTypes(), result.getTypes());
+	}
+
+	@Test
+	public void codecTest() {
+
+		ComplexTypeCodec codec = ComplexTypeCodec.get(SampleStats.class);
+		assertSame(codec, ComplexTypeCodec.get(SampleStats.class));
+
+		assertEquals("SampleStats", codec.getTypeName());
+		assertEquals("complexParam", codec.getModuleName());
+		assertEquals(6, codec.getNumProps());
+		assertEquals(6, codec.getNumParams());
+		assertEquals("audioLatency", codec.getParamName(4));
+	}
+
+	@Test
+	public void concurrentUnflattenTest() throws Exception {
+
+		final Object flattened = FLATTENER.flattenResult(newStats("stats1"),
+				null);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+
+			List<Future<SampleStats>> results = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				results.add(executor.submit(new Callable<SampleStats>() {
+					@Override
+					public SampleStats call() {
+						return (SampleStats) FLATTENER.unflattenValue("stats",
+								SampleStats.class, flattened, null);
+					}
+				}));
+			}
+
+			for (Future<SampleStats> result : results) {
+				assertStats("stats1", result.get());
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.kurento.client.TransactionExecutionException;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RetriesExhaustedException;
+import org.kurento.client.internal.client.RetryPolicy;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.server.KurentoServerTransportException;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.ConnectionLostException;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class RetryPolicyTest {
+
+	public interface TransactionalSample extends KurentoObject {
+
+		int getAtt4();
+
+		TFuture<Integer> getAtt4(Transaction tx);
+	}
+
+	/**
+	 * Media server that answers invocations and transactions, or fails them
+	 * with an error of the server when configured.
+	 */
+	static class FakeServer extends DefaultJsonRpcHandler<JsonObject> {
+
+		final AtomicInteger requests = new AtomicInteger();
+		volatile boolean serverError;
+
+		@Override
+		public void handleRequest(org.kurento.jsonrpc.Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			requests.incrementAndGet();
+
+			if (request.getMethod().equals("transaction")) {
+
+				JsonArray responses = new JsonArray();
+				for (JsonElement op : request.getParams()
+						.getAsJsonArray("operations")) {
+					Integer id = op.getAsJsonObject().get("id").getAsInt();
+					Response<?> response = serverError ? new Response<>(id,
+							newError()) : new Response<>(id, 22);
+					responses.add(JsonUtils.toJsonElement(response));
+				}
+				transaction.sendResponse(responses);
+
+			} else if (serverError) {
+				ResponseError error = newError();
+				transaction.sendError(error.getCode(), error.getMessage(),
+						error.getData());
+			} else {
+				transaction.sendResponse(22);
+			}
+		}
+
+		private ResponseError newError() {
+			return new ResponseError(40101, "Object not found");
+		}
+	}
+
+	/**
+	 * Client that fails the first requests with a transport error, without
+	 * sending them to the server. It can also lose the connection after the
+	 * server has executed the request, before receiving its response.
+	 */
+	static class FlakyClient extends JsonRpcClientLocal {
+
+		final AtomicInteger attempts = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger lostResponses = new AtomicInteger();
+
+		public FlakyClient(FakeServer server) {
+			super(server);
+		}
+
+		@Override
+		public <R> R sendRequest(String method, Object params,
+				Class<R> resultClass) throws IOException {
+			attempts.incrementAndGet();
+			if (failures.getAndDecrement() > 0) {
+				throw new IOException("Connection refused");
+			}
+			return super.sendRequest(method, params, resultClass);
+		}
+
+		@Override
+		public void sendRequest(String method, JsonObject params,
+				org.kurento.jsonrpc.client.Continuation<JsonElement> continuation) {
+			attempts.incrementAndGet();
+			if (failures.getAndDecrement() > 0) {
+				continuation.onError(new TransportException(
+						"Connection lost"));
+				return;
+			}
+			if (lostResponses.getAndDecrement() > 0) {
+				// The server executes the request, but its response is lost
+				super.sendRequest(method, params,
+						new LostResponse(continuation));
+				return;
+			}
+			super.sendRequest(method, params, continuation);
+		}
+	}
+
+	/**
+	 * Continuation that fails the request as if the connection was lost
+	 * before receiving the response of the server.
+	 */
+	static class LostResponse implements
+			org.kurento.jsonrpc.client.Continuation<JsonElement> {
+
+		private final org.kurento.jsonrpc.client.Continuation<JsonElement> cont;
+
+		LostResponse(
+				org.kurento.jsonrpc.client.Continuation<JsonElement> cont) {
+			this.cont = cont;
+		}
+
+		@Override
+		public void onSuccess(JsonElement result) {
+			cont.onError(new ConnectionLostException("Connection lost"));
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			cont.onError(cause);
+		}
+	}
+
+	private FakeServer server;
+	private FlakyClient client;
+	private RomManager manager;
+
+	@Before
+	public void setup() {
+		server = new FakeServer();
+		client = new FlakyClient(server);
+		manager = new RomManager(new RomClientJsonRpcClient(client));
+		manager.setTransactionRetryPolicy(new RetryPolicy(5, 10, 50, 5000));
+	}
+
+	@After
+	public void teardown() throws IOException {
+		client.close();
+	}
+
+	private TransactionalSample newProxy() {
+		RemoteObject remoteObject = new RemoteObject("obj1", "SampleClass",
+				manager);
+		return RemoteObjectInvocationHandler.newProxy(remoteObject, manager,
+				TransactionalSample.class);
+	}
+
+	private Throwable commit(Transaction tx) throws InterruptedException {
+
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		tx.commit(new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				latch.countDown();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				error.set(cause);
+				latch.countDown();
+			}
+		});
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		return error.get();
+	}
+
+	@Test
+	public void transportErrorRetriedTest() throws InterruptedException {
+
+		client.failures.set(2);
+
+		Transaction tx = new TransactionImpl(manager);
+		TFuture<Integer> att4 = newProxy().getAtt4(tx);
+
+		assertNull(commit(tx));
+		assertEquals(Integer.valueOf(22), att4.get());
+		assertEquals(3, client.attempts.get());
+		assertEquals(1, server.requests.get());
+	}
+
+	@Test
+	public void connectionLostNotRetriedTest() throws InterruptedException {
+
+		client.lostResponses.set(1);
+
+		Transaction tx = new TransactionImpl(manager);
+		newProxy().getAtt4(tx);
+
+		Throwable error = commit(tx);
+		assertTrue(error != null);
+		assertTrue(!(error instanceof RetriesExhaustedException));
+		assertEquals(1, client.attempts.get());
+		assertEquals(1, server.requests.get());
+	}
+
+	@Test
+	public void connectionLostRetriedIfTimeoutsRetriedTest()
+			throws InterruptedException {
+
+		client.lostResponses.set(1);
+		manager.setTransactionRetryPolicy(new RetryPolicy(5, 10, 50, 5000,
+				true));
+
+		Transaction tx = new TransactionImpl(manager);
+		TFuture<Integer> att4 = newProxy().getAtt4(tx);
+
+		assertNull(commit(tx));
+		assertEquals(Integer.valueOf(22), att4.get());
+		assertEquals(2, client.attempts.get());
+		assertEquals(2, server.requests.get());
+	}
+
+	@Test
+	public void serverErrorNotRetriedTest() throws InterruptedException {
+
+		server.serverError = true;
+
+		Transaction tx = new TransactionImpl(manager);
+		newProxy().getAtt4(tx);
+
+		Throwable error = commit(tx);
+		assertTrue(error instanceof TransactionExecutionException);
+		assertEquals(1, client.attempts.get());
+		assertEquals(1, server.requests.get());
+	}
+
+	@Test
+	public void retriesExhaustedTest() throws InterruptedException {
+
+		client.failures.set(Integer.MAX_VALUE);
+		manager.setTransactionRetryPolicy(new RetryPolicy(3, 10, 50, 5000));
+
+		Transaction tx = new TransactionImpl(manager);
+		newProxy().getAtt4(tx);
+
+		Throwable error = commit(tx);
+		assertTrue(error instanceof RetriesExhaustedException);
+		assertEquals(3, ((RetriesExhaustedException) error).getAttempts());
+		assertTrue(error.getCause() instanceof TransportException);
+		assertEquals(3, client.attempts.get());
+		assertEquals(0, server.requests.get());
+	}
+
+	@Test
+	public void syncTransactionNotRetriedTest() {
+
+		client.failures.set(1);
+
+		Transaction tx = new TransactionImpl(manager);
+		newProxy().getAtt4(tx);
+
+		try {
+			tx.commit();
+			fail("KurentoServerTransportException expected");
+		} catch (KurentoServerTransportException e) {
+			assertTrue(!(e instanceof RetriesExhaustedException));
+		}
+
+		assertEquals(1, client.attempts.get());
+		assertEquals(0, server.requests.get());
+	}
+
+	@Test
+	public void deadlineTest() {
+
+		client.failures.set(Integer.MAX_VALUE);
+		manager.setSyncTransactionRetryPolicy(new RetryPolicy(100, 50, 50,
+				300));
+
+		Transaction tx = new TransactionImpl(manager);
+		newProxy().getAtt4(tx);
+
+		long start = System.nanoTime();
+		try {
+			tx.commit();
+			fail("RetriesExhaustedException expected");
+		} catch (RetriesExhaustedException e) {
+			assertTrue(e.getAttempts() < 100);
+			assertTrue(e.getCause() instanceof KurentoServerTransportException);
+		}
+
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+	}
+
+	@Test
+	public void operationRetryTest() {
+
+		TransactionalSample sample = newProxy();
+
+		client.failures.set(1);
+		try {
+			sample.getAtt4();
+			fail("KurentoServerTransportException expected");
+		} catch (KurentoServerTransportException e) {
+			assertEquals(1, client.attempts.get());
+		}
+
+		manager.setOperationRetryPolicy(new RetryPolicy(3, 10, 50, 5000));
+
+		client.failures.set(2);
+		assertEquals(22, sample.getAtt4());
+		assertEquals(4, client.attempts.get());
+		assertEquals(1, server.requests.get());
+	}
+
+	@Test
+	public void operationServerErrorNotRetriedTest() {
+
+		manager.setOperationRetryPolicy(new RetryPolicy(3, 10, 50, 5000));
+		server.serverError = true;
+
+		try {
+			newProxy().getAtt4();
+			fail("KurentoServerException expected");
+		} catch (KurentoServerException e) {
+			assertEquals(40101, e.getCode());
+		}
+
+		assertEquals(1, client.attempts.get());
+		assertEquals(1, server.requests.get());
+	}
+
+	@Test
+	public void classificationTest() {
+
+		RetryPolicy policy = new RetryPolicy(3, 10, 50, 5000);
+
+		assertTrue(policy.isRetryable(new KurentoServerTransportException(
+				"Error connecting with server", new IOException())));
+		assertTrue(policy.isRetryable(new TransportException("Closed")));
+		assertTrue(!policy.isRetryable(new JsonRpcErrorException(
+				new ResponseError(40101, "Object not found"))));
+		assertTrue(!policy.isRetryable(new IllegalStateException()));
+
+		// Timeouts only if the caller opts in
+		assertTrue(!policy.isRetryable(new RequestTimeoutException(
+				"Timeout")));
+		assertTrue(!policy.isRetryable(new KurentoServerTransportException(
+				"Error sending request", new RequestTimeoutException(
+						"Timeout"))));
+		assertTrue(new RetryPolicy(3, 10, 50, 5000, true)
+				.isRetryable(new RequestTimeoutException("Timeout")));
+
+		// Requests sent before losing the connection, as timeouts
+		assertTrue(!policy.isRetryable(new ConnectionLostException(
+				"Connection lost")));
+		assertTrue(!policy.isRetryable(new KurentoServerTransportException(
+				"Error sending request", new ConnectionLostException(
+						"Connection lost"))));
+		assertTrue(new RetryPolicy(3, 10, 50, 5000, true)
+				.isRetryable(new ConnectionLostException("Connection lost")));
+	}
+
+	@Test
+	public void backoffTest() {
+
+		RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0);
+
+		for (int i = 0; i < 100; i++) {
+			long delay = policy.getDelay(2);
+			assertTrue(delay >= 50 && delay <= 100);
+			delay = policy.getDelay(4);
+			assertTrue(delay >= 200 && delay <= 400);
+			delay = policy.getDelay(10);
+			assertTrue(delay >= 500 && delay <= 1000);
+		}
+	}
+}
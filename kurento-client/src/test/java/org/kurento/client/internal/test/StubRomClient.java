@@ -0,0 +1,163 @@
+package org.kurento.client.internal.test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.RomEventHandler;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * In-process {@link RomClient} that answers invocations with configured
+ * results, already flattened as they would be received from the server.
+ * Used to exercise the client side of the ROM without a transport.
+ */
+public class StubRomClient implements RomClient {
+
+	private final Map<String, Object> results = new ConcurrentHashMap<>();
+
+	private final AtomicInteger objectRefs = new AtomicInteger();
+	private final AtomicInteger invocations = new AtomicInteger();
+
+	private volatile Object transactionResult;
+
+	private volatile Props lastParams;
+	private volatile Type lastType;
+	private volatile RomEventHandler eventHandler;
+
+	public StubRomClient withResult(String operationName, Object result) {
+		results.put(operationName, result);
+		return this;
+	}
+
+	/**
+	 * Sets the result of every operation executed in a transaction.
+	 */
+	public StubRomClient withTransactionResult(Object result) {
+		transactionResult = result;
+		return this;
+	}
+
+	public int getInvocations() {
+		return invocations.get();
+	}
+
+	public Props getLastParams() {
+		return lastParams;
+	}
+
+	public Type getLastType() {
+		return lastType;
+	}
+
+	public void fireEvent(String objectRef, String type, Props data) {
+		eventHandler.processEvent(objectRef, "subscription", type, data);
+	}
+
+	@Override
+	public String create(String remoteClassName, Props constructorParams) {
+		return remoteClassName + objectRefs.incrementAndGet();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <E> E invoke(String objectRef, String methodName, Props params,
+			Class<E> clazz) {
+		return (E) invoke(objectRef, methodName, params, (Type) clazz);
+	}
+
+	@Override
+	public Object invoke(String objectRef, String operationName,
+			Props operationParams, Type type) {
+		invocations.incrementAndGet();
+		lastParams = operationParams;
+		lastType = type;
+		return results.get(operationName);
+	}
+
+	@Override
+	public void release(String objectRef) {
+	}
+
+	@Override
+	public String subscribe(String objectRef, String eventType) {
+		return "subscription";
+	}
+
+	@Override
+	public void unsubscribe(String objectRef, String listenerSubscription) {
+	}
+
+	@Override
+	public void transaction(List<Operation> operations) {
+		for (Operation operation : operations) {
+			invocations.incrementAndGet();
+			operation.processResponse(transactionResult);
+		}
+	}
+
+	@Override
+	public String create(String remoteClassName, Props constructorParams,
+			Continuation<String> cont) {
+		String objectRef = create(remoteClassName, constructorParams);
+		onSuccess(cont, objectRef);
+		return objectRef;
+	}
+
+	@Override
+	public Object invoke(String objectRef, String operationName,
+			Props operationParams, Type type, Continuation<?> cont) {
+		Object result = invoke(objectRef, operationName, operationParams, type);
+		onSuccess(cont, result);
+		return null;
+	}
+
+	@Override
+	public void release(String objectRef, Continuation<Void> cont) {
+		onSuccess(cont, null);
+	}
+
+	@Override
+	public String subscribe(String objectRef, String type,
+			Continuation<String> cont) {
+		String subscription = subscribe(objectRef, type);
+		onSuccess(cont, subscription);
+		return subscription;
+	}
+
+	@Override
+	public void unsubscribe(String objectRef, String listenerSubscription,
+			Continuation<Void> cont) {
+		onSuccess(cont, null);
+	}
+
+	@Override
+	public void transaction(List<Operation> operations,
+			Continuation<Void> continuation) {
+		transaction(operations);
+		onSuccess(continuation, null);
+	}
+
+	@Override
+	public void addRomEventHandler(RomEventHandler eventHandler) {
+		this.eventHandler = eventHandler;
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void onSuccess(Continuation cont, Object result) {
+		try {
+			cont.onSuccess(result);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -9,8 +9,10 @@ import org.kurento.client.KurentoObject;
 import org.kurento.client.ListenerSubscription;
 import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.EventSubscription;
 import org.kurento.client.internal.server.Param;
 import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.client.internal.test.model.client.events.SampleSourceEvent;
 
 @RemoteClass
 public interface SampleClass extends KurentoObject {
@@ -71,6 +73,13 @@ public interface SampleClass extends KurentoObject {
 	void addSampleListener(EventListener<SampleEvent> listener,
 			Continuation<ListenerSubscription> cont);
 
+	@EventSubscription(SampleSourceEvent.class)
+	ListenerSubscription addSampleSourceListener(
+			EventListener<SampleSourceEvent> listener);
+
+	@EventSubscription(SampleSourceEvent.class)
+	void removeSampleSourceListener(ListenerSubscription listenerSubscription);
+
 	public static class Builder extends AbstractBuilder<SampleClass> {
 
 		public Builder(String att1, boolean att2, RomManager manager) {
@@ -0,0 +1,31 @@
+package org.kurento.client.internal.test.model.client;
+
+import org.kurento.client.internal.server.Param;
+
+@org.kurento.client.internal.ModuleName("complexParam")
+public class SampleLatencyStat {
+
+	private String name;
+	private SampleEnum type;
+	private float avg;
+
+	public SampleLatencyStat(@Param("name") String name,
+			@Param("type") SampleEnum type, @Param("avg") float avg) {
+		this.name = name;
+		this.type = type;
+		this.avg = avg;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public SampleEnum getType() {
+		return type;
+	}
+
+	public float getAvg() {
+		return avg;
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.kurento.client.internal.test.model.client;
+
+import org.kurento.client.internal.server.Param;
+
+@org.kurento.client.internal.ModuleName("complexParam")
+public class SampleStats {
+
+	private String id;
+	private SampleEnum type;
+	private float timestamp;
+	private boolean active;
+	private SampleLatencyStat audioLatency;
+	private SampleLatencyStat videoLatency;
+
+	public SampleStats(@Param("id") String id, @Param("type") SampleEnum type,
+			@Param("timestamp") float timestamp,
+			@Param("active") boolean active,
+			@Param("audioLatency") SampleLatencyStat audioLatency,
+			@Param("videoLatency") SampleLatencyStat videoLatency) {
+		this.id = id;
+		this.type = type;
+		this.timestamp = timestamp;
+		this.active = active;
+		this.audioLatency = audioLatency;
+		this.videoLatency = videoLatency;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public SampleEnum getType() {
+		return type;
+	}
+
+	public float getTimestamp() {
+		return timestamp;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public SampleLatencyStat getAudioLatency() {
+		return audioLatency;
+	}
+
+	public SampleLatencyStat getVideoLatency() {
+		return videoLatency;
+	}
+
+}
@@ -0,0 +1,34 @@
+package org.kurento.client.internal.test.model.client;
+
+import java.util.List;
+
+import org.kurento.client.internal.server.Param;
+
+@org.kurento.client.internal.ModuleName("complexParam")
+public class SampleStatsGroup {
+
+	private String name;
+	private List<SampleStats> stats;
+	private List<List<SampleEnum>> types;
+
+	public SampleStatsGroup(@Param("name") String name,
+			@Param("stats") List<SampleStats> stats,
+			@Param("types") List<List<SampleEnum>> types) {
+		this.name = name;
+		this.stats = stats;
+		this.types = types;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<SampleStats> getStats() {
+		return stats;
+	}
+
+	public List<List<SampleEnum>> getTypes() {
+		return types;
+	}
+
+}
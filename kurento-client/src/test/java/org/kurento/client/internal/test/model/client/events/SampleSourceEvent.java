@@ -0,0 +1,33 @@
+package org.kurento.client.internal.test.model.client.events;
+
+import org.kurento.client.Event;
+import org.kurento.client.internal.server.Param;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+
+public class SampleSourceEvent implements Event {
+
+	private SampleClass source;
+	private String prop1;
+	private SampleEnum prop2;
+
+	public SampleSourceEvent(@Param("source") SampleClass source,
+			@Param("prop1") String prop1, @Param("prop2") SampleEnum prop2) {
+		this.source = source;
+		this.prop1 = prop1;
+		this.prop2 = prop2;
+	}
+
+	public SampleClass getSource() {
+		return source;
+	}
+
+	public String getProp1() {
+		return prop1;
+	}
+
+	public SampleEnum getProp2() {
+		return prop2;
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Async requests must not be limited by the number of threads of the client.
+ * The handler in "/async_handler" takes one second to respond, so all requests
+ * have to be in flight at the same time to finish before the timeout.
+ */
+public class AsyncClientInFlightRequestsTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(AsyncClientInFlightRequestsTest.class);
+
+	private static final int NUM_REQUESTS = 50;
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/async_handler");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+
+			final CountDownLatch latch = new CountDownLatch(NUM_REQUESTS);
+			final AtomicInteger errors = new AtomicInteger();
+
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				client.sendRequest("count", null,
+						new Continuation<JsonElement>() {
+
+							@Override
+							public void onSuccess(JsonElement result) {
+								latch.countDown();
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								log.error("Error in async request", cause);
+								errors.incrementAndGet();
+								latch.countDown();
+							}
+						});
+			}
+
+			Assert.assertTrue("Async requests have not been sent concurrently",
+					latch.await(4, TimeUnit.SECONDS));
+			Assert.assertEquals(0, errors.get());
+		}
+
+		client.close();
+	}
+
+}
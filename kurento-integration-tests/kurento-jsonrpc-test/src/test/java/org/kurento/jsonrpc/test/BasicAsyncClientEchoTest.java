@@ -3,6 +3,7 @@ package org.kurento.jsonrpc.test;
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -14,6 +15,7 @@ import com.google.gson.JsonObject;
 
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
 import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
 
 public class BasicAsyncClientEchoTest extends JsonRpcConnectorBaseTest {
@@ -64,4 +66,56 @@ public class BasicAsyncClientEchoTest extends JsonRpcConnectorBaseTest {
 		log.info("Client finished");
 	}
 
+	/**
+	 * More continuations than threads of the client make a sync request. The
+	 * requests are written even if all threads are waiting for responses.
+	 */
+	@Test
+	public void syncRequestsInContinuationsTest() throws IOException,
+			InterruptedException {
+
+		final JsonRpcClient client = createJsonRpcClient("/jsonrpc");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			final int numRequests = 20;
+
+			final JsonObject params = new JsonObject();
+			params.addProperty("param1", "Value1");
+
+			final CountDownLatch responses = new CountDownLatch(numRequests);
+			final AtomicInteger errors = new AtomicInteger();
+
+			for (int i = 0; i < numRequests; i++) {
+				client.sendRequest("echo", params,
+						new Continuation<JsonElement>() {
+
+							@Override
+							public void onSuccess(JsonElement result) {
+								try {
+									client.sendRequest("echo", params);
+								} catch (Exception e) {
+									log.error("Exception in nested request", e);
+									errors.incrementAndGet();
+								}
+								responses.countDown();
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								log.error("Exception in request", cause);
+								errors.incrementAndGet();
+								responses.countDown();
+							}
+						});
+			}
+
+			Assert.assertTrue("Nested sync requests not responded",
+					responses.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(0, errors.get());
+		}
+
+		client.close();
+	}
+
 }
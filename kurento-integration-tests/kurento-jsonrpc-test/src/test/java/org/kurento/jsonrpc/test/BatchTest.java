@@ -0,0 +1,134 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class BatchTest extends JsonRpcConnectorBaseTest {
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				final Request<JsonObject> request) throws Exception {
+
+			switch (request.getMethod()) {
+			case "echo":
+				transaction.sendResponse(request.getParams());
+				break;
+			case "delayed":
+				// Responded after the following requests of the batch
+				transaction.startAsync();
+				new Thread() {
+					public void run() {
+						try {
+							Thread.sleep(500);
+							transaction.sendResponse(request.getParams());
+						} catch (Exception e) {
+						}
+					}
+				}.start();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown method "
+						+ request.getMethod());
+			}
+		}
+	}
+
+	private List<Request<JsonObject>> createBatch() {
+
+		List<Request<JsonObject>> requests = new ArrayList<>();
+		requests.add(createRequest("delayed", 0));
+		requests.add(createRequest("echo", 1));
+		requests.add(createRequest("unknown", 2));
+		requests.add(createRequest("echo", 3));
+		return requests;
+	}
+
+	private Request<JsonObject> createRequest(String method, int index) {
+		JsonObject params = new JsonObject();
+		params.addProperty("index", index);
+		return new Request<>(method, params);
+	}
+
+	private void assertResponses(List<Response<JsonElement>> responses) {
+
+		Assert.assertEquals(4, responses.size());
+
+		for (int i = 0; i < responses.size(); i++) {
+			Response<JsonElement> response = responses.get(i);
+			if (i == 2) {
+				Assert.assertTrue(response.isError());
+			} else {
+				Assert.assertFalse(response.isError());
+				Assert.assertEquals(i, response.getResult().getAsJsonObject()
+						.get("index").getAsInt());
+			}
+		}
+	}
+
+	@Test
+	public void syncBatchTest() throws IOException {
+
+		JsonRpcClient client = createJsonRpcClient("/batch");
+
+		assertResponses(client.sendBatch(createBatch()));
+
+		client.close();
+	}
+
+	@Test
+	public void asyncBatchTest() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/batch");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicReference<List<Response<JsonElement>>> result = new AtomicReference<>();
+
+			client.sendBatch(createBatch(),
+					new Continuation<List<Response<JsonElement>>>() {
+
+						@Override
+						public void onSuccess(
+								List<Response<JsonElement>> responses) {
+							result.set(responses);
+							latch.countDown();
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							latch.countDown();
+						}
+					});
+
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+			Assert.assertNotNull("Batch failed", result.get());
+			assertResponses(result.get());
+		}
+
+		client.close();
+	}
+
+}
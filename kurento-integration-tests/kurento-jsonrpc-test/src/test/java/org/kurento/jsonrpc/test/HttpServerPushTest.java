@@ -0,0 +1,110 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientHttp;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Notifications and requests sent from server to an HTTP client have to be
+ * delivered as soon as they are produced, not in the next periodic poll.
+ */
+public class HttpServerPushTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_EVENTS = 5;
+
+	private static final long MAX_EVENT_LATENCY = 500;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonElement> {
+
+		private static Logger log = LoggerFactory.getLogger(Handler.class);
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonElement> request) throws Exception {
+
+			final Session session = transaction.getSession();
+
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < NUM_EVENTS; i++) {
+							Thread.sleep(300);
+							session.sendNotification("event",
+									System.currentTimeMillis());
+						}
+
+						JsonElement echo = session.sendRequest("echo",
+								"fromServer");
+						session.sendNotification("echoResult", echo);
+
+					} catch (Exception e) {
+						log.error("Exception sending messages to the client", e);
+					}
+				}
+			}.start();
+
+			transaction.sendResponse("started");
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		final BlockingQueue<Long> latencies = new LinkedBlockingQueue<>();
+		final BlockingQueue<String> echoResults = new LinkedBlockingQueue<>();
+
+		try (JsonRpcClientHttp client = new JsonRpcClientHttp(
+				"http://localhost:" + getPort() + "/http_server_push")) {
+
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<JsonElement> request) throws Exception {
+
+					switch (request.getMethod()) {
+					case "event":
+						latencies.add(System.currentTimeMillis()
+								- request.getParams().getAsLong());
+						break;
+					case "echo":
+						transaction.sendResponse(request.getParams());
+						break;
+					case "echoResult":
+						echoResults.add(request.getParams().getAsString());
+						break;
+					}
+				}
+			});
+
+			Assert.assertEquals("started",
+					client.sendRequest("start", String.class));
+
+			for (int i = 0; i < NUM_EVENTS; i++) {
+				Long latency = latencies.poll(5, TimeUnit.SECONDS);
+				Assert.assertNotNull("Event not received", latency);
+				Assert.assertTrue("Event received after " + latency + "ms",
+						latency < MAX_EVENT_LATENCY);
+			}
+
+			Assert.assertEquals("fromServer",
+					echoResults.poll(5, TimeUnit.SECONDS));
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.TooManyInFlightRequestsException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.InFlightRequestsLimiter;
+import org.kurento.jsonrpc.internal.InFlightRequestsLimiter.OverflowPolicy;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * A burst of async requests is sent to a server that responds each one after
+ * some time. The server never sees more concurrent requests than the limit
+ * configured in the client.
+ */
+public class InFlightRequestsLimitTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 50;
+	private static final int MAX_IN_FLIGHT_REQUESTS = 5;
+	private static final long RESPONSE_DELAY = 50;
+
+	private static final AtomicInteger concurrentRequests = new AtomicInteger();
+	private static final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+	private static final ScheduledExecutorService responder = Executors
+			.newSingleThreadScheduledExecutor();
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			int current = concurrentRequests.incrementAndGet();
+			int max;
+			while (current > (max = maxConcurrentRequests.get())) {
+				if (maxConcurrentRequests.compareAndSet(max, current)) {
+					break;
+				}
+			}
+
+			transaction.startAsync();
+
+			responder.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						concurrentRequests.decrementAndGet();
+						transaction.sendResponse("done");
+					} catch (IOException e) {
+					}
+				}
+			}, RESPONSE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static class CountingContinuation implements
+			Continuation<JsonElement> {
+
+		private final CountDownLatch latch;
+		private final AtomicInteger successes = new AtomicInteger();
+		private final AtomicInteger rejections = new AtomicInteger();
+
+		public CountingContinuation(int requests) {
+			this.latch = new CountDownLatch(requests);
+		}
+
+		@Override
+		public void onSuccess(JsonElement result) {
+			successes.incrementAndGet();
+			latch.countDown();
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			if (cause instanceof TooManyInFlightRequestsException) {
+				rejections.incrementAndGet();
+			}
+			latch.countDown();
+		}
+	}
+
+	@Test
+	public void queuePolicyTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/in_flight_limit");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+			client.setMaxInFlightRequests(MAX_IN_FLIGHT_REQUESTS);
+			maxConcurrentRequests.set(0);
+
+			CountingContinuation continuation = new CountingContinuation(
+					NUM_REQUESTS);
+
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				client.sendRequest("burst", null, continuation);
+			}
+
+			InFlightRequestsLimiter limiter = client.getInFlightRequestsLimiter();
+			Assert.assertEquals(MAX_IN_FLIGHT_REQUESTS,
+					limiter.getInFlightRequests());
+			Assert.assertEquals(NUM_REQUESTS - MAX_IN_FLIGHT_REQUESTS,
+					limiter.getQueuedRequests());
+
+			Assert.assertTrue("Responses not received in 20s",
+					continuation.latch.await(20, TimeUnit.SECONDS));
+
+			Assert.assertEquals(NUM_REQUESTS, continuation.successes.get());
+			Assert.assertTrue("Server received " + maxConcurrentRequests.get()
+					+ " concurrent requests",
+					maxConcurrentRequests.get() <= MAX_IN_FLIGHT_REQUESTS);
+
+			Assert.assertEquals(0, limiter.getQueuedRequests());
+			Assert.assertEquals(NUM_REQUESTS - MAX_IN_FLIGHT_REQUESTS,
+					limiter.getDequeuedRequests());
+			Assert.assertTrue(limiter.getMaxQueueWaitTime() >= RESPONSE_DELAY);
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void rejectPolicyTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/in_flight_limit");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+			client.setMaxInFlightRequests(MAX_IN_FLIGHT_REQUESTS);
+			client.setInFlightOverflowPolicy(OverflowPolicy.REJECT);
+
+			CountingContinuation continuation = new CountingContinuation(
+					NUM_REQUESTS);
+
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				client.sendRequest("burst", null, continuation);
+			}
+
+			Assert.assertTrue("Responses not received in 20s",
+					continuation.latch.await(20, TimeUnit.SECONDS));
+
+			Assert.assertEquals(MAX_IN_FLIGHT_REQUESTS,
+					continuation.successes.get());
+			Assert.assertEquals(NUM_REQUESTS - MAX_IN_FLIGHT_REQUESTS,
+					continuation.rejections.get());
+			Assert.assertEquals(NUM_REQUESTS - MAX_IN_FLIGHT_REQUESTS, client
+					.getInFlightRequestsLimiter().getRejectedRequests());
+		}
+
+		client.close();
+	}
+}
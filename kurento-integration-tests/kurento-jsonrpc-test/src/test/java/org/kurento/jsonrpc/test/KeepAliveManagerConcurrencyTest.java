@@ -0,0 +1,119 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.KeepAliveManager;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The server responds each keepAlive after some time. If keepAlives were sent
+ * one by one, a round for all ids would last much more than the keepAlive
+ * interval.
+ */
+public class KeepAliveManagerConcurrencyTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_IDS = 50;
+	private static final int KEEPALIVE_INTERVAL_TIME = 500;
+	private static final long RESPONSE_DELAY = 300;
+
+	private static final Set<String> keepAliveIds = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private static final ScheduledExecutorService responder = Executors
+			.newSingleThreadScheduledExecutor();
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			keepAliveIds.add(request.getParams().get("object").getAsString());
+
+			transaction.startAsync();
+
+			responder.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						transaction.sendResponse(null);
+					} catch (IOException e) {
+					}
+				}
+			}, RESPONSE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void concurrentKeepAlivesTest() throws Exception {
+		testKeepAlives(0);
+	}
+
+	@Test
+	public void batchedKeepAlivesTest() throws Exception {
+		testKeepAlives(10);
+	}
+
+	@Test
+	public void limitedKeepAlivesTest() throws Exception {
+		testKeepAlives(0, NUM_IDS / 2, 0);
+	}
+
+	private void testKeepAlives(int batchSize) throws Exception {
+		testKeepAlives(batchSize,
+				KeepAliveManager.DEFAULT_MAX_CONCURRENT_KEEP_ALIVES,
+				KeepAliveManager.DEFAULT_JITTER);
+	}
+
+	private void testKeepAlives(int batchSize, int maxConcurrentKeepAlives,
+			double jitter) throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/keepalive_concurrency");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			keepAliveIds.clear();
+
+			KeepAliveManager keepAliveManager = new KeepAliveManager(client,
+					KEEPALIVE_INTERVAL_TIME,
+					KeepAliveManager.Mode.PER_ID_AS_SESSION);
+			keepAliveManager.setBatchSize(batchSize);
+			keepAliveManager.setMaxConcurrentKeepAlives(maxConcurrentKeepAlives);
+			keepAliveManager.setJitter(jitter);
+
+			for (int i = 0; i < NUM_IDS; i++) {
+				keepAliveManager.addId("pipeline" + i);
+			}
+
+			keepAliveManager.start();
+
+			// First round starts after an interval and lasts at most the jitter
+			// plus the time of the requests in flight. KeepAlives over the max
+			// in flight are sent as the first ones are responded
+			Thread.sleep(KEEPALIVE_INTERVAL_TIME * 2);
+
+			keepAliveManager.stop();
+
+			Assert.assertEquals("KeepAlives not sent for all ids in a round",
+					NUM_IDS, keepAliveIds.size());
+		}
+
+		client.close();
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Multi-megabyte messages are sent in several WebSocket frames in both
+ * directions, with and without compression.
+ */
+public class LargeMessagesTest extends JsonRpcConnectorBaseTest {
+
+	private static final int PAYLOAD_SIZE = 4 * 1024 * 1024;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	@Test
+	public void largeMessagesTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/large_messages");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+			echoLargeMessages(client);
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void compressedLargeMessagesTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/large_messages");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket wsClient = (JsonRpcClientWebSocket) client;
+			wsClient.setPerMessageDeflateEnabled(true);
+
+			echoLargeMessages(client);
+
+			Assert.assertTrue(wsClient.isPerMessageDeflateNegotiated());
+		}
+
+		client.close();
+	}
+
+	private void echoLargeMessages(JsonRpcClient client) throws Exception {
+
+		// Non-ASCII chars and surrogate pairs are split between fragments
+		String data = createPayload("sdp-\u00f1\ud83d\ude00-", PAYLOAD_SIZE);
+
+		for (int i = 0; i < 3; i++) {
+
+			JsonObject params = new JsonObject();
+			params.addProperty("data", data + i);
+
+			JsonObject result = client.sendRequest("echo", params,
+					JsonObject.class);
+
+			Assert.assertEquals(data + i, result.get("data").getAsString());
+		}
+	}
+
+	private String createPayload(String pattern, int size) {
+		StringBuilder sb = new StringBuilder(size + pattern.length());
+		while (sb.length() < size) {
+			sb.append(pattern);
+		}
+		return sb.toString();
+	}
+}
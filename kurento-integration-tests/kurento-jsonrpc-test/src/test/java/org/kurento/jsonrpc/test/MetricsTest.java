@@ -0,0 +1,105 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.MethodMetrics;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Requests are counted per method in both peers, with the ones responded with
+ * an error counted as failed.
+ */
+public class MetricsTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 10;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if (request.getMethod().startsWith("metricsFail")) {
+				transaction.sendError(1, "Failed", null);
+			} else {
+				transaction.sendResponse(request.getParams());
+			}
+		}
+	}
+
+	@Test
+	public void requestMetricsTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/metrics");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			InMemoryJsonRpcMetrics clientMetrics = new InMemoryJsonRpcMetrics();
+			client.setMetrics(clientMetrics);
+
+			JsonObject params = new JsonObject();
+			params.addProperty("value", 1);
+
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				JsonElement result = client.sendRequest("metricsEcho", params);
+				Assert.assertEquals(params, result);
+			}
+
+			try {
+				client.sendRequest("metricsFail", params);
+				Assert.fail("JsonRpcErrorException expected");
+			} catch (JsonRpcErrorException e) {
+				Assert.assertEquals(1, e.getCode());
+			}
+
+			MethodMetrics echo = clientMetrics.getOutgoing("metricsEcho");
+			Assert.assertEquals(NUM_REQUESTS, echo.getCount());
+			Assert.assertEquals(0, echo.getErrorCount());
+			Assert.assertEquals(0, echo.getInFlight());
+			Assert.assertTrue(echo.getMaxLatencyNanos() > 0);
+
+			MethodMetrics fail = clientMetrics.getOutgoing("metricsFail");
+			Assert.assertEquals(1, fail.getCount());
+			Assert.assertEquals(1, fail.getErrorCount());
+
+			Assert.assertTrue(clientMetrics.getMessagesSent() > NUM_REQUESTS);
+			Assert.assertTrue(clientMetrics.getMessagesReceived() > NUM_REQUESTS);
+
+			InMemoryJsonRpcMetrics serverMetrics = (InMemoryJsonRpcMetrics) context
+					.getBean(JsonRpcMetrics.class);
+
+			// The server completes a request after sending its response
+			MethodMetrics serverEcho = serverMetrics.getIncoming("metricsEcho");
+			waitForCompletion(serverEcho);
+			Assert.assertEquals(NUM_REQUESTS, serverEcho.getCount());
+			Assert.assertEquals(0, serverEcho.getErrorCount());
+
+			MethodMetrics serverFail = serverMetrics.getIncoming("metricsFail");
+			waitForCompletion(serverFail);
+			Assert.assertEquals(1, serverFail.getCount());
+			Assert.assertEquals(1, serverFail.getErrorCount());
+		}
+
+		client.close();
+	}
+
+	private void waitForCompletion(MethodMetrics metrics)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (metrics.getInFlight() > 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+}
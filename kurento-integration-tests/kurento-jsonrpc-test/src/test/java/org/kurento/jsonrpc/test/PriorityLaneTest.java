@@ -0,0 +1,192 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * A ping sent while a large amount of notifications is being written to the
+ * client is responded before the queued notifications. It is also responded
+ * while all threads of the client are busy handling notifications.
+ */
+public class PriorityLaneTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(PriorityLaneTest.class);
+
+	private static final int NUM_NOTIFICATIONS = 50;
+	private static final int NOTIFICATION_SIZE = 512 * 1024;
+
+	private static final long PING_DEADLINE = 2000;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			StringBuilder sb = new StringBuilder(NOTIFICATION_SIZE);
+			while (sb.length() < NOTIFICATION_SIZE) {
+				sb.append("payload-");
+			}
+
+			// Notifications are queued without waiting for them to be written
+			for (int i = 0; i < NUM_NOTIFICATIONS; i++) {
+				JsonObject params = new JsonObject();
+				params.addProperty("index", i);
+				params.addProperty("data", sb.toString());
+				transaction.getSession().sendNotification("data", params);
+			}
+
+			transaction.sendResponse("flooded");
+		}
+	}
+
+	@Test
+	public void pingWithSaturatedConnectionTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/priority_lane");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			final CountDownLatch firstNotification = new CountDownLatch(1);
+			final CountDownLatch lastNotification = new CountDownLatch(1);
+			final AtomicBoolean pongReceived = new AtomicBoolean();
+			final AtomicBoolean pongBeforeLast = new AtomicBoolean();
+
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<JsonObject> request) throws Exception {
+					firstNotification.countDown();
+					// Notifications are handled by several threads, so the
+					// last one written is identified by its index
+					int index = request.getParams().get("index").getAsInt();
+					if (index == NUM_NOTIFICATIONS - 1) {
+						pongBeforeLast.set(pongReceived.get());
+						lastNotification.countDown();
+					}
+				}
+			});
+
+			CountDownLatch floodResponse = sendFlood(client);
+
+			Assert.assertTrue("No notification received",
+					firstNotification.await(10, TimeUnit.SECONDS));
+
+			long start = System.currentTimeMillis();
+			String pong = client.sendRequest(JsonRpcConstants.METHOD_PING,
+					String.class);
+			long pingTime = System.currentTimeMillis() - start;
+			pongReceived.set(true);
+
+			Assert.assertEquals(JsonRpcConstants.PONG, pong);
+			Assert.assertTrue("Ping responded in " + pingTime + " ms",
+					pingTime < PING_DEADLINE);
+
+			Assert.assertTrue("Last notification not received",
+					lastNotification.await(30, TimeUnit.SECONDS));
+			Assert.assertTrue("Pong received after all notifications",
+					pongBeforeLast.get());
+
+			Assert.assertTrue("Flood request not responded",
+					floodResponse.await(30, TimeUnit.SECONDS));
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void pingWithSaturatedClientThreadsTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/priority_lane");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			final AtomicInteger handledNotifications = new AtomicInteger();
+			final CountDownLatch allNotifications = new CountDownLatch(
+					NUM_NOTIFICATIONS);
+			final CountDownLatch firstNotification = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+
+			// Every thread of the client is blocked handling a notification
+			// until the ping is responded
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+				@Override
+				public void handleRequest(Transaction transaction,
+						Request<JsonObject> request) throws Exception {
+					firstNotification.countDown();
+					release.await(30, TimeUnit.SECONDS);
+					handledNotifications.incrementAndGet();
+					allNotifications.countDown();
+				}
+			});
+
+			CountDownLatch floodResponse = sendFlood(client);
+
+			Assert.assertTrue("No notification received",
+					firstNotification.await(10, TimeUnit.SECONDS));
+
+			long start = System.currentTimeMillis();
+			String pong;
+			try {
+				pong = client.sendRequest(JsonRpcConstants.METHOD_PING,
+						String.class);
+			} finally {
+				release.countDown();
+			}
+			long pingTime = System.currentTimeMillis() - start;
+
+			Assert.assertEquals(JsonRpcConstants.PONG, pong);
+			Assert.assertTrue("Ping responded in " + pingTime + " ms",
+					pingTime < PING_DEADLINE);
+			Assert.assertEquals("Notifications handled before the pong", 0,
+					handledNotifications.get());
+
+			Assert.assertTrue("Notifications not handled",
+					allNotifications.await(30, TimeUnit.SECONDS));
+			Assert.assertTrue("Flood request not responded",
+					floodResponse.await(30, TimeUnit.SECONDS));
+		}
+
+		client.close();
+	}
+
+	private CountDownLatch sendFlood(JsonRpcClient client) throws Exception {
+
+		final CountDownLatch floodResponse = new CountDownLatch(1);
+
+		client.sendRequest("flood", new JsonObject(),
+				new Continuation<JsonElement>() {
+
+					@Override
+					public void onSuccess(JsonElement result) {
+						floodResponse.countDown();
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						log.error("Exception in flood request", cause);
+					}
+				});
+
+		return floodResponse;
+	}
+}
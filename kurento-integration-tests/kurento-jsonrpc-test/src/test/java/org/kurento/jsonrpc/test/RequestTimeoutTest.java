@@ -0,0 +1,128 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class RequestTimeoutTest extends JsonRpcConnectorBaseTest {
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			// The response is never sent
+			transaction.startAsync();
+		}
+	}
+
+	private static class ErrorContinuation<F> implements Continuation<F> {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+		@Override
+		public void onSuccess(F result) {
+			latch.countDown();
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			error.set(cause);
+			latch.countDown();
+		}
+
+		public Throwable await() throws InterruptedException {
+			Assert.assertTrue("Continuation has not been invoked",
+					latch.await(5, TimeUnit.SECONDS));
+			return error.get();
+		}
+	}
+
+	@Test
+	public void syncRequestTimeoutTest() throws IOException {
+
+		JsonRpcClient client = createJsonRpcClient("/timeout");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			((JsonRpcClientWebSocket) client).setRequestTimeout(500);
+
+			long start = System.currentTimeMillis();
+			try {
+				client.sendRequest("never");
+				Assert.fail("RequestTimeoutException should be thrown");
+			} catch (RequestTimeoutException e) {
+				long duration = System.currentTimeMillis() - start;
+				Assert.assertTrue("Request timed out too late: " + duration,
+						duration < 2000);
+			}
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void asyncRequestTimeoutTest() throws IOException,
+			InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/timeout");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+
+			Request<JsonObject> request = new Request<>("never",
+					new JsonObject());
+			request.setTimeout(500);
+
+			ErrorContinuation<Response<JsonElement>> continuation = new ErrorContinuation<>();
+			client.sendRequest(request, continuation);
+
+			Assert.assertTrue(continuation.await() instanceof RequestTimeoutException);
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void pendingRequestsClosedTest() throws IOException,
+			InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/timeout");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.connect();
+
+			ErrorContinuation<JsonElement> continuation = new ErrorContinuation<>();
+			client.sendRequest("never", null, continuation);
+
+			client.close();
+
+			Assert.assertTrue(continuation.await() instanceof TransportException);
+
+		} else {
+			client.close();
+		}
+	}
+
+}
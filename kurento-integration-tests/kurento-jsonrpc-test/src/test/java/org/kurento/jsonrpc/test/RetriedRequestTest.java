@@ -0,0 +1,173 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.server.ResponseCache;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A request whose connection is lost between its execution and the delivery
+ * of its response is retried by the client after reconnecting. It is
+ * responded with the response of the original request, without executing it
+ * again.
+ */
+public class RetriedRequestTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RetriedRequestTest.class);
+
+	private static final AtomicInteger executions = new AtomicInteger();
+
+	private static volatile CountDownLatch executing;
+	private static volatile CountDownLatch release;
+	private static volatile CountDownLatch responded;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if (!request.getMethod().equals("create")) {
+				transaction.sendResponse("ok");
+				return;
+			}
+
+			final int execution = executions.incrementAndGet();
+			executing.countDown();
+
+			// The response is sent once the test has closed the connection
+			transaction.startAsync();
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+						transaction.sendResponse("element" + execution);
+					} catch (Exception e) {
+						log.debug("Response not sent", e);
+					} finally {
+						responded.countDown();
+					}
+				}
+			}.start();
+		}
+	}
+
+	@Test
+	public void retryWhileExecutingTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/retried_request");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket wsClient = (JsonRpcClientWebSocket) client;
+			reset(wsClient);
+
+			ResponseCache cache = context.getBean(ResponseCache.class);
+			long retried = cache.getRetriedCount();
+
+			Future<String> result = sendCreate(client);
+			Assert.assertTrue(executing.await(10, TimeUnit.SECONDS));
+
+			wsClient.closeNativeSession();
+
+			// The retried request waits for the original one
+			long deadline = System.currentTimeMillis() + 10000;
+			while (cache.getRetriedCount() == retried
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(retried + 1, cache.getRetriedCount());
+
+			release.countDown();
+
+			Assert.assertEquals("element1", result.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals(1, executions.get());
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void retryAfterResponseTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/retried_request");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket wsClient = (JsonRpcClientWebSocket) client;
+			reset(wsClient);
+
+			// The request is retried once its response has been lost
+			wsClient.setReconnectionInitialDelay(1000);
+
+			Future<String> result = sendCreate(client);
+			Assert.assertTrue(executing.await(10, TimeUnit.SECONDS));
+
+			wsClient.closeNativeSession();
+			release.countDown();
+			Assert.assertTrue(responded.await(10, TimeUnit.SECONDS));
+
+			Assert.assertEquals("element1", result.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals(1, executions.get());
+
+			// Requests with a new id are executed
+			Assert.assertEquals("element2",
+					client.sendRequest("create", String.class));
+		}
+
+		client.close();
+	}
+
+	private void reset(JsonRpcClientWebSocket client) throws IOException {
+
+		executions.set(0);
+		executing = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		responded = new CountDownLatch(1);
+
+		client.setIdempotentMethods(new HashSet<>(Arrays.asList("create",
+				JsonRpcConstants.METHOD_PING,
+				JsonRpcConstants.METHOD_KEEP_ALIVE)));
+
+		// The session is needed to reconnect
+		client.sendRequest("init");
+	}
+
+	private Future<String> sendCreate(final JsonRpcClient client) {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			return executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return client.sendRequest("create", String.class);
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.server.config.JsonRpcProperties;
+import org.kurento.jsonrpc.internal.server.config.JsonRpcTaskExecutor;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Requests sent from server to client must not block a thread while waiting
+ * for the response. The client responds each request after 500ms, so all of
+ * them have to be in flight at the same time to finish before the timeout.
+ */
+public class ServerAsyncRequestsTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 50;
+
+	public static class Handler extends DefaultJsonRpcHandler<Integer> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<Integer> request) throws Exception {
+
+			transaction.startAsync();
+
+			final int numRequests = request.getParams();
+			final AtomicInteger pending = new AtomicInteger(numRequests);
+			final AtomicInteger successes = new AtomicInteger();
+
+			for (int i = 0; i < numRequests; i++) {
+				transaction.getSession().sendRequest("slow", null,
+						new Continuation<JsonElement>() {
+
+							@Override
+							public void onSuccess(JsonElement result) {
+								successes.incrementAndGet();
+								done();
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								done();
+							}
+
+							private void done() {
+								if (pending.decrementAndGet() == 0) {
+									try {
+										transaction.sendResponse(successes
+												.get());
+									} catch (IOException e) {
+									}
+								}
+							}
+						});
+			}
+		}
+	}
+
+	@Test
+	public void test() throws IOException {
+
+		JsonRpcClient client = createJsonRpcClient("/server_async_requests");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+
+				@Override
+				public void handleRequest(final Transaction transaction,
+						Request<JsonElement> request) throws Exception {
+
+					transaction.startAsync();
+
+					new Thread() {
+						public void run() {
+							try {
+								Thread.sleep(500);
+								transaction.sendResponse("slowResponse");
+							} catch (Exception e) {
+							}
+						}
+					}.start();
+				}
+			});
+
+			long start = System.currentTimeMillis();
+
+			int successes = client.sendRequest("start", NUM_REQUESTS,
+					Integer.class);
+
+			long duration = System.currentTimeMillis() - start;
+
+			Assert.assertEquals(NUM_REQUESTS, successes);
+			Assert.assertTrue("Server requests have not been sent concurrently: "
+					+ duration + "ms", duration < 2000);
+
+			JsonRpcTaskExecutor executor = context
+					.getBean(JsonRpcTaskExecutor.class);
+			Assert.assertTrue(executor.getLargestPoolSize() <= context.getBean(
+					JsonRpcProperties.class).getTaskExecutorPoolSize());
+		}
+
+		client.close();
+	}
+
+}
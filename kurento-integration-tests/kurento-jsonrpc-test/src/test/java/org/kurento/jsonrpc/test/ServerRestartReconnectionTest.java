@@ -0,0 +1,197 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The server is stopped and started again while the client is connected.
+ * Requests sent meanwhile are buffered and idempotent requests not responded
+ * are sent again after reconnecting.
+ */
+public class ServerRestartReconnectionTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 10;
+
+	private static final AtomicInteger holdRequests = new AtomicInteger();
+	private static final CountDownLatch heldRequestsReceived = new CountDownLatch(
+			2);
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			String method = request.getMethod();
+
+			if ("hold".equals(method) && holdRequests.getAndIncrement() == 0
+					|| "holdNotIdempotent".equals(method)) {
+				// Never responded, the server is stopped before
+				transaction.startAsync();
+				heldRequestsReceived.countDown();
+			} else {
+				transaction.sendResponse(method);
+			}
+		}
+	}
+
+	private static class ResultContinuation implements
+			Continuation<JsonElement> {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private final AtomicReference<Object> result = new AtomicReference<>();
+
+		@Override
+		public void onSuccess(JsonElement result) {
+			this.result.set(result.getAsJsonObject().get("value")
+					.getAsString());
+			latch.countDown();
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			this.result.set(cause);
+			latch.countDown();
+		}
+
+		public Object await() throws InterruptedException {
+			Assert.assertTrue("Response not received in 30s",
+					latch.await(30, TimeUnit.SECONDS));
+			return result.get();
+		}
+	}
+
+	@Test
+	public void reconnectAfterServerRestartTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/server_restart");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket webSocketClient = (JsonRpcClientWebSocket) client;
+			webSocketClient.setMaxReconnectionTime(60000);
+
+			Assert.assertEquals("echo", client.sendRequest("echo", String.class));
+
+			restartServer(webSocketClient, new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+
+			Assert.assertEquals("echo", client.sendRequest("echo", String.class));
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void requestsSentWhileReconnectingTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/server_restart");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			final JsonRpcClientWebSocket webSocketClient = (JsonRpcClientWebSocket) client;
+			webSocketClient.setMaxReconnectionTime(60000);
+
+			Assert.assertEquals("echo", client.sendRequest("echo", String.class));
+
+			final ResultContinuation[] continuations = new ResultContinuation[NUM_REQUESTS];
+
+			restartServer(webSocketClient, new Runnable() {
+				@Override
+				public void run() {
+
+					long startTime = System.currentTimeMillis();
+
+					for (int i = 0; i < NUM_REQUESTS; i++) {
+						continuations[i] = new ResultContinuation();
+						webSocketClient.sendRequest("echo", null,
+								continuations[i]);
+					}
+
+					long time = System.currentTimeMillis() - startTime;
+					Assert.assertTrue("Callers blocked " + time
+							+ "ms while reconnecting", time < 1000);
+				}
+			});
+
+			for (ResultContinuation continuation : continuations) {
+				Assert.assertEquals("echo", continuation.await());
+			}
+		}
+
+		client.close();
+	}
+
+	@Test
+	public void idempotentRequestsReplayedTest() throws Exception {
+
+		JsonRpcClient client = createJsonRpcClient("/server_restart");
+
+		if (client instanceof JsonRpcClientWebSocket) {
+
+			JsonRpcClientWebSocket webSocketClient = (JsonRpcClientWebSocket) client;
+			webSocketClient.setMaxReconnectionTime(60000);
+			webSocketClient.setIdempotentMethods(Collections.singleton("hold"));
+
+			ResultContinuation hold = new ResultContinuation();
+			ResultContinuation holdNotIdempotent = new ResultContinuation();
+
+			client.sendRequest("hold", null, hold);
+			client.sendRequest("holdNotIdempotent", null, holdNotIdempotent);
+
+			Assert.assertTrue(heldRequestsReceived.await(10, TimeUnit.SECONDS));
+
+			restartServer(webSocketClient, new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+
+			Assert.assertTrue(holdNotIdempotent.await() instanceof TransportException);
+			Assert.assertEquals("hold", hold.await());
+		}
+
+		client.close();
+	}
+
+	/**
+	 * Stops the server, executes the task once the client is reconnecting and
+	 * starts the server again.
+	 */
+	private void restartServer(JsonRpcClientWebSocket client,
+			Runnable whileReconnecting) throws Exception {
+
+		stop();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!client.isReconnecting()) {
+			Assert.assertTrue("Client not reconnecting in 10s",
+					System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		whileReconnecting.run();
+
+		start();
+	}
+}
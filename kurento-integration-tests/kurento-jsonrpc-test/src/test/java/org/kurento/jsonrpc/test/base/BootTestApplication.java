@@ -4,16 +4,27 @@ import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
 import org.kurento.jsonrpc.test.AsyncServerTest;
+import org.kurento.jsonrpc.test.BatchTest;
 import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
 import org.kurento.jsonrpc.test.ConnectionListenerTest;
 import org.kurento.jsonrpc.test.ErrorServerTest;
+import org.kurento.jsonrpc.test.HttpServerPushTest;
+import org.kurento.jsonrpc.test.InFlightRequestsLimitTest;
+import org.kurento.jsonrpc.test.KeepAliveManagerConcurrencyTest;
+import org.kurento.jsonrpc.test.LargeMessagesTest;
+import org.kurento.jsonrpc.test.MetricsTest;
 import org.kurento.jsonrpc.test.MultipleSessionsTest;
 import org.kurento.jsonrpc.test.NewSessionTest;
 import org.kurento.jsonrpc.test.NotificationTest;
+import org.kurento.jsonrpc.test.PriorityLaneTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
+import org.kurento.jsonrpc.test.RequestTimeoutTest;
+import org.kurento.jsonrpc.test.RetriedRequestTest;
+import org.kurento.jsonrpc.test.ServerAsyncRequestsTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
+import org.kurento.jsonrpc.test.ServerRestartReconnectionTest;
 import org.kurento.jsonrpc.test.handler.EchoJsonRpcHandler;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -61,6 +72,34 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
 		registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+		registry.addHandler(new RequestTimeoutTest.Handler(), "/timeout");
+
+		registry.addHandler(new BatchTest.Handler(), "/batch");
+
+		registry.addHandler(new ServerAsyncRequestsTest.Handler(),
+				"/server_async_requests");
+
+		registry.addHandler(new HttpServerPushTest.Handler(),
+				"/http_server_push");
+
+		registry.addHandler(new KeepAliveManagerConcurrencyTest.Handler(),
+				"/keepalive_concurrency");
+
+		registry.addHandler(new ServerRestartReconnectionTest.Handler(),
+				"/server_restart");
+
+		registry.addHandler(new InFlightRequestsLimitTest.Handler(),
+				"/in_flight_limit");
+
+		registry.addHandler(new LargeMessagesTest.Handler(), "/large_messages");
+
+		registry.addHandler(new PriorityLaneTest.Handler(), "/priority_lane");
+
+		registry.addHandler(new MetricsTest.Handler(), "/metrics");
+
+		registry.addHandler(new RetriedRequestTest.Handler(),
+				"/retried_request");
+
 	}
 
 	@Bean
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.test.fakekms;
+
+import org.kurento.jsonrpc.internal.server.config.JsonRpcConfiguration;
+import org.kurento.jsonrpc.server.JsonRpcConfigurer;
+import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Spring Boot application serving a {@link FakeKmsHandler} through
+ * WebSockets.
+ *
+ * @since 6.0.0
+ */
+@Configuration
+@ComponentScan(basePackageClasses = { JsonRpcConfiguration.class })
+@EnableAutoConfiguration
+public class FakeKmsApp implements JsonRpcConfigurer {
+
+	public static final String PATH_PROPERTY = "fakeKms.path";
+
+	@Autowired
+	private FakeKmsHandler handler;
+
+	@Value("${" + PATH_PROPERTY + ":kurento}")
+	private String path;
+
+	@Override
+	public void registerJsonRpcHandlers(JsonRpcHandlerRegistry registry) {
+		registry.addHandler(handler, "/" + path);
+	}
+
+	/**
+	 * Starts a fake KMS.
+	 *
+	 * @param handler
+	 *            The handler of the requests
+	 * @param port
+	 *            The HTTP port
+	 * @param path
+	 *            The path of the WebSocket endpoint, without leading slash
+	 * @return the application context, to be closed when the fake KMS is not
+	 *         needed anymore
+	 */
+	public static ConfigurableApplicationContext start(
+			final FakeKmsHandler handler, int port, String path) {
+
+		SpringApplication application = new SpringApplication(
+				FakeKmsApp.class);
+
+		application
+				.addInitializers(new ApplicationContextInitializer<ConfigurableApplicationContext>() {
+					@Override
+					public void initialize(
+							ConfigurableApplicationContext context) {
+						context.getBeanFactory().registerSingleton(
+								"fakeKmsHandler", handler);
+					}
+				});
+
+		return application.run("--server.port=" + port, "--" + PATH_PROPERTY
+				+ "=" + path);
+	}
+
+}
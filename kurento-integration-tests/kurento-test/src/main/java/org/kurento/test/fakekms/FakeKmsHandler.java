@@ -0,0 +1,657 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.test.fakekms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Handler implementing the Kurento Media Server protocol over an in-memory
+ * object graph, so clients and servers using KMS can be tested and
+ * benchmarked without a media server.
+ * <ul>
+ * <li>{@code create}, {@code invoke}, {@code release}, {@code subscribe},
+ * {@code unsubscribe}, {@code keepAlive} and {@code transaction} requests are
+ * supported. {@code ping} is answered by the JSON-RPC server.</li>
+ * <li>Objects created with a {@code mediaPipeline} (or any other existing
+ * object) as constructor param are children of it, and are released with
+ * it.</li>
+ * <li>{@code setXxx} operations store a property returned by {@code getXxx}
+ * operations. Connections, pipelines, children and SDP negotiation are
+ * simulated. Other operations return {@code null}.</li>
+ * <li>Synthetic events can be sent to subscribers at a configurable rate.</li>
+ * <li>Responses can be delayed and operations can fail with a configurable
+ * probability.</li>
+ * </ul>
+ *
+ * @since 6.0.0
+ */
+public class FakeKmsHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+	/** Error code of KMS when the object of a request does not exist */
+	public static final int OBJECT_NOT_FOUND_ERROR = 40101;
+
+	/** Error code of the faults injected in operations */
+	public static final int INJECTED_FAULT_ERROR = 40000;
+
+	public static final int METHOD_NOT_FOUND_ERROR = -32601;
+
+	public static final int INVALID_PARAMS_ERROR = -32602;
+
+	public static final String FAKE_SDP = "v=0\r\n"
+			+ "o=- 0 0 IN IP4 127.0.0.1\r\n" + "s=FakeKms\r\n"
+			+ "c=IN IP4 127.0.0.1\r\n" + "t=0 0\r\n"
+			+ "m=video 9 RTP/AVPF 96\r\n" + "a=rtpmap:96 VP8/90000\r\n";
+
+	private static final Logger log = LoggerFactory
+			.getLogger(FakeKmsHandler.class);
+
+	private static class Subscription {
+
+		private final String id;
+		private final String objectId;
+		private final String type;
+		private final Session session;
+
+		public Subscription(String id, String objectId, String type,
+				Session session) {
+			this.id = id;
+			this.objectId = objectId;
+			this.type = type;
+			this.session = session;
+		}
+	}
+
+	private static class FakeKmsException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int code;
+
+		public FakeKmsException(int code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+
+	private final ConcurrentMap<String, FakeMediaObject> objects = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, ScheduledFuture<?>> eventGenerators = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler = Executors
+			.newScheduledThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					new ThreadFactoryBuilder().setDaemon(true)
+							.setNameFormat("fakekms-%d").build());
+
+	private volatile long latency;
+	private volatile long latencyJitter;
+
+	private volatile double faultProbability;
+	private volatile Set<String> faultOperations = Collections.emptySet();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong faults = new AtomicLong();
+	private final AtomicLong events = new AtomicLong();
+
+	/**
+	 * Delays the execution of every request.
+	 *
+	 * @param latency
+	 *            Minimum delay in millis
+	 * @param jitter
+	 *            Max random time in millis added to the minimum delay
+	 */
+	public void setLatency(long latency, long jitter) {
+		this.latency = latency;
+		this.latencyJitter = jitter;
+	}
+
+	/**
+	 * Makes operations fail with an error response.
+	 *
+	 * @param probability
+	 *            Probability of failure of each operation, from 0 to 1
+	 * @param operations
+	 *            Methods ({@code create}, {@code release}...) or names of
+	 *            invoked operations ({@code connect}, {@code processOffer}...)
+	 *            that can fail. All of them if empty
+	 */
+	public void setFaults(double probability, String... operations) {
+		this.faultOperations = new HashSet<>(Arrays.asList(operations));
+		this.faultProbability = probability;
+	}
+
+	/**
+	 * Starts sending events of a type to all its subscribers. Replaces the
+	 * previous generator of the same type.
+	 *
+	 * @param type
+	 *            Type of the events
+	 * @param eventsPerSecond
+	 *            Number of events per second sent to each subscription
+	 */
+	public void startEvents(final String type, double eventsPerSecond) {
+
+		long period = Math.max(1, (long) (1000000 / eventsPerSecond));
+
+		ScheduledFuture<?> generator = scheduler.scheduleAtFixedRate(
+				new Runnable() {
+					@Override
+					public void run() {
+						emitEvent(type);
+					}
+				}, period, period, TimeUnit.MICROSECONDS);
+
+		ScheduledFuture<?> previous = eventGenerators.put(type, generator);
+		if (previous != null) {
+			previous.cancel(false);
+		}
+	}
+
+	public void stopEvents(String type) {
+		ScheduledFuture<?> generator = eventGenerators.remove(type);
+		if (generator != null) {
+			generator.cancel(false);
+		}
+	}
+
+	/**
+	 * Sends an event of a type to all its subscribers.
+	 *
+	 * @return the number of events sent
+	 */
+	public int emitEvent(String type) {
+
+		int sent = 0;
+		for (Subscription subscription : subscriptions.values()) {
+
+			if (!subscription.type.equals(type)) {
+				continue;
+			}
+
+			JsonObject value = new JsonObject();
+			value.addProperty("object", subscription.objectId);
+			value.addProperty("type", type);
+			value.addProperty("subscription", subscription.id);
+			value.add("data", createEventData(subscription.objectId, type));
+
+			JsonObject params = new JsonObject();
+			params.add("value", value);
+
+			try {
+				subscription.session.sendNotification("onEvent", params);
+				events.incrementAndGet();
+				sent++;
+			} catch (Exception e) {
+				log.debug("Event {} not sent to subscription {}", type,
+						subscription.id, e);
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Creates the data of a synthetic event. Events only have the fields
+	 * common to all KMS events by default.
+	 */
+	protected JsonObject createEventData(String objectId, String type) {
+		JsonObject data = new JsonObject();
+		data.addProperty("source", objectId);
+		data.addProperty("type", type);
+		data.addProperty("timestamp",
+				Long.toString(System.currentTimeMillis() / 1000));
+		data.add("tags", new JsonArray());
+		return data;
+	}
+
+	public FakeMediaObject getObject(String id) {
+		return objects.get(id);
+	}
+
+	public int getObjectCount() {
+		return objects.size();
+	}
+
+	public int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getFaultCount() {
+		return faults.get();
+	}
+
+	public long getEventCount() {
+		return events.get();
+	}
+
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void handleRequest(final Transaction transaction,
+			final Request<JsonObject> request) throws Exception {
+
+		requests.incrementAndGet();
+
+		long delay = latency;
+		if (latencyJitter > 0) {
+			delay += ThreadLocalRandom.current().nextLong(latencyJitter + 1);
+		}
+
+		if (delay <= 0) {
+			executeRequest(transaction, request);
+			return;
+		}
+
+		transaction.startAsync();
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				executeRequest(transaction, request);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void afterConnectionClosed(Session session, String status)
+			throws Exception {
+
+		Iterator<Subscription> it = subscriptions.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().session == session) {
+				it.remove();
+			}
+		}
+	}
+
+	private void executeRequest(Transaction transaction,
+			Request<JsonObject> request) {
+
+		try {
+
+			JsonElement result;
+			try {
+				result = execute(request.getMethod(), request.getParams(),
+						transaction.getSession(), null);
+			} catch (FakeKmsException e) {
+				if (!transaction.isNotification()) {
+					transaction.sendError(e.code, e.getMessage(), null);
+				}
+				return;
+			} catch (RuntimeException e) {
+				// Params with unexpected types. The request is answered, as
+				// the client would wait forever if it was executed
+				// asynchronously and the exception was lost in the scheduler
+				log.warn("Exception executing request {}", request, e);
+				if (!transaction.isNotification()) {
+					transaction.sendError(INVALID_PARAMS_ERROR,
+							"Invalid params: " + e, null);
+				}
+				return;
+			}
+
+			if (!transaction.isNotification()) {
+				transaction.sendResponse(result);
+			}
+
+		} catch (IOException e) {
+			log.warn("Exception sending response to request {}", request, e);
+		}
+	}
+
+	private JsonObject execute(String method, JsonObject params,
+			Session session, Map<String, String> newRefs)
+			throws FakeKmsException {
+
+		if (params == null) {
+			params = new JsonObject();
+		}
+
+		JsonElement value;
+		switch (method) {
+		case "transaction":
+			value = transaction(params, session);
+			break;
+		case "keepAlive":
+			value = JsonNull.INSTANCE;
+			break;
+		case "create":
+			injectFault(method);
+			value = create(params, newRefs);
+			break;
+		case "invoke":
+			injectFault(getString(params, "operation"));
+			value = invoke(params);
+			break;
+		case "release":
+			injectFault(method);
+			release(getObject(params, "object"));
+			value = JsonNull.INSTANCE;
+			break;
+		case "subscribe":
+			injectFault(method);
+			value = subscribe(params, session);
+			break;
+		case "unsubscribe":
+			injectFault(method);
+			subscriptions.remove(getString(params, "subscription"));
+			value = JsonNull.INSTANCE;
+			break;
+		default:
+			throw new FakeKmsException(METHOD_NOT_FOUND_ERROR,
+					"Method not found: " + method);
+		}
+
+		JsonObject result = new JsonObject();
+		result.add("value", value);
+		return result;
+	}
+
+	private JsonArray transaction(JsonObject params, Session session) {
+
+		// Objects created in the transaction are referenced as "newref:N",
+		// being N the number of objects created before them
+		Map<String, String> newRefs = new HashMap<>();
+
+		JsonArray responses = new JsonArray();
+		for (JsonElement element : params.getAsJsonArray("operations")) {
+
+			JsonObject operation = element.getAsJsonObject();
+			Integer id = operation.get("id").getAsInt();
+
+			JsonElement opParams = resolveNewRefs(operation.get("params"),
+					newRefs);
+
+			Response<JsonElement> response;
+			try {
+				response = new Response<JsonElement>(id, execute(operation
+						.get("method").getAsString(),
+						opParams instanceof JsonObject ? (JsonObject) opParams
+								: null, session, newRefs));
+			} catch (FakeKmsException e) {
+				response = new Response<>(id, new ResponseError(e.code,
+						e.getMessage()));
+			}
+
+			responses.add(JsonUtils.toJsonElement(response));
+		}
+
+		return responses;
+	}
+
+	private JsonElement resolveNewRefs(JsonElement element,
+			Map<String, String> newRefs) {
+
+		if (element instanceof JsonPrimitive
+				&& ((JsonPrimitive) element).isString()) {
+
+			String ref = newRefs.get(element.getAsString());
+			return ref != null ? new JsonPrimitive(ref) : element;
+
+		} else if (element instanceof JsonObject) {
+
+			JsonObject resolved = new JsonObject();
+			for (Entry<String, JsonElement> entry : ((JsonObject) element)
+					.entrySet()) {
+				resolved.add(entry.getKey(),
+						resolveNewRefs(entry.getValue(), newRefs));
+			}
+			return resolved;
+
+		} else if (element instanceof JsonArray) {
+
+			JsonArray resolved = new JsonArray();
+			for (JsonElement item : (JsonArray) element) {
+				resolved.add(resolveNewRefs(item, newRefs));
+			}
+			return resolved;
+		}
+
+		return element;
+	}
+
+	private JsonElement create(JsonObject params, Map<String, String> newRefs)
+			throws FakeKmsException {
+
+		String type = getString(params, "type");
+		JsonObject constructorParams = params
+				.getAsJsonObject("constructorParams");
+
+		FakeMediaObject parent = null;
+		if (constructorParams != null) {
+			if (constructorParams.has("mediaPipeline")) {
+				parent = getObject(constructorParams, "mediaPipeline");
+			} else {
+				for (Entry<String, JsonElement> param : constructorParams
+						.entrySet()) {
+					if (param.getValue().isJsonPrimitive()) {
+						parent = objects.get(param.getValue().getAsString());
+						if (parent != null) {
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		String id = UUID.randomUUID().toString() + "_" + type;
+		if (parent != null) {
+			id = parent.getMediaPipeline().getId() + "/" + id;
+		}
+
+		FakeMediaObject object = new FakeMediaObject(id, type, parent);
+		if (constructorParams != null) {
+			for (Entry<String, JsonElement> param : constructorParams
+					.entrySet()) {
+				object.getProperties().put(param.getKey(), param.getValue());
+			}
+		}
+
+		objects.put(id, object);
+		if (parent != null) {
+			parent.addChild(object);
+		}
+
+		if (newRefs != null) {
+			newRefs.put("newref:" + newRefs.size(), id);
+		}
+
+		return new JsonPrimitive(id);
+	}
+
+	private JsonElement invoke(JsonObject params) throws FakeKmsException {
+
+		FakeMediaObject object = getObject(params, "object");
+		String operation = getString(params, "operation");
+		JsonObject opParams = params.getAsJsonObject("operationParams");
+		if (opParams == null) {
+			opParams = new JsonObject();
+		}
+
+		switch (operation) {
+		case "getMediaPipeline":
+			return new JsonPrimitive(object.getMediaPipeline().getId());
+		case "getParent":
+			return object.getParent() != null ? new JsonPrimitive(object
+					.getParent().getId()) : JsonNull.INSTANCE;
+		case "getChildren":
+		case "getChilds":
+			JsonArray children = new JsonArray();
+			for (FakeMediaObject child : object.getChildren()) {
+				children.add(new JsonPrimitive(child.getId()));
+			}
+			return children;
+		case "connect":
+			object.getSinks().add(getObject(opParams, "sink").getId());
+			return JsonNull.INSTANCE;
+		case "disconnect":
+			object.getSinks().remove(getString(opParams, "sink"));
+			return JsonNull.INSTANCE;
+		case "processOffer":
+		case "processAnswer":
+		case "generateOffer":
+		case "getLocalSessionDescriptor":
+		case "getRemoteSessionDescriptor":
+			return new JsonPrimitive(FAKE_SDP);
+		default:
+			break;
+		}
+
+		if (operation.length() > 3) {
+
+			String property = Character.toLowerCase(operation.charAt(3))
+					+ operation.substring(4);
+
+			if (operation.startsWith("set")
+					&& opParams.entrySet().size() == 1) {
+				object.getProperties().put(property,
+						opParams.entrySet().iterator().next().getValue());
+				return JsonNull.INSTANCE;
+			}
+
+			if (operation.startsWith("get")) {
+				JsonElement value = object.getProperties().get(property);
+				if (value == null && "name".equals(property)) {
+					return new JsonPrimitive(object.getId());
+				}
+				return value != null ? value : JsonNull.INSTANCE;
+			}
+		}
+
+		return JsonNull.INSTANCE;
+	}
+
+	private void release(FakeMediaObject object) {
+
+		for (FakeMediaObject child : new ArrayList<>(object.getChildren())) {
+			release(child);
+		}
+
+		objects.remove(object.getId());
+		object.markReleased();
+
+		FakeMediaObject parent = object.getParent();
+		if (parent != null) {
+			parent.removeChild(object);
+			for (FakeMediaObject sibling : parent.getChildren()) {
+				sibling.getSinks().remove(object.getId());
+			}
+		}
+
+		Iterator<Subscription> it = subscriptions.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().objectId.equals(object.getId())) {
+				it.remove();
+			}
+		}
+	}
+
+	private JsonElement subscribe(JsonObject params, Session session)
+			throws FakeKmsException {
+
+		FakeMediaObject object = getObject(params, "object");
+		String id = UUID.randomUUID().toString();
+
+		subscriptions.put(id, new Subscription(id, object.getId(), getString(
+				params, "type"), session));
+
+		return new JsonPrimitive(id);
+	}
+
+	private void injectFault(String operation) throws FakeKmsException {
+
+		double probability = faultProbability;
+		if (probability <= 0) {
+			return;
+		}
+
+		Set<String> operations = faultOperations;
+		if (!operations.isEmpty() && !operations.contains(operation)) {
+			return;
+		}
+
+		if (ThreadLocalRandom.current().nextDouble() < probability) {
+			faults.incrementAndGet();
+			throw new FakeKmsException(INJECTED_FAULT_ERROR,
+					"Injected fault in operation " + operation);
+		}
+	}
+
+	private FakeMediaObject getObject(JsonObject params, String param)
+			throws FakeKmsException {
+
+		String id = getString(params, param);
+		FakeMediaObject object = objects.get(id);
+		if (object == null) {
+			throw new FakeKmsException(OBJECT_NOT_FOUND_ERROR,
+					"Object not found: " + id);
+		}
+		return object;
+	}
+
+	private String getString(JsonObject params, String param)
+			throws FakeKmsException {
+
+		JsonElement value = params.get(param);
+		if (value == null || !value.isJsonPrimitive()) {
+			throw new FakeKmsException(INVALID_PARAMS_ERROR,
+					"Invalid params: '" + param + "' is required");
+		}
+		return value.getAsString();
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.test.fakekms;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Media object kept by {@link FakeKmsHandler}. Objects form a tree rooted in
+ * media pipelines: children are released with their parent. Properties set
+ * with {@code setXxx} operations and connections to other elements are
+ * recorded, but no media is processed.
+ *
+ * @since 6.0.0
+ */
+public class FakeMediaObject {
+
+	private final String id;
+	private final String type;
+	private final FakeMediaObject parent;
+
+	private final Set<FakeMediaObject> children = Collections
+			.newSetFromMap(new ConcurrentHashMap<FakeMediaObject, Boolean>());
+
+	private final Set<String> sinks = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final ConcurrentMap<String, JsonElement> properties = new ConcurrentHashMap<>();
+
+	private volatile boolean released;
+
+	public FakeMediaObject(String id, String type, FakeMediaObject parent) {
+		this.id = id;
+		this.type = type;
+		this.parent = parent;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public FakeMediaObject getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return the pipeline this object belongs to, or the object itself if it
+	 *         has no parent
+	 */
+	public FakeMediaObject getMediaPipeline() {
+		FakeMediaObject object = this;
+		while (object.parent != null) {
+			object = object.parent;
+		}
+		return object;
+	}
+
+	public Set<FakeMediaObject> getChildren() {
+		return children;
+	}
+
+	public Set<String> getSinks() {
+		return sinks;
+	}
+
+	public ConcurrentMap<String, JsonElement> getProperties() {
+		return properties;
+	}
+
+	public boolean isReleased() {
+		return released;
+	}
+
+	void addChild(FakeMediaObject child) {
+		children.add(child);
+	}
+
+	void removeChild(FakeMediaObject child) {
+		children.remove(child);
+	}
+
+	void markReleased() {
+		released = true;
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.test.services;
+
+import org.kurento.test.fakekms.FakeKmsApp;
+import org.kurento.test.fakekms.FakeKmsHandler;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Manager of an in-process fake Kurento Media Server, to test clients and
+ * servers using KMS without a media server. See {@link FakeKmsHandler} for
+ * the simulated behavior.
+ *
+ * @since 6.0.0
+ */
+public class FakeKurentoMediaServerManager {
+
+	private final FakeKmsHandler handler;
+	private final ConfigurableApplicationContext context;
+	private final int httpPort;
+	private final String path;
+
+	public FakeKurentoMediaServerManager(int httpPort, String path) {
+		this(new FakeKmsHandler(), httpPort, path);
+	}
+
+	public FakeKurentoMediaServerManager(FakeKmsHandler handler,
+			int httpPort, String path) {
+
+		if (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+
+		this.handler = handler;
+		this.httpPort = httpPort;
+		this.path = path;
+
+		context = FakeKmsApp.start(handler, httpPort, path);
+	}
+
+	public void destroy() {
+		context.close();
+		handler.destroy();
+	}
+
+	public FakeKmsHandler getHandler() {
+		return handler;
+	}
+
+	public String getLocalhostWsUrl() {
+		return "ws://localhost:" + httpPort + "/" + path;
+	}
+
+	public int getHttpPort() {
+		return httpPort;
+	}
+
+	public String getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.test.fakekms;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.RomEventHandler;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.test.services.FakeKurentoMediaServerManager;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Checks the protocol implemented by the in-process fake KMS with the
+ * transport of kurento-client.
+ *
+ * @since 6.0.0
+ */
+public class FakeKmsTest {
+
+	private FakeKurentoMediaServerManager kms;
+	private JsonRpcClient client;
+	private RomClientJsonRpcClient romClient;
+
+	@Before
+	public void setup() throws IOException {
+
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		kms = new FakeKurentoMediaServerManager(port, "kurento");
+		client = new JsonRpcClientWebSocket(kms.getLocalhostWsUrl());
+		romClient = new RomClientJsonRpcClient(client);
+	}
+
+	@After
+	public void teardown() {
+		romClient.destroy();
+		kms.destroy();
+	}
+
+	@Test
+	public void objectGraphTest() {
+
+		String pipeline = romClient.create("MediaPipeline", null);
+		String webRtc = romClient.create("WebRtcEndpoint", new Props(
+				"mediaPipeline", pipeline));
+		String player = romClient.create("PlayerEndpoint", new Props(
+				"mediaPipeline", pipeline).add("uri", "http://files/video.webm"));
+
+		Assert.assertEquals(pipeline, romClient.invoke(webRtc,
+				"getMediaPipeline", null, String.class));
+		Assert.assertEquals("http://files/video.webm",
+				romClient.invoke(player, "getUri", null, String.class));
+		Assert.assertEquals(FakeKmsHandler.FAKE_SDP, romClient.invoke(webRtc,
+				"processOffer", new Props("offer", "v=0"), String.class));
+
+		romClient.invoke(webRtc, "setName", new Props("name", "webRtc"),
+				Void.class);
+		Assert.assertEquals("webRtc",
+				romClient.invoke(webRtc, "getName", null, String.class));
+
+		romClient.invoke(player, "connect", new Props("sink", webRtc),
+				Void.class);
+		Assert.assertTrue(kms.getHandler().getObject(player).getSinks()
+				.contains(webRtc));
+
+		Assert.assertEquals(3, kms.getHandler().getObjectCount());
+		romClient.release(pipeline);
+		Assert.assertEquals(0, kms.getHandler().getObjectCount());
+
+		try {
+			romClient.invoke(webRtc, "getName", null, String.class);
+			Assert.fail("KurentoServerException expected");
+		} catch (KurentoServerException e) {
+			Assert.assertEquals(FakeKmsHandler.OBJECT_NOT_FOUND_ERROR,
+					e.getCode());
+		}
+	}
+
+	@Test
+	public void transactionTest() throws IOException {
+
+		JsonArray operations = new JsonArray();
+		operations.add(operation(0, "create", "{type:'MediaPipeline'}"));
+		operations.add(operation(1, "create",
+				"{type:'WebRtcEndpoint',constructorParams:{mediaPipeline:'newref:0'}}"));
+		operations.add(operation(2, "invoke",
+				"{object:'newref:1',operation:'getMediaPipeline'}"));
+		operations.add(operation(3, "release", "{object:'unknown'}"));
+
+		JsonObject params = new JsonObject();
+		params.add("operations", operations);
+
+		JsonArray responses = client
+				.sendRequest("transaction", params, JsonObject.class)
+				.getAsJsonArray("value");
+
+		Assert.assertEquals(4, responses.size());
+
+		String pipeline = value(responses.get(0));
+		String webRtc = value(responses.get(1));
+		Assert.assertTrue(webRtc.startsWith(pipeline + "/"));
+		Assert.assertEquals(pipeline, value(responses.get(2)));
+		Assert.assertEquals(FakeKmsHandler.OBJECT_NOT_FOUND_ERROR, responses
+				.get(3).getAsJsonObject().getAsJsonObject("error")
+				.get("code").getAsInt());
+	}
+
+	@Test
+	public void eventsTest() throws InterruptedException {
+
+		final CountDownLatch received = new CountDownLatch(10);
+		romClient.addRomEventHandler(new RomEventHandler() {
+			@Override
+			public void processEvent(String objectRef, String subscription,
+					String type, Props data) {
+				if ("EndOfStream".equals(type)
+						&& objectRef.equals(data.getProp("source"))) {
+					received.countDown();
+				}
+			}
+		});
+
+		String pipeline = romClient.create("MediaPipeline", null);
+		String player = romClient.create("PlayerEndpoint", new Props(
+				"mediaPipeline", pipeline));
+		romClient.subscribe(player, "EndOfStream");
+
+		kms.getHandler().startEvents("EndOfStream", 100);
+
+		Assert.assertTrue("Events not received",
+				received.await(5, TimeUnit.SECONDS));
+
+		kms.getHandler().stopEvents("EndOfStream");
+	}
+
+	@Test
+	public void faultsAndLatencyTest() {
+
+		String pipeline = romClient.create("MediaPipeline", null);
+
+		kms.getHandler().setLatency(200, 0);
+		kms.getHandler().setFaults(1, "processOffer");
+
+		String webRtc = romClient.create("WebRtcEndpoint", new Props(
+				"mediaPipeline", pipeline));
+
+		long start = System.nanoTime();
+		try {
+			romClient.invoke(webRtc, "processOffer", new Props("offer", "v=0"),
+					String.class);
+			Assert.fail("KurentoServerException expected");
+		} catch (KurentoServerException e) {
+			Assert.assertEquals(FakeKmsHandler.INJECTED_FAULT_ERROR,
+					e.getCode());
+		}
+
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start) >= 200);
+		Assert.assertEquals(1, kms.getHandler().getFaultCount());
+	}
+
+	@Test(timeout = 10000)
+	public void malformedParamsWithLatencyTest() throws IOException {
+
+		kms.getHandler().setLatency(100, 0);
+
+		// A transaction without operations fails while it is executed in the
+		// thread of the latency scheduler
+		try {
+			client.sendRequest("transaction", new JsonObject(),
+					JsonObject.class);
+			Assert.fail("JsonRpcErrorException expected");
+		} catch (JsonRpcErrorException e) {
+			Assert.assertEquals(FakeKmsHandler.INVALID_PARAMS_ERROR,
+					e.getCode());
+		}
+	}
+
+	private JsonObject operation(int id, String method, String params) {
+		JsonObject operation = new JsonObject();
+		operation.addProperty("jsonrpc", "2.0");
+		operation.addProperty("id", id);
+		operation.addProperty("method", method);
+		operation.add("params",
+				new JsonParser().parse(params));
+		return operation;
+	}
+
+	private String value(JsonElement response) {
+		return response.getAsJsonObject().getAsJsonObject("result")
+				.get("value").getAsString();
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+/**
+ * Messages exchanged between kurento-client and the media server, as they are
+ * written on the wire.
+ *
+ * @since 6.0.0
+ */
+public class Fixtures {
+
+	public static final String SESSION_ID = "0c8d2e4b-6a1f-4c3e-9b7d-5e2f1a0b3c4d";
+
+	private static final String PIPELINE = "6ba9067f-a4e1-4a45-b2e6-0e5b1c9c1b8f_kurento.MediaPipeline";
+
+	private static final String ENDPOINT = PIPELINE
+			+ "/1f5e8b2a-2a4b-4f8a-9c0c-3b1c8d7e6f5a_kurento.WebRtcEndpoint";
+
+	private static final String RECORDER = PIPELINE
+			+ "/9a8b7c6d-5e4f-3a2b-1c0d-9e8f7a6b5c4d_kurento.RecorderEndpoint";
+
+	public static final String CREATE = "{\"id\":1,\"method\":\"create\",\"params\":{"
+			+ "\"type\":\"WebRtcEndpoint\",\"constructorParams\":{\"mediaPipeline\":\""
+			+ PIPELINE
+			+ "\",\"useDataChannels\":false},\"properties\":{},"
+			+ "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	public static final String INVOKE = "{\"id\":2,\"method\":\"invoke\",\"params\":{"
+			+ "\"object\":\"" + ENDPOINT + "\",\"operation\":\"connect\","
+			+ "\"operationParams\":{\"sink\":\"" + RECORDER + "\"},"
+			+ "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	public static final String SUBSCRIBE = "{\"id\":3,\"method\":\"subscribe\",\"params\":{"
+			+ "\"type\":\"OnIceCandidate\",\"object\":\"" + ENDPOINT + "\","
+			+ "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	public static final String ON_EVENT = "{\"method\":\"onEvent\",\"params\":{\"value\":{"
+			+ "\"data\":{\"source\":\"" + ENDPOINT + "\",\"tags\":[{\"key\":\"room\",\"value\":\"r1\"}],"
+			+ "\"timestamp\":\"1424348800\",\"type\":\"OnIceCandidate\",\"candidate\":{"
+			+ "\"__module__\":\"kurento\",\"__type__\":\"IceCandidate\","
+			+ "\"candidate\":\"candidate:1 1 UDP 2013266431 192.168.1.10 45678 typ host\","
+			+ "\"sdpMid\":\"audio\",\"sdpMLineIndex\":0}},\"object\":\"" + ENDPOINT + "\","
+			+ "\"type\":\"OnIceCandidate\"},\"sessionId\":\"" + SESSION_ID + "\"},"
+			+ "\"jsonrpc\":\"2.0\"}";
+
+	public static final String CREATE_RESPONSE = "{\"id\":1,\"result\":{\"value\":\""
+			+ ENDPOINT + "\",\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	public static final String INVOKE_RESPONSE = "{\"id\":2,\"result\":{"
+			+ "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	public static final String SUBSCRIBE_RESPONSE = "{\"id\":3,\"result\":{\"value\":"
+			+ "\"8f1b3c2d-4e5f-4a6b-9c7d-0e1f2a3b4c5d\",\"sessionId\":\""
+			+ SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+	private Fixtures() {
+	}
+
+	public static String request(String method) {
+		switch (method) {
+		case "create":
+			return CREATE;
+		case "invoke":
+			return INVOKE;
+		case "subscribe":
+			return SUBSCRIBE;
+		case "onEvent":
+			return ON_EVENT;
+		default:
+			throw new IllegalArgumentException("Unknown method " + method);
+		}
+	}
+
+	public static String response(String method) {
+		switch (method) {
+		case "create":
+			return CREATE_RESPONSE;
+		case "invoke":
+			return INVOKE_RESPONSE;
+		case "subscribe":
+			return SUBSCRIBE_RESPONSE;
+		default:
+			throw new IllegalArgumentException("Unknown method " + method);
+		}
+	}
+}
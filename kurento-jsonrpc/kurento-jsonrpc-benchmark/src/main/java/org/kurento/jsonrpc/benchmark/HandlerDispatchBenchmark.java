@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Dispatch of a received invoke request to a handler with typed params,
+ * compared with resolving the params type of the handler on every request.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerDispatchBenchmark {
+
+	public static class InvokeParams {
+		String object;
+		String operation;
+		JsonObject operationParams;
+		String sessionId;
+	}
+
+	public static class InvokeHandler extends
+			DefaultJsonRpcHandler<InvokeParams> {
+
+		InvokeParams params;
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<InvokeParams> request) throws Exception {
+			params = request.getParams();
+		}
+	}
+
+	private static final ResponseSender NO_RESPONSE = new ResponseSender() {
+		@Override
+		public void sendResponse(Message message) throws IOException {
+		}
+	};
+
+	private InvokeHandler handler;
+
+	private JsonRpcHandlerManager manager;
+
+	private JsonObject params;
+
+	@Setup
+	public void setup() {
+
+		handler = new InvokeHandler();
+		manager = new JsonRpcHandlerManager(handler);
+
+		params = JsonUtils.fromJsonRequest(Fixtures.INVOKE, JsonObject.class)
+				.getParams();
+	}
+
+	/**
+	 * Request dispatched by the handler manager, including the conversion of
+	 * its params.
+	 */
+	@Benchmark
+	public InvokeParams handleRequest() throws IOException {
+		manager.handleRequest(null, new Request<JsonElement>(2, "invoke",
+				params), NO_RESPONSE);
+		return handler.params;
+	}
+
+	/**
+	 * Params type of the handler resolved from its class hierarchy and params
+	 * converted by the generic conversion.
+	 */
+	@Benchmark
+	public Request<?> resolveAndConvertRequest() {
+		Class<?> paramsType = JsonRpcHandlerManager.getParamsType(handler
+				.getHandlerType());
+		return MessageUtils.convertRequest(new Request<JsonElement>(2,
+				"invoke", params), paramsType);
+	}
+}
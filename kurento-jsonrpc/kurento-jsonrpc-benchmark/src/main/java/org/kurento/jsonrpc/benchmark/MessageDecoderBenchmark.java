@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Decoding of received messages with {@link MessageDecoder}, compared with
+ * the tree based decoding (JsonObject and then Request or Response).
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDecoderBenchmark {
+
+	@Param({ "invoke", "onEvent", "invokeResponse" })
+	public String message;
+
+	private String json;
+
+	@Setup
+	public void setup() {
+		json = "invokeResponse".equals(message) ? Fixtures.INVOKE_RESPONSE
+				: Fixtures.request(message);
+	}
+
+	/**
+	 * Message decoded in a single streaming pass.
+	 */
+	@Benchmark
+	public Message streamingDecode() {
+		return MessageDecoder.decode(json);
+	}
+
+	/**
+	 * Message parsed to a JsonObject and then converted to a Request or
+	 * Response.
+	 */
+	@Benchmark
+	public Message treeDecode() {
+		JsonObject jsonObject = JsonUtils.fromJson(json, JsonObject.class);
+		if (jsonObject.has("method")) {
+			return JsonUtils.fromJsonRequest(jsonObject, JsonElement.class);
+		} else {
+			return JsonUtils.fromJsonResponse(jsonObject, JsonElement.class);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Dispatch of a received request to a handler that responds it, without
+ * metrics and with {@link InMemoryJsonRpcMetrics}.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+	public static class EchoHandler extends DefaultJsonRpcHandler<JsonObject> {
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	private static final ResponseSender NO_RESPONSE = new ResponseSender() {
+		@Override
+		public void sendResponse(Message message) throws IOException {
+		}
+	};
+
+	@Param({ "none", "in-memory" })
+	public String metrics;
+
+	private JsonRpcHandlerManager manager;
+
+	private Session session;
+
+	private JsonObject params;
+
+	@Setup
+	public void setup() {
+
+		manager = new JsonRpcHandlerManager(new EchoHandler());
+		manager.setMetrics("none".equals(metrics) ? JsonRpcMetrics.NONE
+				: new InMemoryJsonRpcMetrics());
+
+		session = new ClientSession(Fixtures.SESSION_ID, null, null);
+
+		params = JsonUtils.fromJsonRequest(Fixtures.INVOKE, JsonObject.class)
+				.getParams();
+	}
+
+	/**
+	 * Request dispatched and responded, reporting its completion to the
+	 * metrics.
+	 */
+	@Benchmark
+	public void handleRequest() throws IOException {
+		manager.handleRequest(session, new Request<JsonElement>(2, "invoke",
+				params), NO_RESPONSE);
+	}
+}
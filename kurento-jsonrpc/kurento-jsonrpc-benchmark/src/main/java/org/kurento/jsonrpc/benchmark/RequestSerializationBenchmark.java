@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Serialization of the requests sent by kurento-client and deserialization
+ * of the requests received by the media server or by the client (events).
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+	@Param({ "create", "invoke", "subscribe", "onEvent" })
+	public String method;
+
+	private String json;
+
+	private Integer id;
+
+	private JsonObject params;
+
+	private String sessionId;
+
+	@Setup
+	public void setup() {
+
+		json = Fixtures.request(method);
+
+		Request<JsonObject> request = JsonUtils.fromJsonRequest(json,
+				JsonObject.class);
+		id = request.getId();
+		params = request.getParams();
+		sessionId = request.getSessionId();
+	}
+
+	/**
+	 * Request written by the client, with the session id injected in the
+	 * params.
+	 */
+	@Benchmark
+	public String toJsonMessage() {
+		Request<JsonObject> request = new Request<>(id, method, params);
+		request.setSessionId(sessionId);
+		return JsonUtils.toJsonMessage(request);
+	}
+
+	/**
+	 * Request without session id, written as is.
+	 */
+	@Benchmark
+	public String toJsonMessageWithoutSessionId() {
+		return JsonUtils.toJsonMessage(new Request<>(id, method, params));
+	}
+
+	/**
+	 * Request read by the receiver, extracting the session id from the params.
+	 */
+	@Benchmark
+	public Request<JsonElement> fromJsonRequest() {
+		return JsonUtils.fromJsonRequest(json, JsonElement.class);
+	}
+
+	/**
+	 * Conversion of generic params to the params type of the handler, as Props
+	 * for events.
+	 */
+	@Benchmark
+	public Request<Props> convertRequest() {
+		return MessageUtils.convertRequest(new Request<JsonElement>(id, method,
+				params), Props.class);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Serialization of the responses of the media server and deserialization in
+ * the client, including the conversion of the result to the type expected by
+ * the caller.
+ *
+ * @since 6.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+	@Param({ "create", "invoke", "subscribe" })
+	public String method;
+
+	private String json;
+
+	private Integer id;
+
+	private JsonElement result;
+
+	private String sessionId;
+
+	@Setup
+	public void setup() {
+
+		json = Fixtures.response(method);
+
+		Response<JsonElement> response = JsonUtils.fromJsonResponse(json,
+				JsonElement.class);
+		id = response.getId();
+		result = response.getResult();
+		sessionId = response.getSessionId();
+	}
+
+	/**
+	 * Response written by the server, with the session id injected in the
+	 * result.
+	 */
+	@Benchmark
+	public String toJsonMessage() {
+		Response<JsonElement> response = new Response<>(id, result);
+		response.setSessionId(sessionId);
+		return JsonUtils.toJsonMessage(response);
+	}
+
+	/**
+	 * Response read by the client, extracting the session id from the result.
+	 */
+	@Benchmark
+	public Response<JsonElement> fromJsonResponse() {
+		return JsonUtils.fromJsonResponse(json, JsonElement.class);
+	}
+}
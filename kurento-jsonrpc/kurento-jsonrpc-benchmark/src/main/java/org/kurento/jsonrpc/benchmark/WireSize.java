@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.kurento.jsonrpc.internal.ws.MessageFragments;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Bytes on the wire of typical getStats responses of a WebRtcEndpoint, with
+ * the default fragment size. It is not a JMH benchmark, as it measures sizes
+ * and not times. For each number of streams, it prints the average size of a
+ * response:
+ * <ul>
+ * <li>json: the JSON message</li>
+ * <li>wire: the frames of the message, without compression</li>
+ * <li>deflate: the frames with permessage-deflate and no context takeover,
+ * where each message is compressed on its own</li>
+ * <li>deflate+ctx: the frames with permessage-deflate and context takeover
+ * (the default), where the compression context is kept between messages, as
+ * in a client polling stats periodically</li>
+ * </ul>
+ * Bytes per response with the messages it generates:
+ *
+ * <pre>
+ * streams   json    wire   deflate  deflate+ctx
+ * 2         1528    1536       476          105
+ * 8         5978    5986       833          311
+ * 32       23780   23788      2130         1065
+ * </pre>
+ *
+ * Run it with:
+ *
+ * <pre>
+ * mvn -o -Pdefault,benchmark -pl kurento-jsonrpc/kurento-jsonrpc-benchmark exec:java \
+ *     -Dexec.mainClass=org.kurento.jsonrpc.benchmark.WireSize
+ * </pre>
+ *
+ * @since 6.0.0
+ */
+public class WireSize {
+
+	private static final int RESPONSES = 100;
+
+	private static final int[] STREAMS = { 2, 8, 32 };
+
+	public static void main(String[] args) {
+
+		System.out.printf("%-8s %12s %12s %12s %12s%n", "streams",
+				"json", "wire", "deflate", "deflate+ctx");
+
+		for (int streams : STREAMS) {
+			run(streams);
+		}
+	}
+
+	private static void run(int streams) {
+
+		long jsonBytes = 0;
+		long plainBytes = 0;
+		long deflateBytes = 0;
+		long deflateContextBytes = 0;
+
+		Deflater context = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+		for (int i = 0; i < RESPONSES; i++) {
+
+			byte[] message = createStatsResponse(i, streams).getBytes(
+					StandardCharsets.UTF_8);
+
+			jsonBytes += message.length;
+			plainBytes += wireSize(message.length);
+
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,
+					true);
+			deflateBytes += wireSize(deflate(deflater, message));
+			deflater.end();
+
+			deflateContextBytes += wireSize(deflate(context, message));
+		}
+
+		context.end();
+
+		System.out.printf("%-8d %12d %12d %12d %12d%n", streams, jsonBytes
+				/ RESPONSES, plainBytes / RESPONSES, deflateBytes / RESPONSES,
+				deflateContextBytes / RESPONSES);
+	}
+
+	/**
+	 * Compresses a message as permessage-deflate does: raw deflate with a sync
+	 * flush, removing the trailing 0x00 0x00 0xff 0xff.
+	 */
+	private static int deflate(Deflater deflater, byte[] message) {
+
+		deflater.setInput(message);
+
+		byte[] buffer = new byte[message.length + 1024];
+		int length = 0;
+		int n;
+		while ((n = deflater.deflate(buffer, length, buffer.length - length,
+				Deflater.SYNC_FLUSH)) > 0) {
+			length += n;
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+
+		return length - 4;
+	}
+
+	/**
+	 * Adds the header of each frame a message of the given size is sent in.
+	 * Client frames are masked, so 4 more bytes are added per frame.
+	 */
+	private static long wireSize(int payloadSize) {
+
+		int fragmentSize = MessageFragments.DEFAULT_FRAGMENT_SIZE;
+		int frames = Math.max(1, (payloadSize + fragmentSize - 1)
+				/ fragmentSize);
+
+		long size = payloadSize;
+		for (int i = 0; i < frames; i++) {
+			int framePayload = Math.min(fragmentSize, payloadSize - i
+					* fragmentSize);
+			size += 2 + 4 + (framePayload > 65535 ? 8
+					: framePayload > 125 ? 2 : 0);
+		}
+		return size;
+	}
+
+	private static String createStatsResponse(int id, int streams) {
+
+		JsonObject stats = new JsonObject();
+		long timestamp = 1424348800000L + id * 1000L;
+
+		for (int i = 0; i < streams; i++) {
+
+			boolean inbound = i % 2 == 0;
+			String ssrc = Integer.toString(1000000 + i * 7919);
+
+			JsonObject rtp = new JsonObject();
+			rtp.addProperty("__module__", "kurento");
+			rtp.addProperty("__type__", inbound ? "RTCInboundRTPStreamStats"
+					: "RTCOutboundRTPStreamStats");
+			rtp.addProperty("id", "RTCRtpStream_" + ssrc);
+			rtp.addProperty("timestamp", timestamp);
+			rtp.addProperty("type", inbound ? "inboundrtp" : "outboundrtp");
+			rtp.addProperty("ssrc", ssrc);
+			rtp.addProperty("associateStatsId", "RTCCodec_" + ssrc);
+			rtp.addProperty("isRemote", false);
+			rtp.addProperty("mediaTrackId", "RTCMediaStreamTrack_" + ssrc);
+			rtp.addProperty("transportId", "RTCTransport_video_1");
+			rtp.addProperty("codecId", "RTCCodec_" + ssrc);
+			rtp.addProperty("firCount", id % 7);
+			rtp.addProperty("pliCount", id % 11);
+			rtp.addProperty("nackCount", id * 3 + i);
+			rtp.addProperty("sliCount", 0);
+			rtp.addProperty("remb", 300000 + id * 1311 % 50000);
+			rtp.addProperty("packetsLost", id / 3);
+			rtp.addProperty("fractionLost", 0.0);
+			rtp.addProperty(inbound ? "packetsReceived" : "packetsSent",
+					id * 93 + i * 17);
+			rtp.addProperty(inbound ? "bytesReceived" : "bytesSent",
+					id * 104729L + i * 311);
+			rtp.addProperty("jitter", (id * 37 + i) % 100 / 1000.0);
+			rtp.addProperty("targetBitrate", 500000.0);
+			stats.add(rtp.get("id").getAsString(), rtp);
+
+			JsonObject codec = new JsonObject();
+			codec.addProperty("__module__", "kurento");
+			codec.addProperty("__type__", "RTCCodec");
+			codec.addProperty("id", "RTCCodec_" + ssrc);
+			codec.addProperty("timestamp", timestamp);
+			codec.addProperty("type", "codec");
+			codec.addProperty("payloadType", 100 + i % 28);
+			codec.addProperty("codec", i % 4 < 2 ? "VP8" : "opus");
+			codec.addProperty("clockRate", i % 4 < 2 ? 90000 : 48000);
+			codec.addProperty("channels", 1);
+			codec.addProperty("parameters", "");
+			stats.add(codec.get("id").getAsString(), codec);
+		}
+
+		JsonObject result = new JsonObject();
+		result.add("value", stats);
+
+		JsonObject response = new JsonObject();
+		response.addProperty("id", id);
+		response.add("result", result);
+		response.addProperty("jsonrpc", "2.0");
+
+		return response.toString();
+	}
+}
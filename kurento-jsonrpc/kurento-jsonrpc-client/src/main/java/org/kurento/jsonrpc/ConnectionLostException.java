@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+/**
+ * A request already sent fails because the connection is closed before its
+ * response is received. The server may have executed it, so it is not safe
+ * to send it again unless it can be executed twice.
+ *
+ * @since 6.0.0
+ */
+public class ConnectionLostException extends TransportException {
+
+	private static final long serialVersionUID = 5096519381370612467L;
+
+	public ConnectionLostException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public ConnectionLostException(String message) {
+		super(message);
+	}
+
+	public ConnectionLostException(Throwable cause) {
+		super(cause);
+	}
+
+}
@@ -1,27 +1,57 @@
 package org.kurento.jsonrpc;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.google.gson.JsonObject;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.internal.ws.TimeoutWheel;
 import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
+/**
+ * Sends keepAlive requests periodically, for the client session or for each
+ * registered id.
+ *
+ * Requests are sent asynchronously, with at most
+ * {@link #setMaxConcurrentKeepAlives(int)} of them waiting for response, so a
+ * round of keepAlives for many ids takes much less than the keepAlive
+ * interval. KeepAlives over the limit wait in a queue, without blocking any
+ * thread, and are sent as responses are received; the ones still waiting when
+ * the next round starts are discarded. If the peer supports JSON-RPC batches,
+ * the keepAlives of several ids can be coalesced in a single message with
+ * {@link #setBatchSize(int)}. Each keepAlive of a round is delayed a random
+ * time up to a fraction of the interval (see {@link #setJitter(double)}), so
+ * the keepAlives of many ids, or many clients, are not sent at the same
+ * instant.
+ */
 public class KeepAliveManager {
 
 	public static final String KEEP_ALIVE_INTERVAL_TIME_PROPERTY = "keepAliveIntervalTime";
 
 	private static final int KEEP_ALIVE_TIME_DEFAULT_VALUE = 120000;
 
+	public static final int DEFAULT_MAX_CONCURRENT_KEEP_ALIVES = 100;
+
+	public static final double DEFAULT_JITTER = 0.1;
+
 	private static final Object DUMMY_OBJECT_FOR_MAP = new Object();
 
 	private static Logger log = LoggerFactory.getLogger(KeepAliveManager.class);
@@ -36,9 +66,31 @@ public class KeepAliveManager {
 
 	private ConcurrentHashMap<String, Object> ids = new ConcurrentHashMap<String, Object>();
 
-	// TODO Is single thread executor the best choice?
-	private ScheduledExecutorService executor = Executors
-			.newSingleThreadScheduledExecutor();
+	// Rounds and sends run in this thread and never wait for a place;
+	// responses are processed in the transport threads and places not
+	// released by a response expire in the timeout wheel
+	private ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+			1);
+
+	private final Random random = new Random();
+
+	private volatile int batchSize;
+	private volatile double jitter = DEFAULT_JITTER;
+	private volatile Semaphore inFlightKeepAlives = new Semaphore(
+			DEFAULT_MAX_CONCURRENT_KEEP_ALIVES);
+
+	private final Queue<KeepAliveSend> waitingKeepAlives = new ConcurrentLinkedQueue<>();
+
+	private final Runnable sendWaitingTask = new Runnable() {
+		@Override
+		public void run() {
+			sendWaitingKeepAlives();
+		}
+	};
+
+	// Set when the client does not support async requests. KeepAlives are sent
+	// synchronously from then on
+	private volatile boolean syncClient;
 
 	public KeepAliveManager(JsonRpcClient client, long keepAliveIntervalTime) {
 		this(client, keepAliveIntervalTime, Mode.PER_CLIENT);
@@ -63,6 +115,47 @@ public class KeepAliveManager {
 		}
 	}
 
+	/**
+	 * Sets the max number of keepAlives (or batches of keepAlives) waiting for
+	 * response. A keepAlive not responded in a keepAlive interval is not
+	 * counted anymore. Default value is
+	 * {@link #DEFAULT_MAX_CONCURRENT_KEEP_ALIVES}.
+	 *
+	 * @param maxConcurrentKeepAlives
+	 *            The max number of keepAlives waiting for response
+	 */
+	public void setMaxConcurrentKeepAlives(int maxConcurrentKeepAlives) {
+		this.inFlightKeepAlives = new Semaphore(maxConcurrentKeepAlives);
+	}
+
+	/**
+	 * Sets the number of ids whose keepAlives are sent together in a JSON-RPC
+	 * batch. It has to be used only if the peer supports batches. If 0 or 1
+	 * (default), each keepAlive is sent in its own message.
+	 *
+	 * @param batchSize
+	 *            Max number of keepAlives in a batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the max delay of each keepAlive in a round, as a fraction of the
+	 * keepAlive interval. 0 sends all keepAlives at the start of the round.
+	 * Default value is {@link #DEFAULT_JITTER}.
+	 *
+	 * @param jitter
+	 *            Fraction of the interval, between 0 and 1
+	 */
+	public void setJitter(double jitter) {
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException(
+					"Jitter has to be between 0 and 1: " + jitter);
+		}
+		this.jitter = jitter;
+	}
+
 	public void start() {
 
 		log.debug("Configured keepAliveManager to send keepAlives each "
@@ -82,58 +175,364 @@ public class KeepAliveManager {
 
 	protected void sendKeepAlives() {
 
-		if (mode == Mode.PER_ID_AS_SESSION) {
+		int discarded = 0;
+		while (waitingKeepAlives.poll() != null) {
+			discarded++;
+		}
+		if (discarded > 0) {
+			log.warn("Too many keepAlives waiting for response. {} keepAlives"
+					+ " of the previous round not sent", discarded);
+		}
+
+		if (mode == Mode.PER_ID_AS_SESSION
+				|| mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
 
+			int size = Math.max(batchSize, 1);
+
+			List<String> group = new ArrayList<>(size);
 			for (String id : ids.keySet()) {
+				group.add(id);
+				if (group.size() == size) {
+					scheduleKeepAlives(group);
+					group = new ArrayList<>(size);
+				}
+			}
+
+			if (!group.isEmpty()) {
+				scheduleKeepAlives(group);
+			}
+
+		} else if (mode == Mode.PER_CLIENT) {
+
+			scheduleKeepAlives(null);
+
+		} else {
+			throw new KurentoException("Unrecognized keepAlive mode = " + mode);
+		}
+
+		log.debug("Finish scheduling keepAlives");
+	}
+
+	private void scheduleKeepAlives(final List<String> group) {
 
-				JsonObject params = new JsonObject();
-				params.addProperty("object", id);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
 				try {
-					client.sendRequest("keepAlive", params);
-				} catch (IOException e) {
-					log.error(
-							"Exception while sending keepAlive from mediaPipeline "
-									+ id, e);
+					if (group == null) {
+						sendClientKeepAlive();
+					} else if (group.size() == 1 && batchSize <= 1) {
+						sendKeepAlive(group.get(0));
+					} else {
+						sendKeepAliveBatch(group);
+					}
+				} catch (Throwable t) {
+					log.warn("Exception sending keepAlive.", t);
 				}
 			}
+		};
 
-		} else if (mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
+		long maxDelay = (long) (keepAliveIntervalTime * jitter);
+		long delay = maxDelay > 0 ? (long) (random.nextDouble() * maxDelay) : 0;
+		executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
 
-			for (String id : ids.keySet()) {
+	private void sendClientKeepAlive() {
 
-				JsonObject params = new JsonObject();
-				params.addProperty("object", id);
-				try {
-					client.sendRequest(new Request<JsonObject>(id, null,
-							"keepAlive", params));
-				} catch (JsonRpcErrorException e) {
-					log.warn(
-							"Error while sending keepAlive for MediaPipeline '{}':"
-									+ " {}. Removing this MediaPipeline from keepAlive list.",
-							id, e.getMessage());
-
-				} catch (IOException e) {
-					log.error(
-							"Exception while sending keepAlive from mediaPipeline "
-									+ id, e);
+		Request<JsonObject> request = new Request<JsonObject>(
+				getClientSessionId(), null, "keepAlive", null);
+
+		send(request, new Continuation<Response<JsonElement>>() {
+			@Override
+			public void onSuccess(Response<JsonElement> response) {
+				if (response != null && response.isError()) {
+					log.warn("Error while sending keepAlive from session {}:"
+							+ " {}", getClientSessionId(), response.getError()
+							.getMessage());
 				}
 			}
 
-		} else if (mode == Mode.PER_CLIENT) {
+			@Override
+			public void onError(Throwable cause) {
+				log.error("Exception while sending keepAlive from session "
+						+ getClientSessionId(), cause);
+			}
+		});
+	}
 
-			try {
-				client.sendRequest("keepAlive", null);
-			} catch (IOException e) {
-				throw new KurentoException(
-						"Exception while sending keepAlive from session "
-								+ client.getSession().getSessionId());
+	private void sendKeepAlive(final String id) {
+
+		send(createKeepAlive(id), new Continuation<Response<JsonElement>>() {
+			@Override
+			public void onSuccess(Response<JsonElement> response) {
+				if (response != null && response.isError()) {
+					logKeepAliveError(id, response);
+				}
 			}
 
+			@Override
+			public void onError(Throwable cause) {
+				log.error("Exception while sending keepAlive from mediaPipeline "
+						+ id, cause);
+			}
+		});
+	}
+
+	private void sendKeepAliveBatch(final List<String> group) {
+
+		final List<Request<JsonObject>> requests = new ArrayList<>(
+				group.size());
+		for (String id : group) {
+			requests.add(createKeepAlive(id));
+		}
+
+		if (syncClient) {
+			sendKeepAliveBatchSync(group, requests);
+			return;
+		}
+
+		acquire(new KeepAliveSend() {
+			@Override
+			public void send(Continuation<Void> release) {
+				sendKeepAliveBatch(group, requests, release);
+			}
+		});
+	}
+
+	private void sendKeepAliveBatch(final List<String> group,
+			List<Request<JsonObject>> requests,
+			final Continuation<Void> release) {
+
+		try {
+
+			client.sendBatch(requests,
+					new Continuation<List<Response<JsonElement>>>() {
+
+						@Override
+						public void onSuccess(
+								List<Response<JsonElement>> responses) {
+							release.onSuccess(null);
+							logKeepAliveErrors(group, responses);
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							release.onSuccess(null);
+							log.error("Exception while sending keepAlives of "
+									+ group.size() + " ids", cause);
+						}
+					});
+
+		} catch (UnsupportedOperationException e) {
+			log.debug("Async batches not supported by client. Sending"
+					+ " keepAlives synchronously");
+			release.onSuccess(null);
+			syncClient = true;
+			sendKeepAliveBatchSync(group, requests);
+		}
+	}
+
+	private void sendKeepAliveBatchSync(List<String> group,
+			List<Request<JsonObject>> requests) {
+
+		try {
+			logKeepAliveErrors(group, client.sendBatch(requests));
+		} catch (IOException | RuntimeException e) {
+			log.error("Exception while sending keepAlives of " + group.size()
+					+ " ids", e);
+		}
+	}
+
+	private void logKeepAliveErrors(List<String> group,
+			List<Response<JsonElement>> responses) {
+
+		for (int i = 0; i < responses.size(); i++) {
+			Response<JsonElement> response = responses.get(i);
+			if (response != null && response.isError()) {
+				logKeepAliveError(group.get(i), response);
+			}
+		}
+	}
+
+	private Request<JsonObject> createKeepAlive(String id) {
+
+		JsonObject params = new JsonObject();
+		params.addProperty("object", id);
+
+		String sessionId = mode == Mode.PER_ID_AS_MEDIAPIPELINE ? id
+				: getClientSessionId();
+
+		return new Request<JsonObject>(sessionId, null, "keepAlive", params);
+	}
+
+	private void logKeepAliveError(String id, Response<JsonElement> response) {
+
+		if (mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
+			log.warn("Error while sending keepAlive for MediaPipeline '{}':"
+					+ " {}. Removing this MediaPipeline from keepAlive list.",
+					id, response.getError().getMessage());
 		} else {
-			throw new KurentoException("Unrecognized keepAlive mode = " + mode);
+			log.error("Error while sending keepAlive from mediaPipeline {}: {}",
+					id, response.getError().getMessage());
 		}
+	}
+
+	private String getClientSessionId() {
+		Session session = client.getSession();
+		return session != null ? session.getSessionId() : null;
+	}
+
+	private void send(final Request<JsonObject> request,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		if (syncClient) {
+			sendSync(request, continuation);
+			return;
+		}
+
+		acquire(new KeepAliveSend() {
+			@Override
+			public void send(Continuation<Void> release) {
+				sendAsync(request, continuation, release);
+			}
+		});
+	}
 
-		log.debug("Finish sending keepAlives");
+	private void sendAsync(Request<JsonObject> request,
+			Continuation<Response<JsonElement>> continuation,
+			final Continuation<Void> release) {
+
+		final Continuation<Response<JsonElement>> keepAliveContinuation = continuation;
+		try {
+
+			client.sendRequest(request,
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+							release.onSuccess(null);
+							keepAliveContinuation.onSuccess(response);
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							release.onSuccess(null);
+							keepAliveContinuation.onError(cause);
+						}
+					});
+
+		} catch (UnsupportedOperationException e) {
+			log.debug("Async requests not supported by client. Sending"
+					+ " keepAlives synchronously");
+			release.onSuccess(null);
+			syncClient = true;
+			sendSync(request, continuation);
+		} catch (IOException | RuntimeException e) {
+			release.onSuccess(null);
+			continuation.onError(e);
+		}
+	}
+
+	private void sendSync(Request<JsonObject> request,
+			Continuation<Response<JsonElement>> continuation) {
+
+		Response<JsonElement> response;
+		try {
+			response = client.sendRequest(request);
+		} catch (IOException | RuntimeException e) {
+			continuation.onError(e);
+			return;
+		}
+		continuation.onSuccess(response);
+	}
+
+	/**
+	 * A keepAlive (or a batch of them) sent once it has a place.
+	 */
+	private interface KeepAliveSend {
+
+		/**
+		 * @param release
+		 *            Continuation to release the place when the response is
+		 *            received
+		 */
+		void send(Continuation<Void> release);
+	}
+
+	/**
+	 * Sends the keepAlive as soon as there is a place for it. It never blocks:
+	 * if there is no place available, the keepAlive waits in a queue until a
+	 * place is released.
+	 */
+	private void acquire(KeepAliveSend send) {
+		waitingKeepAlives.add(send);
+		sendWaitingKeepAlives();
+	}
+
+	private void sendWaitingKeepAlives() {
+
+		Semaphore semaphore = inFlightKeepAlives;
+
+		// A place released after the queue is checked sends the keepAlive
+		// queued before, so no keepAlive waits with places available
+		while (!waitingKeepAlives.isEmpty() && semaphore.tryAcquire()) {
+
+			KeepAliveSend send = waitingKeepAlives.poll();
+			if (send == null) {
+				semaphore.release();
+				continue;
+			}
+
+			try {
+				send.send(newRelease(semaphore));
+			} catch (Throwable t) {
+				log.warn("Exception sending keepAlive.", t);
+			}
+		}
+	}
+
+	/**
+	 * @return The continuation to release a place taken in the semaphore. The
+	 *         place is released when it is invoked or after a keepAlive
+	 *         interval, whatever happens first
+	 */
+	private Continuation<Void> newRelease(final Semaphore semaphore) {
+
+		final AtomicBoolean released = new AtomicBoolean();
+		final Runnable releaseTask = new Runnable() {
+			@Override
+			public void run() {
+				if (released.compareAndSet(false, true)) {
+					semaphore.release();
+					if (!waitingKeepAlives.isEmpty()) {
+						// Released in transport or timeout threads, which are
+						// not used to send
+						try {
+							executor.execute(sendWaitingTask);
+						} catch (RejectedExecutionException e) {
+							log.debug("KeepAlive not sent because the manager"
+									+ " is stopped");
+						}
+					}
+				}
+			}
+		};
+
+		final TimeoutWheel.Timeout timeout = TimeoutWheel.getDefault()
+				.schedule(releaseTask, keepAliveIntervalTime);
+
+		return new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				timeout.cancel();
+				releaseTask.run();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				onSuccess(null);
+			}
+		};
 	}
 
 	public void addId(String id) {
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+/**
+ * This exception occurs when the response to a request has not been received
+ * before its deadline.
+ *
+ * @since 6.0.0
+ */
+public class RequestTimeoutException extends TransportException {
+
+	private static final long serialVersionUID = 3719235620718453842L;
+
+	public RequestTimeoutException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public RequestTimeoutException(String message) {
+		super(message);
+	}
+
+	public RequestTimeoutException(Throwable cause) {
+		super(cause);
+	}
+
+}
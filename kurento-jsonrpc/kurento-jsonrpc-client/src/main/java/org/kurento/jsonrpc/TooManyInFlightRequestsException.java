@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+/**
+ * This exception occurs when a request is rejected without being sent because
+ * the client has reached its max number of in-flight requests.
+ *
+ * @see org.kurento.jsonrpc.internal.InFlightRequestsLimiter
+ * @since 6.0.0
+ */
+public class TooManyInFlightRequestsException extends JsonRpcException {
+
+	private static final long serialVersionUID = -2404862546133519387L;
+
+	public TooManyInFlightRequestsException(String message) {
+		super(message);
+	}
+
+}
@@ -16,16 +16,20 @@ package org.kurento.jsonrpc.client;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.KeepAliveManager;
 import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.internal.InFlightRequestsLimiter;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -126,6 +130,27 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		rsHelper.sendRequest(request, continuation);
 	}
 
+	/**
+	 * Sends several requests in a single message (JSON-RPC 2.0 batch).
+	 *
+	 * @see JsonRpcRequestSenderHelper#sendBatch(List)
+	 */
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+		return rsHelper.sendBatch(requests);
+	}
+
+	/**
+	 * Sends several requests in a single message (JSON-RPC 2.0 batch) without
+	 * blocking.
+	 *
+	 * @see JsonRpcRequestSenderHelper#sendBatch(List, Continuation)
+	 */
+	public void sendBatch(List<Request<JsonObject>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		rsHelper.sendBatch(requests, continuation);
+	}
+
 	public Session getSession() {
 		return session;
 	}
@@ -135,6 +160,49 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		this.session.setSessionId(sessionId);
 	}
 
+	/**
+	 * Sets the max number of requests sent by this client and not responded
+	 * yet. Requests over the limit are queued or rejected depending on the
+	 * overflow policy.
+	 *
+	 * @param maxInFlightRequests
+	 *            The max number of requests. Zero or negative for no limit
+	 */
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		rsHelper.getInFlightRequestsLimiter().setMaxInFlightRequests(
+				maxInFlightRequests);
+	}
+
+	public void setInFlightOverflowPolicy(
+			InFlightRequestsLimiter.OverflowPolicy overflowPolicy) {
+		rsHelper.getInFlightRequestsLimiter().setOverflowPolicy(overflowPolicy);
+	}
+
+	/**
+	 * @return the limiter of in-flight requests, with its configuration and
+	 *         metrics (in-flight and queued requests, queue wait time)
+	 */
+	public InFlightRequestsLimiter getInFlightRequestsLimiter() {
+		return rsHelper.getInFlightRequestsLimiter();
+	}
+
+	/**
+	 * Sets the metrics of the requests sent and received by this client, for
+	 * example an {@link InMemoryJsonRpcMetrics}. There are no metrics by
+	 * default.
+	 *
+	 * @param metrics
+	 *            The metrics, or {@link JsonRpcMetrics#NONE}
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		rsHelper.setMetrics(metrics);
+		handlerManager.setMetrics(metrics);
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return rsHelper.getMetrics();
+	}
+
 	public KeepAliveManager getKeepAliveManager() {
 		return keepAliveManager;
 	}
@@ -15,18 +15,23 @@
 package org.kurento.jsonrpc.client;
 
 import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
-import static org.kurento.jsonrpc.JsonUtils.toJson;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.POLL_RESPONSES_PROPERTY;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
 
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.fluent.Executor;
 import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.HttpResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
@@ -34,10 +39,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 
+/**
+ * JSON-RPC client over HTTP. Requests from the server are received by long
+ * polling: the server holds each poll until it has requests to send.
+ * <p>
+ * The responses to the requests of the server are sent in the params of the
+ * next poll, in an object with the property "responses", so the session id
+ * can be added to them. Servers accept this shape and the plain array of
+ * responses sent by previous clients, but previous servers only accept the
+ * array, so this client requires a server of the same version or newer.
+ */
 public class JsonRpcClientHttp extends JsonRpcClient {
 
+	/**
+	 * Default max number of connections kept open with the server. One of
+	 * them is used by the poll of requests from server.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+	/**
+	 * Max time in millis waiting for data from the server. It has to be
+	 * greater than the time the server holds a poll without messages.
+	 */
+	private static final int SOCKET_TIMEOUT = 60000;
+
+	private static final long POLL_RETRY_DELAY = 1000;
+
 	private final Logger log = LoggerFactory.getLogger(JsonRpcClient.class);
 
 	private Thread longPoolingThread;
@@ -45,9 +75,36 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 	private HttpResponseSender rs;
 
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final Executor httpExecutor;
+
+	private volatile boolean closed;
+
 	public JsonRpcClientHttp(String url) {
+		this(url, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * @param url
+	 *            The url of the server
+	 * @param maxConnections
+	 *            Max number of connections kept open with the server. Requests
+	 *            are sent through them while they are not in use, so a TCP
+	 *            connection is not established in every request
+	 */
+	public JsonRpcClientHttp(String url, int maxConnections) {
 		this.url = url;
 		this.rs = new HttpResponseSender();
+
+		// All requests are sent to the same route
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager).build();
+		this.httpExecutor = Executor.newInstance(httpClient);
+
 		this.rsHelper = new JsonRpcRequestSenderHelper() {
 			@Override
 			public <P, R> Response<R> internalSendRequest(Request<P> request,
@@ -70,7 +127,9 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 		String sessionId = response.getSessionId();
 
-		rsHelper.setSessionId(sessionId);
+		if (sessionId != null) {
+			rsHelper.setSessionId(sessionId);
+		}
 
 		if (session == null) {
 			session = new ClientSession(sessionId, registerInfo, this);
@@ -82,7 +141,7 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 	}
 
 	private void startPooling() {
-		this.longPoolingThread = new Thread() {
+		this.longPoolingThread = new Thread("jsonrpc-http-poll") {
 			@Override
 			public void run() {
 				longPooling();
@@ -94,25 +153,22 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 	private void longPooling() {
 
-		while (true) {
+		// The server holds each poll until it has requests to send, so a new
+		// poll is sent as soon as the previous one is answered
+		while (!closed && !Thread.currentThread().isInterrupted()) {
 
 			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.debug("Long polling thread interrupted", e);
-			}
 
-			if (Thread.interrupted()) {
-				break;
-			}
-
-			try {
+				// Responses are sent in an object, so the session id can be
+				// injected in the params
+				JsonObject params = new JsonObject();
+				params.add(POLL_RESPONSES_PROPERTY,
+						JsonUtils.toJsonElement(rs.getResponseListToSend()));
 
 				JsonElement requestsListJsonObject = this.sendRequest(
-						Request.POLL_METHOD_NAME, rs.getResponseListToSend(),
-						JsonElement.class);
+						Request.POLL_METHOD_NAME, params, JsonElement.class);
 
-				log.info("Response from pool: {}", requestsListJsonObject);
+				log.debug("Response from pool: {}", requestsListJsonObject);
 
 				Type collectionType = new TypeToken<List<Request<JsonElement>>>() {
 				}.getType();
@@ -122,12 +178,24 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 				processServerRequests(requestList);
 
-			} catch (IOException e) {
+			} catch (IOException | RuntimeException e) {
+
+				if (closed) {
+					break;
+				}
+
 				// TODO Decide what to do in this case. If the net connection is
 				// lost, this will retry indefinitely
 				log.error(
 						"Exception when waiting for events (long-polling). Retry",
 						e);
+
+				try {
+					Thread.sleep(POLL_RETRY_DELAY);
+				} catch (InterruptedException e1) {
+					log.debug("Long polling thread interrupted", e1);
+					break;
+				}
 			}
 		}
 	}
@@ -147,28 +215,42 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 	private <P, R> Response<R> internalSendRequestHttp(Request<P> request,
 			Class<R> resultClass) throws IOException {
 
-		String resultJson = org.apache.http.client.fluent.Request.Post(url)
-				.bodyString(toJson(request), ContentType.APPLICATION_JSON)
-				.execute().returnContent().asString();
+		String resultJson = httpExecutor
+				.execute(
+						org.apache.http.client.fluent.Request.Post(url)
+								.socketTimeout(SOCKET_TIMEOUT)
+								.bodyString(request.toString(),
+										ContentType.APPLICATION_JSON))
+				.returnContent().asString();
 
 		if (resultJson == null || resultJson.trim().isEmpty()) {
 			return new Response<>(request.getId(), new ResponseError(3,
 					"The server send an empty response"));
 		}
 
-		Response<R> response = fromJsonResponse(resultJson, resultClass);
+		// Results are converted as in the other transports, so simple values
+		// wrapped in an object are also accepted
+		Response<JsonElement> response = fromJsonResponse(resultJson,
+				JsonElement.class);
 
 		updateSession(response);
 
-		return response;
+		return MessageUtils.convertResponse(response, resultClass);
 	}
 
 	@Override
 	public void close() {
+		closed = true;
 		if (this.longPoolingThread != null) {
-			log.info("Interrupted!!!");
+			log.debug("Stopping long polling thread");
 			this.longPoolingThread.interrupt();
 		}
+		// Aborts the poll in progress, if any
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			log.warn("Exception closing http client", e);
+		}
 		handlerManager.afterConnectionClosed(session,
 				"Client closed connection");
 		session = null;
@@ -179,8 +261,10 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 		try {
 
-			org.apache.http.client.fluent.Request.Post(url)
-					.bodyString("", ContentType.APPLICATION_JSON).execute();
+			httpExecutor.execute(
+					org.apache.http.client.fluent.Request.Post(url)
+							.bodyString("", ContentType.APPLICATION_JSON))
+					.discardContent();
 
 		} catch (ClientProtocolException e) {
 			// Silence http connection exception. This indicate that server is
@@ -13,48 +13,94 @@
  */
 package org.kurento.jsonrpc.client;
 
-import static org.kurento.jsonrpc.JsonUtils.fromJson;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
-
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.internal.client.ClientWebSocketMessageWriter;
 import org.kurento.jsonrpc.internal.client.ClientWebSocketResponseSender;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.ws.MessageFragments;
+import org.kurento.jsonrpc.internal.ws.OutboundQueue;
 import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.MessageDecoder;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 
+/**
+ * JSON-RPC client over a WebSocket connection.
+ * <p>
+ * If the connection is closed unexpectedly, the client reconnects in
+ * background. Attempts are delayed with an exponential backoff (with some
+ * random jitter, so clients disconnected at the same time do not reconnect at
+ * the same time) until the max reconnection time is exhausted. While
+ * reconnecting:
+ * <ul>
+ * <li>Requests sent by the application are buffered, up to
+ * {@link #setMaxBufferedMessages(int)}, and sent once the session is
+ * recovered. Callers are not blocked waiting for the connection.</li>
+ * <li>Requests without response whose method is idempotent (see
+ * {@link #setIdempotentMethods(Set)}) are sent again once the session is
+ * recovered. Other requests without response are failed, as it is not known if
+ * they were executed by the server.</li>
+ * </ul>
+ * If the client can not reconnect, buffered and pending requests are failed
+ * and the connection listener is notified.
+ * <p>
+ * Messages longer than the fragment size are sent in several WebSocket
+ * frames. Received messages can be as large as the max message size, and
+ * permessage-deflate compression can be negotiated with the server.
+ */
 public class JsonRpcClientWebSocket extends JsonRpcClient {
 
-	@WebSocket(maxTextMessageSize = 64 * 1024)
+	@WebSocket
 	public class SimpleEchoSocket {
 
 		@OnWebSocketClose
@@ -65,9 +111,14 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		@OnWebSocketConnect
 		public void onConnect(Session session) {
 			wsSession = session;
-			rs = new ClientWebSocketResponseSender(wsSession);
-			latch.countDown();
-			if (connectionListener != null && !reconnecting) {
+			outboundQueue = new OutboundQueue(
+					new ClientWebSocketMessageWriter(session, fragmentSize),
+					writerExecService,
+					outboundQueueHighWaterMark);
+			outboundQueue.setMetrics(getMetrics());
+			rs = new ClientWebSocketResponseSender(outboundQueue);
+			connectLatch.countDown();
+			if (connectionListener != null && state != State.RECONNECTING) {
 				connectionListener.connected();
 			}
 		}
@@ -82,27 +133,110 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		}
 	}
 
+	private enum State {
+		DISCONNECTED, CONNECTED, RECONNECTING, CLOSED
+	}
+
+	/**
+	 * Request or batch sent by the application while reconnecting
+	 */
+	private static class BufferedMessage {
+
+		private final List<? extends Request<?>> requests;
+		private final boolean batch;
+		// Only for notifications, requests are notified by pendingRequests
+		private final Continuation<Response<JsonElement>> continuation;
+
+		public BufferedMessage(List<? extends Request<?>> requests,
+				boolean batch, Continuation<Response<JsonElement>> continuation) {
+			this.requests = requests;
+			this.batch = batch;
+			this.continuation = continuation;
+		}
+	}
+
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcClientWebSocket.class);
 
-	private CountDownLatch latch = new CountDownLatch(1);
+	public static final long DEFAULT_CONNECTION_TIMEOUT = 15000;
+	public static final long DEFAULT_RECONNECTION_INITIAL_DELAY = 100;
+	public static final long DEFAULT_RECONNECTION_MAX_DELAY = 5000;
+	public static final double DEFAULT_RECONNECTION_JITTER = 0.2;
+	public static final long DEFAULT_MAX_RECONNECTION_TIME = 10000;
+	public static final int DEFAULT_MAX_BUFFERED_MESSAGES = 1000;
+
+	public static final Set<String> DEFAULT_IDEMPOTENT_METHODS = Collections
+			.unmodifiableSet(new HashSet<>(Arrays.asList(
+					JsonRpcConstants.METHOD_PING,
+					JsonRpcConstants.METHOD_KEEP_ALIVE)));
+
+	private static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
+	private static final long CLOSE_DRAIN_TIMEOUT = 5000;
+
+	private volatile CountDownLatch connectLatch = new CountDownLatch(1);
 
 	private ExecutorService execService = Executors.newFixedThreadPool(10);
 
+	// Responses of control requests are processed in their own thread, so
+	// they are not delayed when execService is busy
+	private final ExecutorService controlExecService = Executors
+			.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("jsonrpc-control-%d")
+					.build());
+
+	// Messages are written in their own thread, so they are not queued behind
+	// tasks of execService that may be waiting for their responses
+	private final ExecutorService writerExecService = Executors
+			.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("jsonrpc-writer-%d")
+					.build());
+
+	private final ScheduledExecutorService reconnectionExecutor = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setDaemon(true).setNameFormat("jsonrpc-reconnect-%d")
+					.build());
+
 	private String url;
 	private volatile Session wsSession;
 	private final PendingRequests pendingRequests = new PendingRequests();
 	private ResponseSender rs;
+	private volatile OutboundQueue outboundQueue;
+	private volatile int outboundQueueHighWaterMark = OutboundQueue.DEFAULT_HIGH_WATER_MARK;
 
 	private JsonRpcWSConnectionListener connectionListener;
 
-	private boolean clientClose = false;
+	private WebSocketClient client;
 
-	private static final long TIMEOUT = 60000;
+	// Transitions of the state and the messages sent while reconnecting are
+	// guarded by stateLock. Connecting is guarded by connectLock, so only
+	// one thread establishes the connection.
+	private final Object stateLock = new Object();
+	private final Object connectLock = new Object();
+	private volatile State state = State.DISCONNECTED;
 
-	private WebSocketClient client;
+	private final Queue<BufferedMessage> bufferedMessages = new ArrayDeque<>();
+
+	// Idempotent requests written and not responded yet
+	private final ConcurrentMap<Integer, Request<?>> replayableRequests = new ConcurrentHashMap<>();
+
+	private final Random random = new Random();
+
+	// Initialized before scheduling the first reconnection attempt and then
+	// only accessed by the reconnection thread
+	private long reconnectionStartTime;
+	private int reconnectionAttempts;
 
-	private boolean reconnecting = false;
+	private volatile long connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+	private volatile long reconnectionInitialDelay = DEFAULT_RECONNECTION_INITIAL_DELAY;
+	private volatile long reconnectionMaxDelay = DEFAULT_RECONNECTION_MAX_DELAY;
+	private volatile double reconnectionJitter = DEFAULT_RECONNECTION_JITTER;
+	private volatile long maxReconnectionTime = DEFAULT_MAX_RECONNECTION_TIME;
+	private volatile int maxBufferedMessages = DEFAULT_MAX_BUFFERED_MESSAGES;
+	private volatile Set<String> idempotentMethods = DEFAULT_IDEMPOTENT_METHODS;
+	private volatile int maxMessageSize = MessageFragments.DEFAULT_MAX_MESSAGE_SIZE;
+	private volatile int fragmentSize = MessageFragments.DEFAULT_FRAGMENT_SIZE;
+	private volatile boolean perMessageDeflateEnabled;
 
 	public JsonRpcClientWebSocket(String url) {
 		this(url, null);
@@ -130,16 +264,300 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 				return internalSendRequestWebSocket(request, resultClass);
 			}
+
+			@Override
+			protected void internalSendBatch(
+					List<? extends Request<?>> requests,
+					Continuation<List<Response<JsonElement>>> continuation) {
+
+				internalSendBatchWebSocket(requests, continuation);
+			}
+
+			@Override
+			protected List<Response<JsonElement>> internalSendBatch(
+					List<? extends Request<?>> requests) throws IOException {
+
+				return awaitBatch(requests);
+			}
 		};
 	}
 
 	@Override
 	public void close() throws IOException {
-		if (wsSession != null) {
-			clientClose = true;
-			wsSession.close();
-			client.destroy();
+
+		State previousState;
+		synchronized (stateLock) {
+			previousState = state;
+			state = State.CLOSED;
+			failBufferedMessages(new TransportException(
+					"Client closed connection"));
+		}
+
+		reconnectionExecutor.shutdownNow();
+
+		Session nativeSession = wsSession;
+		if (nativeSession != null && nativeSession.isOpen()) {
+			awaitOutboundQueueDrained();
+			nativeSession.close();
+		} else if (previousState == State.RECONNECTING) {
+			// There is no connection to notify its close
+			notifyDisconnected("Client closed connection");
+		}
+
+		if (client != null) {
+			try {
+				client.stop();
+			} catch (Exception e) {
+				log.warn("Exception stopping WebSocket client", e);
+			}
 		}
+
+		pendingRequests.closeAllPendingRequests("Client closed connection");
+		replayableRequests.clear();
+		execService.shutdown();
+		controlExecService.shutdown();
+		writerExecService.shutdown();
+	}
+
+	private void awaitOutboundQueueDrained() {
+		OutboundQueue queue = outboundQueue;
+		if (queue != null) {
+			try {
+				if (!queue.awaitDrained(CLOSE_DRAIN_TIMEOUT)) {
+					log.warn("Closing connection with {} messages not written",
+							queue.size());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public long getRequestTimeout() {
+		return pendingRequests.getDefaultTimeout();
+	}
+
+	/**
+	 * Sets the default time in millis to wait for the response of a request.
+	 * It can be overridden per request with {@link Request#setTimeout(long)}.
+	 *
+	 * @param requestTimeout
+	 *            The timeout in millis
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		pendingRequests.setDefaultTimeout(requestTimeout);
+	}
+
+	public int getOutboundQueueHighWaterMark() {
+		return outboundQueueHighWaterMark;
+	}
+
+	/**
+	 * Sets the max number of messages waiting to be written in the
+	 * connection. If it is exceeded because the server does not read messages
+	 * fast enough, the connection is closed. The new value is used in the next
+	 * connection.
+	 *
+	 * @param outboundQueueHighWaterMark
+	 *            The max number of queued messages
+	 */
+	public void setOutboundQueueHighWaterMark(int outboundQueueHighWaterMark) {
+		this.outboundQueueHighWaterMark = outboundQueueHighWaterMark;
+	}
+
+	@Override
+	public void setMetrics(JsonRpcMetrics metrics) {
+		super.setMetrics(metrics);
+		OutboundQueue queue = outboundQueue;
+		if (queue != null) {
+			queue.setMetrics(metrics);
+		}
+	}
+
+	public long getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * Sets the max time in millis to wait for each connection attempt.
+	 *
+	 * @param connectionTimeout
+	 *            The timeout in millis
+	 */
+	public void setConnectionTimeout(long connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public long getReconnectionInitialDelay() {
+		return reconnectionInitialDelay;
+	}
+
+	/**
+	 * Sets the delay in millis before the first reconnection attempt. The
+	 * delay is doubled in each failed attempt.
+	 *
+	 * @param reconnectionInitialDelay
+	 *            The delay in millis
+	 */
+	public void setReconnectionInitialDelay(long reconnectionInitialDelay) {
+		this.reconnectionInitialDelay = reconnectionInitialDelay;
+	}
+
+	public long getReconnectionMaxDelay() {
+		return reconnectionMaxDelay;
+	}
+
+	/**
+	 * Sets the max delay in millis between reconnection attempts.
+	 *
+	 * @param reconnectionMaxDelay
+	 *            The delay in millis
+	 */
+	public void setReconnectionMaxDelay(long reconnectionMaxDelay) {
+		this.reconnectionMaxDelay = reconnectionMaxDelay;
+	}
+
+	public double getReconnectionJitter() {
+		return reconnectionJitter;
+	}
+
+	/**
+	 * Sets the max random variation of the delay between reconnection
+	 * attempts, as a fraction of the delay.
+	 *
+	 * @param reconnectionJitter
+	 *            Value between 0 and 1
+	 */
+	public void setReconnectionJitter(double reconnectionJitter) {
+		if (reconnectionJitter < 0 || reconnectionJitter > 1) {
+			throw new IllegalArgumentException(
+					"Jitter has to be between 0 and 1: " + reconnectionJitter);
+		}
+		this.reconnectionJitter = reconnectionJitter;
+	}
+
+	public long getMaxReconnectionTime() {
+		return maxReconnectionTime;
+	}
+
+	/**
+	 * Sets the max time in millis the client tries to reconnect after the
+	 * connection is closed unexpectedly.
+	 *
+	 * @param maxReconnectionTime
+	 *            The time in millis
+	 */
+	public void setMaxReconnectionTime(long maxReconnectionTime) {
+		this.maxReconnectionTime = maxReconnectionTime;
+	}
+
+	public int getMaxBufferedMessages() {
+		return maxBufferedMessages;
+	}
+
+	/**
+	 * Sets the max number of requests, notifications and batches sent while
+	 * reconnecting. When it is exceeded, new messages are failed immediately.
+	 *
+	 * @param maxBufferedMessages
+	 *            The max number of messages
+	 */
+	public void setMaxBufferedMessages(int maxBufferedMessages) {
+		this.maxBufferedMessages = maxBufferedMessages;
+	}
+
+	public Set<String> getIdempotentMethods() {
+		return idempotentMethods;
+	}
+
+	/**
+	 * Sets the methods that can be executed more than once with the same
+	 * effect. Requests of these methods are sent again after reconnecting if
+	 * their response was not received. Default value is
+	 * {@link #DEFAULT_IDEMPOTENT_METHODS}.
+	 *
+	 * @param idempotentMethods
+	 *            The method names
+	 */
+	public void setIdempotentMethods(Set<String> idempotentMethods) {
+		this.idempotentMethods = Collections
+				.unmodifiableSet(new HashSet<>(idempotentMethods));
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Sets the max size in bytes of the messages received from the server.
+	 * If a larger message is received, the connection is closed. The new
+	 * value is used in the next connection.
+	 *
+	 * @param maxMessageSize
+	 *            The max size in bytes
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public int getFragmentSize() {
+		return fragmentSize;
+	}
+
+	/**
+	 * Sets the max number of chars sent in a WebSocket frame. Longer messages
+	 * are sent in several frames. The new value is used in the next
+	 * connection.
+	 *
+	 * @param fragmentSize
+	 *            The max number of chars, or 0 to send each message in one
+	 *            frame
+	 */
+	public void setFragmentSize(int fragmentSize) {
+		this.fragmentSize = fragmentSize;
+	}
+
+	public boolean isPerMessageDeflateEnabled() {
+		return perMessageDeflateEnabled;
+	}
+
+	/**
+	 * Sets if permessage-deflate compression is offered to the server. It is
+	 * used only if the server accepts it. It reduces the bytes sent for large
+	 * messages at the cost of some CPU. The new value is used in the next
+	 * connection.
+	 *
+	 * @param perMessageDeflateEnabled
+	 *            true to offer compression
+	 */
+	public void setPerMessageDeflateEnabled(boolean perMessageDeflateEnabled) {
+		this.perMessageDeflateEnabled = perMessageDeflateEnabled;
+	}
+
+	/**
+	 * @return true if permessage-deflate compression is used in the current
+	 *         connection
+	 */
+	public boolean isPerMessageDeflateNegotiated() {
+		Session session = wsSession;
+		if (session == null || session.getUpgradeResponse() == null) {
+			return false;
+		}
+		for (ExtensionConfig extension : session.getUpgradeResponse()
+				.getExtensions()) {
+			if (PER_MESSAGE_DEFLATE.equals(extension.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the connection was closed unexpectedly and the client
+	 *         is trying to reconnect
+	 */
+	public boolean isReconnecting() {
+		return state == State.RECONNECTING;
 	}
 
 	public void closeNativeSession() {
@@ -151,76 +569,309 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		connectIfNecessary();
 	}
 
-	public synchronized void connectIfNecessary() throws IOException {
+	/**
+	 * Connects to the server if the client is not connected. If the client is
+	 * reconnecting, it returns immediately, as messages are buffered until the
+	 * session is recovered.
+	 *
+	 * @throws IOException
+	 *             If the connection can not be established
+	 */
+	public void connectIfNecessary() throws IOException {
+
+		if (state == State.CONNECTED || state == State.RECONNECTING) {
+			return;
+		}
 
-		if ((wsSession == null) || !wsSession.isOpen()) {
+		synchronized (connectLock) {
 
-			try {
+			if (state == State.CLOSED) {
+				throw new TransportException("Client closed connection");
+			}
 
-				client = new WebSocketClient();
-				SimpleEchoSocket socket = new SimpleEchoSocket();
+			if (state != State.DISCONNECTED) {
+				return;
+			}
+
+			connectNativeSession();
 
+			if (session == null) {
+				session = new ClientSession(null, null,
+						JsonRpcClientWebSocket.this);
+				handlerManager.afterConnectionEstablished(session);
+			} else {
+				try {
+					reconnectSession();
+				} catch (IOException | RuntimeException e) {
+					wsSession.close();
+					throw e;
+				}
+			}
+
+			synchronized (stateLock) {
+				if (state == State.DISCONNECTED) {
+					state = State.CONNECTED;
+				}
+			}
+		}
+	}
+
+	private void connectNativeSession() {
+
+		Future<Session> connectFuture = null;
+
+		try {
+
+			if (client == null) {
+				client = new WebSocketClient();
 				client.start();
+			}
 
-				ClientUpgradeRequest request = new ClientUpgradeRequest();
-				// FIXME Give the client some time, otherwise the exception is
-				// not thrown if the server is down.
-				Thread.sleep(100);
-				wsSession = client.connect(socket, new URI(url), request).get();
+			connectLatch = new CountDownLatch(1);
 
-			} catch (Exception e) {
-				throw new KurentoException(
-						"Exception connecting to WebSocket server", e);
+			client.getPolicy().setMaxTextMessageSize(maxMessageSize);
+
+			ClientUpgradeRequest upgradeRequest = new ClientUpgradeRequest();
+			if (perMessageDeflateEnabled) {
+				// Jetty 9.2 includes the extension but does not install it
+				if (!client.getExtensionFactory().isAvailable(
+						PER_MESSAGE_DEFLATE)) {
+					client.getExtensionFactory().register(PER_MESSAGE_DEFLATE,
+							PerMessageDeflateExtension.class);
+				}
+				upgradeRequest.addExtensions(PER_MESSAGE_DEFLATE);
 			}
 
-			try {
-				// FIXME: Make this configurable
-				if (!latch.await(15, TimeUnit.SECONDS)) {
-					if (connectionListener != null) {
-						connectionListener.connectionTimeout();
-					}
-					throw new KurentoException(
-							"Timeout of 15s when waiting to connect to Websocket server");
+			connectFuture = client.connect(new SimpleEchoSocket(),
+					new URI(url), upgradeRequest);
+
+			wsSession = connectFuture.get(connectionTimeout,
+					TimeUnit.MILLISECONDS);
+
+			if (!connectLatch.await(connectionTimeout, TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException();
+			}
+
+		} catch (TimeoutException e) {
+
+			if (connectFuture != null) {
+				connectFuture.cancel(true);
+			}
+
+			if (connectionListener != null) {
+				connectionListener.connectionTimeout();
+			}
+
+			throw new KurentoException("Timeout of " + connectionTimeout
+					+ "ms when waiting to connect to Websocket server");
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoException(
+					"Interrupted while connecting to WebSocket server", e);
+		} catch (Exception e) {
+			throw new KurentoException(
+					"Exception connecting to WebSocket server", e);
+		}
+	}
+
+	private void reconnectSession() throws IOException {
+
+		try {
+
+			String result = rsHelper.sendRequest(
+					JsonRpcConstants.METHOD_RECONNECT, String.class);
+
+			log.info("Reconnection result: {}", result);
+
+			log.info("Reconnected to the same Kurento server");
+
+		} catch (JsonRpcErrorException e) {
+			if (e.getCode() == 40007) { // Invalid session exception
+
+				rsHelper.setSessionId(null);
+				String result = rsHelper.sendRequest(
+						JsonRpcConstants.METHOD_RECONNECT, String.class);
+
+				log.info("Reconnection result: {}", result);
+
+				log.info("Reconnected to a new Kurento server");
+			}
+		}
+	}
+
+	private void scheduleReconnection(final String closeReason, long delay) {
+		try {
+			reconnectionExecutor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					reconnect(closeReason);
 				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			log.debug("Reconnection not scheduled because client is closed");
+		}
+	}
 
-				if (session == null) {
+	private void reconnect(String closeReason) {
 
-					session =
-							new ClientSession(null, null,
-									JsonRpcClientWebSocket.this);
-					handlerManager.afterConnectionEstablished(session);
+		if (state != State.RECONNECTING) {
+			return;
+		}
 
-				} else {
+		try {
 
-					try {
-						String result =
-								rsHelper.sendRequest(
-										JsonRpcConstants.METHOD_RECONNECT,
-										String.class);
+			connectNativeSession();
 
-						log.info("Reconnection result: {}", result);
+			String previousSessionId = rsHelper.getSessionId();
+			reconnectSession();
 
-						log.info("Reconnected to the same Kurento server");
+			completeReconnection(previousSessionId);
 
-					} catch (JsonRpcErrorException e) {
-						if (e.getCode() == 40007) { // Invalid session exception
+		} catch (Exception e) {
 
-							rsHelper.setSessionId(null);
-							String result =
-									rsHelper.sendRequest(
-											JsonRpcConstants.METHOD_RECONNECT,
-											String.class);
+			if (state != State.RECONNECTING) {
+				return;
+			}
 
-							log.info("Reconnection result: {}", result);
+			// The connection may be open if the reconnect request failed
+			Session nativeSession = wsSession;
+			if (nativeSession != null && nativeSession.isOpen()) {
+				nativeSession.close();
+			}
 
-							log.info("Reconnected to a new Kurento server");
-						}
+			reconnectionAttempts++;
+			long delay = nextReconnectionDelay(reconnectionAttempts);
+			long elapsed = System.currentTimeMillis() - reconnectionStartTime;
+
+			if (elapsed + delay > maxReconnectionTime) {
+				log.warn("Unable to reconnect to {} after {} attempts in {}ms",
+						url, reconnectionAttempts, elapsed, e);
+				abortReconnection(closeReason);
+			} else {
+				log.debug("Reconnection attempt {} to {} failed. Retrying in"
+						+ " {}ms", reconnectionAttempts, url, delay, e);
+				scheduleReconnection(closeReason, delay);
+			}
+		}
+	}
+
+	private long nextReconnectionDelay(int attempt) {
+		long delay = Math.min(reconnectionInitialDelay << Math.min(attempt, 20),
+				reconnectionMaxDelay);
+		double variation = reconnectionJitter * (2 * random.nextDouble() - 1);
+		return (long) (delay * (1 + variation));
+	}
+
+	private void completeReconnection(String previousSessionId) {
+
+		int replayed = 0;
+		int buffered;
+
+		synchronized (stateLock) {
+
+			if (state != State.RECONNECTING) {
+				return;
+			}
+
+			String sessionId = rsHelper.getSessionId();
+
+			// Requests are sent again in the order they were sent originally
+			for (Request<?> request : new TreeMap<>(replayableRequests)
+					.values()) {
+
+				if (!pendingRequests.isPending(request.getId())) {
+					replayableRequests.remove(request.getId());
+					continue;
+				}
+
+				updateSessionId(request, previousSessionId, sessionId);
+				try {
+					writeMessage(Collections.singletonList(request), false);
+					replayed++;
+				} catch (TransportException e) {
+					pendingRequests.handleError(request.getId(), e);
+				}
+			}
+
+			buffered = bufferedMessages.size();
+
+			BufferedMessage message;
+			while ((message = bufferedMessages.poll()) != null) {
+
+				// A request may have timed out while it was buffered
+				Integer id = message.requests.get(0).getId();
+				if (!message.batch && id != null
+						&& !pendingRequests.isPending(id)) {
+					continue;
+				}
+
+				for (Request<?> request : message.requests) {
+					updateSessionId(request, previousSessionId, sessionId);
+				}
+
+				try {
+					writeMessage(message.requests, message.batch);
+					if (message.continuation != null) {
+						message.continuation.onSuccess(null);
 					}
+				} catch (TransportException e) {
+					failMessage(message.requests, message.continuation, e);
 				}
+			}
 
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+			// Messages sent from now on are written directly. They are not
+			// written before the buffered ones because senders wait for
+			// stateLock while the state is RECONNECTING
+			state = State.CONNECTED;
+		}
+
+		log.info("Reconnected to {}. {} requests sent again and {} buffered"
+				+ " messages sent", url, replayed, buffered);
+	}
+
+	private void updateSessionId(Request<?> request, String previousSessionId,
+			String sessionId) {
+		if (previousSessionId != null
+				&& previousSessionId.equals(request.getSessionId())) {
+			request.setSessionId(sessionId);
+		}
+	}
+
+	private void abortReconnection(String closeReason) {
+
+		synchronized (stateLock) {
+			if (state != State.RECONNECTING) {
+				return;
 			}
+			state = State.DISCONNECTED;
+			failBufferedMessages(new TransportException(
+					"Unable to reconnect to " + url));
+		}
+
+		pendingRequests.closeAllPendingRequests("Unable to reconnect: "
+				+ closeReason);
+		replayableRequests.clear();
+
+		notifyDisconnected(closeReason);
+	}
+
+	private void failBufferedMessages(TransportException e) {
+		BufferedMessage message;
+		while ((message = bufferedMessages.poll()) != null) {
+			failMessage(message.requests, message.continuation, e);
+		}
+	}
+
+	private void notifyDisconnected(String closeReason) {
+
+		handlerManager.afterConnectionClosed(session, closeReason);
+
+		log.debug("WebSocket closed due to: {}", closeReason);
+		wsSession = null;
+
+		if (connectionListener != null) {
+			connectionListener.disconnected();
 		}
 	}
 
@@ -231,46 +882,56 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 	protected void handleReconnectDisconnection(final int statusCode,
 			final String closeReason) {
 
-		if (!clientClose) {
-
-			reconnecting  = true;
+		// Messages not written will not be sent in the new connection
+		OutboundQueue queue = outboundQueue;
+		if (queue != null) {
+			queue.close("Connection closed: " + closeReason);
+		}
 
-			execService.execute(new Runnable() {
-				@Override
-				public void run() {
-					try {
-						connectIfNecessary();
+		State previousState;
+		synchronized (stateLock) {
+			previousState = state;
+			if (state == State.CONNECTED) {
+				state = State.RECONNECTING;
+			}
+		}
 
-						reconnecting = false;
-					} catch (KurentoException e) {
+		String reason = "Connection closed: " + closeReason;
 
-						handlerManager.afterConnectionClosed(session,
-								closeReason);
+		switch (previousState) {
+		case CONNECTED:
 
-						log.debug("WebSocket closed due to: {}", closeReason);
-						wsSession = null;
+			// Responses to pending requests will not be received in the new
+			// connection. Idempotent ones are sent again after reconnecting
+			pendingRequests.closeAllPendingRequests(reason,
+					replayableRequests.keySet());
 
-						if (connectionListener != null) {
-							connectionListener.disconnected();
-						}
+			log.info("Connection to {} closed: {}. Reconnecting", url,
+					closeReason);
 
-					} catch (IOException e) {
-						log.warn("Exception trying to reconnect", e);
-					}
-				}
-			});
+			reconnectionStartTime = System.currentTimeMillis();
+			reconnectionAttempts = 0;
+			scheduleReconnection(closeReason, nextReconnectionDelay(0));
+			break;
 
-		} else {
+		case RECONNECTING:
+			// A connection opened while reconnecting has been closed. The
+			// reconnection attempt fails and a new one is scheduled
+			pendingRequests.closeAllPendingRequests(reason,
+					replayableRequests.keySet());
+			break;
 
-			handlerManager.afterConnectionClosed(session, closeReason);
+		case CLOSED:
+			pendingRequests.closeAllPendingRequests(reason);
+			notifyDisconnected(closeReason);
+			break;
 
-			if (connectionListener != null) {
-				connectionListener.disconnected();
-			}
+		default:
+			pendingRequests.closeAllPendingRequests(reason);
 		}
 	}
 
-	private void handleRequestFromServer(final JsonObject message)
+	private void handleRequestFromServer(final Request<JsonElement> request)
 			throws IOException {
 
 		// TODO: Think better ways to do this:
@@ -284,33 +945,53 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			@Override
 			public void run() {
 				try {
-					handlerManager.handleRequest(session,
-							fromJsonRequest(message, JsonElement.class), rs);
+					handlerManager.handleRequest(session, request, rs);
 				} catch (IOException e) {
-					log.warn("Exception processing request " + message, e);
+					log.warn("Exception processing request " + request, e);
 				}
 			}
 		});
 	}
 
-	private void handleResponseFromServer(JsonObject message) {
-
-		Response<JsonElement> response =
-				fromJsonResponse(message, JsonElement.class);
+	private void handleResponseFromServer(Response<JsonElement> response) {
 
 		setSessionId(response.getSessionId());
 
+		if (response.getId() != null) {
+			replayableRequests.remove(response.getId());
+		}
 		pendingRequests.handleResponse(response);
 	}
 
 	private void handleWebSocketTextMessage(String message) throws IOException {
 
-		JsonObject jsonMessage = fromJson(message, JsonObject.class);
+		getMetrics().messageReceived(message.length());
+
+		Message jsonMessage = MessageDecoder.decode(message);
 
-		if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
-			handleRequestFromServer(jsonMessage);
+		if (jsonMessage instanceof MessageBatch) {
+			// Batch: each message is processed as if it was received alone
+			for (Message batchMessage : ((MessageBatch) jsonMessage)
+					.getMessages()) {
+				if (batchMessage != null) {
+					handleJsonMessage(batchMessage);
+				} else {
+					log.warn("Discarding invalid message in batch {}",
+							message);
+				}
+			}
 		} else {
-			handleResponseFromServer(jsonMessage);
+			handleJsonMessage(jsonMessage);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleJsonMessage(Message jsonMessage) throws IOException {
+
+		if (jsonMessage instanceof Request) {
+			handleRequestFromServer((Request<JsonElement>) jsonMessage);
+		} else {
+			handleResponseFromServer((Response<JsonElement>) jsonMessage);
 		}
 	}
 
@@ -319,40 +1000,188 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result =
-							internalSendRequestWebSocket(request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						log.error("Exception while processing response", e);
-					}
-				} catch (Exception e) {
-					continuation.onError(e);
-				}
+		if (!isReconnectRequest(request)) {
+			try {
+				connectIfNecessary();
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
 			}
-		});
+		}
+
+		final Integer id = request.getId();
+
+		if (id != null) {
+
+			final ExecutorService responseExecutor = JsonRpcConstants
+					.isControlMethod(request.getMethod()) ? controlExecService
+					: execService;
+
+			// The response is received in a Jetty thread. The continuation is
+			// executed in an executor to allow sync requests inside it.
+			pendingRequests.prepareResponse(id, request.getTimeout(),
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(
+								final Response<JsonElement> responseJson) {
+							responseExecutor.execute(new Runnable() {
+								@Override
+								public void run() {
+									Response<JsonElement> response = processResponse(
+											responseJson, resultClass);
+									try {
+										continuation.onSuccess(response);
+									} catch (Exception e) {
+										log.error(
+												"Exception while processing response",
+												e);
+									}
+								}
+							});
+						}
+
+						@Override
+						public void onError(final Throwable cause) {
+							replayableRequests.remove(id);
+							responseExecutor.execute(new Runnable() {
+								@Override
+								public void run() {
+									continuation.onError(cause);
+								}
+							});
+						}
+					});
+		}
+
+		List<Request<?>> requests = Collections
+				.<Request<?>> singletonList(request);
+		Continuation<Response<JsonElement>> notificationContinuation = id == null ? continuation
+				: null;
+
+		boolean written;
+		try {
+			written = sendMessage(requests, false, notificationContinuation);
+		} catch (Exception cause) {
+			failMessage(requests, notificationContinuation,
+					new TransportException(
+							"Exception sending request with id:" + id, cause));
+			return;
+		}
+
+		if (id == null && written) {
+			continuation.onSuccess(null);
+		}
+	}
+
+	protected void internalSendBatchWebSocket(
+			final List<? extends Request<?>> requests,
+			final Continuation<List<Response<JsonElement>>> continuation) {
+
+		try {
+			connectIfNecessary();
+		} catch (Exception e) {
+			continuation.onError(e);
+			return;
+		}
+
+		final AtomicReferenceArray<Response<JsonElement>> responses = new AtomicReferenceArray<>(
+				requests.size());
+		final AtomicInteger pendingResponses = new AtomicInteger(
+				requests.size());
+		final AtomicBoolean failed = new AtomicBoolean();
+
+		for (int i = 0; i < requests.size(); i++) {
+
+			final int index = i;
+			final Request<?> request = requests.get(i);
+
+			// The continuation is notified only once, when all responses are
+			// received or when the first request fails
+			pendingRequests.prepareResponse(request.getId(),
+					request.getTimeout(),
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+
+							responses.set(index, response);
+
+							if (pendingResponses.decrementAndGet() == 0) {
+								execService.execute(new Runnable() {
+									@Override
+									public void run() {
+										notifyBatchResponses(responses,
+												continuation);
+									}
+								});
+							}
+						}
+
+						@Override
+						public void onError(final Throwable cause) {
+							replayableRequests.remove(request.getId());
+							if (failed.compareAndSet(false, true)) {
+								execService.execute(new Runnable() {
+									@Override
+									public void run() {
+										continuation.onError(cause);
+									}
+								});
+							}
+						}
+					});
+		}
+
+		try {
+			sendMessage(requests, true, null);
+		} catch (Exception cause) {
+			failMessage(requests, null, new TransportException(
+					"Exception sending batch of " + requests.size()
+							+ " requests", cause));
+		}
+	}
+
+	private void notifyBatchResponses(
+			AtomicReferenceArray<Response<JsonElement>> responsesJson,
+			Continuation<List<Response<JsonElement>>> continuation) {
+
+		List<Response<JsonElement>> responses = new ArrayList<>(
+				responsesJson.length());
+		for (int i = 0; i < responsesJson.length(); i++) {
+			responses.add(processResponse(responsesJson.get(i),
+					JsonElement.class));
+		}
+
+		try {
+			continuation.onSuccess(responses);
+		} catch (Exception e) {
+			log.error("Exception while processing batch responses", e);
+		}
 	}
 
 	private <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
 			Class<R> resultClass) throws IOException {
 
-		connectIfNecessary();
+		if (!isReconnectRequest(request)) {
+			connectIfNecessary();
+		}
 
 		Future<Response<JsonElement>> responseFuture = null;
 
 		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					request.getTimeout());
 		}
 
-		String jsonMessage = request.toString();
-		log.debug("Req-> {}", jsonMessage.trim());
-		synchronized (wsSession) {
-			wsSession.getRemote().sendString(jsonMessage);
+		try {
+			sendMessage(Collections.<Request<?>> singletonList(request), false,
+					null);
+		} catch (TransportException e) {
+			if (request.getId() != null) {
+				pendingRequests.handleError(request.getId(), e);
+			}
+			throw e;
 		}
 
 		if (responseFuture == null) {
@@ -362,30 +1191,166 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		Response<JsonElement> responseJson;
 		try {
 
-			responseJson = responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			// The pending request is failed when its deadline expires
+			responseJson = responseFuture.get();
 
-			log.debug("<-Res {}", responseJson.toString());
-
-			Response<R> response =
-					MessageUtils.convertResponse(responseJson, resultClass);
-
-			if (response.getSessionId() != null) {
-				session.setSessionId(response.getSessionId());
-			}
-
-			return response;
+			return processResponse(responseJson, resultClass);
 
 		} catch (InterruptedException e) {
 			// TODO What to do in this case?
 			throw new KurentoException(
 					"Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
-			// TODO Is there a better way to handle this?
-			throw new KurentoException("This exception shouldn't be thrown", e);
-		} catch (TimeoutException e) {
-			throw new TransportException("Timeout of " + TIMEOUT
-					+ " milliseconds waiting from response to request with id:"
-					+ request.getId(), e);
+			if (e.getCause() instanceof KurentoException) {
+				throw (KurentoException) e.getCause();
+			}
+			throw new TransportException(
+					"Exception waiting from response to request with id:"
+							+ request.getId(), e.getCause());
+		} finally {
+			replayableRequests.remove(request.getId());
+		}
+	}
+
+	private boolean isReconnectRequest(Request<?> request) {
+		return JsonRpcConstants.METHOD_RECONNECT.equals(request.getMethod());
+	}
+
+	/**
+	 * Writes a request or batch in the connection or, if the client is
+	 * reconnecting, buffers it until the session is recovered. The reconnect
+	 * request is always written, as it is used to recover the session.
+	 *
+	 * @return true if the message has been written, false if it has been
+	 *         buffered
+	 * @throws TransportException
+	 *             If the message can not be written or buffered
+	 */
+	private boolean sendMessage(List<? extends Request<?>> requests,
+			boolean batch, Continuation<Response<JsonElement>> continuation) {
+
+		if (state != State.RECONNECTING || !batch
+				&& isReconnectRequest(requests.get(0))) {
+			writeMessage(requests, batch);
+			return true;
+		}
+
+		synchronized (stateLock) {
+
+			if (state != State.RECONNECTING) {
+				writeMessage(requests, batch);
+				return true;
+			}
+
+			if (bufferedMessages.size() >= maxBufferedMessages) {
+				throw new TransportException(
+						"Can not send message while reconnecting. There are "
+								+ maxBufferedMessages
+								+ " messages waiting for the connection");
+			}
+
+			bufferedMessages.add(new BufferedMessage(requests, batch,
+					continuation != null ? inExecutor(continuation) : null));
+			return false;
+		}
+	}
+
+	private void writeMessage(List<? extends Request<?>> requests,
+			boolean batch) {
+
+		OutboundQueue queue = outboundQueue;
+		if (queue == null) {
+			throw new TransportException("Connection not established");
+		}
+
+		for (Request<?> request : requests) {
+			if (request.getId() != null
+					&& idempotentMethods.contains(request.getMethod())) {
+				replayableRequests.put(request.getId(), request);
+			}
+		}
+
+		String jsonMessage = batch ? new MessageBatch(requests).toString()
+				: requests.get(0).toString();
+		log.debug("Req-> {}", jsonMessage.trim());
+
+		try {
+			if (!batch
+					&& JsonRpcConstants.isControlMethod(requests.get(0)
+							.getMethod())) {
+				queue.sendPriority(jsonMessage);
+			} else {
+				queue.send(jsonMessage);
+			}
+		} catch (TransportException e) {
+			for (Request<?> request : requests) {
+				if (request.getId() != null) {
+					replayableRequests.remove(request.getId());
+				}
+			}
+			throw e;
+		}
+	}
+
+	private void failMessage(List<? extends Request<?>> requests,
+			Continuation<Response<JsonElement>> continuation,
+			TransportException e) {
+
+		for (Request<?> request : requests) {
+			if (request.getId() != null) {
+				pendingRequests.handleError(request.getId(), e);
+			} else if (continuation != null) {
+				continuation.onError(e);
+			} else {
+				log.warn("Notification {} not sent: {}", request.getMethod(),
+						e.getMessage());
+			}
 		}
 	}
+
+	private Continuation<Response<JsonElement>> inExecutor(
+			final Continuation<Response<JsonElement>> continuation) {
+
+		return new Continuation<Response<JsonElement>>() {
+
+			@Override
+			public void onSuccess(final Response<JsonElement> result) {
+				execService.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							continuation.onSuccess(result);
+						} catch (Exception e) {
+							log.error("Exception while processing response", e);
+						}
+					}
+				});
+			}
+
+			@Override
+			public void onError(final Throwable cause) {
+				execService.execute(new Runnable() {
+					@Override
+					public void run() {
+						continuation.onError(cause);
+					}
+				});
+			}
+		};
+	}
+
+	private <R> Response<R> processResponse(Response<JsonElement> responseJson,
+			Class<R> resultClass) {
+
+		log.debug("<-Res {}", responseJson.toString());
+
+		Response<R> response = MessageUtils.convertResponse(responseJson,
+				resultClass);
+
+		if (response.getSessionId() != null) {
+			session.setSessionId(response.getSessionId());
+		}
+
+		return response;
+	}
 }
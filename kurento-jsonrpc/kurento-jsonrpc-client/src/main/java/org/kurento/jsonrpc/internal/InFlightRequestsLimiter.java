@@ -0,0 +1,360 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.TooManyInFlightRequestsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests sent and not responded yet. When the limit is
+ * reached, new requests are queued until a response is received, or rejected
+ * with a {@link TooManyInFlightRequestsException}, depending on the
+ * {@link OverflowPolicy}. Queued requests are sent in order.
+ * <p>
+ * A batch takes a permit for each of its requests, up to the max number of
+ * in-flight requests, so batches larger than the limit can be sent when there
+ * are no other requests in flight.
+ * <p>
+ * By default there is no limit, so requests are never queued nor rejected.
+ *
+ * @since 6.0.0
+ */
+public class InFlightRequestsLimiter {
+
+	public enum OverflowPolicy {
+		/**
+		 * Requests over the limit wait until other requests are responded
+		 */
+		QUEUE,
+		/**
+		 * Requests over the limit fail immediately
+		 */
+		REJECT
+	}
+
+	private static class Waiter {
+
+		private final int permits;
+		private final Runnable task;
+		private final long enqueueTime = System.nanoTime();
+
+		public Waiter(int permits, Runnable task) {
+			this.permits = permits;
+			this.task = task;
+		}
+	}
+
+	private static final Logger log = LoggerFactory
+			.getLogger(InFlightRequestsLimiter.class);
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	// Guarded by the queue itself
+	private final Queue<Waiter> waiters = new ArrayDeque<>();
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private volatile int maxInFlightRequests;
+	private volatile int maxQueuedRequests = Integer.MAX_VALUE;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.QUEUE;
+
+	private final AtomicLong rejectedRequests = new AtomicLong();
+	private final AtomicLong dequeuedRequests = new AtomicLong();
+	private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+	private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+	public int getMaxInFlightRequests() {
+		return maxInFlightRequests;
+	}
+
+	/**
+	 * Sets the max number of requests sent and not responded yet.
+	 *
+	 * @param maxInFlightRequests
+	 *            The max number of requests. Zero or negative for no limit
+	 */
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		this.maxInFlightRequests = maxInFlightRequests;
+		release(0);
+	}
+
+	public int getMaxQueuedRequests() {
+		return maxQueuedRequests;
+	}
+
+	/**
+	 * Sets the max number of requests waiting to be sent with
+	 * {@link OverflowPolicy#QUEUE}. Requests over this number are rejected.
+	 *
+	 * @param maxQueuedRequests
+	 *            The max number of queued requests
+	 */
+	public void setMaxQueuedRequests(int maxQueuedRequests) {
+		this.maxQueuedRequests = maxQueuedRequests;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @param overflowPolicy
+	 *            What to do with requests over the limit
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * @return the number of requests sent and not responded yet
+	 */
+	public int getInFlightRequests() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of requests waiting to be sent
+	 */
+	public int getQueuedRequests() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of requests rejected since the creation of the
+	 *         limiter
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+
+	/**
+	 * @return the number of requests that have been sent after waiting in the
+	 *         queue
+	 */
+	public long getDequeuedRequests() {
+		return dequeuedRequests.get();
+	}
+
+	/**
+	 * @return the average time in millis waited by requests that have been
+	 *         queued
+	 */
+	public double getAverageQueueWaitTime() {
+		long dequeued = dequeuedRequests.get();
+		return dequeued == 0 ? 0 : totalQueueWaitNanos.get() / 1000000.0
+				/ dequeued;
+	}
+
+	/**
+	 * @return the max time in millis waited by a request in the queue
+	 */
+	public long getMaxQueueWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos.get());
+	}
+
+	/**
+	 * Takes permits to send a request or batch. If they are not available, the
+	 * task is queued and executed in the thread that releases them.
+	 *
+	 * @param permits
+	 *            Number of requests to be sent
+	 * @param task
+	 *            Task sending the requests if they have to wait
+	 * @return true if permits have been taken and the caller has to send the
+	 *         requests, false if the task has been queued
+	 * @throws TooManyInFlightRequestsException
+	 *             If the request is rejected
+	 */
+	public boolean acquireOrEnqueue(int permits, Runnable task) {
+
+		int max = maxInFlightRequests;
+
+		if (max <= 0 && queued.get() == 0) {
+			inFlight.addAndGet(permits);
+			return true;
+		}
+
+		List<Waiter> ready;
+
+		synchronized (waiters) {
+
+			if (waiters.isEmpty() && fits(permits)) {
+				inFlight.addAndGet(permits);
+				return true;
+			}
+
+			if (overflowPolicy == OverflowPolicy.REJECT
+					|| waiters.size() >= maxQueuedRequests) {
+				rejectedRequests.incrementAndGet();
+				throw new TooManyInFlightRequestsException("Request rejected: "
+						+ inFlight.get() + " requests in flight (max "
+						+ max + ") and " + waiters.size() + " queued");
+			}
+
+			waiters.add(new Waiter(permits, task));
+			queued.incrementAndGet();
+
+			// A release may have returned the last permits after fits() but
+			// before the waiter was counted, seeing no one to wake up
+			ready = pollReady();
+		}
+
+		runReady(ready);
+		return false;
+	}
+
+	/**
+	 * Takes permits to send a request or batch, waiting until they are
+	 * available if the policy is {@link OverflowPolicy#QUEUE}.
+	 *
+	 * @param permits
+	 *            Number of requests to be sent
+	 * @throws TooManyInFlightRequestsException
+	 *             If the request is rejected
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	public void acquire(int permits) throws InterruptedException {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+
+		if (acquireOrEnqueue(permits, task)) {
+			return;
+		}
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			// The permits may have been granted meanwhile
+			if (!removeWaiter(task)) {
+				release(permits);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns permits taken by requests that have been responded or failed,
+	 * and sends queued requests that fit in the limit now.
+	 *
+	 * @param permits
+	 *            Number of responded requests
+	 */
+	public void release(int permits) {
+
+		inFlight.addAndGet(-permits);
+
+		if (queued.get() == 0) {
+			return;
+		}
+
+		List<Waiter> ready;
+
+		synchronized (waiters) {
+			ready = pollReady();
+		}
+
+		runReady(ready);
+	}
+
+	// Must be called holding the waiters lock
+	private List<Waiter> pollReady() {
+
+		List<Waiter> ready = new ArrayList<>();
+
+		Waiter waiter;
+		while ((waiter = waiters.peek()) != null && fits(waiter.permits)) {
+			waiters.poll();
+			queued.decrementAndGet();
+			inFlight.addAndGet(waiter.permits);
+			ready.add(waiter);
+		}
+
+		return ready;
+	}
+
+	private void runReady(List<Waiter> ready) {
+		for (Waiter waiter : ready) {
+			recordQueueWait(System.nanoTime() - waiter.enqueueTime);
+			try {
+				waiter.task.run();
+			} catch (RuntimeException e) {
+				log.error("Exception sending queued request", e);
+			}
+		}
+	}
+
+	/**
+	 * Normalizes the number of permits of a batch, so it can be sent when
+	 * there are no other requests in flight.
+	 *
+	 * @param requests
+	 *            Number of requests of the batch
+	 * @return The number of permits to take
+	 */
+	public int permitsFor(int requests) {
+		int max = maxInFlightRequests;
+		return max > 0 ? Math.min(requests, max) : requests;
+	}
+
+	private boolean fits(int permits) {
+		int max = maxInFlightRequests;
+		return max <= 0 || inFlight.get() + permits <= max;
+	}
+
+	private boolean removeWaiter(Runnable task) {
+		synchronized (waiters) {
+			Iterator<Waiter> it = waiters.iterator();
+			while (it.hasNext()) {
+				if (it.next().task == task) {
+					it.remove();
+					queued.decrementAndGet();
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private void recordQueueWait(long waitNanos) {
+
+		dequeuedRequests.incrementAndGet();
+		totalQueueWaitNanos.addAndGet(waitNanos);
+
+		long max;
+		while (waitNanos > (max = maxQueueWaitNanos.get())) {
+			if (maxQueueWaitNanos.compareAndSet(max, waitNanos)) {
+				break;
+			}
+		}
+	}
+}
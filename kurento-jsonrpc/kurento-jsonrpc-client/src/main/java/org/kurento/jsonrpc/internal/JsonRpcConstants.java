@@ -48,12 +48,16 @@ public class JsonRpcConstants {
 
 	public static final String METHOD_POLL = "poll";
 
+	public static final String POLL_RESPONSES_PROPERTY = "responses";
+
 	public static final String METHOD_EXECUTE = "execute";
 
 	public static final String METHOD_RECONNECT = "connect";
 
 	public static final String METHOD_PING = "ping";
 
+	public static final String METHOD_KEEP_ALIVE = "keepAlive";
+
 	public static final String PONG = "pong";
 
 	public static final String EVENT_SESSION_TERMINATED = "sessionTerminated";
@@ -80,4 +84,20 @@ public class JsonRpcConstants {
 
 	public static final int ERROR_SERVER_ERROR = -32000;
 
+	public static final int ERROR_TOO_MANY_REQUESTS = -32001;
+
+	/**
+	 * Control methods keep the connection and the session alive. Their
+	 * messages are sent before the rest of queued messages and they are not
+	 * limited by the max number of in-flight requests.
+	 *
+	 * @param method
+	 *            The method of a request
+	 * @return true if it is ping, keepAlive or reconnect
+	 */
+	public static boolean isControlMethod(String method) {
+		return METHOD_PING.equals(method) || METHOD_KEEP_ALIVE.equals(method)
+				|| METHOD_RECONNECT.equals(method);
+	}
+
 }
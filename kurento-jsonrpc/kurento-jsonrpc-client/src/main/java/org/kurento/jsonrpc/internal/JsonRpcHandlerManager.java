@@ -14,9 +14,12 @@
  */
 package org.kurento.jsonrpc.internal;
 
+import static org.kurento.jsonrpc.JsonUtils.getGson;
+
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcException;
@@ -24,22 +27,120 @@ import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
 
 public class JsonRpcHandlerManager {
 
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcHandlerManager.class);
 
+	/**
+	 * Dispatch metadata of the handler: the type of the params of the requests
+	 * it handles and the converter used to obtain them from the received JSON.
+	 * It only depends on the declaration of the handler class, so it is
+	 * computed when the first request is dispatched and reused afterwards.
+	 */
+	private static class HandlerDispatch {
+
+		private final Class<?> paramsType;
+
+		// Null if params are converted by MessageUtils (values and JSON types)
+		private final TypeAdapter<?> paramsAdapter;
+
+		private HandlerDispatch(Class<?> paramsType) {
+
+			this.paramsType = paramsType;
+
+			if (paramsType == String.class || paramsType == Boolean.class
+					|| paramsType == Character.class
+					|| Number.class.isAssignableFrom(paramsType)
+					|| paramsType.isPrimitive()
+					|| JsonElement.class.isAssignableFrom(paramsType)) {
+				this.paramsAdapter = null;
+			} else {
+				this.paramsAdapter = getGson().getAdapter(paramsType);
+			}
+		}
+
+		/**
+		 * Converts the params of the request to the type expected by the
+		 * handler.
+		 *
+		 * @param request
+		 *            The request as received
+		 * @return The same request with its params converted
+		 * @throws ClassCastException
+		 *             If params can not be converted
+		 */
+		@SuppressWarnings("unchecked")
+		public Request<?> convertRequest(Request<?> request) {
+
+			Object params = request.getParams();
+
+			if (paramsAdapter == null || !(params instanceof JsonElement)
+					|| paramsType.isInstance(params)) {
+				return MessageUtils.convertRequest(request, paramsType);
+			}
+
+			Request<Object> requestP = (Request<Object>) request;
+			requestP.setParams(paramsAdapter.fromJsonTree((JsonElement) params));
+			return requestP;
+		}
+	}
+
+	/**
+	 * Reports the completion of a request to the metrics when it is
+	 * responded, or when the handler returns if it is a notification.
+	 */
+	private static class MeasuringResponseSender implements ResponseSender {
+
+		private final JsonRpcMetrics metrics;
+		private final String method;
+		private final ResponseSender rs;
+		private final long startTime = System.nanoTime();
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		public MeasuringResponseSender(JsonRpcMetrics metrics, String method,
+				ResponseSender rs) {
+			this.metrics = metrics;
+			this.method = method;
+			this.rs = rs;
+		}
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			try {
+				rs.sendResponse(message);
+			} finally {
+				complete(message instanceof Response
+						&& ((Response<?>) message).isError());
+			}
+		}
+
+		public void complete(boolean error) {
+			if (completed.compareAndSet(false, true)) {
+				metrics.incomingRequestCompleted(method, System.nanoTime()
+						- startTime, error);
+			}
+		}
+	}
+
 	private JsonRpcHandler<?> handler;
 
+	private volatile HandlerDispatch dispatch;
+
+	private volatile JsonRpcMetrics metrics = JsonRpcMetrics.NONE;
+
 	public JsonRpcHandlerManager(JsonRpcHandler<?> handler) {
 		this.handler = handler;
 	}
@@ -55,6 +156,19 @@ public class JsonRpcHandlerManager {
 	 */
 	public void setJsonRpcHandler(JsonRpcHandler<?> handler) {
 		this.handler = handler;
+		this.dispatch = null;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            Metrics of the requests dispatched to the handler
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	public void afterConnectionClosed(Session session, String reason) {
@@ -89,10 +203,32 @@ public class JsonRpcHandlerManager {
 		}
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void handleRequest(Session session, Request<JsonElement> request,
 			ResponseSender rs) throws IOException {
 
+		JsonRpcMetrics metrics = this.metrics;
+		if (metrics == JsonRpcMetrics.NONE || handler == null) {
+			dispatchRequest(session, request, rs);
+			return;
+		}
+
+		metrics.incomingRequestStarted(request.getMethod());
+
+		MeasuringResponseSender measuringRs = new MeasuringResponseSender(
+				metrics, request.getMethod(), rs);
+		try {
+			dispatchRequest(session, request, measuringRs);
+		} finally {
+			if (request.getId() == null) {
+				measuringRs.complete(false);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void dispatchRequest(Session session,
+			Request<JsonElement> request, ResponseSender rs) throws IOException {
+
 		try {
 
 			if (handler == null) {
@@ -102,12 +238,17 @@ public class JsonRpcHandlerManager {
 				return;
 			}
 
-			Class<?> paramsType = getParamsType(handler.getHandlerType());
+			HandlerDispatch dispatch = this.dispatch;
+			if (dispatch == null) {
+				dispatch = new HandlerDispatch(getParamsType(handler
+						.getHandlerType()));
+				this.dispatch = dispatch;
+			}
+
 			Request<?> nonGenRequest;
 			try {
 
-				nonGenRequest = MessageUtils
-						.convertRequest(request, paramsType);
+				nonGenRequest = dispatch.convertRequest(request);
 
 			} catch (ClassCastException e) {
 
@@ -115,7 +256,7 @@ public class JsonRpcHandlerManager {
 						+ handler.getClass()
 						+ " is trying to process the request. But request params '"
 						+ request.getParams() + "' cannot be converted to "
-						+ paramsType.getCanonicalName()
+						+ dispatch.paramsType.getCanonicalName()
 						+ ". The type to convert params is specified in the"
 						+ " handler as the supertype generic parameter";
 
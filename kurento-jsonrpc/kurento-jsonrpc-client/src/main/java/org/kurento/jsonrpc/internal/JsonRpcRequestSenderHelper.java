@@ -15,14 +15,26 @@
 package org.kurento.jsonrpc.internal;
 
 import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_POLL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.isControlMethod;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.concurrent.BasicFuture;
+import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.TooManyInFlightRequestsException;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -33,6 +45,10 @@ public abstract class JsonRpcRequestSenderHelper implements
 	protected AtomicInteger id = new AtomicInteger();
 	protected String sessionId;
 
+	private final InFlightRequestsLimiter inFlightRequestsLimiter = new InFlightRequestsLimiter();
+
+	private volatile JsonRpcMetrics metrics = JsonRpcMetrics.NONE;
+
 	public JsonRpcRequestSenderHelper() {
 	}
 
@@ -48,6 +64,26 @@ public abstract class JsonRpcRequestSenderHelper implements
 		this.sessionId = sessionId;
 	}
 
+	/**
+	 * @return the limiter of requests sent by this sender and not responded
+	 *         yet. Its configuration and metrics are shared by all transports
+	 */
+	public InFlightRequestsLimiter getInFlightRequestsLimiter() {
+		return inFlightRequestsLimiter;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            Metrics of the requests sent by this sender
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	@Override
 	public <R> R sendRequest(String method, Class<R> resultClass)
 			throws IOException {
@@ -72,7 +108,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 	public <P, R> R sendRequest(Request<P> request, Class<R> resultClass)
 			throws JsonRpcErrorException, IOException {
 
-		Response<R> response = internalSendRequest(request, resultClass);
+		Response<R> response = sendMeasuredRequest(request, resultClass);
 
 		if (response == null) {
 			return null;
@@ -111,7 +147,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 			request.setSessionId(sessionId);
 		}
 
-		internalSendRequest(request, JsonElement.class,
+		sendMeasuredRequest(request,
 				new Continuation<Response<JsonElement>>() {
 
 					@Override
@@ -171,7 +207,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		return internalSendRequest(request, JsonElement.class);
+		return sendMeasuredRequest(request, JsonElement.class);
 	}
 
 	private void setIdIfNecessary(Request<? extends Object> request) {
@@ -185,7 +221,485 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		internalSendRequest(request, JsonElement.class, continuation);
+		sendMeasuredRequest(request, continuation);
+	}
+
+	/**
+	 * Sends several requests in a single JSON-RPC 2.0 batch and waits for all
+	 * the responses. Requests without id are assigned one, so notifications
+	 * can not be included in a batch. Error responses are not thrown, they are
+	 * returned in the list like the other responses.
+	 *
+	 * @param requests
+	 *            The requests to be sent
+	 * @return The responses, in the same order as the requests
+	 * @throws IOException
+	 *             If the batch can not be sent or a response is not received
+	 */
+	public List<Response<JsonElement>> sendBatch(
+			List<Request<JsonObject>> requests) throws IOException {
+
+		if (requests.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		for (Request<JsonObject> request : requests) {
+			setIdIfNecessary(request);
+		}
+
+		List<Response<JsonElement>> responses = sendMeasuredBatch(requests);
+		updateSessionId(responses);
+		return responses;
+	}
+
+	/**
+	 * Sends several requests in a single JSON-RPC 2.0 batch. The continuation
+	 * is notified when the responses to all requests are received, in the same
+	 * order as the requests, or when any of them fails.
+	 * <p>
+	 * Only transports able to send a batch without blocking support it (i.e.
+	 * WebSocket). The rest throw an {@link UnsupportedOperationException}, as
+	 * they do for async requests, and {@link #sendBatch(List)} has to be used
+	 * instead.
+	 *
+	 * @param requests
+	 *            The requests to be sent
+	 * @param continuation
+	 *            The continuation to be notified
+	 */
+	public void sendBatch(List<Request<JsonObject>> requests,
+			final Continuation<List<Response<JsonElement>>> continuation) {
+
+		if (requests.isEmpty()) {
+			continuation.onSuccess(Collections
+					.<Response<JsonElement>> emptyList());
+			return;
+		}
+
+		for (Request<JsonObject> request : requests) {
+			setIdIfNecessary(request);
+		}
+
+		sendMeasuredBatch(requests,
+				new Continuation<List<Response<JsonElement>>>() {
+
+					@Override
+					public void onSuccess(List<Response<JsonElement>> responses) {
+						updateSessionId(responses);
+						continuation.onSuccess(responses);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						continuation.onError(cause);
+					}
+				});
+	}
+
+	private void updateSessionId(List<Response<JsonElement>> responses) {
+		for (Response<JsonElement> response : responses) {
+			if (response != null && response.getSessionId() != null) {
+				sessionId = response.getSessionId();
+			}
+		}
+	}
+
+	private <P, R> Response<R> sendMeasuredRequest(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		if (isPoll(request)) {
+			return sendRequestWithLimit(request, resultClass);
+		}
+
+		JsonRpcMetrics metrics = this.metrics;
+		String method = request.getMethod();
+
+		metrics.outgoingRequestStarted(method);
+		long startTime = System.nanoTime();
+		boolean error = true;
+
+		try {
+
+			Response<R> response = sendRequestWithLimit(request, resultClass);
+			error = response != null && response.isError();
+			return response;
+
+		} finally {
+			metrics.outgoingRequestCompleted(method, System.nanoTime()
+					- startTime, error);
+		}
+	}
+
+	private void sendMeasuredRequest(Request<? extends Object> request,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		final JsonRpcMetrics metrics = this.metrics;
+		if (metrics == JsonRpcMetrics.NONE || isPoll(request)) {
+			sendRequestWithLimit(request, continuation);
+			return;
+		}
+
+		final String method = request.getMethod();
+		metrics.outgoingRequestStarted(method);
+		final long startTime = System.nanoTime();
+
+		sendRequestWithLimit(request,
+				new Continuation<Response<JsonElement>>() {
+
+					@Override
+					public void onSuccess(Response<JsonElement> response) {
+						metrics.outgoingRequestCompleted(method,
+								System.nanoTime() - startTime,
+								response != null && response.isError());
+						continuation.onSuccess(response);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						metrics.outgoingRequestCompleted(method,
+								System.nanoTime() - startTime, true);
+						continuation.onError(cause);
+					}
+				});
+	}
+
+	/**
+	 * Each request of the batch is measured, all of them completed when the
+	 * responses are received.
+	 */
+	private List<Response<JsonElement>> sendMeasuredBatch(
+			List<? extends Request<?>> requests) throws IOException {
+
+		JsonRpcMetrics metrics = this.metrics;
+		if (metrics == JsonRpcMetrics.NONE) {
+			return sendBatchWithLimit(requests);
+		}
+
+		for (Request<?> request : requests) {
+			metrics.outgoingRequestStarted(request.getMethod());
+		}
+		long startTime = System.nanoTime();
+		List<Response<JsonElement>> responses = null;
+
+		try {
+
+			responses = sendBatchWithLimit(requests);
+			return responses;
+
+		} finally {
+			completeMeasuredBatch(metrics, requests, responses,
+					System.nanoTime() - startTime);
+		}
+	}
+
+	private void sendMeasuredBatch(final List<? extends Request<?>> requests,
+			final Continuation<List<Response<JsonElement>>> continuation) {
+
+		final JsonRpcMetrics metrics = this.metrics;
+		if (metrics == JsonRpcMetrics.NONE) {
+			sendBatchWithLimit(requests, continuation);
+			return;
+		}
+
+		for (Request<?> request : requests) {
+			metrics.outgoingRequestStarted(request.getMethod());
+		}
+		final long startTime = System.nanoTime();
+
+		sendBatchWithLimit(requests,
+				new Continuation<List<Response<JsonElement>>>() {
+
+					@Override
+					public void onSuccess(List<Response<JsonElement>> responses) {
+						completeMeasuredBatch(metrics, requests, responses,
+								System.nanoTime() - startTime);
+						continuation.onSuccess(responses);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						completeMeasuredBatch(metrics, requests, null,
+								System.nanoTime() - startTime);
+						continuation.onError(cause);
+					}
+				});
+	}
+
+	/**
+	 * @param responses
+	 *            The responses to the batch, or null if it failed
+	 */
+	private void completeMeasuredBatch(JsonRpcMetrics metrics,
+			List<? extends Request<?>> requests,
+			List<Response<JsonElement>> responses, long duration) {
+
+		for (int i = 0; i < requests.size(); i++) {
+			Response<JsonElement> response = responses != null
+					&& i < responses.size() ? responses.get(i) : null;
+			metrics.outgoingRequestCompleted(requests.get(i).getMethod(),
+					duration, response == null || response.isError());
+		}
+	}
+
+	/**
+	 * Notifications are not responded, so they are never in flight. Connection
+	 * control requests are not limited, as in-flight requests may depend on
+	 * them to be responded. Neither are HTTP polls, which are held by the
+	 * server and carry the responses to its requests.
+	 */
+	private boolean isLimited(Request<?> request) {
+		return request.getId() != null
+				&& !isControlMethod(request.getMethod()) && !isPoll(request);
+	}
+
+	/**
+	 * HTTP polls are held by the server until it has requests to send, so
+	 * their duration is not measured as a request latency.
+	 */
+	private boolean isPoll(Request<?> request) {
+		return METHOD_POLL.equals(request.getMethod());
+	}
+
+	private <P, R> Response<R> sendRequestWithLimit(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		if (!isLimited(request)) {
+			return internalSendRequest(request, resultClass);
+		}
+
+		try {
+			inFlightRequestsLimiter.acquire(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoException(
+					"Interrupted while waiting to send request", e);
+		}
+
+		try {
+			return internalSendRequest(request, resultClass);
+		} finally {
+			inFlightRequestsLimiter.release(1);
+		}
+	}
+
+	private void sendRequestWithLimit(final Request<? extends Object> request,
+			Continuation<Response<JsonElement>> continuation) {
+
+		if (!isLimited(request)) {
+			internalSendRequest(request, JsonElement.class, continuation);
+			return;
+		}
+
+		final Continuation<Response<JsonElement>> releasingContinuation = new ReleasingContinuation<>(
+				1, continuation);
+
+		boolean acquired;
+		try {
+			acquired = inFlightRequestsLimiter.acquireOrEnqueue(1,
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								internalSendRequest(request, JsonElement.class,
+										releasingContinuation);
+							} catch (RuntimeException e) {
+								releasingContinuation.onError(e);
+							}
+						}
+					});
+		} catch (TooManyInFlightRequestsException e) {
+			continuation.onError(e);
+			return;
+		}
+
+		if (acquired) {
+			try {
+				internalSendRequest(request, JsonElement.class,
+						releasingContinuation);
+			} catch (RuntimeException e) {
+				// E.g. transports not supporting async requests
+				inFlightRequestsLimiter.release(1);
+				throw e;
+			}
+		}
+	}
+
+	private List<Response<JsonElement>> sendBatchWithLimit(
+			List<? extends Request<?>> requests) throws IOException {
+
+		int permits = inFlightRequestsLimiter.permitsFor(requests.size());
+
+		try {
+			inFlightRequestsLimiter.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoException(
+					"Interrupted while waiting to send batch", e);
+		}
+
+		try {
+			return internalSendBatch(requests);
+		} finally {
+			inFlightRequestsLimiter.release(permits);
+		}
+	}
+
+	private void sendBatchWithLimit(final List<? extends Request<?>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+
+		int permits = inFlightRequestsLimiter.permitsFor(requests.size());
+
+		final Continuation<List<Response<JsonElement>>> releasingContinuation = new ReleasingContinuation<>(
+				permits, continuation);
+
+		boolean acquired;
+		try {
+			acquired = inFlightRequestsLimiter.acquireOrEnqueue(permits,
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								internalSendBatch(requests,
+										releasingContinuation);
+							} catch (RuntimeException e) {
+								releasingContinuation.onError(e);
+							}
+						}
+					});
+		} catch (TooManyInFlightRequestsException e) {
+			continuation.onError(e);
+			return;
+		}
+
+		if (acquired) {
+			try {
+				internalSendBatch(requests, releasingContinuation);
+			} catch (UnsupportedOperationException e) {
+				// Transports not supporting async batches
+				inFlightRequestsLimiter.release(permits);
+				throw e;
+			} catch (RuntimeException e) {
+				releasingContinuation.onError(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the permits of the in-flight requests once they are responded
+	 * or failed, before notifying the continuation.
+	 */
+	private class ReleasingContinuation<F> implements Continuation<F> {
+
+		private final int permits;
+		private final Continuation<F> continuation;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		public ReleasingContinuation(int permits, Continuation<F> continuation) {
+			this.permits = permits;
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void onSuccess(F result) {
+			release();
+			continuation.onSuccess(result);
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			release();
+			continuation.onError(cause);
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				inFlightRequestsLimiter.release(permits);
+			}
+		}
+	}
+
+	/**
+	 * Sends a batch of requests and waits for the responses. Transports able
+	 * to send several messages at once override this method; by default,
+	 * requests are sent one by one.
+	 *
+	 * @param requests
+	 *            The requests to be sent. All of them have id
+	 * @return The responses, in the same order as the requests
+	 */
+	protected List<Response<JsonElement>> internalSendBatch(
+			List<? extends Request<?>> requests) throws IOException {
+
+		List<Response<JsonElement>> responses = new ArrayList<>(
+				requests.size());
+
+		for (Request<?> request : requests) {
+			responses.add(internalSendRequest(request, JsonElement.class));
+		}
+
+		return responses;
+	}
+
+	/**
+	 * Sends a batch of requests without blocking. Only transports able to do
+	 * it override this method.
+	 *
+	 * @param requests
+	 *            The requests to be sent. All of them have id
+	 * @param continuation
+	 *            The continuation to be notified with the responses
+	 * @throws UnsupportedOperationException
+	 *             If the transport can not send a batch without blocking
+	 */
+	protected void internalSendBatch(List<? extends Request<?>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		throw new UnsupportedOperationException(
+				"Async batches are not supported by this transport");
+	}
+
+	/**
+	 * Sends a batch of requests with
+	 * {@link #internalSendBatch(List, Continuation)} and waits for the
+	 * responses. It is used by transports sending batches without blocking to
+	 * implement {@link #internalSendBatch(List)}.
+	 */
+	protected List<Response<JsonElement>> awaitBatch(
+			List<? extends Request<?>> requests) throws IOException {
+
+		final BasicFuture<List<Response<JsonElement>>> future = new BasicFuture<>(
+				null);
+
+		internalSendBatch(requests,
+				new Continuation<List<Response<JsonElement>>>() {
+
+					@Override
+					public void onSuccess(List<Response<JsonElement>> responses) {
+						future.completed(responses);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						future.failed(cause instanceof Exception ? (Exception) cause
+								: new KurentoException(cause));
+					}
+				});
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoException(
+					"Interrupted while waiting for batch responses", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof KurentoException) {
+				throw (KurentoException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new TransportException("Exception sending batch",
+					e.getCause());
+		}
 	}
 
 	protected abstract <P, R> Response<R> internalSendRequest(
@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.kurento.jsonrpc.internal.ws.MessageFragments;
+import org.kurento.jsonrpc.internal.ws.OutboundQueue.MessageWriter;
+
+/**
+ * Writes messages in a Jetty WebSocket session. Messages are sent
+ * asynchronously, so Jetty aggregates the frames written before a flush in as
+ * few network writes as possible. The flush waits for all of them to be
+ * written, so the number of messages buffered by Jetty is bounded.
+ * <p>
+ * Messages longer than the fragment size are sent in several frames. They are
+ * written after flushing the previous messages, as Jetty only sends partial
+ * messages in blocking mode.
+ */
+public class ClientWebSocketMessageWriter implements MessageWriter {
+
+	private static final long WRITE_TIMEOUT_MILLIS = 15000;
+
+	private final Session wsSession;
+
+	private final int fragmentSize;
+
+	private final List<Future<Void>> pendingWrites = new ArrayList<>();
+
+	public ClientWebSocketMessageWriter(Session wsSession, int fragmentSize) {
+		this.wsSession = wsSession;
+		this.fragmentSize = fragmentSize;
+	}
+
+	@Override
+	public void write(String message) throws IOException {
+
+		List<String> fragments = MessageFragments.split(message, fragmentSize);
+
+		if (fragments.size() == 1) {
+			pendingWrites.add(wsSession.getRemote()
+					.sendStringByFuture(message));
+			return;
+		}
+
+		flush();
+
+		for (int i = 0; i < fragments.size(); i++) {
+			wsSession.getRemote().sendPartialString(fragments.get(i),
+					i == fragments.size() - 1);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+
+		try {
+
+			wsSession.getRemote().flush();
+
+			for (Future<Void> write : pendingWrites) {
+				write.get(WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing messages", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Exception writing messages", e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("Timeout of " + WRITE_TIMEOUT_MILLIS
+					+ " milliseconds writing messages", e);
+		} finally {
+			pendingWrites.clear();
+		}
+	}
+
+	@Override
+	public void close(String reason) {
+
+		// If the close handshake has already started, e.g. because the write
+		// failed as the session is closing, a second close frame would
+		// replace the first one and Jetty would not notify the close
+		if (isClosing()) {
+			return;
+		}
+
+		wsSession.close(StatusCode.POLICY_VIOLATION, reason);
+	}
+
+	private boolean isClosing() {
+		return wsSession instanceof WebSocketSession
+				&& !((WebSocketSession) wsSession).getConnection().getIOState()
+						.isOutputAvailable();
+	}
+}
@@ -16,8 +16,8 @@ package org.kurento.jsonrpc.internal.client;
 
 import java.io.IOException;
 
-import org.eclipse.jetty.websocket.api.Session;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.ws.OutboundQueue;
 import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,18 +27,16 @@ public final class ClientWebSocketResponseSender implements ResponseSender {
 	private static final Logger log = LoggerFactory
 			.getLogger(ClientWebSocketResponseSender.class);
 
-	private final Session wsSession;
+	private final OutboundQueue outboundQueue;
 
-	public ClientWebSocketResponseSender(Session wsSession) {
-		this.wsSession = wsSession;
+	public ClientWebSocketResponseSender(OutboundQueue outboundQueue) {
+		this.outboundQueue = outboundQueue;
 	}
 
 	@Override
 	public void sendResponse(Message message) throws IOException {
 		String jsonMessage = message.toString();
 		log.debug("<-Res {}", jsonMessage);
-		synchronized (wsSession) {
-			wsSession.getRemote().sendString(jsonMessage);
-		}
+		outboundQueue.send(jsonMessage);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Limits of the size of WebSocket messages shared by client and server.
+ * Messages longer than the fragment size are sent as several WebSocket
+ * frames, so the peer can start reading a large message before it is
+ * completely written and no frame exceeds the buffers of intermediaries.
+ *
+ * @since 6.0.0
+ */
+public class MessageFragments {
+
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+
+	public static final int DEFAULT_FRAGMENT_SIZE = 64 * 1024;
+
+	private MessageFragments() {
+	}
+
+	/**
+	 * Splits a message in fragments of at most fragmentSize chars. A
+	 * surrogate pair is never split, so each fragment can be encoded on its
+	 * own.
+	 *
+	 * @param message
+	 *            The message
+	 * @param fragmentSize
+	 *            The max number of chars of each fragment. If it is not
+	 *            positive, the message is not split
+	 * @return The fragments of the message, in order
+	 */
+	public static List<String> split(String message, int fragmentSize) {
+
+		if (fragmentSize <= 0 || message.length() <= fragmentSize) {
+			return Collections.singletonList(message);
+		}
+
+		List<String> fragments = new ArrayList<>(message.length()
+				/ fragmentSize + 1);
+
+		int start = 0;
+		while (start < message.length()) {
+
+			int end = Math.min(start + fragmentSize, message.length());
+			if (end < message.length()
+					&& Character.isHighSurrogate(message.charAt(end - 1))
+					&& end - 1 > start) {
+				end--;
+			}
+
+			fragments.add(message.substring(start, end));
+			start = end;
+		}
+
+		return fragments;
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound queue of a WebSocket connection. Any thread can send messages
+ * without blocking; they are written by only one thread at a time, that is
+ * taken from the executor when there are messages to be written. All messages
+ * available when the writer is running are written together and flushed
+ * once, so the transport can coalesce them in fewer writes.
+ *
+ * If the peer does not read messages as fast as they are sent and the number
+ * of queued messages exceeds the high-water mark, the connection is closed.
+ * It is also closed if the executor rejects the writer, as messages are
+ * never written by the sending thread.
+ *
+ * Control messages (pings, keepAlives, reconnections and their responses) are
+ * sent through a priority lane: they are written before the next queued
+ * message, so they only wait for the message being written. As any other
+ * message, they are never written by the sending thread.
+ *
+ * @since 6.0.0
+ */
+public class OutboundQueue {
+
+	/**
+	 * Transport used by the queue. It is invoked from only one thread at a
+	 * time.
+	 */
+	public interface MessageWriter {
+
+		/**
+		 * Writes a message. The transport can buffer it until
+		 * {@link #flush()} is invoked.
+		 */
+		void write(String message) throws IOException;
+
+		/**
+		 * Writes all buffered messages. It can block until they are written.
+		 */
+		void flush() throws IOException;
+
+		/**
+		 * Closes the connection because messages can not be written.
+		 */
+		void close(String reason);
+	}
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutboundQueue.class);
+
+	public static final int DEFAULT_HIGH_WATER_MARK = 10000;
+
+	private static final int MAX_MESSAGES_PER_FLUSH = 64;
+
+	private final Queue<String> messages = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queuedMessages = new AtomicInteger();
+
+	private final Queue<String> priorityMessages = new ConcurrentLinkedQueue<>();
+
+	// Number of sends not yet seen by the writer. The thread that changes it
+	// from zero becomes the writer.
+	private final AtomicInteger pendingDrains = new AtomicInteger();
+
+	private final MessageWriter writer;
+	private final Executor executor;
+	private final int highWaterMark;
+
+	private final AtomicReference<String> closeReason = new AtomicReference<>();
+
+	private volatile JsonRpcMetrics metrics = JsonRpcMetrics.NONE;
+
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * @param writer
+	 *            The transport
+	 * @param executor
+	 *            Executor used to write messages
+	 * @param highWaterMark
+	 *            Max number of queued messages before closing the connection.
+	 *            If not positive, {@link #DEFAULT_HIGH_WATER_MARK} is used
+	 */
+	public OutboundQueue(MessageWriter writer, Executor executor,
+			int highWaterMark) {
+		this.writer = writer;
+		this.executor = executor;
+		this.highWaterMark = highWaterMark > 0 ? highWaterMark
+				: DEFAULT_HIGH_WATER_MARK;
+	}
+
+	/**
+	 * @param metrics
+	 *            Metrics where the messages accepted by the queue are
+	 *            reported
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Queues a message to be written. It never blocks.
+	 *
+	 * @param message
+	 *            The message
+	 * @throws TransportException
+	 *             If the queue is closed, it has exceeded its high-water mark
+	 *             or the executor rejects the writer. In the latter cases the
+	 *             connection is closed
+	 */
+	public void send(String message) {
+
+		String closedReason = closeReason.get();
+		if (closedReason != null) {
+			throw new TransportException("Can not send message: "
+					+ closedReason);
+		}
+
+		if (queuedMessages.incrementAndGet() > highWaterMark) {
+
+			queuedMessages.decrementAndGet();
+
+			String reason = "Outbound queue exceeded its high-water mark of "
+					+ highWaterMark + " messages";
+
+			if (close(reason)) {
+				log.warn("{}. Closing connection", reason);
+				writer.close(reason);
+			}
+
+			throw new TransportException("Can not send message: " + reason);
+		}
+
+		messages.add(message);
+		metrics.messageSent(message.length());
+
+		scheduleDrain();
+	}
+
+	/**
+	 * Sends a control message before the rest of queued messages. It is not
+	 * counted against the high-water mark. It never blocks.
+	 *
+	 * @param message
+	 *            The message
+	 * @throws TransportException
+	 *             If the queue is closed or the executor rejects the writer.
+	 *             In the latter case the connection is closed
+	 */
+	public void sendPriority(String message) {
+
+		String closedReason = closeReason.get();
+		if (closedReason != null) {
+			throw new TransportException("Can not send message: "
+					+ closedReason);
+		}
+
+		priorityMessages.add(message);
+		metrics.messageSent(message.length());
+
+		scheduleDrain();
+	}
+
+	/**
+	 * Discards queued messages and rejects new ones. It is invoked when the
+	 * connection has been closed.
+	 *
+	 * @param reason
+	 *            The reason to close the queue
+	 * @return true if the queue was open
+	 */
+	public boolean close(String reason) {
+
+		// Only the first one closes the queue, so the connection is closed
+		// once even if a producer and the writer fail at the same time
+		if (!closeReason.compareAndSet(null, reason)) {
+			return false;
+		}
+
+		while (messages.poll() != null) {
+			queuedMessages.decrementAndGet();
+		}
+		priorityMessages.clear();
+
+		return true;
+	}
+
+	/**
+	 * Waits until the messages queued before invoking this method have been
+	 * written. It is used to close the connection gracefully.
+	 *
+	 * @param timeoutMillis
+	 *            Max time to wait
+	 * @return true if all messages have been written, false if the timeout
+	 *         expired
+	 */
+	public boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		synchronized (this) {
+			while (pendingDrains.get() != 0) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				wait(remaining);
+			}
+		}
+		return true;
+	}
+
+	public boolean isClosed() {
+		return closeReason.get() != null;
+	}
+
+	/**
+	 * @return The number of messages waiting to be written
+	 */
+	public int size() {
+		return queuedMessages.get();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	private void scheduleDrain() {
+
+		if (pendingDrains.getAndIncrement() != 0) {
+			return;
+		}
+
+		try {
+			executor.execute(drainTask);
+		} catch (RejectedExecutionException e) {
+			// The messages can not be left in the queue until the next send,
+			// and they are not written here because it would block the
+			// sending thread (e.g. the receiving thread of the transport). The
+			// connection is closed as when the high-water mark is exceeded
+			String reason = "Outbound queue writer rejected by the executor";
+
+			if (close(reason)) {
+				log.warn("{}. Closing connection", reason, e);
+				writer.close(reason);
+			}
+
+			pendingDrains.set(0);
+			synchronized (this) {
+				notifyAll();
+			}
+
+			throw new TransportException("Can not send message: " + reason, e);
+		}
+	}
+
+	private void drain() {
+
+		drainMessages();
+
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	private void drainMessages() {
+
+		int drains = pendingDrains.get();
+
+		do {
+
+			try {
+
+				writePriorityMessages();
+
+				int written = 0;
+				String message;
+				while ((message = messages.poll()) != null) {
+
+					if (writePriorityMessages()) {
+						written = 0;
+					}
+
+					queuedMessages.decrementAndGet();
+
+					writer.write(message);
+
+					if (++written == MAX_MESSAGES_PER_FLUSH) {
+						writer.flush();
+						written = 0;
+					}
+				}
+
+				if (written > 0) {
+					writer.flush();
+				}
+
+				writePriorityMessages();
+
+			} catch (Exception e) {
+				closeOnWriteError(e);
+			}
+
+			drains = pendingDrains.addAndGet(-drains);
+
+		} while (drains != 0);
+	}
+
+	/**
+	 * Writes and flushes all priority messages. Messages written before by
+	 * the same thread are flushed with them.
+	 *
+	 * @return true if any message has been written
+	 */
+	private boolean writePriorityMessages() throws IOException {
+
+		boolean written = false;
+		String message;
+		while ((message = priorityMessages.poll()) != null) {
+			writer.write(message);
+			written = true;
+		}
+
+		if (written) {
+			writer.flush();
+		}
+		return written;
+	}
+
+	private void closeOnWriteError(Exception e) {
+
+		String reason = "Exception writing message: " + e.getMessage();
+		if (close(reason)) {
+			log.warn("{}. Closing connection", reason, e);
+			writer.close(reason);
+		}
+	}
+
+}
@@ -14,12 +14,20 @@
  */
 package org.kurento.jsonrpc.internal.ws;
 
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 
 import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.kurento.jsonrpc.ConnectionLostException;
 import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.RequestTimeoutException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.ws.TimeoutWheel.Timeout;
 import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,37 +37,220 @@ import com.google.gson.JsonElement;
 
 public class PendingRequests {
 
+	private static final class PendingRequest {
+
+		private final BasicFuture<Response<JsonElement>> future;
+		private volatile Timeout timeout;
+
+		private PendingRequest(BasicFuture<Response<JsonElement>> future) {
+			this.future = future;
+		}
+	}
+
 	private static final Logger log = LoggerFactory
 			.getLogger(PendingRequests.class);
 
-	private final ConcurrentMap<Integer, BasicFuture<Response<JsonElement>>> pendingRequests = new ConcurrentHashMap<>();
+	public static final long DEFAULT_REQUEST_TIMEOUT = 60000;
+
+	private final ConcurrentMap<Integer, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+	private final TimeoutWheel timeoutWheel;
+
+	private volatile long defaultTimeout;
+
+	public PendingRequests() {
+		this(DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	public PendingRequests(long defaultTimeout) {
+		this(defaultTimeout, TimeoutWheel.getDefault());
+	}
+
+	public PendingRequests(long defaultTimeout, TimeoutWheel timeoutWheel) {
+		this.defaultTimeout = defaultTimeout;
+		this.timeoutWheel = timeoutWheel;
+	}
+
+	public long getDefaultTimeout() {
+		return defaultTimeout;
+	}
+
+	public void setDefaultTimeout(long defaultTimeout) {
+		this.defaultTimeout = defaultTimeout;
+	}
+
+	public int size() {
+		return pendingRequests.size();
+	}
+
+	/**
+	 * @param id
+	 *            The request id
+	 * @return true if the request is waiting for its response
+	 */
+	public boolean isPending(Integer id) {
+		return pendingRequests.containsKey(id);
+	}
 
 	public void handleResponse(Response<JsonElement> response) {
 
-		BasicFuture<Response<JsonElement>> responseFuture = pendingRequests
+		if (response.getId() == null) {
+			// Error not related to any request, e.g. an invalid batch
+			log.error("Protocol error reported by peer: {}",
+					response.getError() != null ? response.getError()
+							.getCompleteMessage() : response);
+			return;
+		}
+
+		PendingRequest pendingRequest = pendingRequests
 				.remove(response.getId());
 
-		if (responseFuture == null) {
+		if (pendingRequest == null) {
 			// TODO It is necessary to do something else? Who is watching this?
 			log.error("Received response with an id not registered as pending request");
 		} else {
-			responseFuture.completed(response);
+			cancelTimeout(pendingRequest);
+			pendingRequest.future.completed(response);
+		}
+	}
+
+	public void handleError(Integer id, Throwable cause) {
+
+		PendingRequest pendingRequest = pendingRequests.remove(id);
+
+		if (pendingRequest != null) {
+			cancelTimeout(pendingRequest);
+			pendingRequest.future
+					.failed(cause instanceof Exception ? (Exception) cause
+							: new JsonRpcException(cause));
+		}
+	}
+
+	/**
+	 * Fails all pending requests with a {@link ConnectionLostException}. It
+	 * is invoked when the transport is closed, because the responses to these
+	 * requests will never be received.
+	 *
+	 * @param reason
+	 *            The reason to close the pending requests
+	 */
+	public void closeAllPendingRequests(String reason) {
+		closeAllPendingRequests(reason, Collections.<Integer> emptySet());
+	}
+
+	/**
+	 * Fails all pending requests except the given ones. It is invoked when the
+	 * transport is closed but some requests will be sent again in a new
+	 * transport.
+	 *
+	 * @param reason
+	 *            The reason to close the pending requests
+	 * @param keptIds
+	 *            Ids of the requests that remain pending
+	 */
+	public void closeAllPendingRequests(String reason, Set<Integer> keptIds) {
+
+		for (Entry<Integer, PendingRequest> entry : pendingRequests.entrySet()) {
+			if (keptIds.contains(entry.getKey())) {
+				continue;
+			}
+			if (pendingRequests.remove(entry.getKey(), entry.getValue())) {
+				cancelTimeout(entry.getValue());
+				entry.getValue().future.failed(new ConnectionLostException(
+						"Request with id " + entry.getKey()
+								+ " cancelled before receiving response: "
+								+ reason));
+			}
 		}
 	}
 
 	public Future<Response<JsonElement>> prepareResponse(Integer id) {
+		return prepareResponse(id, -1);
+	}
+
+	public Future<Response<JsonElement>> prepareResponse(Integer id,
+			long timeout) {
+		return prepareResponse(id, timeout,
+				(FutureCallback<Response<JsonElement>>) null);
+	}
+
+	public void prepareResponse(Integer id,
+			Continuation<Response<JsonElement>> continuation) {
+		prepareResponse(id, -1, continuation);
+	}
+
+	/**
+	 * Registers a pending request whose response will be notified to the
+	 * continuation. The continuation is invoked in the thread that handles the
+	 * response (or the error), so it should not block.
+	 *
+	 * @param id
+	 *            The request id
+	 * @param timeout
+	 *            Max time in millis to wait for the response. If not positive,
+	 *            the default timeout is used
+	 * @param continuation
+	 *            The continuation to be notified when the response arrives
+	 */
+	public void prepareResponse(Integer id, long timeout,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		prepareResponse(id, timeout,
+				new FutureCallback<Response<JsonElement>>() {
+
+					@Override
+					public void completed(Response<JsonElement> response) {
+						continuation.onSuccess(response);
+					}
+
+					@Override
+					public void failed(Exception cause) {
+						continuation.onError(cause);
+					}
+
+					@Override
+					public void cancelled() {
+						continuation.onError(new JsonRpcException(
+								"Request cancelled before receiving a response"));
+					}
+				});
+	}
+
+	private Future<Response<JsonElement>> prepareResponse(final Integer id,
+			long timeout, FutureCallback<Response<JsonElement>> callback) {
 
 		Preconditions.checkNotNull(id, "The request id cannot be null");
 
-		BasicFuture<Response<JsonElement>> responseFuture = new BasicFuture<>(
-				null);
+		final PendingRequest pendingRequest = new PendingRequest(
+				new BasicFuture<>(callback));
 
-		if (pendingRequests.putIfAbsent(id, responseFuture) != null) {
+		if (pendingRequests.putIfAbsent(id, pendingRequest) != null) {
 			throw new JsonRpcException("Can not send a request with the id '"
 					+ id + "'. There is already a pending request with this id");
 		}
 
-		return responseFuture;
+		final long requestTimeout = timeout > 0 ? timeout : defaultTimeout;
+
+		pendingRequest.timeout = timeoutWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (pendingRequests.remove(id, pendingRequest)) {
+					pendingRequest.future.failed(new RequestTimeoutException(
+							"Timeout of " + requestTimeout
+									+ " milliseconds waiting from response"
+									+ " to request with id:" + id));
+				}
+			}
+		}, requestTimeout);
+
+		return pendingRequest.future;
+	}
+
+	private void cancelTimeout(PendingRequest pendingRequest) {
+		Timeout timeout = pendingRequest.timeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
 	}
 
 }
@@ -0,0 +1,195 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Hashed wheel timer used to expire pending requests. Each timeout is stored
+ * in the bucket of the tick in which it expires, so scheduling and cancelling
+ * a timeout are O(1) operations and only one thread is needed to expire the
+ * requests of all connections. Timeouts are expired with a precision of one
+ * tick.
+ */
+public class TimeoutWheel {
+
+	public static final class Timeout {
+
+		// Cleared when the timeout is cancelled, so a cancelled timeout
+		// waiting for its tick does not keep the task (and the request and
+		// response it references) reachable
+		private volatile Runnable task;
+		private final long deadline;
+		private long remainingRounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public void cancel() {
+			task = null;
+		}
+
+		public boolean isCancelled() {
+			return task == null;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+
+	private static final Logger log = LoggerFactory
+			.getLogger(TimeoutWheel.class);
+
+	private static final long DEFAULT_TICK_MILLIS = 100;
+
+	private static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static volatile TimeoutWheel defaultWheel;
+
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+	// Buckets are only accessed from the executor thread
+	private final LinkedList<Timeout>[] wheel;
+	private final int mask;
+	private final long tickMillis;
+	private final long startTime;
+	private long tick;
+
+	private final ScheduledExecutorService executor;
+
+	public TimeoutWheel() {
+		this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	@SuppressWarnings("unchecked")
+	public TimeoutWheel(long tickMillis, int wheelSize) {
+
+		if (Integer.bitCount(wheelSize) != 1) {
+			throw new IllegalArgumentException(
+					"Wheel size must be a power of two: " + wheelSize);
+		}
+
+		this.tickMillis = tickMillis;
+		this.mask = wheelSize - 1;
+		this.wheel = new LinkedList[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			wheel[i] = new LinkedList<>();
+		}
+
+		this.executor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("jsonrpc-timeouts-%d")
+						.build());
+
+		this.startTime = System.currentTimeMillis();
+
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					expireTimeouts();
+				} catch (Throwable t) {
+					log.warn("Exception expiring timeouts", t);
+				}
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the wheel shared by all connections of this JVM.
+	 *
+	 * @return the default wheel
+	 */
+	public static TimeoutWheel getDefault() {
+		if (defaultWheel == null) {
+			synchronized (TimeoutWheel.class) {
+				if (defaultWheel == null) {
+					defaultWheel = new TimeoutWheel();
+				}
+			}
+		}
+		return defaultWheel;
+	}
+
+	public Timeout schedule(Runnable task, long delayMillis) {
+		Timeout timeout = new Timeout(task, System.currentTimeMillis()
+				+ delayMillis);
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	private void expireTimeouts() {
+
+		transferNewTimeouts();
+
+		Iterator<Timeout> it = wheel[(int) (tick & mask)].iterator();
+		while (it.hasNext()) {
+
+			Timeout timeout = it.next();
+			Runnable task = timeout.task;
+
+			if (task == null) {
+				it.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				it.remove();
+				timeout.task = null;
+				try {
+					task.run();
+				} catch (Exception e) {
+					log.warn("Exception executing timeout task", e);
+				}
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+
+		tick++;
+	}
+
+	private void transferNewTimeouts() {
+
+		Timeout timeout;
+		while ((timeout = newTimeouts.poll()) != null) {
+
+			if (timeout.isCancelled()) {
+				continue;
+			}
+
+			long expirationTick = Math.max(
+					(timeout.deadline - startTime) / tickMillis, tick);
+
+			timeout.remainingRounds = (expirationTick - tick) / wheel.length;
+			wheel[(int) (expirationTick & mask)].add(timeout);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON-RPC 2.0 batch. It is serialized as a JSON array with the messages it
+ * contains, so it can be sent in a single transport message.
+ *
+ * @since 6.0.0
+ */
+public class MessageBatch extends Message {
+
+	private final List<Message> messages;
+
+	public MessageBatch(List<? extends Message> messages) {
+		this.messages = new ArrayList<>(messages);
+	}
+
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder("[");
+		for (Message message : messages) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append(message.toString());
+		}
+		return sb.append(']').toString();
+	}
+}
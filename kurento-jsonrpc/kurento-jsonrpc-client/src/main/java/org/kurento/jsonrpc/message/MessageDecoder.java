@@ -0,0 +1,250 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.message;
+
+import static org.kurento.jsonrpc.JsonUtils.getGson;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_VERSION;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RESULT_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SESSION_ID_PROPERTY;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.jsonrpc.JsonUtils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Single pass decoder of JSON-RPC messages. The envelope fields (jsonrpc, id,
+ * method) are read directly from the stream, so only the params, result or
+ * error of the message are materialized. Params and result are kept as
+ * {@link JsonElement} and they are converted to the type expected by the
+ * handler only when the message is dispatched (see {@link MessageUtils}).
+ *
+ * The session id injected in params or result (see
+ * {@link JsonUtils#INJECT_SESSION_ID}) is removed from the payload and set in
+ * the message, as done by {@link JsonUtils#fromJsonRequest(String, Class)} and
+ * {@link JsonUtils#fromJsonResponse(String, Class)}.
+ *
+ * @since 6.0.0
+ */
+public class MessageDecoder {
+
+	private static final JsonParser parser = new JsonParser();
+
+	/**
+	 * Decodes a JSON-RPC message.
+	 *
+	 * @param json
+	 *            The message
+	 * @return A {@code Request<JsonElement>}, a {@code Response<JsonElement>}
+	 *         or, if the message is a batch, a {@link MessageBatch}. Elements of
+	 *         the batch that are not valid JSON-RPC messages are null
+	 * @throws JsonParseException
+	 *             If the message is not valid JSON or it is not a valid
+	 *             JSON-RPC message
+	 */
+	public static Message decode(String json) {
+
+		try {
+
+			JsonReader reader = new JsonReader(new StringReader(json));
+
+			Message message;
+			if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+				message = readBatch(reader);
+			} else {
+				message = readMessage(reader);
+			}
+
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException(
+						"Unexpected content after JSON-RPC message: " + json);
+			}
+
+			return message;
+
+		} catch (IOException e) {
+			throw new JsonSyntaxException("Invalid JSON-RPC message: " + json,
+					e);
+		} catch (IllegalStateException e) {
+			throw new JsonSyntaxException("Invalid JSON-RPC message: " + json,
+					e);
+		}
+	}
+
+	private static MessageBatch readBatch(JsonReader reader)
+			throws IOException {
+
+		List<Message> messages = new ArrayList<>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				messages.add(null);
+				continue;
+			}
+
+			try {
+				messages.add(readMessage(reader));
+			} catch (JsonParseException e) {
+				// The whole object has been consumed, so the rest of the batch
+				// can be decoded
+				messages.add(null);
+			}
+		}
+		reader.endArray();
+
+		return new MessageBatch(messages);
+	}
+
+	private static Message readMessage(JsonReader reader) throws IOException {
+
+		String version = null;
+		String method = null;
+		Integer id = null;
+		boolean invalidId = false;
+		JsonElement params = null;
+		JsonElement result = null;
+		ResponseError error = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+
+			String name = reader.nextName();
+
+			switch (name) {
+			case JSON_RPC_PROPERTY:
+				version = readString(reader);
+				break;
+			case METHOD_PROPERTY:
+				method = readString(reader);
+				break;
+			case ID_PROPERTY:
+				JsonToken token = reader.peek();
+				if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+					String idValue = reader.nextString();
+					try {
+						id = Integer.valueOf(idValue);
+					} catch (NumberFormatException e) {
+						invalidId = true;
+					}
+				} else if (token == JsonToken.NULL) {
+					reader.nextNull();
+				} else {
+					reader.skipValue();
+					invalidId = true;
+				}
+				break;
+			case PARAMS_PROPERTY:
+				params = parser.parse(reader);
+				break;
+			case RESULT_PROPERTY:
+				result = parser.parse(reader);
+				break;
+			case ERROR_PROPERTY:
+				error = getGson().fromJson(reader, ResponseError.class);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (invalidId) {
+			throw new JsonParseException("Invalid JsonRpc message. It lacks"
+					+ " a valid '" + ID_PROPERTY + "' field");
+		}
+
+		if (method != null) {
+
+			// FIXME: Check version when KMS sends jsonrpc field in register
+			// message
+			Request<JsonElement> request = new Request<>(id, method,
+					params instanceof JsonNull ? null : params);
+			request.setSessionId(extractSessionId(params));
+			return request;
+		}
+
+		if (!JSON_RPC_VERSION.equals(version)) {
+			throw new JsonParseException("Invalid JsonRpc response lacking"
+					+ " version '" + JSON_RPC_PROPERTY + "' field");
+		}
+
+		if (id == null) {
+			if (error != null) {
+				// The peer could not determine the id of the request (e.g. an
+				// invalid batch), so the error is not related to any request
+				return new Response<JsonElement>(null, error);
+			}
+			throw new JsonParseException("Invalid JsonRpc response. It lacks"
+					+ " a valid '" + ID_PROPERTY + "' field");
+		}
+
+		if (result != null) {
+			Response<JsonElement> response = new Response<>(id, result);
+			response.setSessionId(extractSessionId(result));
+			return response;
+		}
+
+		if (error != null) {
+			return new Response<JsonElement>(id, error);
+		}
+
+		throw new JsonParseException("Invalid JsonRpc response. It lacks a"
+				+ " valid '" + RESULT_PROPERTY + "' or '" + ERROR_PROPERTY
+				+ "' field");
+	}
+
+	private static String readString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static String extractSessionId(JsonElement payload) {
+
+		if (JsonUtils.INJECT_SESSION_ID && payload != null
+				&& payload.isJsonObject()) {
+
+			JsonElement sessionIdJson = ((JsonObject) payload)
+					.remove(SESSION_ID_PROPERTY);
+
+			if (sessionIdJson != null && !sessionIdJson.isJsonNull()) {
+				return sessionIdJson.getAsString();
+			}
+		}
+		return null;
+	}
+
+}
@@ -45,6 +45,12 @@ public class Request<P> extends Message {
 	 */
 	protected P params;
 
+	/**
+	 * Max time in millis to wait for the response. If not positive, the default
+	 * timeout of the connection is used. This value is not sent to the peer.
+	 */
+	private transient long timeout = -1;
+
 	/**
 	 * Default constructor.
 	 */
@@ -112,4 +118,12 @@ public class Request<P> extends Message {
 		this.id = id;
 	}
 
-}
\ No newline at end of file
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+}
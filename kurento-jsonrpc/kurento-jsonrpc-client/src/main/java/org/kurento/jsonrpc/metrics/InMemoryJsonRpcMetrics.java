@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Keeps the measurements in memory, so they can be queried by tests or
+ * dumped as JSON. Incoming and outgoing requests are measured separately per
+ * method.
+ * <p>
+ * Method names are chosen by the peer, so the number of methods measured is
+ * bounded. Requests of methods received after the limit is reached are
+ * measured together as {@link #OTHER_METHODS}.
+ *
+ * @since 6.0.0
+ */
+public class InMemoryJsonRpcMetrics implements JsonRpcMetrics {
+
+	public static final String OTHER_METHODS = "_other";
+
+	public static final int DEFAULT_MAX_METHODS = 256;
+
+	private final int maxMethods;
+
+	private final ConcurrentMap<String, MethodMetrics> incoming = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, MethodMetrics> outgoing = new ConcurrentHashMap<>();
+
+	private final AtomicLong messagesSent = new AtomicLong();
+	private final AtomicLong charsSent = new AtomicLong();
+	private final AtomicLong messagesReceived = new AtomicLong();
+	private final AtomicLong charsReceived = new AtomicLong();
+
+	public InMemoryJsonRpcMetrics() {
+		this(DEFAULT_MAX_METHODS);
+	}
+
+	/**
+	 * @param maxMethods
+	 *            Max number of methods measured separately in each direction
+	 */
+	public InMemoryJsonRpcMetrics(int maxMethods) {
+		this.maxMethods = maxMethods;
+	}
+
+	@Override
+	public void outgoingRequestStarted(String method) {
+		getOrCreate(outgoing, method).started();
+	}
+
+	@Override
+	public void outgoingRequestCompleted(String method, long durationNanos,
+			boolean error) {
+		getOrCreate(outgoing, method).completed(durationNanos, error);
+	}
+
+	@Override
+	public void incomingRequestStarted(String method) {
+		getOrCreate(incoming, method).started();
+	}
+
+	@Override
+	public void incomingRequestCompleted(String method, long durationNanos,
+			boolean error) {
+		getOrCreate(incoming, method).completed(durationNanos, error);
+	}
+
+	@Override
+	public void messageSent(int length) {
+		messagesSent.incrementAndGet();
+		charsSent.addAndGet(length);
+	}
+
+	@Override
+	public void messageReceived(int length) {
+		messagesReceived.incrementAndGet();
+		charsReceived.addAndGet(length);
+	}
+
+	private MethodMetrics getOrCreate(ConcurrentMap<String, MethodMetrics> map,
+			String method) {
+
+		MethodMetrics metrics = map.get(method);
+		if (metrics != null) {
+			return metrics;
+		}
+
+		if (map.size() >= maxMethods) {
+			method = OTHER_METHODS;
+			metrics = map.get(method);
+			if (metrics != null) {
+				return metrics;
+			}
+		}
+
+		metrics = new MethodMetrics();
+		MethodMetrics previous = map.putIfAbsent(method, metrics);
+		return previous != null ? previous : metrics;
+	}
+
+	/**
+	 * @return the measurements of the requests received of a method, or null
+	 *         if none has been received
+	 */
+	public MethodMetrics getIncoming(String method) {
+		return incoming.get(method);
+	}
+
+	/**
+	 * @return the measurements of the requests sent of a method, or null if
+	 *         none has been sent
+	 */
+	public MethodMetrics getOutgoing(String method) {
+		return outgoing.get(method);
+	}
+
+	public Map<String, MethodMetrics> getIncoming() {
+		return Collections.unmodifiableMap(incoming);
+	}
+
+	public Map<String, MethodMetrics> getOutgoing() {
+		return Collections.unmodifiableMap(outgoing);
+	}
+
+	public long getMessagesSent() {
+		return messagesSent.get();
+	}
+
+	public long getCharsSent() {
+		return charsSent.get();
+	}
+
+	public long getMessagesReceived() {
+		return messagesReceived.get();
+	}
+
+	public long getCharsReceived() {
+		return charsReceived.get();
+	}
+
+	public JsonObject toJson() {
+
+		JsonObject json = new JsonObject();
+
+		JsonObject messages = new JsonObject();
+		messages.addProperty("sent", getMessagesSent());
+		messages.addProperty("charsSent", getCharsSent());
+		messages.addProperty("received", getMessagesReceived());
+		messages.addProperty("charsReceived", getCharsReceived());
+		json.add("messages", messages);
+
+		json.add("incoming", toJson(incoming));
+		json.add("outgoing", toJson(outgoing));
+
+		return json;
+	}
+
+	private JsonObject toJson(Map<String, MethodMetrics> methods) {
+		JsonObject json = new JsonObject();
+		for (Entry<String, MethodMetrics> entry : methods.entrySet()) {
+			json.add(entry.getKey(), entry.getValue().toJson());
+		}
+		return json;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.metrics;
+
+/**
+ * Instrumentation hooks of JSON-RPC clients and servers. Implementations are
+ * invoked in the threads sending and processing messages, so they have to be
+ * thread-safe and fast.
+ * <p>
+ * Requests are in flight from the moment they are started until they are
+ * completed:
+ * <ul>
+ * <li>Outgoing requests, sent by this peer, are completed when the response
+ * is received or the request fails. Notifications are completed when they
+ * are handed over to the transport.</li>
+ * <li>Incoming requests, received by this peer, are completed when the
+ * response is sent, maybe asynchronously by the handler. Notifications are
+ * completed when the handler returns.</li>
+ * </ul>
+ * Control requests used by the protocol itself (ping, reconnection...) are
+ * not always reported.
+ *
+ * @since 6.0.0
+ */
+public interface JsonRpcMetrics {
+
+	/**
+	 * Implementation that discards all measurements.
+	 */
+	JsonRpcMetrics NONE = new JsonRpcMetrics() {
+
+		@Override
+		public void outgoingRequestStarted(String method) {
+		}
+
+		@Override
+		public void outgoingRequestCompleted(String method,
+				long durationNanos, boolean error) {
+		}
+
+		@Override
+		public void incomingRequestStarted(String method) {
+		}
+
+		@Override
+		public void incomingRequestCompleted(String method,
+				long durationNanos, boolean error) {
+		}
+
+		@Override
+		public void messageSent(int length) {
+		}
+
+		@Override
+		public void messageReceived(int length) {
+		}
+	};
+
+	void outgoingRequestStarted(String method);
+
+	/**
+	 * @param durationNanos
+	 *            Time since the request was started
+	 * @param error
+	 *            true if the request failed or was responded with an error
+	 */
+	void outgoingRequestCompleted(String method, long durationNanos,
+			boolean error);
+
+	void incomingRequestStarted(String method);
+
+	/**
+	 * @param durationNanos
+	 *            Time since the request was started
+	 * @param error
+	 *            true if the request was responded with an error
+	 */
+	void incomingRequestCompleted(String method, long durationNanos,
+			boolean error);
+
+	/**
+	 * @param length
+	 *            Length in chars of the message written to the transport
+	 */
+	void messageSent(int length);
+
+	/**
+	 * @param length
+	 *            Length in chars of the message read from the transport
+	 */
+	void messageReceived(int length);
+
+}
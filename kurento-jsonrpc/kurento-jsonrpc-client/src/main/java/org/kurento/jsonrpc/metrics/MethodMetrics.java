@@ -0,0 +1,183 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Measurements of the requests of a JSON-RPC method. Latencies are recorded
+ * in a histogram with fixed buckets, so recording a request does not allocate
+ * memory nor take locks.
+ *
+ * @since 6.0.0
+ */
+public class MethodMetrics {
+
+	/**
+	 * Upper bounds in micros of the buckets of the latency histogram. There
+	 * is an additional bucket for longer latencies.
+	 */
+	public static final long[] LATENCY_BUCKETS_MICROS = { 100, 250, 500, 1000,
+			2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000,
+			2500000, 5000000, 10000000 };
+
+	private final AtomicLongArray latencyHistogram = new AtomicLongArray(
+			LATENCY_BUCKETS_MICROS.length + 1);
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	void started() {
+		inFlight.incrementAndGet();
+	}
+
+	void completed(long durationNanos, boolean error) {
+
+		inFlight.decrementAndGet();
+		count.incrementAndGet();
+		if (error) {
+			errors.incrementAndGet();
+		}
+
+		totalLatencyNanos.addAndGet(durationNanos);
+
+		long max = maxLatencyNanos.get();
+		while (durationNanos > max
+				&& !maxLatencyNanos.compareAndSet(max, durationNanos)) {
+			max = maxLatencyNanos.get();
+		}
+
+		latencyHistogram.incrementAndGet(bucket(durationNanos));
+	}
+
+	private static int bucket(long durationNanos) {
+		int index = Arrays.binarySearch(LATENCY_BUCKETS_MICROS,
+				TimeUnit.NANOSECONDS.toMicros(durationNanos));
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * @return the number of requests started and not completed yet
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of completed requests
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the number of completed requests that failed
+	 */
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	public long getTotalLatencyNanos() {
+		return totalLatencyNanos.get();
+	}
+
+	public long getMaxLatencyNanos() {
+		return maxLatencyNanos.get();
+	}
+
+	/**
+	 * @return the number of completed requests in each bucket of
+	 *         {@link #LATENCY_BUCKETS_MICROS}, plus the number of requests
+	 *         longer than the last bucket
+	 */
+	public long[] getLatencyHistogram() {
+		long[] histogram = new long[latencyHistogram.length()];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = latencyHistogram.get(i);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Estimates a latency percentile from the histogram.
+	 *
+	 * @param percentile
+	 *            The percentile, from 0 to 100
+	 * @return the upper bound in micros of the bucket containing the
+	 *         percentile, the max latency if it is in the last bucket, or 0
+	 *         if no request has been completed
+	 */
+	public long getLatencyPercentileMicros(double percentile) {
+
+		long[] histogram = getLatencyHistogram();
+
+		long total = 0;
+		for (long bucketCount : histogram) {
+			total += bucketCount;
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+
+		long accumulated = 0;
+		for (int i = 0; i < LATENCY_BUCKETS_MICROS.length; i++) {
+			accumulated += histogram[i];
+			if (accumulated >= rank) {
+				return LATENCY_BUCKETS_MICROS[i];
+			}
+		}
+
+		return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+	}
+
+	public JsonObject toJson() {
+
+		JsonObject json = new JsonObject();
+		json.addProperty("inFlight", getInFlight());
+		json.addProperty("count", getCount());
+		json.addProperty("errors", getErrorCount());
+
+		long count = getCount();
+		json.addProperty("meanLatencyMicros", count == 0 ? 0
+				: TimeUnit.NANOSECONDS.toMicros(getTotalLatencyNanos()) / count);
+		json.addProperty("maxLatencyMicros",
+				TimeUnit.NANOSECONDS.toMicros(getMaxLatencyNanos()));
+		json.addProperty("p50LatencyMicros", getLatencyPercentileMicros(50));
+		json.addProperty("p99LatencyMicros", getLatencyPercentileMicros(99));
+
+		JsonArray histogram = new JsonArray();
+		for (long bucketCount : getLatencyHistogram()) {
+			histogram.add(new JsonPrimitive(bucketCount));
+		}
+		json.add("latencyHistogram", histogram);
+
+		return json;
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.TooManyInFlightRequestsException;
+import org.kurento.jsonrpc.internal.InFlightRequestsLimiter;
+import org.kurento.jsonrpc.internal.InFlightRequestsLimiter.OverflowPolicy;
+
+public class InFlightRequestsLimiterTest {
+
+	@Test
+	public void queuedRequestsSentInOrderTest() {
+
+		InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+		limiter.setMaxInFlightRequests(2);
+
+		final List<Integer> sent = new ArrayList<>();
+
+		for (int i = 0; i < 5; i++) {
+			final int request = i;
+			if (limiter.acquireOrEnqueue(1, new Runnable() {
+				@Override
+				public void run() {
+					sent.add(request);
+				}
+			})) {
+				sent.add(request);
+			}
+		}
+
+		Assert.assertEquals(2, sent.size());
+		Assert.assertEquals(2, limiter.getInFlightRequests());
+		Assert.assertEquals(3, limiter.getQueuedRequests());
+
+		limiter.release(1);
+		Assert.assertEquals(3, sent.size());
+
+		limiter.release(2);
+		Assert.assertEquals(5, sent.size());
+		Assert.assertEquals(2, limiter.getInFlightRequests());
+		Assert.assertEquals(0, limiter.getQueuedRequests());
+		Assert.assertEquals(3, limiter.getDequeuedRequests());
+
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(Integer.valueOf(i), sent.get(i));
+		}
+	}
+
+	@Test
+	public void rejectPolicyTest() {
+
+		InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+		limiter.setMaxInFlightRequests(1);
+		limiter.setOverflowPolicy(OverflowPolicy.REJECT);
+
+		Assert.assertTrue(limiter.acquireOrEnqueue(1, null));
+
+		try {
+			limiter.acquireOrEnqueue(1, null);
+			Assert.fail("TooManyInFlightRequestsException expected");
+		} catch (TooManyInFlightRequestsException e) {
+			Assert.assertEquals(1, limiter.getRejectedRequests());
+		}
+
+		limiter.release(1);
+		Assert.assertTrue(limiter.acquireOrEnqueue(1, null));
+	}
+
+	@Test
+	public void batchLargerThanLimitTest() {
+
+		InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+		limiter.setMaxInFlightRequests(3);
+
+		Assert.assertTrue(limiter.acquireOrEnqueue(1, null));
+
+		final AtomicInteger sentBatches = new AtomicInteger();
+		int permits = limiter.permitsFor(10);
+		Assert.assertEquals(3, permits);
+
+		Assert.assertFalse(limiter.acquireOrEnqueue(permits, new Runnable() {
+			@Override
+			public void run() {
+				sentBatches.incrementAndGet();
+			}
+		}));
+
+		limiter.release(1);
+		Assert.assertEquals(1, sentBatches.get());
+		Assert.assertEquals(3, limiter.getInFlightRequests());
+	}
+
+	@Test
+	public void blockingAcquireTest() throws Exception {
+
+		final InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+		limiter.setMaxInFlightRequests(1);
+		limiter.acquire(1);
+
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					limiter.acquire(1);
+					acquired.countDown();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		waiter.start();
+
+		Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, limiter.getQueuedRequests());
+
+		limiter.release(1);
+		Assert.assertTrue(acquired.await(1, TimeUnit.SECONDS));
+		Assert.assertTrue(limiter.getMaxQueueWaitTime() > 0);
+	}
+
+	@Test
+	public void concurrentAcquireReleaseTest() throws Exception {
+
+		final InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+		limiter.setMaxInFlightRequests(1);
+
+		final int numThreads = 8;
+		final int numRequests = 10000;
+
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(numThreads);
+
+		for (int i = 0; i < numThreads; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < numRequests; j++) {
+							limiter.acquire(1);
+							int inFlight = limiter.getInFlightRequests();
+							if (inFlight > maxInFlight.get()) {
+								maxInFlight.set(inFlight);
+							}
+							limiter.release(1);
+						}
+						finished.countDown();
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		// A lost wake-up leaves a thread waiting forever
+		Assert.assertTrue(finished.await(30, TimeUnit.SECONDS));
+		Assert.assertEquals(1, maxInFlight.get());
+		Assert.assertEquals(0, limiter.getInFlightRequests());
+		Assert.assertEquals(0, limiter.getQueuedRequests());
+	}
+
+	@Test
+	public void noLimitByDefaultTest() {
+
+		InFlightRequestsLimiter limiter = new InFlightRequestsLimiter();
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(limiter.acquireOrEnqueue(1, null));
+		}
+
+		Assert.assertEquals(1000, limiter.getInFlightRequests());
+		Assert.assertEquals(0, limiter.getQueuedRequests());
+	}
+}
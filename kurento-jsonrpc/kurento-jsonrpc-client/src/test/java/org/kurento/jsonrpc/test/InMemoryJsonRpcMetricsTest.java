@@ -0,0 +1,172 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.MethodMetrics;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class InMemoryJsonRpcMetricsTest {
+
+	private static final ResponseSender NO_RESPONSE_SENDER = new ResponseSender() {
+		@Override
+		public void sendResponse(Message message) {
+		}
+	};
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		volatile Transaction asyncTransaction;
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			switch (request.getMethod()) {
+			case "fail":
+				throw new IllegalStateException("Failed");
+			case "async":
+				transaction.startAsync();
+				asyncTransaction = transaction;
+				break;
+			default:
+				transaction.sendResponse("ok");
+			}
+		}
+	}
+
+	@Test
+	public void latencyHistogramTest() {
+
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+
+		for (int i = 0; i < 98; i++) {
+			metrics.outgoingRequestStarted("invoke");
+			metrics.outgoingRequestCompleted("invoke",
+					TimeUnit.MICROSECONDS.toNanos(800), false);
+		}
+		metrics.outgoingRequestStarted("invoke");
+		metrics.outgoingRequestCompleted("invoke",
+				TimeUnit.MILLISECONDS.toNanos(40), true);
+		metrics.outgoingRequestStarted("invoke");
+		metrics.outgoingRequestCompleted("invoke",
+				TimeUnit.SECONDS.toNanos(30), true);
+		metrics.outgoingRequestStarted("invoke");
+
+		MethodMetrics invoke = metrics.getOutgoing("invoke");
+
+		Assert.assertEquals(100, invoke.getCount());
+		Assert.assertEquals(2, invoke.getErrorCount());
+		Assert.assertEquals(1, invoke.getInFlight());
+		Assert.assertEquals(TimeUnit.SECONDS.toNanos(30),
+				invoke.getMaxLatencyNanos());
+
+		Assert.assertEquals(1000, invoke.getLatencyPercentileMicros(50));
+		Assert.assertEquals(1000, invoke.getLatencyPercentileMicros(98));
+		Assert.assertEquals(50000, invoke.getLatencyPercentileMicros(99));
+		Assert.assertEquals(TimeUnit.SECONDS.toMicros(30),
+				invoke.getLatencyPercentileMicros(100));
+
+		long[] histogram = invoke.getLatencyHistogram();
+		Assert.assertEquals(98, histogram[3]);
+		Assert.assertEquals(1, histogram[histogram.length - 1]);
+
+		Assert.assertNull(metrics.getIncoming("invoke"));
+	}
+
+	@Test
+	public void maxMethodsTest() {
+
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics(10);
+
+		for (int i = 0; i < 100; i++) {
+			metrics.incomingRequestStarted("method" + i);
+			metrics.incomingRequestCompleted("method" + i, 1000, false);
+		}
+
+		Assert.assertEquals(11, metrics.getIncoming().size());
+		Assert.assertEquals(90,
+				metrics.getIncoming(InMemoryJsonRpcMetrics.OTHER_METHODS)
+						.getCount());
+	}
+
+	@Test
+	public void handlerManagerTest() throws Exception {
+
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		Handler handler = new Handler();
+
+		JsonRpcHandlerManager manager = new JsonRpcHandlerManager(handler);
+		manager.setMetrics(metrics);
+
+		Session session = new ClientSession("session", null, null);
+
+		manager.handleRequest(session, new Request<JsonElement>(1, "echo",
+				new JsonObject()), NO_RESPONSE_SENDER);
+		manager.handleRequest(session, new Request<JsonElement>(2, "fail",
+				new JsonObject()), NO_RESPONSE_SENDER);
+		manager.handleRequest(session, new Request<JsonElement>(null, "echo",
+				new JsonObject()), NO_RESPONSE_SENDER);
+		manager.handleRequest(session, new Request<JsonElement>(3, "async",
+				new JsonObject()), NO_RESPONSE_SENDER);
+
+		MethodMetrics echo = metrics.getIncoming("echo");
+		Assert.assertEquals(2, echo.getCount());
+		Assert.assertEquals(0, echo.getErrorCount());
+		Assert.assertEquals(0, echo.getInFlight());
+
+		MethodMetrics fail = metrics.getIncoming("fail");
+		Assert.assertEquals(1, fail.getCount());
+		Assert.assertEquals(1, fail.getErrorCount());
+
+		// Async requests are in flight until they are responded
+		MethodMetrics async = metrics.getIncoming("async");
+		Assert.assertEquals(1, async.getInFlight());
+		Assert.assertEquals(0, async.getCount());
+
+		handler.asyncTransaction.sendResponse(new JsonPrimitive("done"));
+
+		Assert.assertEquals(0, async.getInFlight());
+		Assert.assertEquals(1, async.getCount());
+	}
+
+	@Test
+	public void toJsonTest() {
+
+		InMemoryJsonRpcMetrics metrics = new InMemoryJsonRpcMetrics();
+		metrics.messageSent(100);
+		metrics.messageReceived(40);
+		metrics.messageReceived(60);
+		metrics.incomingRequestStarted("create");
+		metrics.incomingRequestCompleted("create", 1000000, false);
+
+		JsonObject json = metrics.toJson();
+
+		JsonObject messages = json.getAsJsonObject("messages");
+		Assert.assertEquals(1, messages.get("sent").getAsLong());
+		Assert.assertEquals(100, messages.get("charsSent").getAsLong());
+		Assert.assertEquals(2, messages.get("received").getAsLong());
+		Assert.assertEquals(100, messages.get("charsReceived").getAsLong());
+
+		JsonObject create = json.getAsJsonObject("incoming")
+				.getAsJsonObject("create");
+		Assert.assertEquals(1, create.get("count").getAsLong());
+		Assert.assertEquals(1000, create.get("meanLatencyMicros").getAsLong());
+		Assert.assertEquals(0, json.getAsJsonObject("outgoing").entrySet()
+				.size());
+	}
+
+}
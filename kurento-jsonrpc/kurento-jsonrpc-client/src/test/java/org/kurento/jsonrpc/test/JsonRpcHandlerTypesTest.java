@@ -1,12 +1,19 @@
 package org.kurento.jsonrpc.test;
 
+import java.io.IOException;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.Transaction;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
 public class JsonRpcHandlerTypesTest {
 
 	static class Params {
@@ -64,4 +71,46 @@ public class JsonRpcHandlerTypesTest {
 				.getParamsType(new JsonRpcHandlerDefault().getHandlerType()));
 
 	}
+
+	static class JsonRpcHandlerCapture extends JsonRpcHandlerGrandson {
+
+		Params params;
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<Params> request) throws Exception {
+			params = request.getParams();
+		}
+	}
+
+	@Test
+	public void handleRequestParamsTest() throws IOException {
+
+		JsonRpcHandlerCapture handler = new JsonRpcHandlerCapture();
+		JsonRpcHandlerManager manager = new JsonRpcHandlerManager(handler);
+
+		ResponseSender rs = new ResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+			}
+		};
+
+		JsonObject params = new JsonObject();
+		params.addProperty("param1", "value1");
+		params.addProperty("param2", "value2");
+
+		// The params type is resolved in the first request and reused in the
+		// following ones
+		for (int i = 0; i < 2; i++) {
+			handler.params = null;
+			manager.handleRequest(null, new Request<JsonElement>(i, "method",
+					params), rs);
+			Assert.assertEquals("value1", handler.params.param1);
+			Assert.assertEquals("value2", handler.params.param2);
+		}
+
+		manager.handleRequest(null, new Request<JsonElement>(2, "method",
+				null), rs);
+		Assert.assertNull(handler.params);
+	}
 }
@@ -0,0 +1,143 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.MessageDecoder;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+public class MessageDecoderTest {
+
+	static class Params {
+		String param1;
+	}
+
+	@Test
+	public void requestTest() {
+
+		Params params = new Params();
+		params.param1 = "Value1";
+
+		Request<Params> request = new Request<Params>(1, "method", params);
+		request.setSessionId("xxxxxxx");
+
+		Message message = MessageDecoder.decode(request.toString());
+
+		Assert.assertTrue(message instanceof Request);
+
+		@SuppressWarnings("unchecked")
+		Request<JsonElement> newRequest = (Request<JsonElement>) message;
+
+		Assert.assertEquals(Integer.valueOf(1), newRequest.getId());
+		Assert.assertEquals("method", newRequest.getMethod());
+		Assert.assertEquals("xxxxxxx", newRequest.getSessionId());
+		Assert.assertFalse(newRequest.getParams().getAsJsonObject()
+				.has("sessionId"));
+
+		Request<Params> typedRequest = MessageUtils.convertRequest(newRequest,
+				Params.class);
+		Assert.assertEquals("Value1", typedRequest.getParams().param1);
+	}
+
+	@Test
+	public void notificationTest() {
+
+		Message message = MessageDecoder
+				.decode("{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\"}");
+
+		Request<?> request = (Request<?>) message;
+		Assert.assertNull(request.getId());
+		Assert.assertNull(request.getParams());
+		Assert.assertNull(request.getSessionId());
+	}
+
+	@Test
+	public void responseTest() {
+
+		JsonObject result = new JsonObject();
+		result.addProperty("value", "objectId");
+
+		Response<JsonObject> response = new Response<>(3, result);
+		response.setSessionId("xxxxxxx");
+
+		Message message = MessageDecoder.decode(response.toString());
+
+		Assert.assertTrue(message instanceof Response);
+
+		@SuppressWarnings("unchecked")
+		Response<JsonElement> newResponse = (Response<JsonElement>) message;
+
+		Assert.assertEquals(Integer.valueOf(3), newResponse.getId());
+		Assert.assertEquals("xxxxxxx", newResponse.getSessionId());
+		Assert.assertEquals("objectId",
+				MessageUtils.convertResponse(newResponse, String.class)
+						.getResult());
+	}
+
+	@Test
+	public void errorResponseTest() {
+
+		Response<Object> response = new Response<>(4, new ResponseError(40007,
+				"Invalid session"));
+
+		Response<?> newResponse = (Response<?>) MessageDecoder.decode(response
+				.toString());
+
+		Assert.assertTrue(newResponse.isError());
+		Assert.assertEquals(40007, newResponse.getError().getCode());
+		Assert.assertEquals("Invalid session", newResponse.getError()
+				.getMessage());
+	}
+
+	@Test
+	public void batchTest() {
+
+		MessageBatch batch = (MessageBatch) MessageDecoder
+				.decode("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"m\"},"
+						+ "1,{\"jsonrpc\":\"2.0\",\"foo\":\"bar\"},"
+						+ "{\"jsonrpc\":\"2.0\",\"id\":2,\"result\":true}]");
+
+		Assert.assertEquals(4, batch.getMessages().size());
+		Assert.assertTrue(batch.getMessages().get(0) instanceof Request);
+		Assert.assertNull(batch.getMessages().get(1));
+		Assert.assertNull(batch.getMessages().get(2));
+		Assert.assertTrue(batch.getMessages().get(3) instanceof Response);
+	}
+
+	@Test
+	public void errorResponseWithoutIdTest() {
+
+		Response<?> response = (Response<?>) MessageDecoder
+				.decode("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":"
+						+ "{\"code\":-32600,\"message\":\"Invalid request\"}}");
+
+		Assert.assertNull(response.getId());
+		Assert.assertTrue(response.isError());
+		Assert.assertEquals(-32600, response.getError().getCode());
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void resultResponseWithoutIdTest() {
+		MessageDecoder
+				.decode("{\"jsonrpc\":\"2.0\",\"id\":null,\"result\":true}");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void invalidResponseTest() {
+		MessageDecoder.decode("{\"jsonrpc\":\"2.0\",\"id\":1}");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void invalidJsonTest() {
+		MessageDecoder.decode("{\"jsonrpc\":\"2.0\",\"id\":1");
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.ws.MessageFragments;
+
+public class MessageFragmentsTest {
+
+	@Test
+	public void shortMessageNotSplitTest() {
+
+		List<String> fragments = MessageFragments.split("message", 7);
+
+		Assert.assertEquals(1, fragments.size());
+		Assert.assertEquals("message", fragments.get(0));
+	}
+
+	@Test
+	public void noFragmentSizeTest() {
+		Assert.assertEquals(1, MessageFragments.split("message", 0).size());
+	}
+
+	@Test
+	public void splitTest() {
+
+		List<String> fragments = MessageFragments.split("0123456789", 4);
+
+		Assert.assertEquals(3, fragments.size());
+		Assert.assertEquals("0123", fragments.get(0));
+		Assert.assertEquals("4567", fragments.get(1));
+		Assert.assertEquals("89", fragments.get(2));
+	}
+
+	@Test
+	public void surrogatePairNotSplitTest() {
+
+		String message = "abc\ud83d\ude00def";
+
+		List<String> fragments = MessageFragments.split(message, 4);
+
+		StringBuilder joined = new StringBuilder();
+		for (String fragment : fragments) {
+			Assert.assertFalse(Character.isHighSurrogate(fragment
+					.charAt(fragment.length() - 1)));
+			Assert.assertTrue(fragment.length() <= 4);
+			joined.append(fragment);
+		}
+
+		Assert.assertEquals(message, joined.toString());
+	}
+}
@@ -0,0 +1,268 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.ws.OutboundQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundQueue.MessageWriter;
+
+public class OutboundQueueTest {
+
+	static class RecordingWriter implements MessageWriter {
+
+		final List<String> written = new ArrayList<>();
+		final AtomicInteger flushes = new AtomicInteger();
+		final AtomicInteger concurrentWriters = new AtomicInteger();
+		volatile boolean overlapped;
+		volatile String closeReason;
+		volatile CountDownLatch blockFlush;
+
+		@Override
+		public void write(String message) throws IOException {
+			if (concurrentWriters.incrementAndGet() > 1) {
+				overlapped = true;
+			}
+			synchronized (written) {
+				written.add(message);
+			}
+			concurrentWriters.decrementAndGet();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushes.incrementAndGet();
+			CountDownLatch latch = blockFlush;
+			if (latch != null) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+		@Override
+		public void close(String reason) {
+			closeReason = reason;
+		}
+	}
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void orderedSingleWriterTest() throws InterruptedException {
+
+		final RecordingWriter writer = new RecordingWriter();
+		final OutboundQueue queue = new OutboundQueue(writer, executor, -1);
+
+		final int numThreads = 4;
+		final int numMessages = 1000;
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < numMessages; i++) {
+						queue.send(thread + ":" + i);
+					}
+				}
+			});
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertTrue(queue.awaitDrained(5000));
+		Assert.assertFalse(writer.overlapped);
+		Assert.assertEquals(numThreads * numMessages, writer.written.size());
+		Assert.assertEquals(0, queue.size());
+
+		// Messages of each thread are written in the order they were sent
+		int[] next = new int[numThreads];
+		for (String message : writer.written) {
+			String[] parts = message.split(":");
+			int thread = Integer.parseInt(parts[0]);
+			Assert.assertEquals(next[thread]++, Integer.parseInt(parts[1]));
+		}
+	}
+
+	@Test
+	public void coalescedFlushTest() throws InterruptedException {
+
+		RecordingWriter writer = new RecordingWriter();
+		writer.blockFlush = new CountDownLatch(1);
+		OutboundQueue queue = new OutboundQueue(writer, executor, -1);
+
+		// The first message is written alone and the writer blocks in flush
+		queue.send("first");
+		while (writer.flushes.get() == 0) {
+			Thread.sleep(1);
+		}
+
+		for (int i = 0; i < 10; i++) {
+			queue.send("message" + i);
+		}
+
+		writer.blockFlush.countDown();
+
+		Assert.assertTrue(queue.awaitDrained(5000));
+		Assert.assertEquals(11, writer.written.size());
+		Assert.assertEquals(2, writer.flushes.get());
+	}
+
+	@Test
+	public void highWaterMarkTest() throws InterruptedException {
+
+		RecordingWriter writer = new RecordingWriter();
+		writer.blockFlush = new CountDownLatch(1);
+		OutboundQueue queue = new OutboundQueue(writer, executor, 5);
+
+		queue.send("first");
+		while (writer.flushes.get() == 0) {
+			Thread.sleep(1);
+		}
+
+		for (int i = 0; i < 5; i++) {
+			queue.send("message" + i);
+		}
+
+		try {
+			queue.send("overflow");
+			Assert.fail("TransportException expected");
+		} catch (TransportException e) {
+		}
+
+		Assert.assertTrue(queue.isClosed());
+		Assert.assertNotNull(writer.closeReason);
+		Assert.assertEquals(0, queue.size());
+
+		try {
+			queue.send("closed");
+			Assert.fail("TransportException expected");
+		} catch (TransportException e) {
+		}
+
+		writer.blockFlush.countDown();
+		Assert.assertTrue(queue.awaitDrained(5000));
+		Assert.assertEquals(1, writer.written.size());
+
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void rejectedWriterTest() throws InterruptedException {
+
+		RecordingWriter writer = new RecordingWriter();
+		executor.shutdown();
+		OutboundQueue queue = new OutboundQueue(writer, executor, 5);
+
+		try {
+			queue.send("message");
+			Assert.fail("TransportException expected");
+		} catch (TransportException e) {
+		}
+
+		Assert.assertTrue(queue.isClosed());
+		Assert.assertNotNull(writer.closeReason);
+		Assert.assertEquals(0, writer.written.size());
+		Assert.assertEquals(0, queue.size());
+		Assert.assertTrue(queue.awaitDrained(0));
+	}
+
+	@Test
+	public void priorityMessagesOvertakeQueuedMessagesTest()
+			throws InterruptedException {
+
+		RecordingWriter writer = new RecordingWriter();
+		writer.blockFlush = new CountDownLatch(1);
+		OutboundQueue queue = new OutboundQueue(writer, executor, 5);
+
+		queue.send("first");
+		while (writer.flushes.get() == 0) {
+			Thread.sleep(1);
+		}
+
+		for (int i = 0; i < 5; i++) {
+			queue.send("message" + i);
+		}
+
+		// Not counted against the high-water mark, and not blocked by the
+		// message being written
+		queue.sendPriority("ping");
+		Assert.assertFalse(queue.isClosed());
+
+		writer.blockFlush.countDown();
+
+		Assert.assertTrue(queue.awaitDrained(5000));
+		Assert.assertFalse(writer.overlapped);
+		Assert.assertEquals(7, writer.written.size());
+		Assert.assertEquals("first", writer.written.get(0));
+		Assert.assertEquals("ping", writer.written.get(1));
+		Assert.assertEquals("message0", writer.written.get(2));
+	}
+
+	@Test
+	public void priorityMessagesWithBusyExecutorTest()
+			throws InterruptedException {
+
+		final CountDownLatch blockExecutor = new CountDownLatch(1);
+		ExecutorService busyExecutor = Executors.newSingleThreadExecutor();
+
+		try {
+
+			busyExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						blockExecutor.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+
+			RecordingWriter writer = new RecordingWriter();
+			OutboundQueue queue = new OutboundQueue(writer, busyExecutor, -1);
+
+			queue.send("message");
+
+			// Never written by the sending thread, even if no thread is
+			// writing, but before the queued messages
+			queue.sendPriority("ping");
+			Assert.assertTrue(writer.written.isEmpty());
+
+			blockExecutor.countDown();
+
+			Assert.assertTrue(queue.awaitDrained(5000));
+			Assert.assertEquals(2, writer.written.size());
+			Assert.assertEquals("ping", writer.written.get(0));
+			Assert.assertEquals("message", writer.written.get(1));
+
+		} finally {
+			busyExecutor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.jsonrpc.internal.server.ResponseCache.MeasuredResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the response in the body of an HTTP response. A poll of the client
+ * is responded asynchronously, so the container thread is released while the
+ * poll waits for messages.
+ *
+ * @since 6.0.0
+ */
+public final class HttpResponseSender implements MeasuredResponseSender {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HttpResponseSender.class);
+
+	private final HttpServletRequest servletRequest;
+	private final HttpServletResponse servletResponse;
+
+	private volatile AsyncContext asyncContext;
+
+	public HttpResponseSender(HttpServletRequest servletRequest,
+			HttpServletResponse servletResponse) {
+		this.servletRequest = servletRequest;
+		this.servletResponse = servletResponse;
+	}
+
+	/**
+	 * Puts the HTTP request in async mode, so it is not responded when the
+	 * container thread returns. The request is completed when the response is
+	 * sent.
+	 *
+	 * @param timeout
+	 *            Max time in millis the container waits for the response
+	 */
+	public void startAsync(long timeout) {
+		asyncContext = servletRequest.startAsync();
+		asyncContext.setTimeout(timeout);
+	}
+
+	@Override
+	public void sendResponse(Message message) throws IOException {
+		sendMeasuredResponse(message);
+	}
+
+	@Override
+	public int sendMeasuredResponse(Message message) throws IOException {
+
+		String jsonMessage = message.toString();
+		AsyncContext context = asyncContext;
+
+		if (context == null) {
+			servletResponse.getWriter().println(jsonMessage);
+			return jsonMessage.length();
+		}
+
+		try {
+			context.getResponse().getWriter().println(jsonMessage);
+			context.complete();
+		} catch (IllegalStateException e) {
+			// The container has already completed the request, e.g. because
+			// the async timeout has expired
+			log.warn("Response can not be sent, HTTP request completed: {}",
+					jsonMessage);
+		}
+		return jsonMessage.length();
+	}
+}
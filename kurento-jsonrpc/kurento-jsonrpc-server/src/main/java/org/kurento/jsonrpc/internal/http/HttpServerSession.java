@@ -0,0 +1,378 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.internal.ws.TimeoutWheel;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Session of a client connected through HTTP. Requests and notifications sent
+ * to the client are queued until the client polls for them. A poll waits
+ * until there is at least one message to deliver, so messages are received
+ * by the client as soon as they are produced. Responses of the client are
+ * received in the next poll.
+ * <p>
+ * A waiting poll does not block any thread: it is completed when a message is
+ * queued or when the poll timeout expires. The queue is bounded, so messages
+ * sent to a client that stops polling fail instead of accumulating.
+ *
+ * @since 6.0.0
+ */
+public class HttpServerSession extends ServerSession {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HttpServerSession.class);
+
+	private final BlockingQueue<Request<?>> outgoingRequests;
+
+	private final PendingRequests pendingRequests = new PendingRequests();
+
+	private final Executor executor;
+
+	private final long pollTimeout;
+
+	// Guards the waiting poll and the drain of the queue, so a message queued
+	// while a poll starts waiting is not left in the queue
+	private final Object pollLock = new Object();
+
+	private Continuation<List<Request<?>>> waitingPoll;
+
+	private TimeoutWheel.Timeout waitingPollTimeout;
+
+	public HttpServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, String internalSessionId,
+			Executor executor, long pollTimeout, int maxQueuedMessages) {
+
+		super(sessionId, registerInfo, sessionsManager, internalSessionId);
+
+		this.executor = executor;
+		this.pollTimeout = pollTimeout;
+		this.outgoingRequests = new LinkedBlockingQueue<>(maxQueuedMessages);
+
+		setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
+
+			@Override
+			protected <P, R> Response<R> internalSendRequest(
+					Request<P> request, Class<R> resultClass)
+					throws IOException {
+				return sendRequestHttp(request, resultClass);
+			}
+
+			@Override
+			protected void internalSendRequest(
+					Request<? extends Object> request,
+					Class<JsonElement> resultClass,
+					Continuation<Response<JsonElement>> continuation) {
+				sendRequestHttp(request, resultClass, continuation);
+			}
+		});
+	}
+
+	public long getPollTimeout() {
+		return pollTimeout;
+	}
+
+	/**
+	 * Notifies the messages to be sent to the client as soon as there is at
+	 * least one, or an empty list when the poll timeout expires. Only one poll
+	 * waits at a time; a previous poll still waiting is completed with an
+	 * empty list.
+	 *
+	 * @param poll
+	 *            Receives the requests and notifications to be sent to the
+	 *            client
+	 */
+	public void pollRequests(Continuation<List<Request<?>>> poll) {
+
+		List<Request<?>> requests;
+		Continuation<List<Request<?>>> previousPoll;
+
+		synchronized (pollLock) {
+
+			previousPoll = takeWaitingPoll();
+			requests = drainRequests();
+
+			if (requests.isEmpty()) {
+				waitPoll(poll);
+			}
+		}
+
+		if (previousPoll != null) {
+			completePoll(previousPoll, Collections.<Request<?>> emptyList());
+		}
+
+		if (!requests.isEmpty()) {
+			completePoll(poll, requests);
+		}
+	}
+
+	/**
+	 * @return The requests and notifications queued to be sent to the client,
+	 *         without waiting for them
+	 */
+	public List<Request<?>> drainRequests() {
+		synchronized (pollLock) {
+			List<Request<?>> requests = new ArrayList<>();
+			outgoingRequests.drainTo(requests);
+			return requests;
+		}
+	}
+
+	private void waitPoll(final Continuation<List<Request<?>>> poll) {
+
+		waitingPoll = poll;
+		waitingPollTimeout = TimeoutWheel.getDefault().schedule(
+				new Runnable() {
+					@Override
+					public void run() {
+						boolean expired;
+						synchronized (pollLock) {
+							expired = waitingPoll == poll;
+							if (expired) {
+								waitingPoll = null;
+								waitingPollTimeout = null;
+							}
+						}
+						if (expired) {
+							executePoll(poll,
+									Collections.<Request<?>> emptyList());
+						}
+					}
+				}, pollTimeout);
+	}
+
+	private Continuation<List<Request<?>>> takeWaitingPoll() {
+
+		Continuation<List<Request<?>>> poll = waitingPoll;
+
+		if (poll != null) {
+			waitingPollTimeout.cancel();
+			waitingPoll = null;
+			waitingPollTimeout = null;
+		}
+
+		return poll;
+	}
+
+	private void enqueue(Request<?> request) {
+
+		if (!outgoingRequests.offer(request)) {
+			throw new TransportException("Can not send message to session "
+					+ getSessionId() + ": " + outgoingRequests.size()
+					+ " messages are waiting for the client to poll");
+		}
+
+		List<Request<?>> requests;
+		Continuation<List<Request<?>>> poll;
+
+		synchronized (pollLock) {
+			poll = takeWaitingPoll();
+			if (poll == null) {
+				return;
+			}
+			requests = drainRequests();
+		}
+
+		// The poll is responded out of the thread sending the message
+		executePoll(poll, requests);
+	}
+
+	private void executePoll(final Continuation<List<Request<?>>> poll,
+			final List<Request<?>> requests) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					completePoll(poll, requests);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.warn("Task executor is saturated. Completing poll of session"
+					+ " {} in the current thread", getSessionId());
+			completePoll(poll, requests);
+		}
+	}
+
+	private void completePoll(Continuation<List<Request<?>>> poll,
+			List<Request<?>> requests) {
+		try {
+			poll.onSuccess(requests);
+		} catch (Exception e) {
+			log.error("Exception sending messages to session {}",
+					getSessionId(), e);
+		}
+	}
+
+	private <P, R> Response<R> sendRequestHttp(Request<P> request,
+			Class<R> resultClass) {
+
+		if (request.getId() == null) {
+			enqueue(request);
+			return null;
+		}
+
+		Future<Response<JsonElement>> responseFuture = pendingRequests
+				.prepareResponse(request.getId(), request.getTimeout());
+
+		try {
+			enqueue(request);
+		} catch (TransportException e) {
+			pendingRequests.handleError(request.getId(), e);
+			throw e;
+		}
+
+		Response<JsonElement> responseJsonObject;
+		try {
+			// The pending request is failed when its deadline expires
+			responseJsonObject = responseFuture.get();
+		} catch (InterruptedException e) {
+			throw new JsonRpcException(
+					"Interrupted while waiting for a response", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof JsonRpcException) {
+				throw (JsonRpcException) e.getCause();
+			}
+			throw new JsonRpcException(
+					"Exception waiting from response to request with id:"
+							+ request.getId(), e.getCause());
+		}
+
+		return MessageUtils.convertResponse(responseJsonObject, resultClass);
+	}
+
+	private void sendRequestHttp(final Request<? extends Object> request,
+			final Class<JsonElement> resultClass,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		if (request.getId() == null) {
+			try {
+				enqueue(request);
+			} catch (TransportException e) {
+				continuation.onError(e);
+				return;
+			}
+			continuation.onSuccess(null);
+			return;
+		}
+
+		// The response is received in the thread processing a poll. The
+		// continuation is executed in the shared executor, so it can send sync
+		// requests without blocking the poll
+		pendingRequests.prepareResponse(request.getId(), request.getTimeout(),
+				new Continuation<Response<JsonElement>>() {
+
+					@Override
+					public void onSuccess(final Response<JsonElement> response) {
+						execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									continuation.onSuccess(MessageUtils
+											.convertResponse(response,
+													resultClass));
+								} catch (Exception e) {
+									log.error(
+											"Exception while processing response",
+											e);
+								}
+							}
+						}, continuation);
+					}
+
+					@Override
+					public void onError(final Throwable cause) {
+						execute(new Runnable() {
+							@Override
+							public void run() {
+								continuation.onError(cause);
+							}
+						}, continuation);
+					}
+				});
+
+		try {
+			enqueue(request);
+		} catch (TransportException e) {
+			// The continuation is notified through the pending request
+			pendingRequests.handleError(request.getId(), e);
+		}
+	}
+
+	private void execute(Runnable task,
+			Continuation<Response<JsonElement>> continuation) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			log.error("Task executor is saturated. Consider increasing its"
+					+ " pool size or queue capacity");
+			continuation.onError(new JsonRpcException(
+					"Response can not be processed because the task executor"
+							+ " is saturated", e));
+		}
+	}
+
+	@Override
+	public void handleResponse(Response<JsonElement> response) {
+		pendingRequests.handleResponse(response);
+	}
+
+	@Override
+	public void handleTransportClosed(String reason) {
+		pendingRequests.closeAllPendingRequests(reason);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			pendingRequests.closeAllPendingRequests("Session closed");
+			outgoingRequests.clear();
+
+			Continuation<List<Request<?>>> poll;
+			synchronized (pollLock) {
+				poll = takeWaitingPoll();
+			}
+			if (poll != null) {
+				completePoll(poll, Collections.<Request<?>> emptyList());
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+}
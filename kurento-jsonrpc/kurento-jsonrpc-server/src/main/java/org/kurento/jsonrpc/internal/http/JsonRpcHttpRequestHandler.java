@@ -15,6 +15,7 @@
 package org.kurento.jsonrpc.internal.http;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -24,64 +25,34 @@ import javax.servlet.http.HttpSession;
 import org.springframework.web.HttpRequestHandler;
 
 import com.google.common.io.CharStreams;
-import com.google.gson.JsonElement;
 
-import org.kurento.jsonrpc.client.Continuation;
-import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
-import org.kurento.jsonrpc.message.Message;
-import org.kurento.jsonrpc.message.Request;
-import org.kurento.jsonrpc.message.Response;
 
 public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
-	private final class HttpRequestServerSession extends ServerSession {
-
-		private HttpRequestServerSession(String sessionId, Object registerInfo,
-				SessionsManager sessionsManager, String internalSessionId) {
-
-			super(sessionId, registerInfo, sessionsManager, internalSessionId);
-
-			setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
-
-				@Override
-				protected <P, R> Response<R> internalSendRequest(
-						Request<P> request, Class<R> resultClass)
-						throws IOException {
-					// TODO Poner aquí la cola de mensajes que devolver al
-					// cliente cuando haga pooling
-					return new Response<>();
-				}
-
-				@Override
-				protected void internalSendRequest(
-						Request<? extends Object> request,
-						Class<JsonElement> class1,
-						Continuation<Response<JsonElement>> continuation) {
-					throw new UnsupportedOperationException(
-							"Async client is unavailable");
-				}
-			});
-		}
+	private final ProtocolManager protocolManager;
 
-		@Override
-		public void handleResponse(Response<JsonElement> response) {
-		}
-	}
+	private final Executor executor;
 
-	private final ProtocolManager protocolManager;
+	private final long pollTimeout;
 
-	public JsonRpcHttpRequestHandler(ProtocolManager protocolManager) {
+	private final int maxQueuedMessages;
+
+	public JsonRpcHttpRequestHandler(ProtocolManager protocolManager,
+			Executor executor, long pollTimeout, int maxQueuedMessages) {
 		this.protocolManager = protocolManager;
+		this.executor = executor;
+		this.pollTimeout = pollTimeout;
+		this.maxQueuedMessages = maxQueuedMessages;
 	}
 
 	@Override
 	public void handleRequest(HttpServletRequest servletRequest,
-			final HttpServletResponse servletResponse) throws ServletException,
+			HttpServletResponse servletResponse) throws ServletException,
 			IOException {
 
 		String messageJson = getBodyAsString(servletRequest);
@@ -91,17 +62,14 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 			public ServerSession createSession(String sessionId,
 					Object registerInfo, SessionsManager sessionsManager) {
 
-				return new HttpRequestServerSession(sessionId, registerInfo,
-						sessionsManager, null);
+				return new HttpServerSession(sessionId, registerInfo,
+						sessionsManager, null, executor, pollTimeout,
+						maxQueuedMessages);
 			}
 		};
 
-		ResponseSender responseSender = new ResponseSender() {
-			@Override
-			public void sendResponse(Message message) throws IOException {
-				servletResponse.getWriter().println(message);
-			}
-		};
+		ResponseSender responseSender = new HttpResponseSender(servletRequest,
+				servletResponse);
 
 		String internalSessionId = null;
 
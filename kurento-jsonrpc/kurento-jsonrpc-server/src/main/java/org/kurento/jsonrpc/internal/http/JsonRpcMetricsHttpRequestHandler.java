@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Publishes the metrics of the server as JSON, so they can be collected by
+ * monitoring tools.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcMetricsHttpRequestHandler implements HttpRequestHandler {
+
+	private final InMemoryJsonRpcMetrics metrics;
+
+	public JsonRpcMetricsHttpRequestHandler(InMemoryJsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void handleRequest(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+
+		if (!"GET".equals(request.getMethod())) {
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.getWriter().print(metrics.toJson());
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Admission control of the requests received by the server, so a client
+ * flooding the server does not starve the rest of sessions.
+ * <ul>
+ * <li>The rate of requests is limited globally and per connection with token
+ * buckets. Each request of a batch consumes a token, so a batch is not a way
+ * to bypass the limit.</li>
+ * <li>The number of requests of a session that are being executed, that is,
+ * received and not yet responded, is limited.</li>
+ * </ul>
+ * A limit not greater than zero is not applied. Rejected messages and
+ * requests are counted.
+ *
+ * @since 6.0.0
+ */
+public class AdmissionController {
+
+	// Idle buckets are full again, so they can be discarded
+	private static final long MIN_IDLE_BUCKET_EXPIRATION = 60000;
+
+	private final TokenBucket globalBucket;
+
+	private final LoadingCache<String, TokenBucket> transportBuckets;
+
+	private final int maxConcurrentRequests;
+
+	private final LoadingCache<ServerSession, AtomicInteger> executingRequests = CacheBuilder
+			.newBuilder().weakKeys()
+			.build(new CacheLoader<ServerSession, AtomicInteger>() {
+				@Override
+				public AtomicInteger load(ServerSession session) {
+					return new AtomicInteger();
+				}
+			});
+
+	private final AtomicLong rateLimitedMessages = new AtomicLong();
+	private final AtomicLong concurrencyLimitedRequests = new AtomicLong();
+
+	/**
+	 * @param rateLimit
+	 *            Max number of messages per second received by the server
+	 * @param rateBurst
+	 *            Max number of messages received by the server in a burst. If
+	 *            not positive, the rate limit is used
+	 * @param sessionRateLimit
+	 *            Max number of messages per second received from a connection
+	 * @param sessionRateBurst
+	 *            Max number of messages received from a connection in a
+	 *            burst. If not positive, the session rate limit is used
+	 * @param maxConcurrentRequests
+	 *            Max number of requests of a session being executed
+	 */
+	public AdmissionController(double rateLimit, int rateBurst,
+			final double sessionRateLimit, int sessionRateBurst,
+			int maxConcurrentRequests) {
+
+		this.globalBucket = rateLimit > 0 ? new TokenBucket(rateLimit,
+				burst(rateLimit, rateBurst)) : null;
+
+		if (sessionRateLimit > 0) {
+
+			final int burst = burst(sessionRateLimit, sessionRateBurst);
+			long expiration = Math.max(MIN_IDLE_BUCKET_EXPIRATION,
+					(long) (burst * 1000 / sessionRateLimit));
+
+			this.transportBuckets = CacheBuilder.newBuilder()
+					.expireAfterAccess(expiration, TimeUnit.MILLISECONDS)
+					.build(new CacheLoader<String, TokenBucket>() {
+						@Override
+						public TokenBucket load(String transportId) {
+							return new TokenBucket(sessionRateLimit, burst);
+						}
+					});
+		} else {
+			this.transportBuckets = null;
+		}
+
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	private static int burst(double rate, int burst) {
+		return burst > 0 ? burst : (int) Math.max(1, Math.ceil(rate));
+	}
+
+	/**
+	 * Checks the rate limits for a message received from a connection. The
+	 * limit of the connection is checked first, so a client exceeding it does
+	 * not consume the global rate.
+	 *
+	 * @param transportId
+	 *            Id of the connection. If null, only the global limit is
+	 *            checked
+	 * @return true if the message is within the limits
+	 */
+	public boolean tryAcquire(String transportId) {
+		return tryAcquire(transportId, 1) == 1;
+	}
+
+	/**
+	 * Checks the rate limits for several messages received together from a
+	 * connection, e.g. the requests of a batch.
+	 *
+	 * @param transportId
+	 *            Id of the connection. If null, only the global limit is
+	 *            checked
+	 * @param messages
+	 *            Number of messages
+	 * @return the number of messages within the limits, between zero and
+	 *         messages. The first ones are admitted and the rest rejected
+	 */
+	public int tryAcquire(String transportId, int messages) {
+
+		int admitted = messages;
+
+		TokenBucket transportBucket = null;
+		if (transportBuckets != null && transportId != null) {
+			transportBucket = transportBuckets.getUnchecked(transportId);
+			admitted = transportBucket.tryAcquire(admitted);
+		}
+
+		if (globalBucket != null && admitted > 0) {
+			int globallyAdmitted = globalBucket.tryAcquire(admitted);
+			// Messages rejected by the global limit do not count against the
+			// connection, so it is not throttled after a global overload
+			if (transportBucket != null && globallyAdmitted < admitted) {
+				transportBucket.release(admitted - globallyAdmitted);
+			}
+			admitted = globallyAdmitted;
+		}
+
+		if (admitted < messages) {
+			rateLimitedMessages.addAndGet(messages - admitted);
+		}
+
+		return admitted;
+	}
+
+	/**
+	 * Discards the rate limit state of a closed connection.
+	 *
+	 * @param transportId
+	 *            Id of the connection
+	 */
+	public void transportClosed(String transportId) {
+		if (transportBuckets != null && transportId != null) {
+			transportBuckets.invalidate(transportId);
+		}
+	}
+
+	/**
+	 * Checks whether a request of the session can be executed. If it can,
+	 * {@link #finishRequest(ServerSession)} has to be invoked when it is
+	 * responded.
+	 *
+	 * @param session
+	 *            The session of the request
+	 * @return true if the request can be executed
+	 */
+	public boolean tryStartRequest(ServerSession session) {
+
+		if (maxConcurrentRequests <= 0) {
+			return true;
+		}
+
+		AtomicInteger executing = executingRequests.getUnchecked(session);
+
+		while (true) {
+			int current = executing.get();
+			if (current >= maxConcurrentRequests) {
+				concurrencyLimitedRequests.incrementAndGet();
+				return false;
+			}
+			if (executing.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Frees the slot of a request started with
+	 * {@link #tryStartRequest(ServerSession)}.
+	 *
+	 * @param session
+	 *            The session of the request
+	 */
+	public void finishRequest(ServerSession session) {
+		if (maxConcurrentRequests > 0) {
+			executingRequests.getUnchecked(session).decrementAndGet();
+		}
+	}
+
+	public boolean isConcurrencyLimited() {
+		return maxConcurrentRequests > 0;
+	}
+
+	/**
+	 * @return the number of messages that have exceeded the global or the
+	 *         connection rate limit
+	 */
+	public long getRateLimitedCount() {
+		return rateLimitedMessages.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because their session was
+	 *         executing the max number of concurrent requests
+	 */
+	public long getConcurrencyLimitedCount() {
+		return concurrencyLimitedRequests.get();
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the responses to the requests of a JSON-RPC 2.0 batch and sends
+ * them all together in a single message when the last one is available.
+ * Requests can be responded asynchronously and in any order; each one has its
+ * own slot, so responses are sent in the same order as the requests.
+ */
+public class BatchResponseSender {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(BatchResponseSender.class);
+
+	private static final ResponseSender IGNORE_RESPONSE = new ResponseSender() {
+		@Override
+		public void sendResponse(Message message) {
+			log.warn("Discarding response to a notification in a batch: {}",
+					message);
+		}
+	};
+
+	private final ResponseSender responseSender;
+
+	// Guarded by this
+	private final Message[] responses;
+	private int pendingResponses;
+
+	/**
+	 * @param responseSender
+	 *            Sender used to send the whole batch of responses
+	 * @param numResponses
+	 *            Number of responses expected. It must be known before
+	 *            dispatching any request, because they can be responded
+	 *            synchronously
+	 */
+	public BatchResponseSender(ResponseSender responseSender, int numResponses) {
+		this.responseSender = responseSender;
+		this.responses = new Message[numResponses];
+		this.pendingResponses = numResponses;
+	}
+
+	/**
+	 * Returns the sender used to respond the request of the given slot.
+	 *
+	 * @param slot
+	 *            Position of the response in the batch of responses
+	 * @return The response sender
+	 */
+	public ResponseSender getResponseSender(final int slot) {
+
+		return new ResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				addResponse(slot, message);
+			}
+		};
+	}
+
+	/**
+	 * Returns a sender that discards responses. It is used for messages in the
+	 * batch that must not be responded, like notifications.
+	 *
+	 * @return The response sender
+	 */
+	public ResponseSender getIgnoreResponseSender() {
+		return IGNORE_RESPONSE;
+	}
+
+	private void addResponse(int slot, Message message) throws IOException {
+
+		MessageBatch batch = null;
+
+		synchronized (this) {
+
+			if (responses[slot] != null) {
+				log.warn("Discarding duplicated response in a batch: {}",
+						message);
+				return;
+			}
+
+			responses[slot] = message;
+			pendingResponses--;
+
+			if (pendingResponses == 0) {
+				batch = new MessageBatch(Arrays.asList(responses));
+			}
+		}
+
+		if (batch != null) {
+			responseSender.sendResponse(batch);
+		}
+	}
+}
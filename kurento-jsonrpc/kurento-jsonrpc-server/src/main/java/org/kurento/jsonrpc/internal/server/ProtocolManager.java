@@ -14,11 +14,15 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_INVALID_REQUEST;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_TOO_MANY_REQUESTS;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.POLL_RESPONSES_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_SUCCESSFUL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.isControlMethod;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
@@ -26,15 +30,25 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kurento.commons.SecretGenerator;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpServerSession;
+import org.kurento.jsonrpc.internal.server.ResponseCache.CachingResponseSender;
+import org.kurento.jsonrpc.internal.ws.WebSocketResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.MessageDecoder;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,7 +57,6 @@ import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.TaskScheduler;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 
 public class ProtocolManager {
@@ -56,6 +69,9 @@ public class ProtocolManager {
 	private static final Logger log = LoggerFactory
 			.getLogger(ProtocolManager.class);
 
+	// The poll timeout of the session expires before the HTTP request does
+	private static final long POLL_ASYNC_TIMEOUT_MARGIN = 10000;
+
 	protected SecretGenerator secretGenerator = new SecretGenerator();
 
 	@Autowired
@@ -65,12 +81,35 @@ public class ProtocolManager {
 	@Qualifier("jsonrpcTaskScheduler")
 	private TaskScheduler taskScheduler;
 
+	@Autowired
+	private AdmissionController admissionController;
+
+	@Autowired
+	private ResponseCache responseCache;
+
 	private final JsonRpcHandlerManager handlerManager;
 
+	private JsonRpcMetrics metrics = JsonRpcMetrics.NONE;
+
 	public ProtocolManager(JsonRpcHandler<?> handler) {
 		this.handlerManager = new JsonRpcHandlerManager(handler);
 	}
 
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics
+	 *            Metrics of the requests received by the handler and sent to
+	 *            the clients of its sessions
+	 */
+	@Autowired(required = false)
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+		this.handlerManager.setMetrics(metrics);
+	}
+
 	/**
 	 * Process incoming message. The response is sent using responseSender. If
 	 * null, the session will be used.
@@ -85,27 +124,155 @@ public class ProtocolManager {
 			ServerSessionFactory factory, ResponseSender responseSender,
 			String internalSessionId) throws IOException {
 
-		JsonObject messagetJsonObject = JsonUtils.fromJson(messageJson,
-				JsonObject.class);
+		metrics.messageReceived(messageJson.length());
+
+		// The rate is checked once the message is decoded, as each request of
+		// a batch is charged and rejected requests are responded with their id
+		Message message = MessageDecoder.decode(messageJson);
+
+		if (message instanceof MessageBatch) {
+			processBatchMessage(factory, (MessageBatch) message,
+					responseSender, internalSessionId);
+		} else {
+			boolean admitted = !isRateLimited(message)
+					|| admissionController.tryAcquire(internalSessionId);
+			processMessage(factory, message, responseSender,
+					internalSessionId, admitted);
+		}
+	}
+
+	/**
+	 * Control requests and responses are processed even if the rate is
+	 * exceeded, as the session of the client depends on them
+	 */
+	private boolean isRateLimited(Message message) {
+		return message instanceof Request
+				&& !isControlMethod(((Request<?>) message).getMethod());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void processMessage(ServerSessionFactory factory,
+			Message message, ResponseSender responseSender,
+			String internalSessionId, boolean admitted) throws IOException {
+
+		if (message instanceof Request) {
+
+			Request<JsonElement> request = (Request<JsonElement>) message;
+
+			if (admitted) {
+				processRequestMessage(factory, request, responseSender,
+						internalSessionId);
+			} else {
+				rejectRequest(request, responseSender, "Rate limit exceeded");
+			}
 
-		if (messagetJsonObject.has(Request.METHOD_FIELD_NAME)) {
-			processRequestMessage(factory, messagetJsonObject, responseSender,
-					internalSessionId);
 		} else {
-			processResponseMessage(messagetJsonObject, internalSessionId);
+			processResponseMessage((Response<JsonElement>) message,
+					internalSessionId);
+		}
+	}
+
+	/**
+	 * Process a JSON-RPC 2.0 batch. Each message is dispatched as if it was
+	 * received alone, but all the responses are sent together in a single
+	 * message once every request has been responded. Notifications and
+	 * responses in the batch are not responded. Each request is charged to the
+	 * rate limit; the requests over the limit are rejected.
+	 */
+	private void processBatchMessage(ServerSessionFactory factory,
+			MessageBatch batch, ResponseSender responseSender,
+			String internalSessionId) throws IOException {
+
+		List<Message> messages = batch.getMessages();
+
+		if (messages.isEmpty()) {
+			responseSender.sendResponse(new Response<>(null, new ResponseError(
+					ERROR_INVALID_REQUEST, "Invalid request: empty batch")));
+			return;
+		}
+
+		// The number of responses has to be known before dispatching
+		int numResponses = 0;
+		int numRateLimited = 0;
+		for (Message message : messages) {
+			if (isResponseExpected(message)) {
+				numResponses++;
+			}
+			if (isRateLimited(message)) {
+				numRateLimited++;
+			}
+		}
+
+		int numAdmitted = numRateLimited > 0 ? admissionController.tryAcquire(
+				internalSessionId, numRateLimited) : 0;
+
+		BatchResponseSender batchSender = new BatchResponseSender(
+				responseSender, numResponses);
+
+		int slot = 0;
+		for (Message message : messages) {
+
+			ResponseSender messageSender = isResponseExpected(message) ? batchSender
+					.getResponseSender(slot++) : batchSender
+					.getIgnoreResponseSender();
+
+			if (message == null) {
+				messageSender.sendResponse(new Response<>(null,
+						new ResponseError(ERROR_INVALID_REQUEST,
+								"Invalid request in batch")));
+				continue;
+			}
+
+			boolean admitted = true;
+			if (isRateLimited(message)) {
+				admitted = numAdmitted-- > 0;
+			}
+
+			try {
+
+				processMessage(factory, message, messageSender,
+						internalSessionId, admitted);
+
+			} catch (Exception e) {
+
+				log.error("Exception processing message in batch: " + message,
+						e);
+
+				Integer id = message instanceof Request ? ((Request<?>) message)
+						.getId() : null;
+
+				messageSender.sendResponse(new Response<>(id, ResponseError
+						.newFromException(e)));
+			}
 		}
 	}
 
+	private boolean isResponseExpected(Message message) {
+
+		// Invalid messages are responded with an error
+		if (message == null) {
+			return true;
+		}
+
+		return message instanceof Request
+				&& ((Request<?>) message).getId() != null;
+	}
+
 	// TODO Unify ServerSessionFactory, ResponseSender and transportId in a
 	// entity "RequestContext" or similar. In this way, there are less
 	// parameters
 	// and the implementation is easier
 	private void processRequestMessage(ServerSessionFactory factory,
-			JsonObject requestJsonObject, ResponseSender responseSender,
+			Request<JsonElement> request, ResponseSender responseSender,
 			String transportId) throws IOException {
 
-		Request<JsonElement> request = JsonUtils.fromJsonRequest(
-				requestJsonObject, JsonElement.class);
+		// Responses to control requests are not queued behind the rest of
+		// messages to the client
+		if (isControlMethod(request.getMethod())
+				&& responseSender instanceof WebSocketResponseSender) {
+			responseSender = ((WebSocketResponseSender) responseSender)
+					.withPriority();
+		}
 
 		if (request.getMethod().equals(METHOD_RECONNECT)) {
 
@@ -128,25 +295,139 @@ public class ProtocolManager {
 				Type collectionType = new TypeToken<List<Response<JsonElement>>>() {
 				}.getType();
 
-				List<Response<JsonElement>> responseList = JsonUtils.fromJson(
-						request.getParams(), collectionType);
+				// Responses are received in an object, so the params can
+				// include the session id. Plain arrays, sent by previous
+				// clients, are also accepted
+				JsonElement responsesJson = request.getParams();
+				if (responsesJson != null && responsesJson.isJsonObject()) {
+					responsesJson = responsesJson.getAsJsonObject().get(
+							POLL_RESPONSES_PROPERTY);
+				}
+
+				List<Response<JsonElement>> responseList = Collections
+						.emptyList();
+				if (responsesJson != null && responsesJson.isJsonArray()) {
+					responseList = JsonUtils.fromJson(responsesJson,
+							collectionType);
+				}
 
 				for (Response<JsonElement> response : responseList) {
 					session.handleResponse(response);
 				}
 
-				// Wait for some time if there is a request from server to
-				// client
-
-				// TODO Allow send empty responses. Now you have to send at
-				// least an
-				// empty string
-				responseSender.sendResponse(new Response<Object>(request
-						.getId(), Collections.emptyList()));
+				processPollMessage(session, request, responseSender);
 
 			} else {
-				handlerManager.handleRequest(session, request, responseSender);
+				handleRequest(session, request, responseSender);
+			}
+		}
+	}
+
+	private void processPollMessage(ServerSession session,
+			Request<JsonElement> request, final ResponseSender responseSender)
+			throws IOException {
+
+		final Integer id = request.getId();
+
+		if (!(session instanceof HttpServerSession)) {
+			responseSender.sendResponse(new Response<Object>(id, Collections
+					.emptyList()));
+			return;
+		}
+
+		HttpServerSession httpSession = (HttpServerSession) session;
+
+		// Only a poll responded directly in an HTTP request waits for
+		// messages. The container thread is released meanwhile
+		if (!(responseSender instanceof HttpResponseSender)) {
+			responseSender.sendResponse(new Response<Object>(id, httpSession
+					.drainRequests()));
+			return;
+		}
+
+		((HttpResponseSender) responseSender).startAsync(httpSession
+				.getPollTimeout() + POLL_ASYNC_TIMEOUT_MARGIN);
+
+		httpSession.pollRequests(new Continuation<List<Request<?>>>() {
+			@Override
+			public void onSuccess(List<Request<?>> requests) {
+				try {
+					responseSender.sendResponse(new Response<Object>(id,
+							requests));
+				} catch (IOException e) {
+					log.warn("Exception responding poll", e);
+				}
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				log.warn("Exception polling messages", cause);
+			}
+		});
+	}
+
+	private void handleRequest(final ServerSession session,
+			Request<JsonElement> request, ResponseSender transportSender)
+			throws IOException {
+
+		// A request retried after reconnecting is responded with the response
+		// of the original one, without executing it again
+		final ResponseSender responseSender = responseCache.startRequest(
+				session.getSessionId(), request.getId(), transportSender);
+		if (responseSender == null) {
+			return;
+		}
+
+		if (request.getId() == null
+				|| !admissionController.isConcurrencyLimited()) {
+			handlerManager.handleRequest(session, request, responseSender);
+			return;
+		}
+
+		if (!admissionController.tryStartRequest(session)) {
+			rejectRequest(request, responseSender,
+					"Too many concurrent requests");
+			return;
+		}
+
+		// The request is being executed until it is responded, maybe
+		// asynchronously by the handler
+		final AtomicBoolean finished = new AtomicBoolean();
+
+		handlerManager.handleRequest(session, request, new ResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				if (finished.compareAndSet(false, true)) {
+					admissionController.finishRequest(session);
+				}
+				responseSender.sendResponse(message);
 			}
+		});
+	}
+
+	private void rejectRequest(Request<JsonElement> request,
+			ResponseSender responseSender, String reason) throws IOException {
+
+		log.debug("Rejecting request {}: {}", request.getMethod(), reason);
+
+		metrics.incomingRequestStarted(request.getMethod());
+		metrics.incomingRequestCompleted(request.getMethod(), 0, true);
+
+		// Notifications are discarded without response
+		if (request.getId() == null) {
+			return;
+		}
+
+		Response<Object> response = new Response<>(request.getId(),
+				new ResponseError(ERROR_TOO_MANY_REQUESTS, reason));
+
+		// The rejection is not cached, so the request is executed if the
+		// client retries it later
+		if (responseSender instanceof CachingResponseSender) {
+			((CachingResponseSender) responseSender)
+					.sendWithoutCaching(response);
+		} else {
+			responseSender.sendResponse(response);
 		}
 	}
 
@@ -202,15 +483,13 @@ public class ProtocolManager {
 							"SessionId is mandatory in a reconnection request")));
 		} else {
 
-			ServerSession session = sessionsManager.get(sessionId);
+			// If the close timer of the session expires concurrently, either
+			// the session is removed before and it is not found, or it is
+			// reconnected before and the timer does not remove it
+			ServerSession session = sessionsManager.reconnect(sessionId,
+					transportId);
 			if (session != null) {
 
-				String oldTransportId = session.getTransportId();
-				session.setTransportId(transportId);
-				sessionsManager.updateTransportId(session, oldTransportId);
-
-				// FIXME: Possible race condition if session is disposed when
-				// reconnect method has arrived
 				cancelCloseTimer(session);
 
 				responseSender.sendResponse(new Response<>(sessionId, request
@@ -230,18 +509,16 @@ public class ProtocolManager {
 
 		ServerSession session = factory.createSession(sessionId, registerInfo,
 				sessionsManager);
+		session.setMetrics(metrics);
 
 		sessionsManager.put(session);
 
 		return session;
 	}
 
-	private void processResponseMessage(JsonObject messagetJsonObject,
+	private void processResponseMessage(Response<JsonElement> response,
 			String internalSessionId) {
 
-		Response<JsonElement> response = JsonUtils.fromJsonResponse(
-				messagetJsonObject, JsonElement.class);
-
 		ServerSession session = sessionsManager
 				.getByTransportId(internalSessionId);
 
@@ -251,11 +528,15 @@ public class ProtocolManager {
 	public void closeSessionIfTimeout(final String transportId,
 			final String reason) {
 
+		admissionController.transportClosed(transportId);
+
 		final ServerSession session = sessionsManager
 				.getByTransportId(transportId);
 
 		if (session != null) {
 
+			session.handleTransportClosed(reason);
+
 			log.info("Configuring close timeout for session: {}",
 					session.getSessionId());
 
@@ -266,7 +547,8 @@ public class ProtocolManager {
 								new Runnable() {
 									@Override
 									public void run() {
-										closeSession(session, reason);
+										closeSessionIfNotReconnected(session,
+												transportId, reason);
 									}
 								},
 								new Date(
@@ -290,6 +572,14 @@ public class ProtocolManager {
 		handlerManager.afterConnectionClosed(session, reason);
 	}
 
+	private void closeSessionIfNotReconnected(ServerSession session,
+			String transportId, String reason) {
+		if (sessionsManager.removeIfTransport(session, transportId)) {
+			log.info("Closing session: {}", session.getSessionId());
+			handlerManager.afterConnectionClosed(session, reason);
+		}
+	}
+
 	public void cancelCloseTimer(ServerSession session) {
 		if (session.getCloseTimerTask() != null) {
 			session.getCloseTimerTask().cancel(false);
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Bounded cache of the responses recently sent to each session, so a request
+ * retried by a client after reconnecting is not executed again.
+ * <ul>
+ * <li>Requests are identified by the id of their session and their own id,
+ * which is unique in the session.</li>
+ * <li>A retried request whose response has already been sent receives the
+ * cached response.</li>
+ * <li>A retried request still being executed receives the response when it
+ * is sent.</li>
+ * </ul>
+ * Responses are cached for the configured TTL since they are sent. The cache
+ * is bounded by the length of the cached responses, so a few large responses
+ * do not fill the memory. If a request is evicted before being retried, it is
+ * executed again. Responses sent with
+ * {@link CachingResponseSender#sendWithoutCaching(Message)}, like rejections
+ * of requests that can be retried, are not cached.
+ * <p>
+ * Transport senders implementing {@link MeasuredResponseSender} report the
+ * length of the responses they write, so they are not serialized again to be
+ * weighed. Responses sent with other senders, like the ones of batches, are.
+ *
+ * @since 6.0.0
+ */
+public class ResponseCache {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ResponseCache.class);
+
+	// Weight of an entry besides its response, so entries of requests not
+	// responded yet are also bounded
+	private static final int ENTRY_WEIGHT = 64;
+
+	private static class CachedResponse {
+
+		private Message response;
+		private int responseLength;
+		private List<ResponseSender> retries;
+	}
+
+	private final Cache<String, CachedResponse> cache;
+
+	private final AtomicLong retriedRequests = new AtomicLong();
+
+	/**
+	 * @param maxChars
+	 *            Max number of chars of the responses in the cache. If not
+	 *            positive, responses are not cached
+	 * @param ttl
+	 *            Time in millis a response is cached
+	 */
+	public ResponseCache(long maxChars, long ttl) {
+
+		this.cache = maxChars > 0 ? CacheBuilder.newBuilder()
+				.maximumWeight(maxChars)
+				.weigher(new Weigher<String, CachedResponse>() {
+					@Override
+					public int weigh(String key, CachedResponse entry) {
+						return ENTRY_WEIGHT + key.length()
+								+ entry.responseLength;
+					}
+				}).expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+				.<String, CachedResponse> build() : null;
+	}
+
+	/**
+	 * Sender of the response of a request registered in the cache.
+	 */
+	public interface CachingResponseSender extends ResponseSender {
+
+		/**
+		 * Sends a response that is not cached, so the request is executed
+		 * again if it is retried. Retries waiting for the response also
+		 * receive it.
+		 *
+		 * @param message
+		 *            The response
+		 * @throws IOException
+		 *             If the response can not be sent
+		 */
+		void sendWithoutCaching(Message message) throws IOException;
+	}
+
+	/**
+	 * Transport sender that serializes the responses itself and reports their
+	 * length.
+	 */
+	public interface MeasuredResponseSender extends ResponseSender {
+
+		/**
+		 * Sends a response.
+		 *
+		 * @param message
+		 *            The response
+		 * @return the length of the response as written
+		 * @throws IOException
+		 *             If the response can not be sent
+		 */
+		int sendMeasuredResponse(Message message) throws IOException;
+	}
+
+	/**
+	 * Registers a request before executing it.
+	 *
+	 * @param sessionId
+	 *            Id of the session of the request
+	 * @param requestId
+	 *            Id of the request
+	 * @param responseSender
+	 *            Sender of the response of the request
+	 * @return the sender to be used to respond the request, or null if the
+	 *         request has been received before and it must not be executed.
+	 *         If the request is cached, it is a {@link CachingResponseSender}.
+	 *         In that case, the response is sent with the given sender now or
+	 *         when the original request is responded
+	 * @throws IOException
+	 *             If the cached response can not be sent
+	 */
+	public ResponseSender startRequest(String sessionId, Integer requestId,
+			final ResponseSender responseSender) throws IOException {
+
+		if (cache == null || sessionId == null || requestId == null) {
+			return responseSender;
+		}
+
+		final String key = sessionId + '/' + requestId;
+		final CachedResponse entry = new CachedResponse();
+
+		CachedResponse previous = cache.asMap().putIfAbsent(key, entry);
+
+		if (previous != null) {
+
+			retriedRequests.incrementAndGet();
+
+			Message response;
+			synchronized (previous) {
+				response = previous.response;
+				if (response == null) {
+					log.debug("Request {} retried while being executed", key);
+					if (previous.retries == null) {
+						previous.retries = new ArrayList<>();
+					}
+					previous.retries.add(responseSender);
+					return null;
+				}
+			}
+
+			log.debug("Request {} retried. Sending cached response", key);
+			responseSender.sendResponse(response);
+			return null;
+		}
+
+		return new CachingResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				send(message, true);
+			}
+
+			@Override
+			public void sendWithoutCaching(Message message) throws IOException {
+				send(message, false);
+			}
+
+			private void send(Message message, boolean cached)
+					throws IOException {
+
+				List<ResponseSender> retries;
+				synchronized (entry) {
+					if (entry.response != null) {
+						// Only the first response of a request is cached
+						responseSender.sendResponse(message);
+						return;
+					}
+					entry.response = message;
+					retries = entry.retries;
+					entry.retries = null;
+				}
+
+				if (!cached) {
+					cache.asMap().remove(key, entry);
+				}
+
+				int responseLength = -1;
+				try {
+					if (responseSender instanceof MeasuredResponseSender) {
+						responseLength = ((MeasuredResponseSender) responseSender)
+								.sendMeasuredResponse(message);
+					} else {
+						responseSender.sendResponse(message);
+					}
+				} finally {
+					if (cached) {
+						// The TTL starts when the response is sent, and the
+						// entry is weighed again with the length of the response
+						entry.responseLength = responseLength >= 0 ? responseLength
+								: message.toString().length();
+						cache.put(key, entry);
+					}
+					if (retries != null) {
+						for (ResponseSender retry : retries) {
+							try {
+								retry.sendResponse(message);
+							} catch (IOException e) {
+								log.warn("Exception sending response to"
+										+ " retried request {}", key, e);
+							}
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return the number of requests received more than once and not executed
+	 *         again
+	 */
+	public long getRetriedCount() {
+		return retriedRequests.get();
+	}
+
+	/**
+	 * @return the number of requests in the cache, responded or not
+	 */
+	public long size() {
+		return cache != null ? cache.size() : 0;
+	}
+
+}
@@ -25,6 +25,7 @@ import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -33,7 +34,7 @@ public abstract class ServerSession extends AbstractSession {
 
 	private final SessionsManager sessionsManager;
 	private JsonRpcRequestSenderHelper rsHelper;
-	private String transportId;
+	private volatile String transportId;
 	private ScheduledFuture<?> closeTimerTask;
 
 	private volatile ConcurrentMap<String, Object> attributes;
@@ -52,6 +53,17 @@ public abstract class ServerSession extends AbstractSession {
 
 	public abstract void handleResponse(Response<JsonElement> response);
 
+	/**
+	 * Invoked when the transport of this session is closed. The session is kept
+	 * for some time waiting for a reconnection, but the responses of the
+	 * requests sent through the closed transport will not be received.
+	 *
+	 * @param reason
+	 *            The reason of the closing
+	 */
+	public void handleTransportClosed(String reason) {
+	}
+
 	public String getTransportId() {
 		return transportId;
 	}
@@ -69,6 +81,14 @@ public abstract class ServerSession extends AbstractSession {
 		this.rsHelper = rsHelper;
 	}
 
+	/**
+	 * @param metrics
+	 *            Metrics of the requests sent to the client
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		rsHelper.setMetrics(metrics);
+	}
+
 	@Override
 	public <R> R sendRequest(String method, Class<R> resultClass)
 			throws IOException {
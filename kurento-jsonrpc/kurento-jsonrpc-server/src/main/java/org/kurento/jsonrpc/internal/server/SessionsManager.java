@@ -15,13 +15,23 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 import org.springframework.stereotype.Component;
 
+import com.google.common.util.concurrent.Striped;
+
 /**
  * 
- * This class is responsible for storing JSON-RPC sessions using a
- * ConcurrentHashMap.
+ * This class is responsible for storing JSON-RPC sessions, indexed by session
+ * id and by transport id.
+ * <p>
+ * Lookups do not block. Updates of a session are done holding a lock
+ * striped by session id, so both indexes are updated atomically with respect
+ * to other updates of the same session, and updates of unrelated sessions do
+ * not contend. A session is added to the transport index after the session
+ * index, and removed from it before, so a session found by transport id is
+ * always registered by session id.
  * 
  * @author Micael Gallego (micael.gallego@gmail.com)
  * @version 1.0.0
@@ -29,16 +39,24 @@ import org.springframework.stereotype.Component;
 @Component
 public class SessionsManager {
 
-	// TODO Review atomic management of two maps
+	private static final int LOCK_STRIPES = 256;
 
 	private final ConcurrentHashMap<String, ServerSession> sessions = new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<String, ServerSession> sessionsByTransportId = new ConcurrentHashMap<>();
 
+	private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
 	public void put(ServerSession session) {
-		sessions.put(session.getSessionId(), session);
-		String transportId = session.getTransportId();
-		if (transportId != null) {
-			sessionsByTransportId.put(transportId, session);
+		Lock lock = lock(session.getSessionId());
+		try {
+			ServerSession previous = sessions.get(session.getSessionId());
+			if (previous != null && previous != session) {
+				removeTransport(previous);
+			}
+			sessions.put(session.getSessionId(), session);
+			addTransport(session);
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -51,32 +69,145 @@ public class SessionsManager {
 	}
 
 	public ServerSession removeByTransportId(String transportId) {
-		ServerSession session = sessionsByTransportId.remove(transportId);
-		if (session != null) {
-			sessions.remove(session.getSessionId());
+
+		ServerSession session = sessionsByTransportId.get(transportId);
+		if (session == null) {
+			return null;
+		}
+
+		Lock lock = lock(session.getSessionId());
+		try {
+			if (!transportId.equals(session.getTransportId())
+					|| sessions.get(session.getSessionId()) != session) {
+				return null;
+			}
+			removeTransport(session);
+			sessions.remove(session.getSessionId(), session);
+			return session;
+		} finally {
+			lock.unlock();
 		}
-		return session;
 	}
 
 	public ServerSession remove(String sessionId) {
-		ServerSession session = sessions.remove(sessionId);
-		if (session != null) {
-			sessionsByTransportId.remove(session.getTransportId());
+		Lock lock = lock(sessionId);
+		try {
+			ServerSession session = sessions.get(sessionId);
+			if (session != null) {
+				removeTransport(session);
+				sessions.remove(sessionId, session);
+			}
+			return session;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(ServerSession session) {
+		Lock lock = lock(session.getSessionId());
+		try {
+			removeTransport(session);
+			sessions.remove(session.getSessionId(), session);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a session only if its transport has not changed since it was
+	 * closed. It is used to close sessions whose transport was closed and
+	 * have not reconnected in time.
+	 *
+	 * @param session
+	 *            The session
+	 * @param transportId
+	 *            The id of the closed transport
+	 * @return true if the session was removed, false if it had been removed
+	 *         or has reconnected with another transport
+	 */
+	public boolean removeIfTransport(ServerSession session, String transportId) {
+		Lock lock = lock(session.getSessionId());
+		try {
+			if (sessions.get(session.getSessionId()) != session
+					|| !equals(transportId, session.getTransportId())) {
+				return false;
+			}
+			removeTransport(session);
+			sessions.remove(session.getSessionId(), session);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Associates a registered session with a new transport. The session can
+	 * not be removed by {@link #removeIfTransport(ServerSession, String)} with
+	 * its previous transport after this method returns.
+	 *
+	 * @param sessionId
+	 *            The id of the session
+	 * @param transportId
+	 *            The id of the new transport
+	 * @return The session, or null if there is no session with this id
+	 */
+	public ServerSession reconnect(String sessionId, String transportId) {
+		Lock lock = lock(sessionId);
+		try {
+			ServerSession session = sessions.get(sessionId);
+			if (session != null) {
+				removeTransport(session);
+				session.setTransportId(transportId);
+				addTransport(session);
+			}
+			return session;
+		} finally {
+			lock.unlock();
 		}
-		return session;
 	}
 
 	public void updateTransportId(ServerSession session, String oldTransportId) {
-		if (oldTransportId != null) {
-			sessionsByTransportId.remove(oldTransportId);
+		Lock lock = lock(session.getSessionId());
+		try {
+			if (oldTransportId != null) {
+				sessionsByTransportId.remove(oldTransportId, session);
+			}
+			if (sessions.get(session.getSessionId()) == session) {
+				addTransport(session);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of registered sessions
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	private Lock lock(String sessionId) {
+		Lock lock = locks.get(sessionId);
+		lock.lock();
+		return lock;
+	}
+
+	private void addTransport(ServerSession session) {
+		String transportId = session.getTransportId();
+		if (transportId != null) {
+			sessionsByTransportId.put(transportId, session);
 		}
+	}
 
-		if (session.getTransportId() != null) {
-			sessionsByTransportId.put(session.getTransportId(), session);
+	private void removeTransport(ServerSession session) {
+		String transportId = session.getTransportId();
+		if (transportId != null) {
+			sessionsByTransportId.remove(transportId, session);
 		}
 	}
 
-	public void remove(ServerSession session) {
-		remove(session.getSessionId());
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 }
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+/**
+ * Token bucket used to limit the rate of requests. It is refilled at a
+ * constant rate up to its capacity, so bursts of up to capacity requests are
+ * accepted after a period of inactivity.
+ *
+ * @since 6.0.0
+ */
+public class TokenBucket {
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final double capacity;
+	private final double tokensPerNano;
+
+	// Guarded by this
+	private double tokens;
+	private long lastRefillTime;
+
+	/**
+	 * @param tokensPerSecond
+	 *            Refill rate
+	 * @param capacity
+	 *            Max number of tokens. The bucket is created full
+	 */
+	public TokenBucket(double tokensPerSecond, int capacity) {
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+		this.tokens = capacity;
+		this.lastRefillTime = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token if there is one available. It never blocks.
+	 *
+	 * @return true if a token has been taken
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(1) == 1;
+	}
+
+	/**
+	 * Takes as many of the requested tokens as there are available. It never
+	 * blocks.
+	 *
+	 * @param permits
+	 *            Number of tokens requested
+	 * @return the number of tokens taken, between zero and permits
+	 */
+	public synchronized int tryAcquire(int permits) {
+
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefillTime)
+				* tokensPerNano);
+		lastRefillTime = now;
+
+		int acquired = (int) Math.min(permits, Math.floor(tokens));
+		if (acquired <= 0) {
+			return 0;
+		}
+
+		tokens -= acquired;
+		return acquired;
+	}
+
+	/**
+	 * Gives back tokens taken and not used, up to the capacity of the bucket.
+	 *
+	 * @param permits
+	 *            Number of tokens to give back
+	 */
+	public synchronized void release(int permits) {
+		tokens = Math.min(capacity, tokens + permits);
+	}
+
+}
@@ -22,15 +22,21 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.catalina.Context;
 import org.apache.tomcat.websocket.server.WsSci;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
+import org.kurento.jsonrpc.internal.http.JsonRpcMetricsHttpRequestHandler;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ResponseCache;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
+import org.kurento.jsonrpc.metrics.InMemoryJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.embedded.tomcat.TomcatContextCustomizer;
@@ -39,20 +45,27 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
+import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 @Configuration
 @EnableWebSocket
 public class JsonRpcConfiguration implements WebSocketConfigurer {
 
+	private static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
 	@Autowired
 	protected ApplicationContext ctx;
 
@@ -131,9 +144,40 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 			}
 		}
 
+		// JSON-RPC over HTTP only uses POST. Other requests to the same paths,
+		// as WebSocket handshakes, are left to the WebSocket handler mapping
+		SimpleUrlHandlerMapping hm = new SimpleUrlHandlerMapping() {
+			@Override
+			protected Object getHandlerInternal(HttpServletRequest request)
+					throws Exception {
+				if (!"POST".equals(request.getMethod())) {
+					return null;
+				}
+				return super.getHandlerInternal(request);
+			}
+		};
+		hm.setUrlMap(urlMap);
+		hm.setOrder(0);
+		return hm;
+	}
+
+	@Bean
+	public HandlerMapping jsonRpcMetricsHandlerMapping() {
+
+		Map<String, Object> urlMap = new LinkedHashMap<>();
+
+		String path = jsonRpcProperties().getMetricsPath();
+		JsonRpcMetrics metrics = jsonRpcMetrics();
+
+		if (path != null && !path.isEmpty()
+				&& metrics instanceof InMemoryJsonRpcMetrics) {
+			urlMap.put(path, new JsonRpcMetricsHttpRequestHandler(
+					(InMemoryJsonRpcMetrics) metrics));
+		}
+
 		SimpleUrlHandlerMapping hm = new SimpleUrlHandlerMapping();
 		hm.setUrlMap(urlMap);
-		hm.setOrder(1);
+		hm.setOrder(0);
 		return hm;
 	}
 
@@ -141,7 +185,10 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 			JsonRpcHandler<?> handler, List<String> paths) {
 
 		JsonRpcHttpRequestHandler requestHandler = new JsonRpcHttpRequestHandler(
-				(ProtocolManager) ctx.getBean("protocolManager", handler));
+				(ProtocolManager) ctx.getBean("protocolManager", handler),
+				jsonrpcTaskExecutor(), jsonRpcProperties()
+						.getHttpPollTimeout(), jsonRpcProperties()
+						.getHttpMaxQueuedMessages());
 
 		for (String path : paths) {
 			urlMap.put(path, requestHandler);
@@ -196,20 +243,52 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 			WebSocketHandlerRegistry wsHandlerRegistry,
 			JsonRpcHandler<?> handler, List<String> paths) {
 
+		JsonRpcProperties props = jsonRpcProperties();
+
 		JsonRpcWebSocketHandler wsHandler = new JsonRpcWebSocketHandler(
-				(ProtocolManager) ctx.getBean("protocolManager", handler));
+				(ProtocolManager) ctx.getBean("protocolManager", handler),
+				jsonrpcTaskExecutor(), jsonrpcWriterExecutor(),
+				props.getOutboundQueueHighWaterMark(),
+				props.getWebSocketMaxMessageSize(),
+				props.getWebSocketFragmentSize(),
+				props.getWebSocketSendTimeout());
 
 		for (String path : paths) {
 
 			WebSocketHandlerRegistration registration = wsHandlerRegistry
 					.addHandler(wsHandler, path);
 
+			if (!props.isWebSocketPerMessageDeflateEnabled()) {
+				registration.setHandshakeHandler(noCompressionHandshakeHandler());
+			}
+
 			if (handler.isSockJSEnabled()) {
 				registration.withSockJS();
 			}
 		}
 	}
 
+	private HandshakeHandler noCompressionHandshakeHandler() {
+		return new DefaultHandshakeHandler() {
+			@Override
+			protected List<WebSocketExtension> filterRequestedExtensions(
+					ServerHttpRequest request,
+					List<WebSocketExtension> requestedExtensions,
+					List<WebSocketExtension> supportedExtensions) {
+
+				List<WebSocketExtension> extensions = new ArrayList<>();
+				for (WebSocketExtension extension : super
+						.filterRequestedExtensions(request,
+								requestedExtensions, supportedExtensions)) {
+					if (!PER_MESSAGE_DEFLATE.equals(extension.getName())) {
+						extensions.add(extension);
+					}
+				}
+				return extensions;
+			}
+		};
+	}
+
 	// This methods workaround the bug
 	// https://jira.springsource.org/browse/SPR-10841
 
@@ -238,6 +317,27 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 		return new SessionsManager();
 	}
 
+	@Bean
+	public JsonRpcMetrics jsonRpcMetrics() {
+		return new InMemoryJsonRpcMetrics();
+	}
+
+	@Bean
+	public AdmissionController admissionController() {
+		JsonRpcProperties props = jsonRpcProperties();
+		return new AdmissionController(props.getRequestRateLimit(),
+				props.getRequestRateBurst(), props.getSessionRequestRateLimit(),
+				props.getSessionRequestRateBurst(),
+				props.getMaxConcurrentRequestsPerSession());
+	}
+
+	@Bean
+	public ResponseCache responseCache() {
+		JsonRpcProperties props = jsonRpcProperties();
+		return new ResponseCache(props.getResponseCacheMaxChars(),
+				props.getResponseCacheTtl());
+	}
+
 	@Bean
 	@Scope("prototype")
 	public ProtocolManager protocolManager(JsonRpcHandler<?> key) {
@@ -257,4 +357,27 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 		return new ThreadPoolTaskScheduler();
 	}
 
+	@Bean(destroyMethod = "shutdown")
+	public JsonRpcTaskExecutor jsonrpcTaskExecutor() {
+		JsonRpcProperties props = jsonRpcProperties();
+		return new JsonRpcTaskExecutor(props.getTaskExecutorPoolSize(),
+				props.getTaskExecutorQueueCapacity());
+	}
+
+	/**
+	 * Threads that write messages in WebSocket connections. Each connection
+	 * uses at most one thread at a time, only while it has messages to write.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ThreadPoolTaskExecutor jsonrpcWriterExecutor() {
+		JsonRpcProperties props = jsonRpcProperties();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(props.getWebSocketWriterPoolSize());
+		executor.setMaxPoolSize(props.getWebSocketWriterPoolSize());
+		executor.setQueueCapacity(props.getWebSocketWriterQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setThreadNamePrefix("jsonrpc-writer-");
+		return executor;
+	}
+
 }
@@ -14,6 +14,8 @@
  */
 package org.kurento.jsonrpc.internal.server.config;
 
+import org.kurento.jsonrpc.internal.ws.MessageFragments;
+
 /**
  * Properties of the JSON RPC connector
  *
@@ -37,6 +39,52 @@ public class JsonRpcProperties {
 
 	private String proxyToken;
 
+	private int tokenCacheMaxSize = 10000;
+
+	private long tokenCacheTtl = 300000;
+
+	private int tokenCacheNegativeMaxSize = 1000;
+
+	private long tokenCacheNegativeTtl = 10000;
+
+	private int taskExecutorPoolSize = 20;
+
+	private int taskExecutorQueueCapacity = 10000;
+
+	private int outboundQueueHighWaterMark = 10000;
+
+	private int webSocketWriterPoolSize = 20;
+
+	private int webSocketWriterQueueCapacity = 100000;
+
+	private long webSocketSendTimeout = 10000;
+
+	private long httpPollTimeout = 20000;
+
+	private int httpMaxQueuedMessages = 1000;
+
+	private int webSocketMaxMessageSize = MessageFragments.DEFAULT_MAX_MESSAGE_SIZE;
+
+	private int webSocketFragmentSize = MessageFragments.DEFAULT_FRAGMENT_SIZE;
+
+	private boolean webSocketPerMessageDeflateEnabled = true;
+
+	private int requestRateLimit;
+
+	private int requestRateBurst;
+
+	private int sessionRequestRateLimit;
+
+	private int sessionRequestRateBurst;
+
+	private int maxConcurrentRequestsPerSession;
+
+	private String metricsPath;
+
+	private long responseCacheMaxChars = 10000000;
+
+	private long responseCacheTtl = 60000;
+
 	/**
 	 * @return the keystoneHost
 	 */
@@ -142,4 +190,382 @@ public class JsonRpcProperties {
 		this.proxyToken = authToken;
 	}
 
+	/**
+	 * @return the max number of access tokens cached by the OAuth filter
+	 */
+	public int getTokenCacheMaxSize() {
+		return tokenCacheMaxSize;
+	}
+
+	/**
+	 * @param tokenCacheMaxSize
+	 *            the tokenCacheMaxSize to set
+	 */
+	public void setTokenCacheMaxSize(int tokenCacheMaxSize) {
+		this.tokenCacheMaxSize = tokenCacheMaxSize;
+	}
+
+	/**
+	 * @return the max time in millis a valid access token is cached. Tokens
+	 *         expiring before are removed when they expire
+	 */
+	public long getTokenCacheTtl() {
+		return tokenCacheTtl;
+	}
+
+	/**
+	 * @param tokenCacheTtl
+	 *            the tokenCacheTtl to set
+	 */
+	public void setTokenCacheTtl(long tokenCacheTtl) {
+		this.tokenCacheTtl = tokenCacheTtl;
+	}
+
+	/**
+	 * @return the max number of rejected access tokens cached by the OAuth
+	 *         filter. They are kept apart from valid ones, so they never
+	 *         evict them
+	 */
+	public int getTokenCacheNegativeMaxSize() {
+		return tokenCacheNegativeMaxSize;
+	}
+
+	/**
+	 * @param tokenCacheNegativeMaxSize
+	 *            the tokenCacheNegativeMaxSize to set
+	 */
+	public void setTokenCacheNegativeMaxSize(int tokenCacheNegativeMaxSize) {
+		this.tokenCacheNegativeMaxSize = tokenCacheNegativeMaxSize;
+	}
+
+	/**
+	 * @return the time in millis a rejected access token is cached
+	 */
+	public long getTokenCacheNegativeTtl() {
+		return tokenCacheNegativeTtl;
+	}
+
+	/**
+	 * @param tokenCacheNegativeTtl
+	 *            the tokenCacheNegativeTtl to set
+	 */
+	public void setTokenCacheNegativeTtl(long tokenCacheNegativeTtl) {
+		this.tokenCacheNegativeTtl = tokenCacheNegativeTtl;
+	}
+
+	/**
+	 * @return the max number of threads used to process the responses of
+	 *         requests sent from server to clients
+	 */
+	public int getTaskExecutorPoolSize() {
+		return taskExecutorPoolSize;
+	}
+
+	/**
+	 * @param taskExecutorPoolSize
+	 *            the taskExecutorPoolSize to set
+	 */
+	public void setTaskExecutorPoolSize(int taskExecutorPoolSize) {
+		this.taskExecutorPoolSize = taskExecutorPoolSize;
+	}
+
+	/**
+	 * @return the max number of tasks waiting for a free thread in the task
+	 *         executor
+	 */
+	public int getTaskExecutorQueueCapacity() {
+		return taskExecutorQueueCapacity;
+	}
+
+	/**
+	 * @param taskExecutorQueueCapacity
+	 *            the taskExecutorQueueCapacity to set
+	 */
+	public void setTaskExecutorQueueCapacity(int taskExecutorQueueCapacity) {
+		this.taskExecutorQueueCapacity = taskExecutorQueueCapacity;
+	}
+
+	/**
+	 * @return the max number of messages waiting to be written in a
+	 *         WebSocket connection. If it is exceeded because the client does
+	 *         not read messages fast enough, the connection is closed
+	 */
+	public int getOutboundQueueHighWaterMark() {
+		return outboundQueueHighWaterMark;
+	}
+
+	/**
+	 * @param outboundQueueHighWaterMark
+	 *            the outboundQueueHighWaterMark to set
+	 */
+	public void setOutboundQueueHighWaterMark(int outboundQueueHighWaterMark) {
+		this.outboundQueueHighWaterMark = outboundQueueHighWaterMark;
+	}
+
+	/**
+	 * @return the max number of threads used to write messages in WebSocket
+	 *         connections. They are not shared with the task executor, so
+	 *         slow clients do not delay the processing of responses
+	 */
+	public int getWebSocketWriterPoolSize() {
+		return webSocketWriterPoolSize;
+	}
+
+	/**
+	 * @param webSocketWriterPoolSize
+	 *            the webSocketWriterPoolSize to set
+	 */
+	public void setWebSocketWriterPoolSize(int webSocketWriterPoolSize) {
+		this.webSocketWriterPoolSize = webSocketWriterPoolSize;
+	}
+
+	/**
+	 * @return the max number of WebSocket connections waiting for a free
+	 *         thread to write their messages. A connection is closed if its
+	 *         writer is rejected because this capacity is exceeded
+	 */
+	public int getWebSocketWriterQueueCapacity() {
+		return webSocketWriterQueueCapacity;
+	}
+
+	/**
+	 * @param webSocketWriterQueueCapacity
+	 *            the webSocketWriterQueueCapacity to set
+	 */
+	public void setWebSocketWriterQueueCapacity(
+			int webSocketWriterQueueCapacity) {
+		this.webSocketWriterQueueCapacity = webSocketWriterQueueCapacity;
+	}
+
+	/**
+	 * @return the max time in millis to send a message in a WebSocket
+	 *         connection. If it expires because the client does not read, the
+	 *         connection is closed
+	 */
+	public long getWebSocketSendTimeout() {
+		return webSocketSendTimeout;
+	}
+
+	/**
+	 * @param webSocketSendTimeout
+	 *            the webSocketSendTimeout to set
+	 */
+	public void setWebSocketSendTimeout(long webSocketSendTimeout) {
+		this.webSocketSendTimeout = webSocketSendTimeout;
+	}
+
+	/**
+	 * @return the max time in millis a poll of an HTTP client waits for
+	 *         messages from the server
+	 */
+	public long getHttpPollTimeout() {
+		return httpPollTimeout;
+	}
+
+	/**
+	 * @param httpPollTimeout
+	 *            the httpPollTimeout to set
+	 */
+	public void setHttpPollTimeout(long httpPollTimeout) {
+		this.httpPollTimeout = httpPollTimeout;
+	}
+
+	/**
+	 * @return the max number of messages queued for an HTTP client until it
+	 *         polls for them. Messages sent when the queue is full fail
+	 */
+	public int getHttpMaxQueuedMessages() {
+		return httpMaxQueuedMessages;
+	}
+
+	/**
+	 * @param httpMaxQueuedMessages
+	 *            the httpMaxQueuedMessages to set
+	 */
+	public void setHttpMaxQueuedMessages(int httpMaxQueuedMessages) {
+		this.httpMaxQueuedMessages = httpMaxQueuedMessages;
+	}
+
+	/**
+	 * @return the max number of chars of a message received in a WebSocket
+	 *         connection. If a larger message is received, the connection is
+	 *         closed
+	 */
+	public int getWebSocketMaxMessageSize() {
+		return webSocketMaxMessageSize;
+	}
+
+	/**
+	 * @param webSocketMaxMessageSize
+	 *            the webSocketMaxMessageSize to set
+	 */
+	public void setWebSocketMaxMessageSize(int webSocketMaxMessageSize) {
+		this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+	}
+
+	/**
+	 * @return the max number of chars sent in a WebSocket frame. Longer
+	 *         messages are sent in several frames. 0 to send each message in
+	 *         one frame
+	 */
+	public int getWebSocketFragmentSize() {
+		return webSocketFragmentSize;
+	}
+
+	/**
+	 * @param webSocketFragmentSize
+	 *            the webSocketFragmentSize to set
+	 */
+	public void setWebSocketFragmentSize(int webSocketFragmentSize) {
+		this.webSocketFragmentSize = webSocketFragmentSize;
+	}
+
+	/**
+	 * @return true if permessage-deflate compression is accepted when it is
+	 *         offered by a WebSocket client
+	 */
+	public boolean isWebSocketPerMessageDeflateEnabled() {
+		return webSocketPerMessageDeflateEnabled;
+	}
+
+	/**
+	 * @param webSocketPerMessageDeflateEnabled
+	 *            the webSocketPerMessageDeflateEnabled to set
+	 */
+	public void setWebSocketPerMessageDeflateEnabled(
+			boolean webSocketPerMessageDeflateEnabled) {
+		this.webSocketPerMessageDeflateEnabled = webSocketPerMessageDeflateEnabled;
+	}
+
+	/**
+	 * @return the max number of messages per second received by the server.
+	 *         Requests over the limit are rejected. 0 for no limit
+	 */
+	public int getRequestRateLimit() {
+		return requestRateLimit;
+	}
+
+	/**
+	 * @param requestRateLimit
+	 *            the requestRateLimit to set
+	 */
+	public void setRequestRateLimit(int requestRateLimit) {
+		this.requestRateLimit = requestRateLimit;
+	}
+
+	/**
+	 * @return the max number of messages received by the server in a burst.
+	 *         0 to use the request rate limit
+	 */
+	public int getRequestRateBurst() {
+		return requestRateBurst;
+	}
+
+	/**
+	 * @param requestRateBurst
+	 *            the requestRateBurst to set
+	 */
+	public void setRequestRateBurst(int requestRateBurst) {
+		this.requestRateBurst = requestRateBurst;
+	}
+
+	/**
+	 * @return the max number of messages per second received from a client
+	 *         connection. Requests over the limit are rejected. 0 for no
+	 *         limit
+	 */
+	public int getSessionRequestRateLimit() {
+		return sessionRequestRateLimit;
+	}
+
+	/**
+	 * @param sessionRequestRateLimit
+	 *            the sessionRequestRateLimit to set
+	 */
+	public void setSessionRequestRateLimit(int sessionRequestRateLimit) {
+		this.sessionRequestRateLimit = sessionRequestRateLimit;
+	}
+
+	/**
+	 * @return the max number of messages received from a client connection in
+	 *         a burst. 0 to use the session request rate limit
+	 */
+	public int getSessionRequestRateBurst() {
+		return sessionRequestRateBurst;
+	}
+
+	/**
+	 * @param sessionRequestRateBurst
+	 *            the sessionRequestRateBurst to set
+	 */
+	public void setSessionRequestRateBurst(int sessionRequestRateBurst) {
+		this.sessionRequestRateBurst = sessionRequestRateBurst;
+	}
+
+	/**
+	 * @return the max number of requests of a session being executed at the
+	 *         same time. Requests over the limit are rejected. 0 for no limit
+	 */
+	public int getMaxConcurrentRequestsPerSession() {
+		return maxConcurrentRequestsPerSession;
+	}
+
+	/**
+	 * @param maxConcurrentRequestsPerSession
+	 *            the maxConcurrentRequestsPerSession to set
+	 */
+	public void setMaxConcurrentRequestsPerSession(
+			int maxConcurrentRequestsPerSession) {
+		this.maxConcurrentRequestsPerSession = maxConcurrentRequestsPerSession;
+	}
+
+	/**
+	 * @return the path where the metrics of the server are published as JSON
+	 *         in GET requests. Null or empty if they are not published
+	 */
+	public String getMetricsPath() {
+		return metricsPath;
+	}
+
+	/**
+	 * @param metricsPath
+	 *            the metricsPath to set
+	 */
+	public void setMetricsPath(String metricsPath) {
+		this.metricsPath = metricsPath;
+	}
+
+	/**
+	 * @return the max number of chars of the responses cached to answer
+	 *         requests retried by clients after reconnecting. 0 to disable the
+	 *         cache
+	 */
+	public long getResponseCacheMaxChars() {
+		return responseCacheMaxChars;
+	}
+
+	/**
+	 * @param responseCacheMaxChars
+	 *            the responseCacheMaxChars to set
+	 */
+	public void setResponseCacheMaxChars(long responseCacheMaxChars) {
+		this.responseCacheMaxChars = responseCacheMaxChars;
+	}
+
+	/**
+	 * @return the time in millis a response is cached since it is sent. It
+	 *         should be longer than the time clients take to reconnect
+	 */
+	public long getResponseCacheTtl() {
+		return responseCacheTtl;
+	}
+
+	/**
+	 * @param responseCacheTtl
+	 *            the responseCacheTtl to set
+	 */
+	public void setResponseCacheTtl(long responseCacheTtl) {
+		this.responseCacheTtl = responseCacheTtl;
+	}
+
 }
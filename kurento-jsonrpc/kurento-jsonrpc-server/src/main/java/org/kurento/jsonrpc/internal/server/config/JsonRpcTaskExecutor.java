@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Bounded executor shared by all sessions of the server. It is used to notify
+ * the responses of requests sent from server to clients, so threads are not
+ * blocked waiting for them. Idle threads are released, so a server without
+ * traffic has no threads in the pool.
+ *
+ * Queue depth and thread counts are exposed to allow sizing the pool with
+ * {@link JsonRpcProperties#setTaskExecutorPoolSize(int)} and
+ * {@link JsonRpcProperties#setTaskExecutorQueueCapacity(int)}.
+ *
+ * @since 6.0.0
+ */
+public class JsonRpcTaskExecutor extends ThreadPoolTaskExecutor {
+
+	private static final long serialVersionUID = -2496325462858370236L;
+
+	public JsonRpcTaskExecutor(int poolSize, int queueCapacity) {
+		setCorePoolSize(poolSize);
+		setMaxPoolSize(poolSize);
+		setQueueCapacity(queueCapacity);
+		setAllowCoreThreadTimeOut(true);
+		setThreadNamePrefix("jsonrpc-exec-");
+	}
+
+	/**
+	 * @return the number of tasks waiting for a free thread
+	 */
+	public int getQueueSize() {
+		ThreadPoolExecutor executor = getThreadPoolExecutor();
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of free positions in the queue before tasks are
+	 *         rejected
+	 */
+	public int getQueueRemainingCapacity() {
+		return getThreadPoolExecutor().getQueue().remainingCapacity();
+	}
+
+	/**
+	 * @return the total number of tasks executed since the executor was
+	 *         started
+	 */
+	public long getCompletedTaskCount() {
+		return getThreadPoolExecutor().getCompletedTaskCount();
+	}
+
+	/**
+	 * @return the max number of threads that have been simultaneously in the
+	 *         pool
+	 */
+	public int getLargestPoolSize() {
+		return getThreadPoolExecutor().getLargestPoolSize();
+	}
+}
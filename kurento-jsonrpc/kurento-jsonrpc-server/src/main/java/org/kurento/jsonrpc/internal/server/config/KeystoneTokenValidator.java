@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server.config;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.scribe.model.OAuthRequest;
+import org.scribe.model.Response;
+import org.scribe.model.Verb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.woorea.openstack.keystone.Keystone;
+import com.woorea.openstack.keystone.model.Access;
+import com.woorea.openstack.keystone.model.Authentication;
+import com.woorea.openstack.keystone.model.authentication.UsernamePassword;
+
+/**
+ * Validates access tokens against the Keystone server configured in
+ * {@link JsonRpcProperties}. The expiration time of valid tokens is taken
+ * from the {@code access.token.expires} field of the response.
+ *
+ * @since 6.0.0
+ */
+public class KeystoneTokenValidator implements TokenValidator {
+
+	private static final String X_AUTH_HEADER = "X-Auth-Token";
+
+	private static final Logger log = LoggerFactory
+			.getLogger(KeystoneTokenValidator.class);
+
+	// Offset of the time zone of a date time, as +01, +0100 or +01:00
+	private static final Pattern TIME_ZONE_OFFSET = Pattern
+			.compile("T.*([+-]\\d{2}):?(\\d{2})?$");
+
+	private final JsonRpcProperties props;
+
+	public KeystoneTokenValidator(JsonRpcProperties props) {
+		this.props = props;
+	}
+
+	@Override
+	public long validate(String accessToken) throws IOException {
+
+		Response oauthResp = validateTokenWithServer(accessToken);
+
+		if (!oauthResp.isSuccessful() && oauthResp.getCode() == 401) {
+			props.setAuthToken(obtainFilterToken());
+			oauthResp = validateTokenWithServer(accessToken);
+		}
+
+		if (!oauthResp.isSuccessful()) {
+			String msg = "OAuth server returns error code: "
+					+ oauthResp.getCode() + " and message '"
+					+ oauthResp.getMessage() + '\'';
+
+			// Only these codes reject the token. Any other error (e.g. 5xx or
+			// 429) says nothing about it, and must not be cached as rejected
+			if (oauthResp.getCode() != 401 && oauthResp.getCode() != 404) {
+				throw new IOException("OAuth token can not be validated. "
+						+ msg);
+			}
+
+			log.warn("There was a request with a unauthorized OAuth token. {}",
+					msg);
+
+			return INVALID_TOKEN;
+		}
+
+		return parseExpirationTime(oauthResp.getBody());
+	}
+
+	private Response validateTokenWithServer(String accessToken) {
+		String authToken = props.getAuthToken();
+
+		String url = props.getKeystoneHost() + ':' + props.getKeystonePort()
+				+ props.getKeystonePath() + accessToken;
+
+		OAuthRequest oauthReq = new OAuthRequest(Verb.GET, url);
+		oauthReq.addHeader(X_AUTH_HEADER, authToken);
+
+		return oauthReq.send();
+	}
+
+	private String obtainFilterToken() {
+		Keystone keystone = new Keystone(props.getKeystoneHost() + ':'
+				+ props.getKeystonePort() + '/' + props.getOAuthVersion());
+		Authentication authentication = new UsernamePassword(
+				props.getKeystoneProxyUser(), props.getKeystoneProxyPass());
+
+		Access access = keystone.tokens().authenticate(authentication)
+				.execute();
+
+		return access.getToken().getId();
+	}
+
+	private long parseExpirationTime(String body) {
+
+		try {
+
+			JsonObject access = new JsonParser().parse(body).getAsJsonObject()
+					.getAsJsonObject("access");
+			JsonElement expires = access.getAsJsonObject("token").get(
+					"expires");
+
+			return parseDateTime(expires.getAsString());
+
+		} catch (Exception e) {
+			log.debug("Expiration time not found in OAuth server response", e);
+			return UNKNOWN_EXPIRATION;
+		}
+	}
+
+	/**
+	 * Parses an ISO 8601 date time, as "2015-02-05T10:06:15Z" or
+	 * "2015-02-05T10:06:15.123456+01:00". Fractions of second are ignored, and
+	 * the time is taken as UTC if it has no time zone.
+	 */
+	static long parseDateTime(String dateTime) throws ParseException {
+
+		String normalized = dateTime.trim().replaceFirst("\\.\\d+", "");
+
+		Matcher offset = TIME_ZONE_OFFSET.matcher(normalized);
+		if (offset.find()) {
+			normalized = normalized.substring(0, offset.start(1))
+					+ offset.group(1) + ':'
+					+ (offset.group(2) != null ? offset.group(2) : "00");
+		} else if (!normalized.endsWith("Z") && !normalized.endsWith("z")) {
+			normalized += 'Z';
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ssXXX");
+
+		return format.parse(normalized.replace('z', 'Z')).getTime();
+	}
+
+}
@@ -17,6 +17,7 @@ package org.kurento.jsonrpc.internal.server.config;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -24,19 +25,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.scribe.model.OAuthConstants;
-import org.scribe.model.OAuthRequest;
-import org.scribe.model.Response;
-import org.scribe.model.Verb;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.google.common.base.Strings;
-import com.woorea.openstack.keystone.Keystone;
-import com.woorea.openstack.keystone.model.Access;
-import com.woorea.openstack.keystone.model.Authentication;
-import com.woorea.openstack.keystone.model.authentication.UsernamePassword;
 
 /**
  * @author Ivan Gracia (izanmail@gmail.com)
@@ -52,6 +46,11 @@ public class OAuthFiWareFilter extends OncePerRequestFilter {
 	@Autowired
 	private JsonRpcProperties props;
 
+	@Autowired(required = false)
+	private TokenValidator tokenValidator;
+
+	private volatile TokenCache tokenCache;
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request,
 			HttpServletResponse response, FilterChain filterChain)
@@ -86,51 +85,39 @@ public class OAuthFiWareFilter extends OncePerRequestFilter {
 	}
 
 	/**
-	 * @param accessToken
-	 * @return
+	 * @return The cache used to validate access tokens
 	 */
-	private boolean isTokenValid(String accessToken) {
-		Response oauthResp = validateTokenWithServer(accessToken);
-
-		if (!oauthResp.isSuccessful() && oauthResp.getCode() == 401) {
-			props.setAuthToken(obtainFilterToken());
-			oauthResp = validateTokenWithServer(accessToken);
-		}
-
-		if (!oauthResp.isSuccessful()) {
-			String msg = "OAuth server returns error code: "
-					+ oauthResp.getCode() + " and message '"
-					+ oauthResp.getMessage() + '\'';
-
-			log.warn("There was a request with a unauthorized OAuth token. {}",
-					msg);
+	public TokenCache getTokenCache() {
+		if (tokenCache == null) {
+			synchronized (this) {
+				if (tokenCache == null) {
+					TokenValidator validator = tokenValidator;
+					if (validator == null) {
+						validator = new KeystoneTokenValidator(props);
+					}
+					tokenCache = new TokenCache(validator,
+							props.getTokenCacheMaxSize(),
+							props.getTokenCacheTtl(),
+							props.getTokenCacheNegativeMaxSize(),
+							props.getTokenCacheNegativeTtl());
+				}
+			}
 		}
-
-		return oauthResp.isSuccessful();
-	}
-
-	private Response validateTokenWithServer(String accessToken) {
-		String authToken = props.getAuthToken();
-
-		String url = props.getKeystoneHost() + ':' + props.getKeystonePort()
-				+ props.getKeystonePath() + accessToken;
-
-		OAuthRequest oauthReq = new OAuthRequest(Verb.GET, url);
-		oauthReq.addHeader(X_AUTH_HEADER, authToken);
-
-		return oauthReq.send();
+		return tokenCache;
 	}
 
-	private String obtainFilterToken() {
-		Keystone keystone = new Keystone(props.getKeystoneHost() + ':'
-				+ props.getKeystonePort() + '/' + props.getOAuthVersion());
-		Authentication authentication = new UsernamePassword(
-				props.getKeystoneProxyUser(), props.getKeystoneProxyPass());
-
-		Access access = keystone.tokens().authenticate(authentication)
-				.execute();
-
-		return access.getToken().getId();
+	/**
+	 * @param accessToken
+	 * @return
+	 * @throws ServletException
+	 */
+	private boolean isTokenValid(String accessToken) throws ServletException {
+		try {
+			return getTokenCache().isValid(accessToken);
+		} catch (ExecutionException e) {
+			throw new ServletException("Exception validating OAuth token",
+					e.getCause());
+		}
 	}
 
 	/**
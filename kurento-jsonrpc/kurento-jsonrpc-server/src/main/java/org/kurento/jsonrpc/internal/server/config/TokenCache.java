@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of access token validations, so the auth server is not
+ * queried for every request.
+ * <ul>
+ * <li>Valid tokens are cached until they expire, but no longer than the
+ * configured TTL.</li>
+ * <li>Rejected tokens are cached for the negative TTL, so a client retrying
+ * with a wrong token does not reach the auth server on every request. They
+ * are kept in a separate, smaller cache, so a flood of wrong tokens does not
+ * evict valid ones.</li>
+ * <li>Concurrent lookups of a token not in the cache wait for the same
+ * validation, so it is performed only once.</li>
+ * </ul>
+ * Validations that fail with an exception are not cached.
+ *
+ * @since 6.0.0
+ */
+public class TokenCache {
+
+	private final TokenValidator validator;
+	private final long ttl;
+
+	// Expiration time of each valid token
+	private final Cache<String, Long> validTokens;
+
+	private final Cache<String, Boolean> rejectedTokens;
+
+	private final ConcurrentMap<String, FutureTask<Boolean>> validations = new ConcurrentHashMap<>();
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a cache that keeps up to a tenth of its max size of rejected
+	 * tokens.
+	 *
+	 * @param validator
+	 *            Validator used for tokens not in the cache
+	 * @param maxSize
+	 *            Max number of valid tokens in the cache
+	 * @param ttl
+	 *            Max time in millis a valid token is cached
+	 * @param negativeTtl
+	 *            Time in millis a rejected token is cached
+	 */
+	public TokenCache(TokenValidator validator, int maxSize, long ttl,
+			long negativeTtl) {
+		this(validator, maxSize, ttl, Math.max(1, maxSize / 10), negativeTtl);
+	}
+
+	/**
+	 * @param validator
+	 *            Validator used for tokens not in the cache
+	 * @param maxSize
+	 *            Max number of valid tokens in the cache
+	 * @param ttl
+	 *            Max time in millis a valid token is cached
+	 * @param negativeMaxSize
+	 *            Max number of rejected tokens in the cache
+	 * @param negativeTtl
+	 *            Time in millis a rejected token is cached
+	 */
+	public TokenCache(TokenValidator validator, int maxSize, long ttl,
+			int negativeMaxSize, long negativeTtl) {
+
+		this.validator = validator;
+		this.ttl = ttl;
+
+		this.validTokens = CacheBuilder.newBuilder().maximumSize(maxSize)
+				.expireAfterWrite(ttl, TimeUnit.MILLISECONDS).build();
+
+		this.rejectedTokens = CacheBuilder.newBuilder()
+				.maximumSize(negativeMaxSize)
+				.expireAfterWrite(negativeTtl, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Checks an access token, validating it only if it is not in the cache or
+	 * its cached validation has expired.
+	 *
+	 * @param accessToken
+	 *            The token
+	 * @return true if the token is valid
+	 * @throws ExecutionException
+	 *             If the validator throws an exception
+	 */
+	public boolean isValid(final String accessToken) throws ExecutionException {
+
+		lookups.incrementAndGet();
+
+		Long expirationTime = validTokens.getIfPresent(accessToken);
+		if (expirationTime != null) {
+			if (expirationTime > System.currentTimeMillis()) {
+				return true;
+			}
+			validTokens.asMap().remove(accessToken, expirationTime);
+		}
+
+		if (rejectedTokens.getIfPresent(accessToken) != null) {
+			return false;
+		}
+
+		FutureTask<Boolean> validation = new FutureTask<>(
+				new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						return validateToken(accessToken);
+					}
+				});
+
+		FutureTask<Boolean> inProgress = validations.putIfAbsent(accessToken,
+				validation);
+
+		if (inProgress == null) {
+			try {
+				validation.run();
+			} finally {
+				validations.remove(accessToken, validation);
+			}
+			inProgress = validation;
+		}
+
+		// A token expired according to our clock is accepted by the requests
+		// that waited for its validation, as the auth server has done
+		try {
+			return inProgress.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+	}
+
+	/**
+	 * Removes all tokens from the cache.
+	 */
+	public void invalidateAll() {
+		validTokens.invalidateAll();
+		rejectedTokens.invalidateAll();
+	}
+
+	/**
+	 * @return the number of lookups answered without invoking the validator
+	 */
+	public long getHitCount() {
+		return lookups.get() - misses.get();
+	}
+
+	/**
+	 * @return the number of times the validator has been invoked
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of valid tokens in the cache
+	 */
+	public long size() {
+		return validTokens.size();
+	}
+
+	/**
+	 * @return the number of rejected tokens in the cache
+	 */
+	public long rejectedSize() {
+		return rejectedTokens.size();
+	}
+
+	private boolean validateToken(String accessToken) throws Exception {
+
+		misses.incrementAndGet();
+
+		long expirationTime = validator.validate(accessToken);
+		long now = System.currentTimeMillis();
+
+		if (expirationTime == TokenValidator.INVALID_TOKEN) {
+			rejectedTokens.put(accessToken, Boolean.FALSE);
+			return false;
+		}
+
+		if (expirationTime == TokenValidator.UNKNOWN_EXPIRATION) {
+			validTokens.put(accessToken, now + ttl);
+		} else {
+			validTokens.put(accessToken, Math.min(expirationTime, now + ttl));
+		}
+
+		return true;
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server.config;
+
+/**
+ * Validates the access tokens received by {@link OAuthFiWareFilter}. If a
+ * bean of this type is available in the context it is used instead of the
+ * default {@link KeystoneTokenValidator}.
+ *
+ * @since 6.0.0
+ */
+public interface TokenValidator {
+
+	/**
+	 * Returned by {@link #validate(String)} when the token is rejected
+	 */
+	long INVALID_TOKEN = -1;
+
+	/**
+	 * Returned by {@link #validate(String)} when the token is valid, but its
+	 * expiration time is not known
+	 */
+	long UNKNOWN_EXPIRATION = 0;
+
+	/**
+	 * Validates an access token.
+	 *
+	 * @param accessToken
+	 *            The token
+	 * @return The expiration time of the token in milliseconds since the
+	 *         epoch, {@link #UNKNOWN_EXPIRATION} or {@link #INVALID_TOKEN}
+	 * @throws Exception
+	 *             If the token can not be validated, e.g. because the auth
+	 *             server is not available
+	 */
+	long validate(String accessToken) throws Exception;
+
+}
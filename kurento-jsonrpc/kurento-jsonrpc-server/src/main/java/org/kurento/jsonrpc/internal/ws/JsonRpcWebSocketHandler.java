@@ -14,6 +14,10 @@
  */
 package org.kurento.jsonrpc.internal.ws;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
@@ -25,6 +29,11 @@ import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+/**
+ * Handles the JSON-RPC messages received in WebSocket sessions. Messages
+ * received in several frames are aggregated before being processed. If a
+ * message exceeds the max message size, the session is closed.
+ */
 public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
 	private static final Logger log = LoggerFactory
@@ -32,8 +41,48 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
 	private final ProtocolManager protocolManager;
 
-	public JsonRpcWebSocketHandler(ProtocolManager protocolManager) {
+	private static final String OUTBOUND_QUEUE_ATTRIBUTE = OutboundQueue.class
+			.getName();
+
+	private static final String PARTIAL_MESSAGE_ATTRIBUTE = JsonRpcWebSocketHandler.class
+			.getName() + ".partialMessage";
+
+	private final Executor executor;
+
+	private final Executor writerExecutor;
+
+	private final int outboundQueueHighWaterMark;
+
+	private final int maxMessageSize;
+
+	private final int fragmentSize;
+
+	private final long sendTimeout;
+
+	/**
+	 * @param executor
+	 *            Executor of the continuations of the requests sent to clients
+	 * @param writerExecutor
+	 *            Executor of the writers of the outbound queues. It should not
+	 *            be shared with other tasks, as writers can be blocked by slow
+	 *            clients up to the send timeout
+	 */
+	public JsonRpcWebSocketHandler(ProtocolManager protocolManager,
+			Executor executor, Executor writerExecutor,
+			int outboundQueueHighWaterMark, int maxMessageSize,
+			int fragmentSize, long sendTimeout) {
 		this.protocolManager = protocolManager;
+		this.executor = executor;
+		this.writerExecutor = writerExecutor;
+		this.outboundQueueHighWaterMark = outboundQueueHighWaterMark;
+		this.maxMessageSize = maxMessageSize;
+		this.fragmentSize = fragmentSize;
+		this.sendTimeout = sendTimeout;
+	}
+
+	@Override
+	public boolean supportsPartialMessages() {
+		return true;
 	}
 
 	@Override
@@ -44,6 +93,16 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 		// session is established, not when websocket session is established
 		log.info("Client connection stablished from {}",
 				session.getRemoteAddress());
+
+		// All messages to the client are written by the queue, so producers
+		// are not blocked by a slow client
+		OutboundQueue outboundQueue = new OutboundQueue(
+				new WebSocketServerMessageWriter(session, fragmentSize,
+						sendTimeout),
+				writerExecutor, outboundQueueHighWaterMark);
+		outboundQueue.setMetrics(protocolManager.getMetrics());
+
+		session.getAttributes().put(OUTBOUND_QUEUE_ATTRIBUTE, outboundQueue);
 	}
 
 	@Override
@@ -59,6 +118,11 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 			log.info("Normal termination");
 		}
 
+		OutboundQueue outboundQueue = getOutboundQueue(wsSession);
+		if (outboundQueue != null) {
+			outboundQueue.close("Connection closed: " + status);
+		}
+
 		protocolManager.closeSessionIfTimeout(wsSession.getId(),
 				status.getReason());
 	}
@@ -73,24 +137,30 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 	public void handleTextMessage(final WebSocketSession wsSession,
 			TextMessage message) throws Exception {
 
-		try {
+		String messageJson = aggregateMessage(wsSession, message);
+		if (messageJson == null) {
+			return;
+		}
 
-			String messageJson = message.getPayload();
+		try {
 
 			log.debug("Req-> {}", messageJson);
 
+			final OutboundQueue outboundQueue = getOutboundQueue(wsSession);
+
 			// TODO Ensure only one register message per websocket session.
 			ServerSessionFactory factory = new ServerSessionFactory() {
 				@Override
 				public ServerSession createSession(String sessionId,
 						Object registerInfo, SessionsManager sessionsManager) {
 					return new WebSocketServerSession(sessionId, registerInfo,
-							sessionsManager, wsSession);
+							sessionsManager, wsSession, outboundQueue, executor);
 				}
 			};
 
 			protocolManager.processMessage(messageJson, factory,
-					new WebSocketResponseSender(wsSession), wsSession.getId());
+					new WebSocketResponseSender(outboundQueue),
+					wsSession.getId());
 
 		} catch (Exception e) {
 			log.error("Exception processing request", e);
@@ -98,4 +168,61 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
 	}
 
+	/**
+	 * @return The complete message if this is its last fragment, or null if
+	 *         more fragments are expected or the message is too large
+	 */
+	private String aggregateMessage(WebSocketSession wsSession,
+			TextMessage message) throws IOException {
+
+		Map<String, Object> attributes = wsSession.getAttributes();
+		StringBuilder partialMessage = (StringBuilder) attributes
+				.get(PARTIAL_MESSAGE_ATTRIBUTE);
+
+		if (partialMessage == null && message.isLast()) {
+			if (message.getPayloadLength() > maxMessageSize) {
+				closeTooBig(wsSession, message.getPayloadLength());
+				return null;
+			}
+			return message.getPayload();
+		}
+
+		if (partialMessage == null) {
+			partialMessage = new StringBuilder();
+			attributes.put(PARTIAL_MESSAGE_ATTRIBUTE, partialMessage);
+		}
+
+		if (partialMessage.length() + message.getPayloadLength() > maxMessageSize) {
+			attributes.remove(PARTIAL_MESSAGE_ATTRIBUTE);
+			closeTooBig(wsSession,
+					partialMessage.length() + message.getPayloadLength());
+			return null;
+		}
+
+		partialMessage.append(message.getPayload());
+
+		if (!message.isLast()) {
+			return null;
+		}
+
+		attributes.remove(PARTIAL_MESSAGE_ATTRIBUTE);
+		return partialMessage.toString();
+	}
+
+	private void closeTooBig(WebSocketSession wsSession, int size)
+			throws IOException {
+
+		log.warn("Closing session {}. Message of at least {} chars exceeds"
+				+ " the max message size of {}", wsSession.getId(), size,
+				maxMessageSize);
+
+		wsSession.close(CloseStatus.TOO_BIG_TO_PROCESS
+				.withReason("Message too big"));
+	}
+
+	private OutboundQueue getOutboundQueue(WebSocketSession wsSession) {
+		return (OutboundQueue) wsSession.getAttributes().get(
+				OUTBOUND_QUEUE_ATTRIBUTE);
+	}
+
 }
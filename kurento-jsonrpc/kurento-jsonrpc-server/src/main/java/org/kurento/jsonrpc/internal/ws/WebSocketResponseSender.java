@@ -16,34 +16,55 @@ package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
 
-import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ResponseCache.MeasuredResponseSender;
 import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
 
-public final class WebSocketResponseSender implements ResponseSender {
+public final class WebSocketResponseSender implements MeasuredResponseSender {
 
 	private static final Logger log = LoggerFactory
 			.getLogger(WebSocketResponseSender.class);
 
-	private final WebSocketSession wsSession;
+	private final OutboundQueue outboundQueue;
+	private final boolean priority;
 
-	public WebSocketResponseSender(WebSocketSession wsSession) {
-		this.wsSession = wsSession;
+	public WebSocketResponseSender(OutboundQueue outboundQueue) {
+		this(outboundQueue, false);
+	}
+
+	private WebSocketResponseSender(OutboundQueue outboundQueue,
+			boolean priority) {
+		this.outboundQueue = outboundQueue;
+		this.priority = priority;
+	}
+
+	/**
+	 * @return A sender that writes responses before the rest of queued
+	 *         messages. It is used for responses to control requests
+	 */
+	public WebSocketResponseSender withPriority() {
+		return new WebSocketResponseSender(outboundQueue, true);
 	}
 
 	@Override
 	public void sendResponse(Message message) throws IOException {
+		sendMeasuredResponse(message);
+	}
+
+	@Override
+	public int sendMeasuredResponse(Message message) throws IOException {
 		String jsonMessage = message.toString();
 		log.debug("<-Res {}", jsonMessage);
-		synchronized (wsSession) {
-			if (wsSession.isOpen()) {
-				wsSession.sendMessage(new TextMessage(jsonMessage));
+		if (!outboundQueue.isClosed()) {
+			if (priority) {
+				outboundQueue.sendPriority(jsonMessage);
 			} else {
-				log.error("Trying to send a message to a closed session");
+				outboundQueue.send(jsonMessage);
 			}
+		} else {
+			log.error("Trying to send a message to a closed session");
 		}
+		return jsonMessage.length();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
+import org.kurento.jsonrpc.internal.ws.OutboundQueue.MessageWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+/**
+ * Writes messages in a server WebSocket session. Standard WebSocket batching
+ * is not used because the container (Tomcat 8.0) can interleave frames of
+ * batched messages with control frames.
+ * <p>
+ * Each message is sent with the asynchronous send of the container, so the
+ * writer prepares the next message while the previous one is being sent. The
+ * writer only waits for a send to complete before starting the next one, as
+ * the container does not allow several sends in progress, and in
+ * {@link #flush()}. No send is waited for longer than the send timeout; if it
+ * expires, the write fails and the connection is closed, so a peer that does
+ * not read can not hold a thread of the writers pool.
+ * <p>
+ * Messages longer than the fragment size are sent in several frames with the
+ * blocking send, limited by the same timeout. SockJS sessions do not support
+ * partial messages nor the asynchronous send, so messages are sent whole with
+ * the send of the session.
+ */
+public class WebSocketServerMessageWriter implements MessageWriter {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(WebSocketServerMessageWriter.class);
+
+	// Timeout of blocking sends in Tomcat
+	private static final String BLOCKING_SEND_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+	private final WebSocketSession wsSession;
+
+	// Null for SockJS sessions
+	private final Session nativeSession;
+
+	private final int fragmentSize;
+
+	private final long sendTimeout;
+
+	private Future<Void> pendingSend;
+
+	public WebSocketServerMessageWriter(WebSocketSession wsSession,
+			int fragmentSize, long sendTimeout) {
+
+		this.wsSession = wsSession;
+		this.sendTimeout = sendTimeout;
+
+		if (wsSession instanceof SockJsSession
+				|| !(wsSession instanceof NativeWebSocketSession)) {
+			this.nativeSession = null;
+			this.fragmentSize = 0;
+		} else {
+			this.nativeSession = ((NativeWebSocketSession) wsSession)
+					.getNativeSession(Session.class);
+			this.fragmentSize = fragmentSize;
+		}
+
+		if (nativeSession != null) {
+			nativeSession.getAsyncRemote().setSendTimeout(sendTimeout);
+			nativeSession.getUserProperties().put(
+					BLOCKING_SEND_TIMEOUT_PROPERTY, sendTimeout);
+		}
+	}
+
+	@Override
+	public void write(String message) throws IOException {
+
+		if (nativeSession == null) {
+			wsSession.sendMessage(new TextMessage(message));
+			return;
+		}
+
+		awaitPendingSend();
+
+		List<String> fragments = MessageFragments.split(message, fragmentSize);
+
+		if (fragments.size() == 1) {
+			pendingSend = nativeSession.getAsyncRemote().sendText(message);
+			return;
+		}
+
+		RemoteEndpoint.Basic remote = nativeSession.getBasicRemote();
+		for (int i = 0; i < fragments.size(); i++) {
+			remote.sendText(fragments.get(i), i == fragments.size() - 1);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		awaitPendingSend();
+	}
+
+	private void awaitPendingSend() throws IOException {
+
+		if (pendingSend == null) {
+			return;
+		}
+
+		try {
+
+			pendingSend.get(sendTimeout, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing message", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Exception writing message", e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("Timeout of " + sendTimeout
+					+ " milliseconds writing message", e);
+		} finally {
+			pendingSend = null;
+		}
+	}
+
+	@Override
+	public void close(String reason) {
+		try {
+			wsSession.close(CloseStatus.POLICY_VIOLATION.withReason(reason));
+		} catch (IOException e) {
+			log.warn("Exception closing session {}", wsSession.getId(), e);
+		}
+	}
+}
@@ -16,12 +16,13 @@ package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.server.ServerSession;
@@ -31,7 +32,6 @@ import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.google.gson.JsonElement;
@@ -41,18 +41,25 @@ public class WebSocketServerSession extends ServerSession {
 	private static Logger LOG = LoggerFactory
 			.getLogger(WebSocketServerSession.class);
 
+	private static final long CLOSE_DRAIN_TIMEOUT = 5000;
+
 	private WebSocketSession wsSession;
 
+	private final OutboundQueue outboundQueue;
+
 	private final PendingRequests pendingRequests = new PendingRequests();
 
-	private ExecutorService execService = Executors.newFixedThreadPool(10);
+	private final Executor executor;
 
 	public WebSocketServerSession(String sessionId, Object registerInfo,
-			SessionsManager sessionsManager, WebSocketSession wsSession) {
+			SessionsManager sessionsManager, WebSocketSession wsSession,
+			OutboundQueue outboundQueue, Executor executor) {
 
 		super(sessionId, registerInfo, sessionsManager, wsSession.getId());
 
 		this.wsSession = wsSession;
+		this.outboundQueue = outboundQueue;
+		this.executor = executor;
 
 		this.setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
 			@Override
@@ -76,23 +83,87 @@ public class WebSocketServerSession extends ServerSession {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result = sendRequestWebSocket(
-							request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						LOG.error("Exception while processing response", e);
-					}
-				} catch (Exception e) {
-					continuation.onError(e);
-				}
+		final Integer id = request.getId();
+
+		if (id != null) {
+			// The response is received in a transport thread. The continuation
+			// is executed in the shared executor to allow sync requests inside
+			// it, so no thread is blocked waiting for the response.
+			pendingRequests.prepareResponse(id, request.getTimeout(),
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(
+								final Response<JsonElement> response) {
+							execute(new Runnable() {
+								@Override
+								public void run() {
+									try {
+										continuation.onSuccess(MessageUtils
+												.convertResponse(response,
+														resultClass));
+									} catch (Exception e) {
+										LOG.error(
+												"Exception while processing response",
+												e);
+									}
+								}
+							}, continuation);
+						}
+
+						@Override
+						public void onError(final Throwable cause) {
+							execute(new Runnable() {
+								@Override
+								public void run() {
+									continuation.onError(cause);
+								}
+							}, continuation);
+						}
+					});
+		}
+
+		try {
+			sendMessage(request);
+		} catch (Exception e) {
+			TransportException cause = new TransportException(
+					"Exception sending request with id:" + id, e);
+			if (id != null) {
+				pendingRequests.handleError(id, cause);
+			} else {
+				continuation.onError(cause);
 			}
-		});
+			return;
+		}
+
+		if (id == null) {
+			continuation.onSuccess(null);
+		}
+	}
+
+	private void execute(Runnable task,
+			Continuation<Response<JsonElement>> continuation) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			LOG.error("Task executor is saturated. Consider increasing its"
+					+ " pool size or queue capacity");
+			continuation.onError(new JsonRpcException(
+					"Response can not be processed because the task executor"
+							+ " is saturated", e));
+		}
+	}
+
+	private void sendMessage(Request<?> request) {
+
+		try {
+			outboundQueue.send(JsonUtils.toJson(request));
+		} catch (TransportException e) {
+			LOG.error(
+					"Exception while sending message '{}' to websocket with native sessionId '{}': {}",
+					JsonUtils.toJson(request), wsSession.getId(), e);
+			throw e;
+		}
 	}
 
 	private <P, R> Response<R> sendRequestWebSocket(Request<P> request,
@@ -101,18 +172,16 @@ public class WebSocketServerSession extends ServerSession {
 		Future<Response<JsonElement>> responseFuture = null;
 
 		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					request.getTimeout());
 		}
 
 		try {
-			synchronized (wsSession) {
-				wsSession
-						.sendMessage(new TextMessage(JsonUtils.toJson(request)));
-			}
+			sendMessage(request);
 		} catch (Exception e) {
-			LOG.error(
-					"Exception while sending message '{}' to websocket with native sessionId '{}': {}",
-					JsonUtils.toJson(request), wsSession.getId(), e);
+			if (request.getId() != null) {
+				pendingRequests.handleError(request.getId(), e);
+			}
 			// TODO Implement retries if possible
 			return null;
 		}
@@ -123,14 +192,19 @@ public class WebSocketServerSession extends ServerSession {
 
 		Response<JsonElement> responseJsonObject;
 		try {
+			// The pending request is failed when its deadline expires
 			responseJsonObject = responseFuture.get();
 		} catch (InterruptedException e) {
 			// TODO What to do in this case?
 			throw new JsonRpcException(
 					"Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
-			// TODO Is there a better way to handle this?
-			throw new JsonRpcException("This exception shouldn't be thrown", e);
+			if (e.getCause() instanceof JsonRpcException) {
+				throw (JsonRpcException) e.getCause();
+			}
+			throw new JsonRpcException(
+					"Exception waiting from response to request with id:"
+							+ request.getId(), e.getCause());
 		}
 
 		return MessageUtils.convertResponse(responseJsonObject, resultClass);
@@ -141,10 +215,23 @@ public class WebSocketServerSession extends ServerSession {
 		pendingRequests.handleResponse(response);
 	}
 
+	@Override
+	public void handleTransportClosed(String reason) {
+		pendingRequests.closeAllPendingRequests(reason);
+	}
+
 	@Override
 	public void close() throws IOException {
 		try {
-			execService.shutdown();
+			pendingRequests.closeAllPendingRequests("Session closed");
+			try {
+				if (!outboundQueue.awaitDrained(CLOSE_DRAIN_TIMEOUT)) {
+					LOG.warn("Closing session with {} messages not written",
+							outboundQueue.size());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			wsSession.close();
 		} finally {
 			super.close();
@@ -0,0 +1,168 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.server.TokenBucket;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+public class AdmissionControllerTest {
+
+	static class StubSession extends ServerSession {
+
+		public StubSession(String sessionId) {
+			super(sessionId, null, new SessionsManager(), null);
+		}
+
+		@Override
+		public void handleResponse(Response<JsonElement> response) {
+		}
+	}
+
+	@Test
+	public void tokenBucketTest() throws InterruptedException {
+
+		TokenBucket bucket = new TokenBucket(10, 5);
+
+		// Created full, so a burst of its capacity is accepted
+		for (int i = 0; i < 5; i++) {
+			Assert.assertTrue(bucket.tryAcquire());
+		}
+		Assert.assertFalse(bucket.tryAcquire());
+
+		// Refilled at 10 tokens per second
+		Thread.sleep(250);
+		Assert.assertTrue(bucket.tryAcquire());
+	}
+
+	@Test
+	public void sessionRateLimitTest() {
+
+		AdmissionController controller = new AdmissionController(0, 0, 1, 3,
+				0);
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(controller.tryAcquire("flooder"));
+		}
+		Assert.assertFalse(controller.tryAcquire("flooder"));
+		Assert.assertFalse(controller.tryAcquire("flooder"));
+
+		// Other connections are not affected
+		Assert.assertTrue(controller.tryAcquire("other"));
+
+		// Connections without id are only limited by the global rate
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(controller.tryAcquire(null));
+		}
+
+		Assert.assertEquals(2, controller.getRateLimitedCount());
+
+		// The bucket of a closed connection is discarded
+		controller.transportClosed("flooder");
+		Assert.assertTrue(controller.tryAcquire("flooder"));
+	}
+
+	@Test
+	public void globalRateLimitTest() {
+
+		AdmissionController controller = new AdmissionController(1, 4, 1, 3,
+				0);
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(controller.tryAcquire("first"));
+		}
+		Assert.assertFalse(controller.tryAcquire("first"));
+
+		Assert.assertTrue(controller.tryAcquire("second"));
+		Assert.assertFalse(controller.tryAcquire("second"));
+
+		Assert.assertEquals(2, controller.getRateLimitedCount());
+	}
+
+	@Test
+	public void globalOverloadDoesNotDrainSessionTest()
+			throws InterruptedException {
+
+		AdmissionController controller = new AdmissionController(2, 1, 0.001,
+				3, 0);
+
+		Assert.assertTrue(controller.tryAcquire("other"));
+
+		// Rejected by the global limit, so the tokens of the connection are
+		// given back
+		for (int i = 0; i < 3; i++) {
+			Assert.assertFalse(controller.tryAcquire("session"));
+		}
+		Assert.assertEquals(0, controller.tryAcquire("session", 3));
+
+		// Once the overload is over, the connection has its whole burst
+		for (int i = 0; i < 3; i++) {
+			Thread.sleep(600);
+			Assert.assertTrue(controller.tryAcquire("session"));
+		}
+	}
+
+	@Test
+	public void batchRateLimitTest() {
+
+		AdmissionController controller = new AdmissionController(0, 0, 1, 10,
+				0);
+
+		// Each message of a batch takes a token; the ones over the limit are
+		// rejected
+		Assert.assertEquals(10, controller.tryAcquire("flooder", 1000));
+		Assert.assertEquals(0, controller.tryAcquire("flooder", 5));
+		Assert.assertFalse(controller.tryAcquire("flooder"));
+
+		Assert.assertEquals(996, controller.getRateLimitedCount());
+
+		TokenBucket bucket = new TokenBucket(1, 3);
+		Assert.assertEquals(2, bucket.tryAcquire(2));
+		Assert.assertEquals(1, bucket.tryAcquire(2));
+		Assert.assertEquals(0, bucket.tryAcquire(2));
+
+		// Tokens given back do not exceed the capacity
+		bucket.release(10);
+		Assert.assertEquals(3, bucket.tryAcquire(10));
+	}
+
+	@Test
+	public void concurrentRequestsLimitTest() {
+
+		AdmissionController controller = new AdmissionController(0, 0, 0, 0,
+				2);
+		ServerSession session = new StubSession("session");
+		ServerSession otherSession = new StubSession("other");
+
+		Assert.assertTrue(controller.tryStartRequest(session));
+		Assert.assertTrue(controller.tryStartRequest(session));
+		Assert.assertFalse(controller.tryStartRequest(session));
+
+		Assert.assertTrue(controller.tryStartRequest(otherSession));
+
+		controller.finishRequest(session);
+		Assert.assertTrue(controller.tryStartRequest(session));
+
+		Assert.assertEquals(1, controller.getConcurrencyLimitedCount());
+	}
+
+	@Test
+	public void noLimitsTest() {
+
+		AdmissionController controller = new AdmissionController(0, 0, 0, 0,
+				0);
+		ServerSession session = new StubSession("session");
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(controller.tryAcquire("transport"));
+			Assert.assertTrue(controller.tryStartRequest(session));
+		}
+
+		Assert.assertFalse(controller.isConcurrencyLimited());
+		Assert.assertEquals(0, controller.getRateLimitedCount());
+	}
+}
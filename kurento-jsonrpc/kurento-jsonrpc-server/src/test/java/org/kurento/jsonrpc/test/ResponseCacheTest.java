@@ -0,0 +1,209 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ResponseCache;
+import org.kurento.jsonrpc.internal.server.ResponseCache.CachingResponseSender;
+import org.kurento.jsonrpc.internal.server.ResponseCache.MeasuredResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.common.base.Strings;
+
+public class ResponseCacheTest {
+
+	static class RecordingSender implements ResponseSender {
+
+		final List<Message> responses = new CopyOnWriteArrayList<>();
+		volatile boolean closed;
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			if (closed) {
+				throw new IOException("Connection closed");
+			}
+			responses.add(message);
+		}
+	}
+
+	@Test
+	public void retryAfterResponseTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(100000, 60000);
+
+		RecordingSender original = new RecordingSender();
+		ResponseSender sender = cache.startRequest("session", 1, original);
+		Assert.assertNotNull(sender);
+
+		// The connection is lost before the response is sent
+		original.closed = true;
+		Response<String> response = new Response<>(1, "created");
+		try {
+			sender.sendResponse(response);
+			Assert.fail("IOException expected");
+		} catch (IOException e) {
+			// Expected
+		}
+
+		RecordingSender retry = new RecordingSender();
+		Assert.assertNull(cache.startRequest("session", 1, retry));
+
+		Assert.assertEquals(1, retry.responses.size());
+		Assert.assertSame(response, retry.responses.get(0));
+		Assert.assertEquals(1, cache.getRetriedCount());
+	}
+
+	@Test
+	public void retryWhileExecutingTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(100000, 60000);
+
+		RecordingSender original = new RecordingSender();
+		ResponseSender sender = cache.startRequest("session", 1, original);
+
+		RecordingSender retry = new RecordingSender();
+		Assert.assertNull(cache.startRequest("session", 1, retry));
+		Assert.assertTrue(retry.responses.isEmpty());
+
+		Response<String> response = new Response<>(1, "created");
+		sender.sendResponse(response);
+
+		Assert.assertEquals(1, original.responses.size());
+		Assert.assertEquals(1, retry.responses.size());
+		Assert.assertSame(response, retry.responses.get(0));
+	}
+
+	@Test
+	public void onlyFirstResponseCachedTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(100000, 60000);
+
+		RecordingSender original = new RecordingSender();
+		ResponseSender sender = cache.startRequest("session", 1, original);
+
+		Response<String> response = new Response<>(1, "created");
+		sender.sendResponse(response);
+		sender.sendResponse(new Response<>(1, "again"));
+
+		RecordingSender retry = new RecordingSender();
+		cache.startRequest("session", 1, retry);
+
+		Assert.assertSame(response, retry.responses.get(0));
+	}
+
+	@Test
+	public void requestsOfOtherSessionsTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(100000, 60000);
+
+		RecordingSender sender = new RecordingSender();
+		Assert.assertNotNull(cache.startRequest("session1", 1, sender));
+		Assert.assertNotNull(cache.startRequest("session2", 1, sender));
+		Assert.assertNotNull(cache.startRequest("session1", 2, sender));
+
+		// Notifications and requests without session are not cached
+		Assert.assertNotNull(cache.startRequest("session1", null, sender));
+		Assert.assertNotNull(cache.startRequest("session1", null, sender));
+		Assert.assertNotNull(cache.startRequest(null, 3, sender));
+		Assert.assertNotNull(cache.startRequest(null, 3, sender));
+
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(0, cache.getRetriedCount());
+	}
+
+	@Test
+	public void expirationTest() throws Exception {
+
+		ResponseCache cache = new ResponseCache(100000, 100);
+
+		RecordingSender sender = new RecordingSender();
+		cache.startRequest("session", 1, sender).sendResponse(
+				new Response<>(1, "created"));
+
+		Thread.sleep(200);
+
+		Assert.assertNotNull(cache.startRequest("session", 1, sender));
+	}
+
+	@Test
+	public void disabledTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(0, 60000);
+
+		RecordingSender sender = new RecordingSender();
+		Assert.assertSame(sender, cache.startRequest("session", 1, sender));
+		Assert.assertSame(sender, cache.startRequest("session", 1, sender));
+	}
+
+	@Test
+	public void maxCharsTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(10000, 60000);
+
+		String result = Strings.repeat("x", 1000);
+
+		RecordingSender sender = new RecordingSender();
+		for (int i = 0; i < 100; i++) {
+			cache.startRequest("session", i, sender).sendResponse(
+					new Response<>(i, result));
+		}
+
+		Assert.assertTrue(cache.size() < 10);
+	}
+
+	@Test
+	public void measuredResponseLengthTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(10000, 60000);
+
+		// The length reported by the sender is used, not the one of the
+		// response serialized again
+		MeasuredResponseSender sender = new MeasuredResponseSender() {
+			@Override
+			public void sendResponse(Message message) {
+				Assert.fail("sendMeasuredResponse expected");
+			}
+
+			@Override
+			public int sendMeasuredResponse(Message message) {
+				return 1000;
+			}
+		};
+
+		for (int i = 0; i < 100; i++) {
+			cache.startRequest("session", i, sender).sendResponse(
+					new Response<>(i, "ok"));
+		}
+
+		Assert.assertTrue(cache.size() < 10);
+	}
+
+	@Test
+	public void responseWithoutCachingTest() throws IOException {
+
+		ResponseCache cache = new ResponseCache(100000, 60000);
+
+		RecordingSender original = new RecordingSender();
+		ResponseSender sender = cache.startRequest("session", 1, original);
+
+		RecordingSender retry = new RecordingSender();
+		Assert.assertNull(cache.startRequest("session", 1, retry));
+
+		Response<Object> rejection = new Response<>(1, new ResponseError(
+				-32001, "Too many concurrent requests"));
+		((CachingResponseSender) sender).sendWithoutCaching(rejection);
+
+		Assert.assertSame(rejection, original.responses.get(0));
+		Assert.assertSame(rejection, retry.responses.get(0));
+
+		// A later retry executes the request
+		Assert.assertNotNull(cache.startRequest("session", 1, retry));
+	}
+
+}
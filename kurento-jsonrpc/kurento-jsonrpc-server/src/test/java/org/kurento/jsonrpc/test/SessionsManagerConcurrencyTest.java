@@ -0,0 +1,206 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+public class SessionsManagerConcurrencyTest {
+
+	private static final int THREADS = 8;
+
+	static class StubSession extends ServerSession {
+
+		public StubSession(String sessionId, SessionsManager sessionsManager,
+				String transportId) {
+			super(sessionId, null, sessionsManager, transportId);
+		}
+
+		@Override
+		public void handleResponse(Response<JsonElement> response) {
+		}
+	}
+
+	private final ExecutorService executor = Executors
+			.newFixedThreadPool(THREADS);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * A reconnection and the expiration of the close timer of the same
+	 * session race. Either the session is reconnected and kept, or it is
+	 * removed and the reconnection fails; never both.
+	 */
+	@Test
+	public void reconnectVsTimeoutCloseTest() throws Exception {
+
+		final SessionsManager manager = new SessionsManager();
+		int numSessions = 2000;
+
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<ServerSession>> reconnections = new ArrayList<>();
+		List<Future<Boolean>> closes = new ArrayList<>();
+
+		for (int i = 0; i < numSessions; i++) {
+
+			final String sessionId = "session" + i;
+			final String oldTransportId = "old" + i;
+			final String newTransportId = "new" + i;
+			final ServerSession session = new StubSession(sessionId, manager,
+					oldTransportId);
+			manager.put(session);
+
+			reconnections.add(executor.submit(new Callable<ServerSession>() {
+				@Override
+				public ServerSession call() throws Exception {
+					start.await();
+					return manager.reconnect(sessionId, newTransportId);
+				}
+			}));
+
+			closes.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					start.await();
+					return manager.removeIfTransport(session, oldTransportId);
+				}
+			}));
+		}
+
+		start.countDown();
+
+		for (int i = 0; i < numSessions; i++) {
+
+			boolean reconnected = reconnections.get(i).get() != null;
+			boolean closed = closes.get(i).get();
+
+			Assert.assertTrue("Session " + i + " reconnected and closed",
+					reconnected != closed);
+
+			ServerSession session = manager.get("session" + i);
+			Assert.assertEquals(reconnected, session != null);
+			Assert.assertNull(manager.getByTransportId("old" + i));
+			Assert.assertEquals(session, manager.getByTransportId("new" + i));
+		}
+	}
+
+	/**
+	 * Connections, reconnections, timeout closes and lookups of messages are
+	 * interleaved over a small set of session ids. At the end, both indexes
+	 * are consistent.
+	 */
+	@Test
+	public void stressTest() throws Exception {
+
+		final SessionsManager manager = new SessionsManager();
+		final int numSessionIds = 32;
+		final int iterations = 50000;
+
+		final Set<String> transportIds = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final AtomicInteger transportCounter = new AtomicInteger();
+		final AtomicInteger inconsistentLookups = new AtomicInteger();
+
+		List<Future<?>> workers = new ArrayList<>();
+
+		for (int t = 0; t < THREADS; t++) {
+
+			final Random random = new Random(t);
+
+			workers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+
+					for (int i = 0; i < iterations; i++) {
+
+						String sessionId = "session"
+								+ random.nextInt(numSessionIds);
+						String transportId = "transport"
+								+ transportCounter.incrementAndGet();
+						transportIds.add(transportId);
+
+						switch (random.nextInt(4)) {
+						case 0:
+							// Connection
+							if (manager.get(sessionId) == null) {
+								manager.put(new StubSession(sessionId,
+										manager, transportId));
+							}
+							break;
+						case 1:
+							manager.reconnect(sessionId, transportId);
+							break;
+						case 2:
+							// Close timer of the current transport
+							ServerSession closed = manager.get(sessionId);
+							if (closed != null) {
+								manager.removeIfTransport(closed,
+										closed.getTransportId());
+							}
+							break;
+						default:
+							// Message received in the current transport
+							ServerSession current = manager.get(sessionId);
+							if (current != null) {
+								String currentTransport = current
+										.getTransportId();
+								ServerSession found = manager
+										.getByTransportId(currentTransport);
+								if (found != null && found != current) {
+									inconsistentLookups.incrementAndGet();
+								}
+							}
+						}
+					}
+				}
+			}));
+		}
+
+		for (Future<?> worker : workers) {
+			worker.get();
+		}
+
+		Assert.assertEquals(0, inconsistentLookups.get());
+
+		int indexedSessions = 0;
+		for (String transportId : transportIds) {
+			ServerSession session = manager.getByTransportId(transportId);
+			if (session != null) {
+				indexedSessions++;
+				Assert.assertEquals(transportId, session.getTransportId());
+				Assert.assertSame(session,
+						manager.get(session.getSessionId()));
+			}
+		}
+
+		for (int i = 0; i < numSessionIds; i++) {
+			ServerSession session = manager.get("session" + i);
+			if (session != null) {
+				Assert.assertSame(session,
+						manager.getByTransportId(session.getTransportId()));
+			}
+		}
+
+		Assert.assertEquals(manager.size(), indexedSessions);
+	}
+}
@@ -0,0 +1,195 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.config.TokenCache;
+import org.kurento.jsonrpc.internal.server.config.TokenValidator;
+
+public class TokenCacheTest {
+
+	/**
+	 * Accepts tokens starting with "valid", expiring after the configured
+	 * time. Other tokens are rejected.
+	 */
+	static class StubValidator implements TokenValidator {
+
+		final AtomicInteger validations = new AtomicInteger();
+		volatile long expiresIn = 60000;
+		volatile CountDownLatch block;
+
+		@Override
+		public long validate(String accessToken) throws Exception {
+
+			validations.incrementAndGet();
+
+			CountDownLatch latch = block;
+			if (latch != null) {
+				latch.await();
+			}
+
+			if ("error".equals(accessToken)) {
+				throw new IllegalStateException("Auth server not available");
+			}
+
+			if (accessToken.startsWith("valid")) {
+				return System.currentTimeMillis() + expiresIn;
+			}
+			return INVALID_TOKEN;
+		}
+	}
+
+	@Test
+	public void hitsAndMissesTest() throws ExecutionException {
+
+		StubValidator validator = new StubValidator();
+		TokenCache cache = new TokenCache(validator, 100, 60000, 60000);
+
+		Assert.assertTrue(cache.isValid("valid1"));
+		Assert.assertTrue(cache.isValid("valid1"));
+		Assert.assertTrue(cache.isValid("valid1"));
+		Assert.assertTrue(cache.isValid("valid2"));
+
+		Assert.assertEquals(2, validator.validations.get());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void tokenExpirationTest() throws Exception {
+
+		StubValidator validator = new StubValidator();
+		validator.expiresIn = 100;
+		TokenCache cache = new TokenCache(validator, 100, 60000, 60000);
+
+		Assert.assertTrue(cache.isValid("valid"));
+		Assert.assertTrue(cache.isValid("valid"));
+		Assert.assertEquals(1, validator.validations.get());
+
+		Thread.sleep(200);
+
+		Assert.assertTrue(cache.isValid("valid"));
+		Assert.assertEquals(2, validator.validations.get());
+	}
+
+	@Test
+	public void negativeCachingTest() throws Exception {
+
+		StubValidator validator = new StubValidator();
+		TokenCache cache = new TokenCache(validator, 100, 60000, 100);
+
+		Assert.assertFalse(cache.isValid("wrong"));
+		Assert.assertFalse(cache.isValid("wrong"));
+		Assert.assertEquals(1, validator.validations.get());
+
+		Thread.sleep(200);
+
+		Assert.assertFalse(cache.isValid("wrong"));
+		Assert.assertEquals(2, validator.validations.get());
+	}
+
+	@Test
+	public void errorsNotCachedTest() {
+
+		StubValidator validator = new StubValidator();
+		TokenCache cache = new TokenCache(validator, 100, 60000, 60000);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.isValid("error");
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+
+		Assert.assertEquals(2, validator.validations.get());
+	}
+
+	@Test
+	public void singleFlightTest() throws Exception {
+
+		final StubValidator validator = new StubValidator();
+		validator.block = new CountDownLatch(1);
+		final TokenCache cache = new TokenCache(validator, 100, 60000, 60000);
+
+		int numRequests = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(numRequests);
+
+		try {
+
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < numRequests; i++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						return cache.isValid("validNew");
+					}
+				}));
+			}
+
+			while (validator.validations.get() == 0) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(100);
+
+			validator.block.countDown();
+
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get());
+			}
+
+			Assert.assertEquals(1, validator.validations.get());
+			Assert.assertEquals(1, cache.getMissCount());
+			Assert.assertEquals(numRequests - 1, cache.getHitCount());
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void maxSizeTest() throws ExecutionException {
+
+		StubValidator validator = new StubValidator();
+		TokenCache cache = new TokenCache(validator, 10, 60000, 60000);
+
+		for (int i = 0; i < 100; i++) {
+			cache.isValid("valid" + i);
+		}
+
+		Assert.assertTrue(cache.size() <= 10);
+	}
+
+	@Test
+	public void rejectedTokensDoNotEvictValidTest() throws ExecutionException {
+
+		StubValidator validator = new StubValidator();
+		TokenCache cache = new TokenCache(validator, 10, 60000, 5, 60000);
+
+		for (int i = 0; i < 10; i++) {
+			cache.isValid("valid" + i);
+		}
+
+		for (int i = 0; i < 100; i++) {
+			Assert.assertFalse(cache.isValid("wrong" + i));
+		}
+
+		Assert.assertTrue(cache.rejectedSize() <= 5);
+
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(cache.isValid("valid" + i));
+		}
+		Assert.assertEquals(110, validator.validations.get());
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.kurento.commons.Address;
 import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.RequestTimeoutException;
 import org.kurento.jsonrpc.message.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,7 @@ public class RabbitMqManager {
 
 	public static final String RETRY_TIMEOUT_PROPERTY = "rabbit.retryTimeout";
 	public static final String NUM_RETRIES_PROPERTY = "rabbit.numRetries";
+	public static final String CONNECTION_TIMEOUT_PROPERTY = "rabbit.connectionTimeout";
 
 	public static final String EVENT_QUEUE_PREFIX = "event_";
 	public static final String CLIENT_QUEUE_PREFIX = "client_";
@@ -35,6 +37,7 @@ public class RabbitMqManager {
 
 	private final long retryTimeOut;
 	private final long numRetries;
+	private final int connectionTimeout;
 
 	private static final String EXPIRATION_TIME = "25000";
 
@@ -61,6 +64,8 @@ public class RabbitMqManager {
 				RETRY_TIMEOUT_PROPERTY, 500);
 		this.numRetries = PropertiesManager
 				.getProperty(NUM_RETRIES_PROPERTY, 5);
+		this.connectionTimeout = PropertiesManager.getProperty(
+				CONNECTION_TIMEOUT_PROPERTY, 5000);
 	}
 
 	public RabbitMqManager(String host, String port, String username,
@@ -74,6 +79,9 @@ public class RabbitMqManager {
 	public void connect() {
 
 		cf = new CachingConnectionFactory(address.getHost(), address.getPort());
+		// Requests waiting for a connection to the broker are not blocked
+		// beyond their deadline
+		cf.setConnectionTimeout(connectionTimeout);
 		if (username != null) {
 			cf.setUsername(username);
 		}
@@ -148,6 +156,24 @@ public class RabbitMqManager {
 
 	public String sendAndReceive(String exchange, String routingKey,
 			Request<? extends Object> request, RabbitTemplate template) {
+		return sendAndReceive(exchange, routingKey, request, template,
+				Long.MAX_VALUE);
+	}
+
+	/**
+	 * Sends a request and waits for its reply, retrying while the deadline
+	 * allows it. Each attempt waits for the reply up to the retry timeout, so
+	 * the calling thread is not blocked much longer than the deadline.
+	 *
+	 * @param deadline
+	 *            Time in millis (as {@link System#currentTimeMillis()}) after
+	 *            which no more attempts are made
+	 * @throws RequestTimeoutException
+	 *             if the deadline expires before a reply is received
+	 */
+	public String sendAndReceive(String exchange, String routingKey,
+			Request<? extends Object> request, RabbitTemplate template,
+			long deadline) {
 
 		if (template == null) {
 			template = new RabbitTemplate(cf);
@@ -165,6 +191,11 @@ public class RabbitMqManager {
 		for (int numRequest = 0; numRequest < numRetries + 1; numRequest++) {
 
 			if (numRequest > 0) {
+				if (System.currentTimeMillis() >= deadline) {
+					throw new RequestTimeoutException("Deadline expired after "
+							+ numRequest + " attempts waiting a reply to"
+							+ " message: " + request);
+				}
 				log.debug("Retry {} sending message: {}", numRequest, request);
 			}
 
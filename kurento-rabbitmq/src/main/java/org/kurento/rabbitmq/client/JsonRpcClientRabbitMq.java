@@ -12,10 +12,12 @@ import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
 import org.kurento.commons.Address;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.KeepAliveManager;
+import org.kurento.jsonrpc.RequestTimeoutException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
@@ -39,6 +41,8 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 	private final ExecutorService execService = Executors
 			.newFixedThreadPool(10);
 
+	private final PendingRequests pendingRequests = new PendingRequests();
+
 	private RabbitMqManager rabbitMqManager;
 
 	private String clientId;
@@ -129,6 +133,18 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 
 	public <P, R> Response<R> internalSendRequestBroker(Request<P> request,
 			Class<R> resultClass) {
+		return internalSendRequestBroker(request, resultClass,
+				calculateDeadline(request));
+	}
+
+	private long calculateDeadline(Request<?> request) {
+		long timeout = request.getTimeout() > 0 ? request.getTimeout()
+				: pendingRequests.getDefaultTimeout();
+		return System.currentTimeMillis() + timeout;
+	}
+
+	private <P, R> Response<R> internalSendRequestBroker(Request<P> request,
+			Class<R> resultClass, long deadline) {
 
 		connectIfNecessary();
 
@@ -153,7 +169,8 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 							.getAsString())) {
 
 				String responseStr = rabbitMqManager.sendAndReceive("",
-						PIPELINE_CREATION_QUEUE, request, rabbitTemplate);
+						PIPELINE_CREATION_QUEUE, request, rabbitTemplate,
+						deadline);
 
 				log.debug("<-Res {}", responseStr.trim());
 
@@ -210,7 +227,7 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 				}
 
 				String responseStr = rabbitMqManager.sendAndReceive("",
-						pipelineId, request, rabbitTemplate);
+						pipelineId, request, rabbitTemplate, deadline);
 
 				log.debug("<-Res {}", responseStr.trim());
 
@@ -223,6 +240,8 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 
 			return response;
 
+		} catch (RequestTimeoutException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(
 					"Exception while invoking request to server", e);
@@ -270,28 +289,84 @@ public class JsonRpcClientRabbitMq extends JsonRpcClient {
 
 		connectIfNecessary();
 
+		final Integer id = request.getId();
+		final long deadline = calculateDeadline(request);
+
+		if (id != null) {
+			// The request is failed when its deadline expires. The broker call
+			// stops retrying after the deadline too, so its thread is freed
+			pendingRequests.prepareResponse(id, request.getTimeout(),
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> result) {
+							try {
+								continuation.onSuccess(result);
+							} catch (Exception e) {
+								log.error(
+										"Exception while processing response",
+										e);
+							}
+						}
+
+						@Override
+						public void onError(final Throwable cause) {
+							execService.execute(new Runnable() {
+								@Override
+								public void run() {
+									continuation.onError(cause);
+								}
+							});
+						}
+					});
+		}
+
 		// FIXME: Poor man async implementation.
 		execService.submit(new Runnable() {
 			@Override
 			public void run() {
+
+				if (id != null && !pendingRequests.isPending(id)) {
+					// Timed out or closed while waiting for a thread, so the
+					// broker is not called for a request already failed
+					return;
+				}
+
 				try {
 					Response<JsonElement> result = internalSendRequestBroker(
-							request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						log.error("Exception while processing response", e);
+							request, resultClass, deadline);
+					if (id != null) {
+						pendingRequests.handleResponse(result);
+					} else {
+						try {
+							continuation.onSuccess(result);
+						} catch (Exception e) {
+							log.error("Exception while processing response", e);
+						}
 					}
 				} catch (Exception e) {
-					continuation.onError(e);
+					if (id != null) {
+						pendingRequests.handleError(id, e);
+					} else {
+						continuation.onError(e);
+					}
 				}
 			}
 		});
 	}
 
+	public long getRequestTimeout() {
+		return pendingRequests.getDefaultTimeout();
+	}
+
+	public void setRequestTimeout(long requestTimeout) {
+		pendingRequests.setDefaultTimeout(requestTimeout);
+	}
+
 	@Override
 	public void close() throws IOException {
 		log.debug("Closing connection to broker of the RabbitMqMediaConnector");
+		pendingRequests.closeAllPendingRequests("Client closed connection");
 		if (rabbitMqManager != null) {
 			rabbitMqManager.destroy();
 		}